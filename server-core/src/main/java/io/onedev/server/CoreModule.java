@@ -78,7 +78,9 @@ import io.onedev.server.cache.DefaultBuildInfoManager;
 import io.onedev.server.cache.DefaultCacheManager;
 import io.onedev.server.cache.DefaultCodeCommentRelationInfoManager;
 import io.onedev.server.cache.DefaultCommitInfoManager;
+import io.onedev.server.cache.DefaultPackCacheManager;
 import io.onedev.server.cache.DefaultUserInfoManager;
+import io.onedev.server.cache.PackCacheManager;
 import io.onedev.server.cache.UserInfoManager;
 import io.onedev.server.ci.DefaultCISpecProvider;
 import io.onedev.server.ci.job.DefaultJobManager;
@@ -153,6 +155,8 @@ import io.onedev.server.entitymanager.impl.DefaultPullRequestWatchManager;
 import io.onedev.server.entitymanager.impl.DefaultSettingManager;
 import io.onedev.server.entitymanager.impl.DefaultUserAuthorizationManager;
 import io.onedev.server.entitymanager.impl.DefaultUserManager;
+import io.onedev.server.event.DefaultRefUpdatedDispatcher;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.git.GitFilter;
 import io.onedev.server.git.GitPostReceiveCallback;
 import io.onedev.server.git.GitPreReceiveCallback;
@@ -164,6 +168,7 @@ import io.onedev.server.maintenance.CleanDatabase;
 import io.onedev.server.maintenance.DataManager;
 import io.onedev.server.maintenance.DatabaseDialect;
 import io.onedev.server.maintenance.DefaultDataManager;
+import io.onedev.server.maintenance.RebuildEntityTextIndex;
 import io.onedev.server.maintenance.ResetAdminPassword;
 import io.onedev.server.maintenance.RestoreDatabase;
 import io.onedev.server.maintenance.Upgrade;
@@ -173,9 +178,11 @@ import io.onedev.server.model.support.authenticator.Authenticator;
 import io.onedev.server.notification.CodeCommentNotificationManager;
 import io.onedev.server.notification.CommitNotificationManager;
 import io.onedev.server.notification.DefaultMailManager;
+import io.onedev.server.notification.DefaultQueryWatchManager;
 import io.onedev.server.notification.IssueNotificationManager;
 import io.onedev.server.notification.MailManager;
 import io.onedev.server.notification.PullRequestNotificationManager;
+import io.onedev.server.notification.QueryWatchManager;
 import io.onedev.server.notification.WebHookManager;
 import io.onedev.server.persistence.DefaultIdManager;
 import io.onedev.server.persistence.DefaultPersistManager;
@@ -204,6 +211,8 @@ import io.onedev.server.search.code.DefaultIndexManager;
 import io.onedev.server.search.code.DefaultSearchManager;
 import io.onedev.server.search.code.IndexManager;
 import io.onedev.server.search.code.SearchManager;
+import io.onedev.server.search.entitytext.DefaultEntityTextManager;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.security.BasicAuthenticationFilter;
 import io.onedev.server.security.FilterChainConfigurator;
 import io.onedev.server.security.OneAuthorizingRealm;
@@ -211,7 +220,9 @@ import io.onedev.server.security.OneFilterChainResolver;
 import io.onedev.server.security.OnePasswordService;
 import io.onedev.server.security.OneRememberMeManager;
 import io.onedev.server.security.OneWebSecurityManager;
+import io.onedev.server.storage.ArchiveManager;
 import io.onedev.server.storage.AttachmentStorageManager;
+import io.onedev.server.storage.DefaultArchiveManager;
 import io.onedev.server.storage.DefaultAttachmentStorageManager;
 import io.onedev.server.storage.DefaultStorageManager;
 import io.onedev.server.storage.StorageManager;
@@ -319,6 +330,7 @@ public class CoreModule extends AbstractPluginModule {
 		bind(LogManager.class).to(DefaultLogManager.class);
 		bind(PullRequestBuildManager.class).to(DefaultPullRequestBuildManager.class);
 		bind(MailManager.class).to(DefaultMailManager.class);
+		bind(QueryWatchManager.class).to(DefaultQueryWatchManager.class);
 		bind(IssueManager.class).to(DefaultIssueManager.class);
 		bind(IssueFieldManager.class).to(DefaultIssueFieldManager.class);
 		bind(BuildParamManager.class).to(DefaultBuildParamManager.class);
@@ -333,8 +345,10 @@ public class CoreModule extends AbstractPluginModule {
 		bind(PullRequestChangeManager.class).to(DefaultPullRequestChangeManager.class);
 		bind(CodeCommentReplyManager.class).to(DefaultCodeCommentReplyManager.class);
 		bind(AttachmentStorageManager.class).to(DefaultAttachmentStorageManager.class);
+		bind(ArchiveManager.class).to(DefaultArchiveManager.class);
 		bind(CodeCommentRelationInfoManager.class).to(DefaultCodeCommentRelationInfoManager.class);
 		bind(BuildInfoManager.class).to(DefaultBuildInfoManager.class);
+		bind(PackCacheManager.class).to(DefaultPackCacheManager.class);
 		bind(CodeCommentRelationManager.class).to(DefaultCodeCommentRelationManager.class);
 		bind(WorkExecutor.class).to(DefaultWorkExecutor.class);
 		bind(PullRequestNotificationManager.class);
@@ -391,12 +405,14 @@ public class CoreModule extends AbstractPluginModule {
         
 		bind(IndexManager.class).to(DefaultIndexManager.class);
 		bind(SearchManager.class).to(DefaultSearchManager.class);
+		bind(EntityTextManager.class).to(DefaultEntityTextManager.class);
 		
 		bind(EntityValidator.class).to(DefaultEntityValidator.class);
 		
 		bind(GitFilter.class);
 		bind(GitPreReceiveCallback.class);
 		bind(GitPostReceiveCallback.class);
+		bind(RefUpdatedDispatcher.class).to(DefaultRefUpdatedDispatcher.class);
 	}
 	
 	private void configureRestServices() {
@@ -646,6 +662,8 @@ public class CoreModule extends AbstractPluginModule {
 				bind(PersistManager.class).to(DatabaseDialect.class);
 			else if (ResetAdminPassword.COMMAND.equals(Bootstrap.command.getName()))
 				bind(PersistManager.class).to(ResetAdminPassword.class);
+			else if (RebuildEntityTextIndex.COMMAND.equals(Bootstrap.command.getName()))
+				bind(PersistManager.class).to(RebuildEntityTextIndex.class);
 			else	
 				throw new RuntimeException("Unrecognized command: " + Bootstrap.command.getName());
 		} else {
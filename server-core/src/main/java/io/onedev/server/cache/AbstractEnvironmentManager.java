@@ -8,14 +8,19 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nullable;
 
 import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.OneDev;
 import io.onedev.server.event.system.SystemStopping;
 
 import com.google.common.base.Charsets;
@@ -32,30 +37,164 @@ import jetbrains.exodus.env.TransactionalComputable;
 
 public abstract class AbstractEnvironmentManager {
 	
-	private static final String VERSION_FILE = "version.txt";
+	private static final Logger logger = LoggerFactory.getLogger(AbstractEnvironmentManager.class);
+	
+	static final String VERSION_FILE = "version.txt";
 	
 	private static final long DEFAULT_LOG_FILE_SIZE = 8192;
 	
-	private static final int MEMORY_USAGE_PERCENT = 25;
+	private static final int MAX_MIGRATION_ATTEMPTS = 5;
 	
 	private final Map<String, Environment> envs = new ConcurrentHashMap<>();
 	
+	private final Map<String, Object> envLocks = new ConcurrentHashMap<>();
+	
+	private final Set<String> migratingEnvs = ConcurrentHashMap.newKeySet();
+	
+	private Object getEnvLock(String envKey) {
+		return envLocks.computeIfAbsent(envKey, it->new Object());
+	}
+	
+	/**
+	 * Check version of specified environment. Content of the environment is removed if its 
+	 * version is not compatible and can not be migrated. Otherwise the environment is opened 
+	 * and migrated in background, with existing information serving reads in the meantime
+	 */
 	protected void checkVersion(String envKey) {
+		synchronized (getEnvLock(envKey)) {
+			if (envs.containsKey(envKey))
+				return;
+			File versionFile = new File(getEnvDir(envKey), VERSION_FILE);
+			int versionFromFile;
+			if (versionFile.exists()) {
+				try {
+					versionFromFile = Integer.parseInt(FileUtils.readFileToString(versionFile, Charset.defaultCharset()).trim());
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			} else {
+				versionFromFile = 0;
+			}
+			if (versionFromFile != getEnvVersion()) {
+				if (versionFromFile != 0 && versionFromFile < getEnvVersion() && canMigrate(versionFromFile)) {
+					Environment env = newEnv(envKey);
+					// Mark as migrating before publishing so that readers never take it as migrated
+					migratingEnvs.add(envKey);
+					envs.put(envKey, env);
+					getExecutorService().execute(new Runnable() {
+
+						@Override
+						public void run() {
+							try {
+								migrate(envKey, env, versionFromFile);
+							} finally {
+								migratingEnvs.remove(envKey);
+							}
+							onMigrated(envKey);
+						}
+						
+					});
+				} else {
+					FileUtils.cleanDir(versionFile.getParentFile());
+					FileUtils.writeFile(versionFile, String.valueOf(getEnvVersion()));
+				}
+			} 
+		}
+	}
+	
+	private boolean canMigrate(int fromVersion) {
+		for (int version=fromVersion; version<getEnvVersion(); version++) {
+			if (!isMigratable(version))
+				return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Migrate environment step by step. Version file is updated after each step, so that 
+	 * an interrupted migration continues from the last completed step. Content of the 
+	 * environment is removed if migration fails, so that information can be collected again
+	 */
+	void migrate(String envKey, Environment env, int fromVersion) {
 		File versionFile = new File(getEnvDir(envKey), VERSION_FILE);
-		int versionFromFile;
-		if (versionFile.exists()) {
-			try {
-				versionFromFile = Integer.parseInt(FileUtils.readFileToString(versionFile, Charset.defaultCharset()).trim());
-			} catch (IOException e) {
-				throw new RuntimeException(e);
+		try {
+			for (int version=fromVersion; version<getEnvVersion(); version++) {
+				logger.info("Migrating '{}' from version {}...", getEnvDir(envKey), version);
+				int attempts = 0;
+				while (true) {
+					Transaction txn = env.beginTransaction();
+					try {
+						migrate(env, txn, version);
+						// Commit fails if information is changed concurrently, try again with latest snapshot
+						if (txn.commit())
+							break;
+					} finally {
+						if (!txn.isFinished())
+							txn.abort();
+					}
+					if (++attempts >= MAX_MIGRATION_ATTEMPTS)
+						throw new RuntimeException("Unable to commit migration of '" + getEnvDir(envKey) + "'");
+				}
+				FileUtils.writeFile(versionFile, String.valueOf(version+1));
+			}
+			logger.info("Migrated '{}' to version {}", getEnvDir(envKey), getEnvVersion());
+		} catch (Exception e) {
+			if (env.isOpen()) {
+				logger.error("Error migrating '" + getEnvDir(envKey) + "', information will be recollected", e);
+				env.clear();
+				FileUtils.writeFile(versionFile, String.valueOf(getEnvVersion()));
+			} else {
+				logger.info("Migration of '{}' is interrupted, will continue at next start", getEnvDir(envKey));
 			}
-		} else {
-			versionFromFile = 0;
 		}
-		if (versionFromFile != getEnvVersion()) {
-			FileUtils.cleanDir(versionFile.getParentFile());
-			FileUtils.writeFile(versionFile, String.valueOf(getEnvVersion()));
-		} 
+	}
+	
+	/**
+	 * Whether or not information of an environment can be migrated in place from specified 
+	 * version to next version. Content of the environment will be removed to collect 
+	 * information again if any step from its version to current version is not migratable
+	 */
+	protected boolean isMigratable(int fromVersion) {
+		return false;
+	}
+	
+	/**
+	 * Transform information of an environment in place to next version of its format. Only 
+	 * stores whose format changed in next version need to be touched. Migration runs in 
+	 * background and may be executed again if system stops before it completes, or if 
+	 * information is changed concurrently, so it should be idempotent
+	 * 
+	 * @param env
+	 * 			environment to migrate
+	 * @param txn
+	 * 			transaction to make changes in. All changes will be discarded if migration 
+	 * 			throws exception, in which case content of the environment will be removed 
+	 * @param fromVersion
+	 * 			current version of the environment, only called if {@link #isMigratable(int)} 
+	 * 			returns <tt>true</tt> for this version
+	 */
+	protected void migrate(Environment env, Transaction txn, int fromVersion) {
+		throw new IllegalStateException("Migration from version " + fromVersion 
+				+ " is declared migratable but not implemented (env: " + env.getLocation() + ")");
+	}
+	
+	/**
+	 * Called in background after migration of specified environment is finished or failed
+	 */
+	protected void onMigrated(String envKey) {
+	}
+	
+	/**
+	 * @return
+	 * 			whether or not specified environment is being migrated. Stores added in current 
+	 * 			version may be incomplete while migrating
+	 */
+	protected boolean isMigrating(String envKey) {
+		return migratingEnvs.contains(envKey);
+	}
+	
+	protected ExecutorService getExecutorService() {
+		return OneDev.getInstance(ExecutorService.class);
 	}
 	
 	protected void writeVersion(String envKey) {
@@ -73,21 +212,28 @@ public abstract class AbstractEnvironmentManager {
 	
 	protected Environment getEnv(String envKey) {
 		Environment env = envs.get(envKey);
-		if (env == null) synchronized (envs) {
+		if (env == null) synchronized (getEnvLock(envKey)) {
 			env = envs.get(envKey);
 			if (env == null) {
 				checkVersion(envKey);
-				EnvironmentConfig config = new EnvironmentConfig();
-				config.setEnvCloseForcedly(true);
-				config.setMemoryUsagePercentage(MEMORY_USAGE_PERCENT);
-				config.setLogFileSize(getLogFileSize());
-				env = Environments.newInstance(getEnvDir(envKey), config);
-				envs.put(envKey, env);
+				env = envs.get(envKey);
+				if (env == null) {
+					env = newEnv(envKey);
+					envs.put(envKey, env);
+				}
 			}
 		}
 		return env;
 	}
 	
+	Environment newEnv(String envKey) {
+		EnvironmentConfig config = new EnvironmentConfig();
+		config.setEnvCloseForcedly(true);
+		config.setMemoryUsagePercentage(MEMORY_USAGE_PERCENT);
+		config.setLogFileSize(getLogFileSize());
+		return Environments.newInstance(getEnvDir(envKey), config);
+	}
+	
 	protected Store getStore(Environment env, String storeName) {
 		return env.computeInTransaction(new TransactionalComputable<Store>() {
 		    @Override
@@ -98,20 +244,24 @@ public abstract class AbstractEnvironmentManager {
 	}
 
 	protected void removeEnv(String envKey) {
-		synchronized (envs) {
+		synchronized (getEnvLock(envKey)) {
 			Environment env = envs.remove(envKey);
 			if (env != null)
 				env.close();
 		}
 	}
 
+	/**
+	 * Called when system is stopping, before environments are closed
+	 */
+	protected void beforeClose() {
+	}
+	
 	@Listen
 	public void on(SystemStopping event) {
-		synchronized (envs) {
-			for (Environment env: envs.values())
-				env.close();
-			envs.clear();
-		}
+		beforeClose();
+		for (String envKey: envs.keySet())
+			removeEnv(envKey);
 	}
 
 	@Nullable 
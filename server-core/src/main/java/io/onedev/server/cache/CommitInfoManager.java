@@ -4,7 +4,10 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
 
 import io.onedev.server.git.Contribution;
 import io.onedev.server.git.Contributor;
@@ -41,6 +44,39 @@ public interface CommitInfoManager {
 	
 	Collection<String> getHistoryPaths(Project project, String path);
 	
+	/**
+	 * Get cache of last commits of children under specified path. The cache only holds
+	 * results stored for a limited number of recent commits of each path, and last commits 
+	 * of other commits are calculated incrementally from results of their nearest cached 
+	 * ancestors
+	 * 
+	 * @param project
+	 * 			project to get cache for
+	 * @param path
+	 * 			path of the directory, empty string for repository root
+	 * @return
+	 * 			cache of last commits of children, or <tt>null</tt> if nothing is cached for 
+	 * 			specified path
+	 */
+	@Nullable
+	LastCommitsOfChildren.Cache getLastCommitsCache(Project project, String path);
+	
+	/**
+	 * Store last commits of children under specified path at specified commit. Results
+	 * stored least recently for the path will be evicted if there are too many of them
+	 * 
+	 * @param project
+	 * 			project to store last commits for
+	 * @param path
+	 * 			path of the directory, empty string for repository root
+	 * @param commitId
+	 * 			commit the last commits are calculated at
+	 * @param lastCommits
+	 * 			map of child name to its last commit
+	 */
+	void cacheLastCommits(Project project, String path, ObjectId commitId, 
+			Map<String, LastCommitsOfChildren.Value> lastCommits);
+	
 	/**
 	 * Get overall contributions
 	 * 
@@ -81,4 +117,25 @@ public interface CommitInfoManager {
 
 	Collection<ObjectId> getFixCommits(Project project, Long issueNumber);
 	
+	/**
+	 * Record visit of specified project, so that its commit information will be collected 
+	 * before projects not visited recently
+	 * 
+	 * @param project
+	 * 			project being visited
+	 */
+	void visit(Project project);
+	
+	/**
+	 * Get progress of collecting commit information of default branch
+	 * 
+	 * @param project
+	 * 			project to get collecting progress for
+	 * @return
+	 * 			percentage of collected commits, or <tt>null</tt> if commit information of the 
+	 * 			project is not being collected
+	 */
+	@Nullable
+	Integer getCollectingProgress(Project project);
+	
 }
\ No newline at end of file
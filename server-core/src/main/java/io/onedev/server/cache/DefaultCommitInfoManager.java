@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -16,11 +17,16 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -30,6 +36,8 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
+import org.eclipse.jgit.revwalk.LastCommitsOfChildren.Value;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -48,6 +56,7 @@ import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.concurrent.Prioritized;
 import io.onedev.server.entitymanager.IssueManager;
 import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.event.RefUpdated;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.issue.IssueCommitted;
@@ -77,8 +86,10 @@ import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.backup.BackupStrategy;
 import jetbrains.exodus.backup.BackupStrategy.FileDescriptor;
 import jetbrains.exodus.backup.VirtualFileDescriptor;
+import jetbrains.exodus.env.Cursor;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
 import jetbrains.exodus.env.Transaction;
 import jetbrains.exodus.env.TransactionalComputable;
 import jetbrains.exodus.env.TransactionalExecutable;
@@ -88,18 +99,29 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultCommitInfoManager.class);
 	
-	private static final int INFO_VERSION = 7;
+	private static final int INFO_VERSION = 8;
 	
 	private static final long LOG_FILE_SIZE = 256*1024;
 	
+	/*
+	 * Collection of a project runs up to MAX_PREFETCH_SEGMENTS+1 git log processes, each 
+	 * buffering up to COLLECT_BATCH_SIZE commits. Keep description of setting "Concurrent 
+	 * Commit Info Collections" in sync if these are changed
+	 */
 	private static final int COLLECT_BATCH_SIZE = 10000;
 	
+	private static final int MAX_PREFETCH_SEGMENTS = 2;
+	
 	private static final int MAX_COLLECTING_FILES = 50000;
 	
 	private static final int MAX_HISTORY_PATHS = 100;
 	
+	private static final int MAX_LAST_COMMITS_PER_PATH = 10;
+	
 	private static final String INFO_DIR = "commit";
 	
+	private static final String LEGACY_LAST_COMMITS_DIR = "last_commits";
+	
 	private static final String DEFAULT_STORE = "default";
 	
 	private static final String COMMITS_STORE = "commits";
@@ -118,7 +140,17 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private static final String INDEX_TO_USER_STORE = "indexToUser";
 	
-	private static final String DAILY_CONTRIBUTIONS_STORE = "dailyContributions";
+	static final String DAILY_CONTRIBUTIONS_STORE = "dailyContributions";
+	
+	static final String WEEKLY_CONTRIBUTIONS_STORE = "weeklyContributions";
+	
+	static final String MONTHLY_CONTRIBUTIONS_STORE = "monthlyContributions";
+	
+	static final String USER_CONTRIBUTIONS_STORE = "userContributions";
+	
+	private static final String LAST_COMMITS_STORE = "lastCommits";
+	
+	private static final String LAST_COMMITS_INDEX_STORE = "lastCommitsIndex";
 	
 	private static final ByteIterable NEXT_PATH_INDEX_KEY = new StringByteIterable("nextPathIndex");
 	
@@ -138,6 +170,11 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private static final ByteIterable COMMIT_COUNT_KEY = new StringByteIterable("commitCount");
 	
+	private static final ByteIterable LAST_VISIT_KEY = new StringByteIterable("lastVisit");
+	
+	// Persist visit time of a project at most once in this interval (in milliseconds)
+	private static final long VISIT_PERSIST_INTERVAL = 60000;
+	
 	private static final int PRIORITY = 100;
 	
 	private static final Map<String, String> PROGRAMMING_LANGUAGES = new HashMap<>();
@@ -286,16 +323,28 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	
 	private final IssueManager issueManager;
 	
+	private final SettingManager settingManager;
+	
 	private final Map<Long, List<String>> filesCache = new ConcurrentHashMap<>();
 	
 	private final Map<Long, Integer> commitCountCache = new ConcurrentHashMap<>();
 	
 	private final Map<Long, List<NameAndEmail>> usersCache = new ConcurrentHashMap<>();
 	
+	private final Map<Long, Long> visitTimes = new ConcurrentHashMap<>();
+	
+	private final Map<Long, Long> persistedVisitTimes = new ConcurrentHashMap<>();
+	
+	private final Map<Long, Integer> collectingProgresses = new ConcurrentHashMap<>();
+	
+	private final Map<Long, List<CollectingWork>> pendingWorks = new HashMap<>();
+	
+	private final Map<Long, Integer> collectingWorkCounts = new HashMap<>();
+	
 	@Inject
 	public DefaultCommitInfoManager(ProjectManager projectManager, StorageManager storageManager, 
 			BatchWorkManager batchWorkManager, SessionManager sessionManager, ExecutorService executorService, 
-			ListenerRegistry listenerRegistry, IssueManager issueManager) {
+			ListenerRegistry listenerRegistry, IssueManager issueManager, SettingManager settingManager) {
 		this.projectManager = projectManager;
 		this.storageManager = storageManager;
 		this.batchWorkManager = batchWorkManager;
@@ -303,6 +352,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		this.executorService = executorService;
 		this.listenerRegistry = listenerRegistry;
 		this.issueManager = issueManager;
+		this.settingManager = settingManager;
 	}
 	
 	private boolean isCommitCollected(byte[] commitBytes) {
@@ -324,6 +374,9 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		Store emailToIndexStore = getStore(env, EMAIL_TO_INDEX_STORE);
 		Store indexToUserStore = getStore(env, INDEX_TO_USER_STORE);
 		Store dailyContributionsStore = getStore(env, DAILY_CONTRIBUTIONS_STORE);	
+		Store weeklyContributionsStore = getStore(env, WEEKLY_CONTRIBUTIONS_STORE);	
+		Store monthlyContributionsStore = getStore(env, MONTHLY_CONTRIBUTIONS_STORE);	
+		Store userContributionsStore = getStore(env, USER_CONTRIBUTIONS_STORE);	
 		Store fixCommitsStore = getStore(env, FIX_COMMITS_STORE);
 		
 		Repository repository = project.getRepository();
@@ -485,280 +538,276 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 				Collections.reverse(intermediateIds);
 				intermediateIds.add(commitId);
 				
+				int totalCommits = historyIds.size();
 				historyIds = null;
 				firstParentIds = null;
 				
-				for(ObjectId currentCommitId: intermediateIds) {
-					env.executeInTransaction(new TransactionalExecutable() {
+				/*
+				 * Logs of subsequent segments are started ahead of time, so that git calculates 
+				 * file changes of multiple segments in parallel while commits are added to Xodus 
+				 * store segment by segment in history order. Memory usage is bounded by buffer 
+				 * size of started segments
+				 */
+				List<SegmentLog> segmentLogs = new ArrayList<>();
+				int collectedCommits = 0;
+				collectingProgresses.put(project.getId(), 0);
+				try {
+					for (int i=0; i<intermediateIds.size(); i++) {
+						while (segmentLogs.size() < intermediateIds.size() 
+								&& segmentLogs.size() <= i + MAX_PREFETCH_SEGMENTS) {
+							int segmentIndex = segmentLogs.size();
+							List<String> segmentRevisions = new ArrayList<>();
+							segmentRevisions.add(intermediateIds.get(segmentIndex).name());
+							ObjectId sinceCommitId = segmentIndex!=0? intermediateIds.get(segmentIndex-1): lastCommitId;
+							if (sinceCommitId != null && repository.hasObject(sinceCommitId))
+								segmentRevisions.add("^" + sinceCommitId.name());
+							segmentLogs.add(new SegmentLog(project.getGitDir(), segmentRevisions));
+						}
 						
-						@SuppressWarnings("unchecked")
-						@Override
-						public void execute(Transaction txn) {
-							NextIndex nextIndex = new NextIndex();
-							nextIndex.user = readInt(defaultStore, txn, NEXT_USER_INDEX_KEY, 0);
-							nextIndex.path = readInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, 0);
-							
-							Map<Long, Integer> editsCache = new HashMap<>();
+						ObjectId currentCommitId = intermediateIds.get(i);
+						SegmentLog segmentLog = segmentLogs.get(i);
+						AtomicInteger segmentCommits = new AtomicInteger(0);
+						env.executeInTransaction(new TransactionalExecutable() {
 							
-							Set<NameAndEmail> users;
-							byte[] userBytes = readBytes(defaultStore, txn, USERS_KEY);
-							if (userBytes != null)
-								users = (Set<NameAndEmail>) SerializationUtils.deserialize(userBytes);
-							else
-								users = new HashSet<>();
+							@SuppressWarnings("unchecked")
+							@Override
+							public void execute(Transaction txn) {
+								NextIndex nextIndex = new NextIndex();
+								nextIndex.user = readInt(defaultStore, txn, NEXT_USER_INDEX_KEY, 0);
+								nextIndex.path = readInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, 0);
+								
+								Map<Long, Integer> editsCache = new HashMap<>();
+								
+								Set<NameAndEmail> users;
+								byte[] userBytes = readBytes(defaultStore, txn, USERS_KEY);
+								if (userBytes != null)
+									users = (Set<NameAndEmail>) SerializationUtils.deserialize(userBytes);
+								else
+									users = new HashSet<>();
 
-							Map<String, Long> files;
-							byte[] fileBytes = readBytes(defaultStore, txn, FILES_KEY);
-							if (fileBytes != null)
-								files = (Map<String, Long>) SerializationUtils.deserialize(fileBytes);
-							else
-								files = new HashMap<>();
-							
-							Map<Integer, Map<String, Integer>> lineStats;
-							byte[] bytesOfLineStats = readBytes(defaultStore, txn, LINE_STATS_KEY);
-							if (bytesOfLineStats != null) {
-								lineStats = (Map<Integer, Map<String, Integer>>) SerializationUtils.deserialize(
-										bytesOfLineStats);
-							} else {
-								lineStats = new HashMap<>();
-							}
-							
-							Map<Integer, Map<Integer, Contribution>> dailyContributionsCache = new HashMap<>();
-							Map<Integer, Contribution> overallContributions = 
-									deserializeContributions(readBytes(defaultStore, txn, OVERALL_CONTRIBUTIONS_KEY));
-
-							/*
-							 * Use a synchronous queue to achieve below purpose:
-							 * 1. Add commit to Xodus transactional store in the same thread opening the transaction 
-							 * as this is required by Xodus
-							 * 2. Do not pile up commits to use minimal memory 
-							 */
-							SynchronousQueue<Optional<GitCommit>> queue = new SynchronousQueue<>(); 
-							AtomicReference<Exception> logException = new AtomicReference<>(null);
-							
-							List<String> revisions = new ArrayList<>();
-							revisions.add(currentCommitId.name());
-
-							ObjectId lastCommitId;
-							byte[] lastCommitBytes = readBytes(defaultStore, txn, LAST_COMMIT_OF_DEFAULT_BRANCH_KEY);
-							if (lastCommitBytes != null) 
-								lastCommitId = ObjectId.fromRaw(lastCommitBytes);
-							else 
-								lastCommitId = null;
-							if (lastCommitId != null && repository.hasObject(lastCommitId))
-								revisions.add("^" + lastCommitId.name());
-
-							LogCommand log = new LogCommand(project.getGitDir()) {
-
-								@Override
-								protected void consume(GitCommit commit) {
-									try {
-										queue.put(Optional.of(commit));
-									} catch (InterruptedException e) {
-									}
-								}
+								Map<String, Long> files;
+								byte[] fileBytes = readBytes(defaultStore, txn, FILES_KEY);
+								if (fileBytes != null)
+									files = (Map<String, Long>) SerializationUtils.deserialize(fileBytes);
+								else
+									files = new HashMap<>();
 								
-							}.revisions(revisions);
-							
-							executorService.execute(new Runnable() {
-
-								@Override
-								public void run() {
-									try {
-										log.call();
-									} catch (Exception e) {
-										logException.set(e);
-									} finally {
-										try {
-											queue.put(Optional.empty());
-										} catch (InterruptedException e) {
-										}
-									}
+								Map<Integer, Map<String, Integer>> lineStats;
+								byte[] bytesOfLineStats = readBytes(defaultStore, txn, LINE_STATS_KEY);
+								if (bytesOfLineStats != null) {
+									lineStats = (Map<Integer, Map<String, Integer>>) SerializationUtils.deserialize(
+											bytesOfLineStats);
+								} else {
+									lineStats = new HashMap<>();
 								}
 								
-							});
-							
-							try {
-								Optional<GitCommit> logCommitOptional = queue.take();
-								while (logCommitOptional.isPresent()) {
-									GitCommit logCommit = logCommitOptional.get();
-									
-									if (logCommit.getCommitDate() != null) {
-										for (String file: logCommit.getChangedFiles())
-											files.put(file, logCommit.getCommitDate().getTime());
-									}
-									
-									if (logCommit.getCommitter() != null)
-										users.add(new NameAndEmail(logCommit.getCommitter()));
+								Map<Integer, Map<Integer, Contribution>> dailyContributionsCache = new HashMap<>();
+								Map<Integer, Map<Integer, Contribution>> weeklyContributionsCache = new HashMap<>();
+								Map<Integer, Map<Integer, Contribution>> monthlyContributionsCache = new HashMap<>();
+								Map<Integer, Map<Integer, Contribution>> userContributionsCache = new HashMap<>();
+								Map<Integer, Contribution> overallContributions = 
+										deserializeContributions(readBytes(defaultStore, txn, OVERALL_CONTRIBUTIONS_KEY));
 
-									if (logCommit.getAuthor() != null) {
-										NameAndEmail nameAndEmail = new NameAndEmail(logCommit.getAuthor());
-										users.add(nameAndEmail);
+								/*
+								 * Commits are added to Xodus transactional store in the same thread opening 
+								 * the transaction as this is required by Xodus
+								 */
+								segmentLog.rewind();
+								int commits = 0;
+								try {
+									GitCommit logCommit = segmentLog.next();
+									while (logCommit != null) {
+										commits++;
 										
-										String emailAddress = logCommit.getAuthor().getEmailAddress();
-										if (StringUtils.isNotBlank(emailAddress)) {
-											ByteIterable emailKey = new StringByteIterable(emailAddress);
-											int userIndex = readInt(emailToIndexStore, txn, emailKey, -1);
-											if (userIndex == -1) {
-												userIndex = nextIndex.user++;
-												writeInt(emailToIndexStore, txn, emailKey, userIndex);
-												indexToUserStore.put(txn, 
-														new IntByteIterable(userIndex), 
-														new ArrayByteIterable(SerializationUtils.serialize(nameAndEmail)));
-											}
+										if (logCommit.getCommitDate() != null) {
+											for (String file: logCommit.getChangedFiles())
+												files.put(file, logCommit.getCommitDate().getTime());
+										}
+										
+										if (logCommit.getCommitter() != null)
+											users.add(new NameAndEmail(logCommit.getCommitter()));
+
+										if (logCommit.getAuthor() != null) {
+											NameAndEmail nameAndEmail = new NameAndEmail(logCommit.getAuthor());
+											users.add(nameAndEmail);
 											
-											if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
-												int dayValue = new Day(logCommit.getCommitDate()).getValue();
-												Map<Integer, Contribution> contributionsOnDay = 
-														dailyContributionsCache.get(dayValue);
-												if (contributionsOnDay == null) {
-													contributionsOnDay = deserializeContributions(readBytes(
-															dailyContributionsStore, txn, new IntByteIterable(dayValue)));
-													dailyContributionsCache.put(dayValue, contributionsOnDay);
+											String emailAddress = logCommit.getAuthor().getEmailAddress();
+											if (StringUtils.isNotBlank(emailAddress)) {
+												ByteIterable emailKey = new StringByteIterable(emailAddress);
+												int userIndex = readInt(emailToIndexStore, txn, emailKey, -1);
+												if (userIndex == -1) {
+													userIndex = nextIndex.user++;
+													writeInt(emailToIndexStore, txn, emailKey, userIndex);
+													indexToUserStore.put(txn, 
+															new IntByteIterable(userIndex), 
+															new ArrayByteIterable(SerializationUtils.serialize(nameAndEmail)));
 												}
-												updateContribution(contributionsOnDay, userIndex, logCommit);
-											}
-											
-											for (FileChange change: logCommit.getFileChanges()) {
-												String path = change.getPath();
-												int pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
-														nextIndex, path);
-												int edits = change.getAdditions() + change.getDeletions();
-												if (edits < 0)
-													edits = 100;
-												updateEdits(editsStore, txn, editsCache, userIndex, pathIndex, edits);
-												while (path.contains("/")) {
-													path = StringUtils.substringBeforeLast(path, "/");
-													pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
+												
+												if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
+													Day day = new Day(logCommit.getCommitDate());
+													updateContribution(getContributions(dailyContributionsStore, txn, 
+															dailyContributionsCache, day.getValue()), userIndex, logCommit);
+													updateContribution(getContributions(weeklyContributionsStore, txn, 
+															weeklyContributionsCache, day.getFirstDayOfWeek().getValue()), 
+															userIndex, logCommit);
+													updateContribution(getContributions(monthlyContributionsStore, txn, 
+															monthlyContributionsCache, day.getFirstDayOfMonth().getValue()), 
+															userIndex, logCommit);
+													updateContribution(getContributions(userContributionsStore, txn, 
+															userContributionsCache, userIndex), day.getValue(), logCommit);
+												}
+												
+												for (FileChange change: logCommit.getFileChanges()) {
+													String path = change.getPath();
+													int pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
 															nextIndex, path);
+													int edits = change.getAdditions() + change.getDeletions();
+													if (edits < 0)
+														edits = 100;
+													updateEdits(editsStore, txn, editsCache, userIndex, pathIndex, edits);
+													while (path.contains("/")) {
+														path = StringUtils.substringBeforeLast(path, "/");
+														pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
+																nextIndex, path);
+														updateEdits(editsStore, txn, editsCache, userIndex, pathIndex, edits);
+													}
+													pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
+															nextIndex, "");
 													updateEdits(editsStore, txn, editsCache, userIndex, pathIndex, edits);
-												}
-												pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
-														nextIndex, "");
-												updateEdits(editsStore, txn, editsCache, userIndex, pathIndex, edits);
-											}
-										}
-									}
-									
-									if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
-										int dayValue = new Day(logCommit.getCommitDate()).getValue();
-										updateContribution(overallContributions, dayValue, logCommit);
-									}
-									
-									for (FileChange change: logCommit.getFileChanges()) {
-										if (change.getOldPath() != null) {
-											int pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
-													nextIndex, change.getPath());
-											ByteIterable pathKey = new IntByteIterable(pathIndex);
-											Set<Integer> historyPathIndexes = new HashSet<>();
-											byte[] bytesOfHistoryPaths = readBytes(historyPathsStore, txn, pathKey);
-											if (bytesOfHistoryPaths == null) {
-												bytesOfHistoryPaths = new byte[0];
-												int pos = 0;
-												for (int i=0; i<bytesOfHistoryPaths.length/Integer.SIZE; i++) {
-													historyPathIndexes.add(ByteBuffer.wrap(bytesOfHistoryPaths, pos, Integer.SIZE).getInt());
-													pos += Integer.SIZE;
-												}
-											} else {
-												historyPathIndexes = new HashSet<>();
-											}
-											if (historyPathIndexes.size() < MAX_HISTORY_PATHS) {
-												int oldPathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
-														nextIndex, change.getOldPath());
-												if (!historyPathIndexes.contains(oldPathIndex)) {
-													historyPathIndexes.add(oldPathIndex);
-													byte[] newBytesOfHistoryPaths = 
-															new byte[bytesOfHistoryPaths.length+Integer.SIZE];
-													System.arraycopy(bytesOfHistoryPaths, 0, 
-															newBytesOfHistoryPaths, 0, bytesOfHistoryPaths.length);
-													ByteBuffer buffer = ByteBuffer.wrap(newBytesOfHistoryPaths, 
-															bytesOfHistoryPaths.length, Integer.BYTES);
-													buffer.putInt(oldPathIndex);
-													historyPathsStore.put(txn, pathKey, 
-															new ArrayByteIterable(newBytesOfHistoryPaths));
 												}
 											}
 										}
-									}		
-									
-									if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
-										int day = new Day(logCommit.getCommitDate()).getValue();
 										
-										Map<String, Integer> lineStatsOnDay = lineStats.get(day);
-										if (lineStatsOnDay == null) {
-											lineStatsOnDay = new HashMap<>();
-											lineStats.put(day, lineStatsOnDay);
+										if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
+											int dayValue = new Day(logCommit.getCommitDate()).getValue();
+											updateContribution(overallContributions, dayValue, logCommit);
 										}
 										
-										Map<String, Integer> languageLines = new HashMap<>();
 										for (FileChange change: logCommit.getFileChanges()) {
-											int lines = change.getAdditions() - change.getDeletions();
-											int lastIndexOfDot = change.getPath().lastIndexOf('.');
-											if (lastIndexOfDot != -1 && lines != 0) {
-												String fileExt = change.getPath().substring(lastIndexOfDot+1).toLowerCase();
-												String language = PROGRAMMING_LANGUAGES.get(fileExt);
-												if (language != null) {
-													Integer accumulatedLines = languageLines.get(language);
-													if (accumulatedLines != null) 
-														lines += accumulatedLines;
-													languageLines.put(language, lines);
+											if (change.getOldPath() != null) {
+												int pathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
+														nextIndex, change.getPath());
+												ByteIterable pathKey = new IntByteIterable(pathIndex);
+												Set<Integer> historyPathIndexes = new HashSet<>();
+												byte[] bytesOfHistoryPaths = readBytes(historyPathsStore, txn, pathKey);
+												if (bytesOfHistoryPaths == null) {
+													bytesOfHistoryPaths = new byte[0];
+													int pos = 0;
+													for (int i=0; i<bytesOfHistoryPaths.length/Integer.SIZE; i++) {
+														historyPathIndexes.add(ByteBuffer.wrap(bytesOfHistoryPaths, pos, Integer.SIZE).getInt());
+														pos += Integer.SIZE;
+													}
+												} else {
+													historyPathIndexes = new HashSet<>();
+												}
+												if (historyPathIndexes.size() < MAX_HISTORY_PATHS) {
+													int oldPathIndex = getPathIndex(pathToIndexStore, indexToPathStore, txn, 
+															nextIndex, change.getOldPath());
+													if (!historyPathIndexes.contains(oldPathIndex)) {
+														historyPathIndexes.add(oldPathIndex);
+														byte[] newBytesOfHistoryPaths = 
+																new byte[bytesOfHistoryPaths.length+Integer.SIZE];
+														System.arraycopy(bytesOfHistoryPaths, 0, 
+																newBytesOfHistoryPaths, 0, bytesOfHistoryPaths.length);
+														ByteBuffer buffer = ByteBuffer.wrap(newBytesOfHistoryPaths, 
+																bytesOfHistoryPaths.length, Integer.BYTES);
+														buffer.putInt(oldPathIndex);
+														historyPathsStore.put(txn, pathKey, 
+																new ArrayByteIterable(newBytesOfHistoryPaths));
+													}
 												}
 											}
-										}
+										}		
 										
-										for (Map.Entry<String, Integer> entry: languageLines.entrySet()) {
-											String language = entry.getKey();
-											Integer lines = entry.getValue();
-											Integer accumulatedLines = lineStatsOnDay.get(language);
-											if (accumulatedLines != null)
-												lines += accumulatedLines;
-											lineStatsOnDay.put(language, lines);
-										}
+										if (logCommit.getCommitDate() != null && logCommit.getParentHashes().size() <= 1) {
+											int day = new Day(logCommit.getCommitDate()).getValue();
+											
+											Map<String, Integer> lineStatsOnDay = lineStats.get(day);
+											if (lineStatsOnDay == null) {
+												lineStatsOnDay = new HashMap<>();
+												lineStats.put(day, lineStatsOnDay);
+											}
+											
+											Map<String, Integer> languageLines = new HashMap<>();
+											for (FileChange change: logCommit.getFileChanges()) {
+												int lines = change.getAdditions() - change.getDeletions();
+												int lastIndexOfDot = change.getPath().lastIndexOf('.');
+												if (lastIndexOfDot != -1 && lines != 0) {
+													String fileExt = change.getPath().substring(lastIndexOfDot+1).toLowerCase();
+													String language = PROGRAMMING_LANGUAGES.get(fileExt);
+													if (language != null) {
+														Integer accumulatedLines = languageLines.get(language);
+														if (accumulatedLines != null) 
+															lines += accumulatedLines;
+														languageLines.put(language, lines);
+													}
+												}
+											}
+											
+											for (Map.Entry<String, Integer> entry: languageLines.entrySet()) {
+												String language = entry.getKey();
+												Integer lines = entry.getValue();
+												Integer accumulatedLines = lineStatsOnDay.get(language);
+												if (accumulatedLines != null)
+													lines += accumulatedLines;
+												lineStatsOnDay.put(language, lines);
+											}
 
+										}
+										
+										logCommit = segmentLog.next();
 									}
-									
-									logCommitOptional = queue.take();
+								} catch (Exception e) {
+									throw ExceptionUtils.unchecked(e);
 								}
-								if (logException.get() != null)
-									throw logException.get();
-							} catch (Exception e) {
-								throw ExceptionUtils.unchecked(e);
-							}
-							
-							for (Map.Entry<Integer, Map<Integer, Contribution>> entry: dailyContributionsCache.entrySet()) {
-								byte[] bytesOfContributionsOnDay = serializeContributions(entry.getValue());
-								dailyContributionsStore.put(txn, new IntByteIterable(entry.getKey()), 
-										new ArrayByteIterable(bytesOfContributionsOnDay));
-							}
-							defaultStore.put(txn, OVERALL_CONTRIBUTIONS_KEY, 
-									new ArrayByteIterable(serializeContributions(overallContributions)));
-							
-							bytesOfLineStats = SerializationUtils.serialize((Serializable) lineStats);
-							defaultStore.put(txn, LINE_STATS_KEY, new ArrayByteIterable(bytesOfLineStats));
-							
-							writeInt(defaultStore, txn, NEXT_USER_INDEX_KEY, nextIndex.user);
-							writeInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, nextIndex.path);
-							
-							userBytes = SerializationUtils.serialize((Serializable) users);
-							defaultStore.put(txn, USERS_KEY, new ArrayByteIterable(userBytes));
-							usersCache.remove(project.getId());
-							
-							if (files.size() > MAX_COLLECTING_FILES) {
-								List<String> fileList = new ArrayList<>(files.keySet());
-								fileList.sort((file1, file2)->files.get(file1).compareTo(files.get(file2)));
-								for (int i=0; i<fileList.size() - MAX_COLLECTING_FILES; i++)
-									files.remove(fileList.get(i));
+								segmentCommits.set(commits);
+								
+								writeContributions(dailyContributionsStore, txn, dailyContributionsCache);
+								writeContributions(weeklyContributionsStore, txn, weeklyContributionsCache);
+								writeContributions(monthlyContributionsStore, txn, monthlyContributionsCache);
+								writeContributions(userContributionsStore, txn, userContributionsCache);
+								defaultStore.put(txn, OVERALL_CONTRIBUTIONS_KEY, 
+										new ArrayByteIterable(serializeContributions(overallContributions)));
+								
+								bytesOfLineStats = SerializationUtils.serialize((Serializable) lineStats);
+								defaultStore.put(txn, LINE_STATS_KEY, new ArrayByteIterable(bytesOfLineStats));
+								
+								writeInt(defaultStore, txn, NEXT_USER_INDEX_KEY, nextIndex.user);
+								writeInt(defaultStore, txn, NEXT_PATH_INDEX_KEY, nextIndex.path);
+								
+								userBytes = SerializationUtils.serialize((Serializable) users);
+								defaultStore.put(txn, USERS_KEY, new ArrayByteIterable(userBytes));
+								usersCache.remove(project.getId());
+								
+								if (files.size() > MAX_COLLECTING_FILES) {
+									List<String> fileList = new ArrayList<>(files.keySet());
+									fileList.sort((file1, file2)->files.get(file1).compareTo(files.get(file2)));
+									for (int i=0; i<fileList.size() - MAX_COLLECTING_FILES; i++)
+										files.remove(fileList.get(i));
+								}
+								fileBytes = SerializationUtils.serialize((Serializable) files);
+								defaultStore.put(txn, FILES_KEY, new ArrayByteIterable(fileBytes));
+								filesCache.remove(project.getId());
+								
+								for (Map.Entry<Long, Integer> entry: editsCache.entrySet()) 
+									writeInt(editsStore, txn, new LongByteIterable(entry.getKey()), entry.getValue());
+								
+								defaultStore.put(txn, LAST_COMMIT_OF_DEFAULT_BRANCH_KEY, new CommitByteIterable(currentCommitId));
 							}
-							fileBytes = SerializationUtils.serialize((Serializable) files);
-							defaultStore.put(txn, FILES_KEY, new ArrayByteIterable(fileBytes));
-							filesCache.remove(project.getId());
-							
-							for (Map.Entry<Long, Integer> entry: editsCache.entrySet()) 
-								writeInt(editsStore, txn, new LongByteIterable(entry.getKey()), entry.getValue());
-							
-							defaultStore.put(txn, LAST_COMMIT_OF_DEFAULT_BRANCH_KEY, new CommitByteIterable(currentCommitId));
+						});
+						
+						collectedCommits += segmentCommits.get();
+						int progress = Math.min(100, collectedCommits*100/Math.max(1, totalCommits));
+						collectingProgresses.put(project.getId(), progress);
+						if (intermediateIds.size() > 1) {
+							logger.info("Collected commit information of project '{}' ({}/{} commits)", 
+									project.getName(), collectedCommits, totalCommits);
 						}
-					});
+					}
+				} finally {
+					for (SegmentLog segmentLog: segmentLogs)
+						segmentLog.cancel();
+					collectingProgresses.remove(project.getId());
 				}
 			}
 		}
@@ -777,6 +826,40 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		contributions.put(key, contribution);
 	}
 	
+	private Map<Integer, Contribution> getContributions(Store store, Transaction txn, 
+			Map<Integer, Map<Integer, Contribution>> cache, int key) {
+		Map<Integer, Contribution> contributions = cache.get(key);
+		if (contributions == null) {
+			contributions = deserializeContributions(readBytes(store, txn, new IntByteIterable(key)));
+			cache.put(key, contributions);
+		}
+		return contributions;
+	}
+	
+	private void writeContributions(Store store, Transaction txn, 
+			Map<Integer, Map<Integer, Contribution>> cache) {
+		for (Map.Entry<Integer, Map<Integer, Contribution>> entry: cache.entrySet()) {
+			store.put(txn, new IntByteIterable(entry.getKey()), 
+					new ArrayByteIterable(serializeContributions(entry.getValue())));
+		}
+	}
+	
+	private void addContributions(Map<Integer, Contribution> totalContributions, 
+			Map<Integer, Contribution> contributions) {
+		for (Map.Entry<Integer, Contribution> entry: contributions.entrySet()) {
+			Contribution totalContribution = totalContributions.get(entry.getKey());
+			if (totalContribution == null) {
+				totalContribution = entry.getValue();
+			} else {
+				totalContribution = new Contribution(
+						totalContribution.getCommits() + entry.getValue().getCommits(), 
+						totalContribution.getAdditions() + entry.getValue().getAdditions(), 
+						totalContribution.getDeletions() + entry.getValue().getDeletions());
+			}
+			totalContributions.put(entry.getKey(), totalContribution);
+		}
+	}
+	
 	private int getPathIndex(Store pathToIndexStore, Store indexToPathStore, Transaction txn, 
 			NextIndex nextIndex, String path) {
 		StringByteIterable pathKey = new StringByteIterable(path);
@@ -973,6 +1056,11 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 			filesCache.remove(projectId);
 			commitCountCache.remove(projectId);
 			usersCache.remove(projectId);
+			visitTimes.remove(projectId);
+			persistedVisitTimes.remove(projectId);
+			synchronized (this) {
+				pendingWorks.remove(projectId);
+			}
 		}
 	}
 	
@@ -981,29 +1069,123 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 			@Override
 			public void doWorks(Collection<Prioritized> works) {
-				sessionManager.run(new Runnable() {
+				try {
+					sessionManager.run(new Runnable() {
 
-					@Override
-					public void run() {
-						Project project = projectManager.load(projectId);
-						List<CollectingWork> collectingWorks = new ArrayList<>();
-						for (Object work: works)
-							collectingWorks.add((CollectingWork)work);
-						Collections.sort(collectingWorks, new CommitTimeComparator());
-						
-						for (CollectingWork work: collectingWorks) {
-							logger.debug("Collecting commit information up to ref '{}' in project '{}'...", 
-									work.getRefName(), project.getName());
-							doCollect(project, work.getCommit().copy(), work.getRefName());
+						@Override
+						public void run() {
+							Project project = projectManager.load(projectId);
+							List<CollectingWork> collectingWorks = new ArrayList<>();
+							for (Object work: works)
+								collectingWorks.add((CollectingWork)work);
+							Collections.sort(collectingWorks, new CommitTimeComparator());
+							
+							for (CollectingWork work: collectingWorks) {
+								logger.debug("Collecting commit information up to ref '{}' in project '{}'...", 
+										work.getRefName(), project.getName());
+								doCollect(project, work.getCommit().copy(), work.getRefName());
+							}
 						}
-					}
-					
-				});
+						
+					});
+				} finally {
+					onCollected(projectId, works.size());
+				}
 			}
 			
 		};		
 	}
 	
+	/*
+	 * Works of projects being collected are submitted to their batch workers directly. Works 
+	 * of other projects are pending until number of projects being collected drops below 
+	 * the configured limit
+	 */
+	private synchronized void submit(Long projectId, CollectingWork work) {
+		Integer workCount = collectingWorkCounts.get(projectId);
+		if (workCount != null) {
+			collectingWorkCounts.put(projectId, workCount+1);
+			batchWorkManager.submit(getBatchWorker(projectId), work);
+		} else {
+			List<CollectingWork> worksOfProject = pendingWorks.get(projectId);
+			if (worksOfProject == null) {
+				worksOfProject = new ArrayList<>();
+				pendingWorks.put(projectId, worksOfProject);
+			}
+			worksOfProject.add(work);
+			schedule();
+		}
+	}
+	
+	private synchronized void onCollected(Long projectId, int workCount) {
+		Integer remainingWorkCount = collectingWorkCounts.get(projectId);
+		if (remainingWorkCount != null) {
+			remainingWorkCount -= workCount;
+			if (remainingWorkCount > 0) {
+				collectingWorkCounts.put(projectId, remainingWorkCount);
+			} else {
+				collectingWorkCounts.remove(projectId);
+				schedule();
+			}
+		}
+	}
+	
+	private synchronized void schedule() {
+		int maxCollectingProjects = settingManager.getSystemSetting().getCommitInfoCollectors();
+		while (collectingWorkCounts.size() < maxCollectingProjects && !pendingWorks.isEmpty()) {
+			Long projectId = null;
+			long projectVisitTime = -1;
+			for (Long pendingProjectId: pendingWorks.keySet()) {
+				long visitTime = visitTimes.getOrDefault(pendingProjectId, 0L);
+				if (visitTime > projectVisitTime && !isMigrating(pendingProjectId.toString())) {
+					projectId = pendingProjectId;
+					projectVisitTime = visitTime;
+				}
+			}
+			if (projectId == null)
+				break;
+			List<CollectingWork> worksOfProject = pendingWorks.remove(projectId);
+			collectingWorkCounts.put(projectId, worksOfProject.size());
+			for (CollectingWork work: worksOfProject)
+				batchWorkManager.submit(getBatchWorker(projectId), work);
+		}
+	}
+	
+	@Override
+	public void visit(Project project) {
+		Long projectId = project.getId();
+		long visitTime = System.currentTimeMillis();
+		visitTimes.put(projectId, visitTime);
+		
+		// Persisted so that collecting priorities survive restart
+		long persistedVisitTime = persistedVisitTimes.getOrDefault(projectId, 0L);
+		if (visitTime - persistedVisitTime >= VISIT_PERSIST_INTERVAL && !isMigrating(projectId.toString())) {
+			persistedVisitTimes.put(projectId, visitTime);
+			Environment env = getEnv(projectId.toString());
+			Store defaultStore = getStore(env, DEFAULT_STORE);
+			env.executeInTransaction(new TransactionalExecutable() {
+				
+				@Override
+				public void execute(Transaction txn) {
+					writeLong(defaultStore, txn, LAST_VISIT_KEY, visitTime);
+				}
+				
+			});
+		}
+	}
+
+	@Override
+	public Integer getCollectingProgress(Project project) {
+		Integer progress = collectingProgresses.get(project.getId());
+		if (progress == null) {
+			synchronized (this) {
+				if (pendingWorks.containsKey(project.getId()))
+					progress = 0;
+			}
+		}
+		return progress;
+	}
+	
 	private void collect(Project project) {
 		List<CollectingWork> works = new ArrayList<>();
 		try (RevWalk revWalk = new RevWalk(project.getRepository())) {
@@ -1023,7 +1205,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		Collections.sort(works, new CommitTimeComparator());
 		
 		for (CollectingWork work: works)
-			batchWorkManager.submit(getBatchWorker(project.getId()), work);
+			submit(project.getId(), work);
 	}
 
 	@Sessional
@@ -1031,6 +1213,29 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	public void on(SystemStarted event) {
 		for (Project project: projectManager.query()) {
 			checkVersion(project.getId().toString());
+			
+			// Seed collecting priority with persisted visit time so that it survives restart
+			Environment env = getEnv(project.getId().toString());
+			Store defaultStore = getStore(env, DEFAULT_STORE);
+			long visitTime = env.computeInReadonlyTransaction(new TransactionalComputable<Long>() {
+
+				@Override
+				public Long compute(Transaction txn) {
+					return readLong(defaultStore, txn, LAST_VISIT_KEY, 0);
+				}
+				
+			});
+			if (visitTime != 0) {
+				visitTimes.merge(project.getId(), visitTime, Math::max);
+				persistedVisitTimes.put(project.getId(), visitTime);
+			}
+			
+			// Last commits used to be stored as serialized files without eviction
+			File legacyLastCommitsDir = new File(storageManager.getProjectInfoDir(project.getId()), 
+					LEGACY_LAST_COMMITS_DIR);
+			if (legacyLastCommitsDir.exists())
+				FileUtils.deleteDir(legacyLastCommitsDir);
+			
 			collect(project);
 		}
 	}
@@ -1045,7 +1250,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 				RevCommit commit = GitUtils.parseCommit(revWalk, event.getNewCommitId());
 				if (commit != null) {
 					CollectingWork work = new CollectingWork(PRIORITY, commit, event.getRefName());
-					batchWorkManager.submit(getBatchWorker(event.getProject().getId()), work);
+					submit(event.getProject().getId(), work);
 				}
 			}
 		}
@@ -1093,6 +1298,110 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 
 	}
 	
+	/**
+	 * Log of commits in a segment of history. The log is started upon construction, and 
+	 * buffers up to {@link #COLLECT_BATCH_SIZE} commits until consumed
+	 */
+	private class SegmentLog {
+		
+		private final File gitDir;
+		
+		private final List<String> revisions;
+		
+		private BlockingQueue<Optional<GitCommit>> queue;
+		
+		private AtomicReference<Exception> exception;
+		
+		private AtomicBoolean cancelled;
+		
+		private Future<?> future;
+		
+		private boolean consumed;
+		
+		public SegmentLog(File gitDir, List<String> revisions) {
+			this.gitDir = gitDir;
+			this.revisions = revisions;
+			start();
+		}
+		
+		private void start() {
+			BlockingQueue<Optional<GitCommit>> queue = new ArrayBlockingQueue<>(COLLECT_BATCH_SIZE);
+			AtomicReference<Exception> exception = new AtomicReference<>(null);
+			AtomicBoolean cancelled = new AtomicBoolean(false);
+			
+			LogCommand log = new LogCommand(gitDir) {
+
+				@Override
+				protected void consume(GitCommit commit) {
+					// Keep reading output of git after cancelled so that it can exit
+					if (!cancelled.get()) {
+						try {
+							queue.put(Optional.of(commit));
+						} catch (InterruptedException e) {
+							cancelled.set(true);
+						}
+					}
+				}
+				
+			}.revisions(revisions);
+			
+			future = executorService.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						log.call();
+					} catch (Exception e) {
+						exception.set(e);
+					} finally {
+						if (!cancelled.get()) {
+							try {
+								queue.put(Optional.empty());
+							} catch (InterruptedException e) {
+							}
+						}
+					}
+				}
+				
+			});
+			
+			this.queue = queue;
+			this.exception = exception;
+			this.cancelled = cancelled;
+			consumed = false;
+		}
+		
+		/**
+		 * Restart the log if it has been consumed, for instance when Xodus executes the 
+		 * transaction again
+		 */
+		public void rewind() {
+			if (consumed) {
+				cancel();
+				start();
+			}
+		}
+		
+		@Nullable
+		public GitCommit next() throws Exception {
+			consumed = true;
+			Optional<GitCommit> commit = queue.take();
+			if (commit.isPresent()) {
+				return commit.get();
+			} else {
+				if (exception.get() != null)
+					throw exception.get();
+				return null;
+			}
+		}
+		
+		public void cancel() {
+			cancelled.set(true);
+			future.cancel(true);
+		}
+		
+	}
+	
 	static class CommitTimeComparator implements Comparator<CollectingWork> {
 
 		@Override
@@ -1184,6 +1493,94 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 	}
 	
+	private ByteIterable getLastCommitsKey(String path, ObjectId commitId) {
+		// Commit id is of fixed length, so prefixing it keeps keys unambiguous
+		return new StringByteIterable(commitId.name() + path);
+	}
+	
+	private List<ObjectId> readCommitList(Store store, Transaction txn, ByteIterable key) {
+		List<ObjectId> commits = new ArrayList<>();
+		byte[] bytes = readBytes(store, txn, key);
+		if (bytes != null) {
+			for (int i=0; i<bytes.length/20; i++)
+				commits.add(ObjectId.fromRaw(bytes, i*20));
+		}
+		return commits;
+	}
+	
+	@Override
+	public LastCommitsOfChildren.Cache getLastCommitsCache(Project project, String path) {
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, LAST_COMMITS_STORE);
+		Store indexStore = getStore(env, LAST_COMMITS_INDEX_STORE);
+		
+		Collection<ObjectId> commitIds = env.computeInReadonlyTransaction(new TransactionalComputable<Collection<ObjectId>>() {
+
+			@Override
+			public Collection<ObjectId> compute(Transaction txn) {
+				return readCommits(indexStore, txn, new StringByteIterable(path));
+			}
+			
+		});
+		
+		if (!commitIds.isEmpty()) {
+			return new LastCommitsOfChildren.Cache() {
+
+				@Override
+				public Map<String, Value> getLastCommitsOfChildren(ObjectId commitId) {
+					// Called for each commit visited while walking history, so check the 
+					// in-memory index before touching the store
+					if (commitIds.contains(commitId)) {
+						return env.computeInReadonlyTransaction(new TransactionalComputable<Map<String, Value>>() {
+
+							@SuppressWarnings("unchecked")
+							@Override
+							public Map<String, Value> compute(Transaction txn) {
+								byte[] bytes = readBytes(store, txn, getLastCommitsKey(path, commitId));
+								if (bytes != null)
+									return (Map<String, Value>) SerializationUtils.deserialize(bytes);
+								else // evicted after index is read
+									return null;
+							}
+							
+						});
+					} else {
+						return null;
+					}
+				}
+				
+			};
+		} else {
+			return null;
+		}
+	}
+	
+	@Override
+	public void cacheLastCommits(Project project, String path, ObjectId commitId, 
+			Map<String, Value> lastCommits) {
+		Environment env = getEnv(project.getId().toString());
+		Store store = getStore(env, LAST_COMMITS_STORE);
+		Store indexStore = getStore(env, LAST_COMMITS_INDEX_STORE);
+		
+		env.executeInTransaction(new TransactionalExecutable() {
+			
+			@Override
+			public void execute(Transaction txn) {
+				ByteIterable indexKey = new StringByteIterable(path);
+				List<ObjectId> commitIds = readCommitList(indexStore, txn, indexKey);
+				commitIds.remove(commitId);
+				commitIds.add(0, commitId);
+				while (commitIds.size() > MAX_LAST_COMMITS_PER_PATH) 
+					store.delete(txn, getLastCommitsKey(path, commitIds.remove(commitIds.size()-1)));
+				
+				byte[] bytes = SerializationUtils.serialize(new HashMap<>(lastCommits));
+				store.put(txn, getLastCommitsKey(path, commitId), new ArrayByteIterable(bytes));
+				writeCommits(indexStore, txn, indexKey, commitIds);
+			}
+			
+		});
+	}
+	
 	@Sessional
 	@Override
 	public Map<Day, Contribution> getOverallContributions(Project project) {
@@ -1210,35 +1607,67 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 	public List<Contributor> getTopContributors(Project project, int top, Contribution.Type type, 
 			Day fromDay, Day toDay) {
 		Environment env = getEnv(project.getId().toString());
+		
+		// Rollups may be incomplete while migrating, use daily contributions instead 
+		boolean migrating = isMigrating(project.getId().toString());
 		Store defaultStore = getStore(env, DEFAULT_STORE);
 		Store indexToUserStore = getStore(env, INDEX_TO_USER_STORE);
 		Store dailyContributionsStore = getStore(env, DAILY_CONTRIBUTIONS_STORE);
+		Store weeklyContributionsStore = getStore(env, WEEKLY_CONTRIBUTIONS_STORE);
+		Store monthlyContributionsStore = getStore(env, MONTHLY_CONTRIBUTIONS_STORE);
+		Store userContributionsStore = getStore(env, USER_CONTRIBUTIONS_STORE);
 		
 		return env.computeInReadonlyTransaction(new TransactionalComputable<List<Contributor>>() {
 
+			private Map<Integer, Contribution> readContributions(Store store, Transaction txn, Day day) {
+				return deserializeContributions(readBytes(store, txn, new IntByteIterable(day.getValue())));
+			}
+			
 			@Override
 			public List<Contributor> compute(Transaction txn) {
 				Map<Integer, Contribution> overallContributions = 
 						deserializeContributions(readBytes(defaultStore, txn, OVERALL_CONTRIBUTIONS_KEY));
+				
+				Day firstDay = fromDay;
+				Day lastDay = toDay;
+				if (!overallContributions.isEmpty()) {
+					Day firstContributionDay = new Day(Collections.min(overallContributions.keySet()));
+					if (firstDay.compareTo(firstContributionDay) < 0)
+						firstDay = firstContributionDay;
+					Day lastContributionDay = new Day(Collections.max(overallContributions.keySet()));
+					if (lastDay.compareTo(lastContributionDay) > 0)
+						lastDay = lastContributionDay;
+				}
+				
+				/*
+				 * Cover the range with monthly and weekly rollups whenever possible, so that 
+				 * number of reads is proportional to number of buckets instead of number of days. 
+				 * Weeks crossing start of a month are stepped by days if that month can be read 
+				 * as a whole, so that the cover keeps aligned with months
+				 */
 				Map<Integer, Contribution> totalContributions = new HashMap<>();
-				for (int dayValue: overallContributions.keySet()) {
-					if (dayValue >= fromDay.getValue() && dayValue <= toDay.getValue()) {
-						ByteIterable dayKey = new IntByteIterable(dayValue);
-						Map<Integer, Contribution> contributionsOnDay = 
-								deserializeContributions(readBytes(dailyContributionsStore, txn, dayKey));
-						for (Map.Entry<Integer, Contribution> entry: contributionsOnDay.entrySet()) {
-							Integer userIndex = entry.getKey();
-							Contribution totalContribution = totalContributions.get(userIndex);
-							if (totalContribution == null) {
-								totalContribution = entry.getValue();
-							} else {
-								totalContribution = new Contribution(
-										totalContribution.getCommits() + entry.getValue().getCommits(), 
-										totalContribution.getAdditions() + entry.getValue().getAdditions(), 
-										totalContribution.getDeletions() + entry.getValue().getDeletions());
-							}
-							totalContributions.put(userIndex, totalContribution);
+				Map<Integer, Map<Integer, Contribution>> dailyContributions = new HashMap<>();
+				Day day = firstDay;
+				while (day.compareTo(lastDay) <= 0) {
+					if (!migrating && day.equals(day.getFirstDayOfMonth()) 
+							&& day.getLastDayOfMonth().compareTo(lastDay) <= 0) {
+						addContributions(totalContributions, readContributions(monthlyContributionsStore, txn, day));
+						day = day.getLastDayOfMonth().plusDays(1);
+					} else if (!migrating && day.equals(day.getFirstDayOfWeek()) 
+							&& day.getLastDayOfWeek().compareTo(lastDay) <= 0
+							&& (day.getLastDayOfWeek().compareTo(day.getLastDayOfMonth()) <= 0 
+									|| day.getLastDayOfMonth().plusDays(1).getLastDayOfMonth().compareTo(lastDay) > 0)) {
+						addContributions(totalContributions, readContributions(weeklyContributionsStore, txn, day));
+						day = day.getLastDayOfWeek().plusDays(1);
+					} else {
+						if (overallContributions.containsKey(day.getValue())) {
+							Map<Integer, Contribution> contributionsOnDay = 
+									readContributions(dailyContributionsStore, txn, day);
+							addContributions(totalContributions, contributionsOnDay);
+							if (migrating)
+								dailyContributions.put(day.getValue(), contributionsOnDay);
 						}
+						day = day.plusDays(1);
 					}
 				}
 				
@@ -1260,41 +1689,35 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 				if (top < topUserIndexes.size())
 					topUserIndexes = topUserIndexes.subList(0, top);
 				
-				Set<Integer> topUserIndexSet = new HashSet<>(topUserIndexes);
-				
-				Map<Integer, Map<Day, Integer>> userContributions = new HashMap<>();
-				
-				for (int dayValue: overallContributions.keySet()) {
-					if (dayValue >= fromDay.getValue() && dayValue <= toDay.getValue()) {
-						ByteIterable dayKey = new IntByteIterable(dayValue);
-						Map<Integer, Contribution> contributionsOnDay = 
-								deserializeContributions(readBytes(dailyContributionsStore, txn, dayKey));
-						Day day = new Day(dayValue);
-						for (Map.Entry<Integer, Contribution> entry: contributionsOnDay.entrySet()) {
-							Integer userIndex = entry.getKey();
-							if (topUserIndexSet.contains(userIndex)) {
-								Map<Day, Integer> contributionsByUser = userContributions.get(userIndex);
-								if (contributionsByUser == null) {
-									contributionsByUser = new HashMap<>();
-									userContributions.put(userIndex, contributionsByUser);
-								}
-								if (type == Contribution.Type.COMMITS)
-									contributionsByUser.put(day, entry.getValue().getCommits());
-								else if (type == Contribution.Type.ADDITIONS)
-									contributionsByUser.put(day, entry.getValue().getAdditions());
-								else
-									contributionsByUser.put(day, entry.getValue().getDeletions());
-							}
-						}
-					}
-				}
-
 				List<Contributor> contributors = new ArrayList<>();
 				
 				for (int userIndex: topUserIndexes) {
-					byte[] userBytes = readBytes(indexToUserStore, txn, new IntByteIterable(userIndex));
-					Map<Day, Integer> contributionsByUser = userContributions.get(userIndex);
-					if (userBytes != null && contributionsByUser != null) {
+					ByteIterable userKey = new IntByteIterable(userIndex);
+					Map<Day, Integer> contributionsByUser = new HashMap<>();
+					Map<Integer, Contribution> userContributions;
+					if (migrating) {
+						userContributions = new HashMap<>();
+						for (Map.Entry<Integer, Map<Integer, Contribution>> entry: dailyContributions.entrySet()) {
+							Contribution contribution = entry.getValue().get(userIndex);
+							if (contribution != null)
+								userContributions.put(entry.getKey(), contribution);
+						}
+					} else {
+						userContributions = deserializeContributions(readBytes(userContributionsStore, txn, userKey));
+					}
+					for (Map.Entry<Integer, Contribution> entry: userContributions.entrySet()) {
+						int dayValue = entry.getKey();
+						if (dayValue >= fromDay.getValue() && dayValue <= toDay.getValue()) {
+							if (type == Contribution.Type.COMMITS)
+								contributionsByUser.put(new Day(dayValue), entry.getValue().getCommits());
+							else if (type == Contribution.Type.ADDITIONS)
+								contributionsByUser.put(new Day(dayValue), entry.getValue().getAdditions());
+							else
+								contributionsByUser.put(new Day(dayValue), entry.getValue().getDeletions());
+						}
+					}
+					byte[] userBytes = readBytes(indexToUserStore, txn, userKey);
+					if (userBytes != null && !contributionsByUser.isEmpty()) {
 						PersonIdent user = ((NameAndEmail)SerializationUtils.deserialize(userBytes)).asPersonIdent();
 						contributors.add(new Contributor(user, totalContributions.get(userIndex), contributionsByUser));
 					}
@@ -1306,7 +1729,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		});
 	}
 
-	private Map<Integer, Contribution> deserializeContributions(byte[] bytes) {
+	Map<Integer, Contribution> deserializeContributions(byte[] bytes) {
 		if (bytes != null) {
 			Map<Integer, Contribution> contributions = new HashMap<>();
 			int pos = 0;
@@ -1327,7 +1750,7 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		}
 	}
 	
-	private byte[] serializeContributions(Map<Integer, Contribution> contributions) {
+	byte[] serializeContributions(Map<Integer, Contribution> contributions) {
 		byte[] bytes = new byte[contributions.size()*Integer.BYTES*4];
 		int pos = 0;
 		for (Map.Entry<Integer, Contribution> entry: contributions.entrySet()) {
@@ -1357,6 +1780,58 @@ public class DefaultCommitInfoManager extends AbstractEnvironmentManager impleme
 		return INFO_VERSION;
 	}
 
+	@Override
+	protected ExecutorService getExecutorService() {
+		return executorService;
+	}
+	
+	@Override
+	protected boolean isMigratable(int fromVersion) {
+		return fromVersion == 7;
+	}
+	
+	@Override
+	protected void migrate(Environment env, Transaction txn, int fromVersion) {
+		if (fromVersion == 7) {
+			// Version 8 adds weekly, monthly and per user rollups of daily contributions
+			Store dailyContributionsStore = env.openStore(DAILY_CONTRIBUTIONS_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+			Store weeklyContributionsStore = env.openStore(WEEKLY_CONTRIBUTIONS_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+			Store monthlyContributionsStore = env.openStore(MONTHLY_CONTRIBUTIONS_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+			Store userContributionsStore = env.openStore(USER_CONTRIBUTIONS_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+			
+			Map<Integer, Map<Integer, Contribution>> weeklyContributions = new HashMap<>();
+			Map<Integer, Map<Integer, Contribution>> monthlyContributions = new HashMap<>();
+			Map<Integer, Map<Integer, Contribution>> userContributions = new HashMap<>();
+			try (Cursor cursor = dailyContributionsStore.openCursor(txn)) {
+				while (cursor.getNext()) {
+					Day day = new Day(ByteBuffer.wrap(cursor.getKey().getBytesUnsafe(), 0, Integer.BYTES).getInt());
+					Map<Integer, Contribution> contributionsOnDay = 
+							deserializeContributions(Arrays.copyOf(cursor.getValue().getBytesUnsafe(), cursor.getValue().getLength()));
+					// Rollups are calculated from scratch so that migration can be executed again 
+					addContributions(weeklyContributions.computeIfAbsent(day.getFirstDayOfWeek().getValue(), 
+							k->new HashMap<>()), contributionsOnDay);
+					addContributions(monthlyContributions.computeIfAbsent(day.getFirstDayOfMonth().getValue(), 
+							k->new HashMap<>()), contributionsOnDay);
+					for (Map.Entry<Integer, Contribution> entry: contributionsOnDay.entrySet()) {
+						userContributions.computeIfAbsent(entry.getKey(), k->new HashMap<>())
+								.put(day.getValue(), entry.getValue());
+					}
+				}
+			}
+			writeContributions(weeklyContributionsStore, txn, weeklyContributions);
+			writeContributions(monthlyContributionsStore, txn, monthlyContributions);
+			writeContributions(userContributionsStore, txn, userContributions);
+		} else {
+			throw new IllegalStateException("Unexpected info version: " + fromVersion);
+		}
+	}
+	
+	@Override
+	protected void onMigrated(String envKey) {
+		// Collection of migrating project is postponed to avoid conflicting with migration
+		schedule();
+	}
+
 	private static class NextIndex {
 		int user;
 		
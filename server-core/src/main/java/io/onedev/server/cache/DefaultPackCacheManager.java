@@ -0,0 +1,296 @@
+package io.onedev.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.git.command.UploadCommand;
+import io.onedev.server.model.Project;
+import io.onedev.server.storage.StorageManager;
+
+/**
+ * Fresh clones send upload-pack requests containing only want lines followed by 
+ * "done". Response of such requests only depends on wanted objects and requested 
+ * capabilities, so we cache the whole response keyed by these information. Wanted 
+ * objects are required to be current ref tips, so that cached packs are only served 
+ * for common clone requests, and are discarded when refs of the project change. 
+ */
+@Singleton
+public class DefaultPackCacheManager implements PackCacheManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultPackCacheManager.class);
+	
+	private static final String CACHE_DIR = "pack_cache";
+	
+	/*
+	 * Packs are generated in a separate directory, so that cleaning cache directory upon 
+	 * ref update does not interfere with packs being generated
+	 */
+	private static final String TEMP_DIR = "pack_cache_temp";
+	
+	private static final int MAX_CACHEABLE_REQUEST_SIZE = 1024*1024;
+	
+	private static final int MAX_CACHED_PACKS = 8;
+	
+	private static final String WANT = "want ";
+	
+	private static final String DONE = "done";
+	
+	/*
+	 * Capabilities not affecting pack content
+	 */
+	private static final Set<String> IGNORED_CAPABILITY_PREFIXES = 
+			new HashSet<>(Arrays.asList("agent=", "session-id="));
+	
+	private final StorageManager storageManager;
+	
+	private final AtomicLong hits = new AtomicLong(0);
+	
+	private final AtomicLong misses = new AtomicLong(0);
+	
+	private final AtomicLong bytesSaved = new AtomicLong(0);
+	
+	@Inject
+	public DefaultPackCacheManager(StorageManager storageManager) {
+		this.storageManager = storageManager;
+	}
+	
+	private File getCacheDir(Long projectId) {
+		return new File(storageManager.getProjectInfoDir(projectId), CACHE_DIR);
+	}
+	
+	private File getTempDir(Long projectId) {
+		return new File(storageManager.getProjectInfoDir(projectId), TEMP_DIR);
+	}
+	
+	@Override
+	public void upload(Project project, Map<String, String> environments, InputStream input, OutputStream output) {
+		File gitDir = storageManager.getProjectGitDir(project.getId());
+		try {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			long copied = IOUtils.copyLarge(input, buffer, 0, MAX_CACHEABLE_REQUEST_SIZE + 1);
+			byte[] requestBytes = buffer.toByteArray();
+			
+			String cacheKey = null;
+			if (copied <= MAX_CACHEABLE_REQUEST_SIZE) {
+				try {
+					cacheKey = getCacheKey(project, requestBytes);
+				} catch (Exception e) {
+					logger.error("Error calculating pack cache key", e);
+				}
+			}
+			
+			if (cacheKey != null) {
+				File packFile = new File(getCacheDir(project.getId()), cacheKey);
+				File tempDir = getTempDir(project.getId());
+				boolean hit = false;
+				InputStream is = null;
+				try {
+					hit = packFile.exists() || LockUtils.call("pack-cache:" + packFile.getAbsolutePath(), 
+							new Callable<Boolean>() {
+	
+						@Override
+						public Boolean call() throws Exception {
+							if (!packFile.exists()) {
+								generate(gitDir, environments, requestBytes, tempDir, packFile);
+								return false;
+							} else {
+								return true;
+							}
+						}
+						
+					});
+					is = new FileInputStream(packFile);
+				} catch (FileNotFoundException e) {
+					// Cache is cleaned due to ref update in the meantime
+				} catch (Exception e) {
+					// Nothing is written to client yet, serve the request without cache
+					logger.error("Error preparing cached pack", e);
+				}
+				if (is != null) {
+					try {
+						long length = IOUtils.copyLarge(is, output);
+						if (hit) {
+							hits.incrementAndGet();
+							bytesSaved.addAndGet(length);
+						} else {
+							misses.incrementAndGet();
+						}
+					} finally {
+						is.close();
+					}
+				} else {
+					misses.incrementAndGet();
+					new UploadCommand(gitDir, environments).input(new ByteArrayInputStream(requestBytes)).output(output).call();
+				}
+			} else {
+				InputStream is = new SequenceInputStream(new ByteArrayInputStream(requestBytes), input);
+				new UploadCommand(gitDir, environments).input(is).output(output).call();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void generate(File gitDir, Map<String, String> environments, byte[] requestBytes, 
+			File tempDir, File packFile) throws IOException {
+		FileUtils.createDir(tempDir);
+		File tempFile = new File(tempDir, UUID.randomUUID().toString());
+		try {
+			try (OutputStream os = new FileOutputStream(tempFile)) {
+				new UploadCommand(gitDir, environments).input(new ByteArrayInputStream(requestBytes)).output(os).call();
+			}
+			File cacheDir = packFile.getParentFile();
+			FileUtils.createDir(cacheDir);
+			Files.move(tempFile.toPath(), packFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			if (tempFile.exists())
+				FileUtils.deleteFile(tempFile);
+		}
+		
+		File[] files = packFile.getParentFile().listFiles();
+		List<File> packFiles = files != null? new ArrayList<>(Arrays.asList(files)): new ArrayList<>();
+		if (packFiles.size() > MAX_CACHED_PACKS) {
+			packFiles.sort(Comparator.comparing(File::lastModified));
+			for (File file: packFiles.subList(0, packFiles.size() - MAX_CACHED_PACKS)) 
+				Files.deleteIfExists(file.toPath());
+		}
+	}
+	
+	/**
+	 * Get cache key of specified upload-pack request
+	 * 
+	 * @return
+	 * 			cache key of the request, or <tt>null</tt> if the request is not cacheable
+	 */
+	@Nullable
+	private String getCacheKey(Project project, byte[] requestBytes) throws IOException {
+		Set<String> wants = new TreeSet<>();
+		Set<String> capabilities = new TreeSet<>();
+		
+		int index = 0;
+		boolean flushed = false;
+		boolean done = false;
+		while (index < requestBytes.length) {
+			if (done || index + 4 > requestBytes.length)
+				return null;
+			int length;
+			try {
+				length = Integer.parseInt(new String(requestBytes, index, 4, StandardCharsets.US_ASCII), 16);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (length == 0) {
+				if (flushed)
+					return null;
+				flushed = true;
+				index += 4;
+				continue;
+			} 
+			if (length < 4 || index + length > requestBytes.length)
+				return null;
+			String line = new String(requestBytes, index + 4, length - 4, StandardCharsets.UTF_8);
+			line = line.trim();
+			index += length;
+			
+			if (!flushed) {
+				if (!line.startsWith(WANT))
+					return null;
+				List<String> fields = Splitter.on(' ').omitEmptyStrings().splitToList(line.substring(WANT.length()));
+				if (fields.isEmpty() || !ObjectId.isId(fields.get(0)))
+					return null;
+				wants.add(fields.get(0));
+				for (String capability: fields.subList(1, fields.size())) {
+					if (IGNORED_CAPABILITY_PREFIXES.stream().noneMatch(it->capability.startsWith(it)))
+						capabilities.add(capability);
+				}
+			} else if (line.equals(DONE)) {
+				done = true;
+			} else {
+				return null;
+			}
+		}
+		
+		if (!done || wants.isEmpty())
+			return null;
+		
+		Set<String> refTips = new HashSet<>();
+		for (Ref ref: project.getRepository().getRefDatabase().getRefsByPrefix(RefDatabase.ALL)) {
+			if (ref.getObjectId() != null)
+				refTips.add(ref.getObjectId().name());
+			if (ref.getPeeledObjectId() != null)
+				refTips.add(ref.getPeeledObjectId().name());
+		}
+		if (!refTips.containsAll(wants))
+			return null;
+		
+		return DigestUtils.sha1Hex(String.join(",", wants) + ";" + String.join(",", capabilities));
+	}
+
+	@Listen
+	public void on(RefUpdated event) {
+		File cacheDir = getCacheDir(event.getProject().getId());
+		if (cacheDir.exists()) {
+			try {
+				FileUtils.cleanDir(cacheDir);
+			} catch (Exception e) {
+				logger.error("Error cleaning pack cache", e);
+			}
+		}
+	}
+	
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+
+}
@@ -1,16 +1,27 @@
 package io.onedev.server.cache;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 
 import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.concurrent.Prioritized;
 import io.onedev.server.event.codecomment.CodeCommentEvent;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.issue.IssueEvent;
@@ -25,6 +36,10 @@ import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.facade.ProjectFacade;
 import io.onedev.server.util.facade.UserFacade;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
 import jetbrains.exodus.env.Environment;
 import jetbrains.exodus.env.Store;
 import jetbrains.exodus.env.Transaction;
@@ -33,7 +48,11 @@ import jetbrains.exodus.env.TransactionalExecutable;
 
 /**
  * Store project visit information here as we only need to load a single database to sort projects based on user 
- * visit information
+ * visit information. 
+ * <p>
+ * Visit dates and notification flags are written behind: they are buffered in memory with writes of the same 
+ * key coalesced, and flushed to environments in batches from a background thread. Reads consult the buffer 
+ * first so that pending writes are visible immediately
  * 
  * @author robin
  *
@@ -41,8 +60,12 @@ import jetbrains.exodus.env.TransactionalExecutable;
 @Singleton
 public class DefaultUserInfoManager extends AbstractEnvironmentManager implements UserInfoManager {
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultUserInfoManager.class);
+	
 	private static final int INFO_VERSION = 5;
 	
+	private static final int FLUSH_PRIORITY = 50;
+	
 	private static final String PROJECT_VISIT_STORE = "projectVisit";
 	
 	private static final String PULL_REQUEST_VISIT_STORE = "pullRequestVisit";
@@ -59,34 +82,43 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	
 	private final StorageManager storageManager;
 	
+	private final BatchWorkManager batchWorkManager;
+	
+	private final Map<PendingKey, Object> pendingWrites = new ConcurrentHashMap<>();
+	
+	private final BatchWorker flushWorker = new BatchWorker("userInfo-flush") {
+
+		@Override
+		public void doWorks(Collection<Prioritized> works) {
+			flush();
+		}
+		
+	};
+	
 	@Inject
-	public DefaultUserInfoManager(StorageManager storageManager) {
+	public DefaultUserInfoManager(StorageManager storageManager, BatchWorkManager batchWorkManager) {
 		this.storageManager = storageManager;
+		this.batchWorkManager = batchWorkManager;
 	}
 	
-	@Override
-	public void visit(User user, Project project) {
-		Environment env = getEnv(user.getId().toString());
-		Store store = getStore(env, PROJECT_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeLong(store, txn, new LongByteIterable(project.getId()), System.currentTimeMillis()+1000L);
-			}
-			
-		});
+	private void write(String envKey, String storeName, ByteIterable key, Object value) {
+		pendingWrites.put(new PendingKey(envKey, storeName, key), value);
+		batchWorkManager.submit(flushWorker, new Prioritized(FLUSH_PRIORITY));
 	}
-
-	@Override
-	public Date getVisitDate(UserFacade user, ProjectFacade project) {
-		Environment env = getEnv(user.getId().toString());
-		Store store = getStore(env, PROJECT_VISIT_STORE);
+	
+	@Nullable
+	private Date readDate(String envKey, String storeName, ByteIterable key) {
+		Long pendingMillis = (Long) pendingWrites.get(new PendingKey(envKey, storeName, key));
+		if (pendingMillis != null)
+			return new Date(pendingMillis);
+		
+		Environment env = getEnv(envKey);
+		Store store = getStore(env, storeName);
 		return env.computeInTransaction(new TransactionalComputable<Date>() {
 			
 			@Override
 			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongByteIterable(project.getId()), -1);
+				long millis = readLong(store, txn, key, -1);
 				if (millis != -1)
 					return new Date(millis);
 				else
@@ -95,12 +127,90 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 			
 		});
 	}
+	
+	private boolean readFlag(String envKey, String storeName, ByteIterable key) {
+		Boolean pendingFlag = (Boolean) pendingWrites.get(new PendingKey(envKey, storeName, key));
+		if (pendingFlag != null)
+			return pendingFlag;
+		
+		Environment env = getEnv(envKey);
+		Store store = getStore(env, storeName);
+		return env.computeInTransaction(new TransactionalComputable<Boolean>() {
+			
+			@Override
+			public Boolean compute(Transaction txn) {
+				return readBoolean(store, txn, key, false);
+			}
+			
+		});
+	}
+	
+	private synchronized void flush() {
+		Map<String, Map<PendingKey, Object>> writesByEnv = new HashMap<>();
+		for (Map.Entry<PendingKey, Object> entry: pendingWrites.entrySet()) {
+			writesByEnv.computeIfAbsent(entry.getKey().envKey, it->new HashMap<>())
+					.put(entry.getKey(), entry.getValue());
+		}
+		
+		for (Map.Entry<String, Map<PendingKey, Object>> entry: writesByEnv.entrySet()) {
+			Map<PendingKey, Object> writes = entry.getValue();
+			try {
+				Environment env = getEnv(entry.getKey());
+				Map<String, Store> stores = new HashMap<>();
+				for (PendingKey key: writes.keySet()) 
+					stores.computeIfAbsent(key.storeName, it->getStore(env, it));
+				
+				env.executeInTransaction(new TransactionalExecutable() {
+					
+					@Override
+					public void execute(Transaction txn) {
+						for (Map.Entry<PendingKey, Object> write: writes.entrySet()) {
+							Store store = stores.get(write.getKey().storeName);
+							ByteIterable key = write.getKey().getByteIterable();
+							if (write.getValue() instanceof Boolean)
+								writeBoolean(store, txn, key, (Boolean) write.getValue());
+							else
+								writeLong(store, txn, key, (Long) write.getValue());
+						}
+					}
+					
+				});
+			} catch (Exception e) {
+				logger.error("Error writing user info (env: " + entry.getKey() + ")", e);
+			}
+			
+			// Keep writes coming in after they are collected above
+			for (Map.Entry<PendingKey, Object> write: writes.entrySet())
+				pendingWrites.remove(write.getKey(), write.getValue());
+		}
+	}
+	
+	@Override
+	protected void beforeClose() {
+		flush();
+	}
+	
+	@Override
+	public void visit(User user, Project project) {
+		write(user.getId().toString(), PROJECT_VISIT_STORE, new LongByteIterable(project.getId()), 
+				System.currentTimeMillis()+1000L);
+	}
+
+	@Override
+	public Date getVisitDate(UserFacade user, ProjectFacade project) {
+		return readDate(user.getId().toString(), PROJECT_VISIT_STORE, new LongByteIterable(project.getId()));
+	}
 
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
-		if (event.getEntity() instanceof User)
-			removeEnv(event.getEntity().getId().toString());
+		if (event.getEntity() instanceof User) {
+			String envKey = event.getEntity().getId().toString();
+			synchronized (this) {
+				pendingWrites.keySet().removeIf(it->it.envKey.equals(envKey));
+				removeEnv(envKey);
+			}
+		}
 	}
 
 	@Override
@@ -115,138 +225,56 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 	
 	@Override
 	public void visitIssue(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), time);
-			}
-			
-		});
-		
+		write(issue.getProject().getId().toString(), ISSUE_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), 
+				new DateTime().plusSeconds(1).getMillis());
 		setIssueNotified(user, issue, false);
 	}
 
 	@Override
 	public void visitPullRequest(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
-			}
-			
-		});
-		
+		write(request.getTargetProject().getId().toString(), PULL_REQUEST_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), 
+				new DateTime().plusSeconds(1).getMillis());
 		setPullRequestNotified(user, request, false);
 	}
 	
 	@Override
 	public void visitPullRequestCodeComments(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_CODE_COMMENTS_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), time);
-			}
-			
-		});
+		write(request.getTargetProject().getId().toString(), PULL_REQUEST_CODE_COMMENTS_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), 
+				new DateTime().plusSeconds(1).getMillis());
 	}
 	
 	@Override
 	public void visitCodeComment(User user, CodeComment comment) {
-		Environment env = getEnv(comment.getProject().getId().toString());
-		Store store = getStore(env, CODE_COMMENT_VISIT_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				long time = new DateTime().plusSeconds(1).getMillis();
-				writeLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), time);
-			}
-			
-		});
+		write(comment.getProject().getId().toString(), CODE_COMMENT_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), 
+				new DateTime().plusSeconds(1).getMillis());
 	}
 
 	@Override
 	public Date getPullRequestVisitDate(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(request.getTargetProject().getId().toString(), PULL_REQUEST_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())));
 	}
 
 	@Override
 	public Date getIssueVisitDate(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(issue.getProject().getId().toString(), ISSUE_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())));
 	}
 	
 	@Override
 	public Date getPullRequestCodeCommentsVisitDate(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_CODE_COMMENTS_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(request.getTargetProject().getId().toString(), PULL_REQUEST_CODE_COMMENTS_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())));
 	}
 	
 	@Override
 	public Date getCodeCommentVisitDate(User user, CodeComment comment) {
-		Environment env = getEnv(comment.getProject().getId().toString());
-		Store store = getStore(env, CODE_COMMENT_VISIT_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Date>() {
-			
-			@Override
-			public Date compute(Transaction txn) {
-				long millis = readLong(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())), -1);
-				if (millis != -1)
-					return new Date(millis);
-				else
-					return null;
-			}
-			
-		});
+		return readDate(comment.getProject().getId().toString(), CODE_COMMENT_VISIT_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), comment.getId())));
 	}
 
 	@Listen
@@ -275,60 +303,63 @@ public class DefaultUserInfoManager extends AbstractEnvironmentManager implement
 
 	@Override
 	public boolean isNotified(User user, PullRequest request) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		Store store = getStore(env, PULL_REQUEST_NOTIFICATION_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Boolean>() {
-			
-			@Override
-			public Boolean compute(Transaction txn) {
-				return readBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), false);
-			}
-			
-		});
+		return readFlag(request.getTargetProject().getId().toString(), PULL_REQUEST_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())));
 	}
 
 	@Override
 	public boolean isNotified(User user, Issue issue) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		Store store = getStore(env, ISSUE_NOTIFICATION_STORE);
-		return env.computeInTransaction(new TransactionalComputable<Boolean>() {
-			
-			@Override
-			public Boolean compute(Transaction txn) {
-				return readBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), false);
-			}
-			
-		});
+		return readFlag(issue.getProject().getId().toString(), ISSUE_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())));
 	}
 
 	@Override
 	public void setPullRequestNotified(User user, PullRequest request, boolean notified) {
-		Environment env = getEnv(request.getTargetProject().getId().toString());
-		
-		Store store = getStore(env, PULL_REQUEST_NOTIFICATION_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), notified);
-			}
-			
-		});
+		write(request.getTargetProject().getId().toString(), PULL_REQUEST_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), request.getId())), notified);
 	}
 
 	@Override
 	public void setIssueNotified(User user, Issue issue, boolean notified) {
-		Environment env = getEnv(issue.getProject().getId().toString());
-		
-		Store store = getStore(env, ISSUE_NOTIFICATION_STORE);
-		env.executeInTransaction(new TransactionalExecutable() {
-			
-			@Override
-			public void execute(Transaction txn) {
-				writeBoolean(store, txn, new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), notified);
-			}
-			
-		});
+		write(issue.getProject().getId().toString(), ISSUE_NOTIFICATION_STORE, 
+				new LongsByteIterable(Lists.newArrayList(user.getId(), issue.getId())), notified);
 	}
 
+	private static class PendingKey {
+		
+		private final String envKey;
+		
+		private final String storeName;
+		
+		private final byte[] key;
+		
+		PendingKey(String envKey, String storeName, ByteIterable key) {
+			this.envKey = envKey;
+			this.storeName = storeName;
+			this.key = Arrays.copyOf(key.getBytesUnsafe(), key.getLength());
+		}
+		
+		ByteIterable getByteIterable() {
+			return new ArrayByteIterable(key);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof PendingKey))
+				return false;
+			PendingKey otherKey = (PendingKey) other;
+			return new EqualsBuilder()
+					.append(envKey, otherKey.envKey)
+					.append(storeName, otherKey.storeName)
+					.append(key, otherKey.key)
+					.isEquals();
+		}
+
+		@Override
+		public int hashCode() {
+			return new HashCodeBuilder(17, 37).append(envKey).append(storeName).append(key).toHashCode();
+		}
+		
+	}
+	
 }
@@ -0,0 +1,37 @@
+package io.onedev.server.cache;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import io.onedev.server.model.Project;
+
+public interface PackCacheManager {
+	
+	/**
+	 * Serve a stateless upload-pack request. Requests wanting only current ref tips 
+	 * without any haves (fresh clones) are served from a cache of pre-generated packs, 
+	 * and other requests are handed over to git upload-pack as usual
+	 * 
+	 * @param project
+	 * 			project to upload pack from
+	 * @param environments
+	 * 			environments to run git upload-pack with
+	 * @param input
+	 * 			upload-pack request stream
+	 * @param output
+	 * 			upload-pack response stream
+	 */
+	void upload(Project project, Map<String, String> environments, InputStream input, OutputStream output);
+	
+	long getHits();
+	
+	long getMisses();
+	
+	/**
+	 * @return
+	 * 			total bytes of packs served from cache instead of generated by git upload-pack
+	 */
+	long getBytesSaved();
+	
+}
@@ -55,16 +55,14 @@ import io.onedev.server.event.ProjectEvent;
 import io.onedev.server.event.build.BuildFinished;
 import io.onedev.server.event.build.BuildQueueing;
 import io.onedev.server.event.build.BuildRunning;
+import io.onedev.server.event.build.BuildResubmitted;
 import io.onedev.server.event.build.BuildSubmitted;
-import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Build;
 import io.onedev.server.model.BuildDependence;
 import io.onedev.server.model.BuildParam;
 import io.onedev.server.model.Project;
-import io.onedev.server.model.Setting;
-import io.onedev.server.model.Setting.Key;
 import io.onedev.server.model.User;
 import io.onedev.server.model.support.jobexecutor.JobExecutor;
 import io.onedev.server.model.support.jobexecutor.SourceSnapshot;
@@ -111,8 +109,6 @@ public class DefaultJobManager implements JobManager, Runnable, SchedulableTask
 	
 	private final BuildParamManager buildParamManager;
 	
-	private volatile List<JobExecutor> jobExecutors;
-	
 	private String taskId;
 	
 	private volatile Status status;
@@ -234,7 +230,7 @@ public class DefaultJobManager implements JobManager, Runnable, SchedulableTask
 	
 	@Nullable
 	private JobExecutor getJobExecutor(Project project, ObjectId commitId, String jobName, String image) {
-		for (JobExecutor executor: jobExecutors) {
+		for (JobExecutor executor: settingManager.getJobExecutors()) {
 			if (executor.isApplicable(project, commitId, jobName, image))
 				return executor;
 		}
@@ -435,7 +431,7 @@ public class DefaultJobManager implements JobManager, Runnable, SchedulableTask
 				}
 			}
 			buildManager.save(build);
-			listenerRegistry.post(new BuildSubmitted(build));
+			listenerRegistry.post(new BuildResubmitted(build));
 		} else {
 			throw new OneException("Build #" + build.getNumber() + " not finished yet");
 		}
@@ -449,20 +445,9 @@ public class DefaultJobManager implements JobManager, Runnable, SchedulableTask
 			execution.cancel(User.idOf(canceller));
 	}
 	
-	@SuppressWarnings("unchecked")
-	@Listen
-	public void on(EntityPersisted event) {
-		if (event.getEntity() instanceof Setting) {
-			Setting setting = (Setting) event.getEntity();
-			if (setting.getKey() == Key.JOB_EXECUTORS)
-				jobExecutors = (List<JobExecutor>) setting.getValue();
-		}
-	}
-	
 	@Listen
 	public void on(SystemStarted event) {
 		status = Status.STARTED;
-		jobExecutors = settingManager.getJobExecutors();
 		new Thread(this).start();		
 		taskId = taskScheduler.schedule(this);
 	}
@@ -584,7 +569,7 @@ public class DefaultJobManager implements JobManager, Runnable, SchedulableTask
 	
 	@Override
 	public void execute() {
-		for (JobExecutor executor: jobExecutors)
+		for (JobExecutor executor: settingManager.getJobExecutors())
 			executor.checkCaches();
 	}
 
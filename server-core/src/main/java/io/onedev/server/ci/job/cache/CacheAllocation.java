@@ -1,20 +1,35 @@
 package io.onedev.server.ci.job.cache;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.io.FilenameUtils;
 
+import io.onedev.commons.utils.FileUtils;
 import io.onedev.server.OneException;
 
 public class CacheAllocation {
 
-	private final File instance; 
-	
+	private final File instance;
+
 	private final String path;
-	
-	public CacheAllocation(File instance, String path) {
+
+	private final String key;
+
+	private final File lockFile;
+
+	private final boolean readOnly;
+
+	private final boolean hit;
+
+	public CacheAllocation(File instance, String path, String key, File lockFile, boolean readOnly, boolean hit) {
 		this.instance = instance;
 		this.path = path;
+		this.key = key;
+		this.lockFile = lockFile;
+		this.readOnly = readOnly;
+		this.hit = hit;
 	}
 
 	public File getInstance() {
@@ -24,13 +39,45 @@ public class CacheAllocation {
 	public String getPath() {
 		return path;
 	}
-	
+
+	/**
+	 * @return
+	 * 			effective key of the cache
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return
+	 * 			whether or not the cache instance is shared read-only with other jobs
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * @return
+	 * 			whether or not an existing cache instance is allocated
+	 */
+	public boolean isHit() {
+		return hit;
+	}
+
 	public void release() {
-		File lockFile = new File(instance, JobCache.LOCK_FILE); 
+		if (!readOnly) {
+			File sizeFile = new File(instance, JobCache.SIZE_FILE);
+			try {
+				FileUtils.writeStringToFile(sizeFile, String.valueOf(FileUtils.sizeOfDirectory(instance)),
+						StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
 		if (!lockFile.delete())
 			throw new OneException("Unable to delete file: " + lockFile.getAbsolutePath());
 	}
-	
+
 	public String resolvePath(String basePath) {
 		String path = getPath();
 		if (path == null)
@@ -40,9 +87,9 @@ public class CacheAllocation {
 		else
 			return basePath + "/" + path;
 	}
-	
+
 	public boolean isWorkspace() {
 		return path == null || FilenameUtils.normalize(path).length() == 0;
 	}
-	
+
 }
@@ -3,31 +3,50 @@ package io.onedev.server.ci.job.cache;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.model.support.jobexecutor.SourceSnapshot;
 
 public class CacheRunner {
 
+	private static final int MAX_KEY_STATS = 10000;
+
+	private static final Cache<String, KeyStats> keyStats = CacheBuilder.newBuilder()
+			.maximumSize(MAX_KEY_STATS).build();
+
 	private final File cacheHome;
-	
+
 	private final Collection<JobCache> caches;
-	
-	public CacheRunner(File cacheHome, Collection<JobCache> caches) {
+
+	private final SourceSnapshot snapshot;
+
+	public CacheRunner(File cacheHome, Collection<JobCache> caches, @Nullable SourceSnapshot snapshot) {
 		this.cacheHome = cacheHome;
 		this.caches = caches;
+		this.snapshot = snapshot;
 	}
-	
+
 	public <T> T call(CacheCallable<T> callable, Logger logger) {
 		Collection<CacheAllocation> allocations = new ArrayList<>();
 		try {
 			if (!cacheHome.exists())
 				FileUtils.createDir(cacheHome);
-			
-			for (JobCache cache: caches)
-				allocations.add(cache.allocate(cacheHome));
+
+			for (JobCache cache: caches) {
+				long time = System.currentTimeMillis();
+				CacheAllocation allocation = cache.allocate(cacheHome, snapshot);
+				allocations.add(allocation);
+				logStats(allocation, System.currentTimeMillis() - time, logger);
+			}
 			return callable.call(allocations);
 		} catch (Exception e) {
 			throw ExceptionUtils.unchecked(e);
@@ -41,5 +60,31 @@ public class CacheRunner {
 			}
 		}
 	}
-	
+
+	private void logStats(CacheAllocation allocation, long allocationTime, Logger logger) {
+		KeyStats stats = keyStats.asMap().computeIfAbsent(cacheHome.getAbsolutePath() + ":" + allocation.getKey(),
+				k -> new KeyStats());
+		if (allocation.isHit())
+			stats.hits.incrementAndGet();
+		else
+			stats.misses.incrementAndGet();
+		stats.allocationTime.addAndGet(allocationTime);
+		long hits = stats.hits.get();
+		long total = hits + stats.misses.get();
+
+		logger.info("Allocated cache '{}' in {} ms ({}{}, hits of this key: {}/{}, average allocation time: {} ms)",
+				allocation.getKey(), allocationTime, allocation.isHit()? "hit": "missed",
+				allocation.isReadOnly()? ", shared read-only": "", hits, total, stats.allocationTime.get()/total);
+	}
+
+	private static class KeyStats {
+
+		final AtomicLong hits = new AtomicLong();
+
+		final AtomicLong misses = new AtomicLong();
+
+		final AtomicLong allocationTime = new AtomicLong();
+
+	}
+
 }
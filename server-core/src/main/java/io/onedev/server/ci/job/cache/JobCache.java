@@ -1,19 +1,31 @@
 package io.onedev.server.ci.job.cache;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.LockUtils;
+import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.OneException;
+import io.onedev.server.model.support.jobexecutor.SourceSnapshot;
 import io.onedev.server.util.validation.annotation.Path;
 import io.onedev.server.util.validation.annotation.PathSegment;
 import io.onedev.server.web.editable.annotation.Editable;
@@ -22,13 +34,21 @@ import io.onedev.server.web.editable.annotation.Editable;
 public class JobCache implements Serializable {
 
 	private static final long serialVersionUID = 1L;
-	
+
 	public static final String LOCK_FILE = "$OneDev-Cache-Lock$";
 
+	public static final String SIZE_FILE = "$OneDev-Cache-Size$";
+
+	public static final String READER_FILE_PREFIX = "$OneDev-Cache-Reader-";
+
 	private String key;
-	
+
+	private String keyFiles;
+
 	private String path;
 
+	private boolean readOnly;
+
 	@Editable(order=100, description="Specify key of the cache. Caches with same key can be shared")
 	@PathSegment
 	@NotEmpty
@@ -40,6 +60,18 @@ public class JobCache implements Serializable {
 		this.key = key;
 	}
 
+	@Editable(order=150, description="Optionally specify space-separated files relative to repository root, "
+			+ "for instance <tt>pom.xml</tt> or <tt>package-lock.json</tt>. Hash of their contents at job "
+			+ "commit will be appended to cache key, so that a new cache will be used when any of them "
+			+ "changes")
+	public String getKeyFiles() {
+		return keyFiles;
+	}
+
+	public void setKeyFiles(String keyFiles) {
+		this.keyFiles = keyFiles;
+	}
+
 	@Editable(order=200, description="Specify path to cache. Non-absolute path is considered to be relative to job workspace. "
 			+ "Specify \".\" (without quote) to cache workspace itself")
 	@Path
@@ -51,30 +83,133 @@ public class JobCache implements Serializable {
 	public void setPath(String path) {
 		this.path = path;
 	}
-	
-	public CacheAllocation allocate(File cacheHome) {
-		File keyDir = new File(cacheHome, getKey());
-		if (!keyDir.exists())
-			FileUtils.createDir(keyDir);
+
+	@Editable(order=300, description="If enabled, concurrent jobs will share the most recent cache read-only "
+			+ "instead of each taking a separate copy, and changes made by jobs will not be saved. A writable "
+			+ "cache will still be used if no cache is available yet. This setting is ignored when caching "
+			+ "workspace itself")
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	public void setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+	}
+
+	/**
+	 * Get key used to store the cache. If key files are specified, hash of their blob ids at
+	 * snapshot commit will be appended to the key. As blob id is hash of file content, the
+	 * same cache will be used as long as content of key files does not change
+	 */
+	public String getEffectiveKey(@Nullable SourceSnapshot snapshot) {
+		if (getKeyFiles() != null && snapshot != null) {
+			Repository repository = snapshot.getProject().getRepository();
+			Hasher hasher = Hashing.sha256().newHasher();
+			try (RevWalk revWalk = new RevWalk(repository)) {
+				for (String keyFile: StringUtils.parseQuoteTokens(getKeyFiles())) {
+					hasher.putString(keyFile, StandardCharsets.UTF_8).putByte((byte)0);
+					TreeWalk treeWalk = TreeWalk.forPath(repository, keyFile,
+							revWalk.parseCommit(snapshot.getCommitId()).getTree());
+					if (treeWalk != null)
+						hasher.putString(treeWalk.getObjectId(0).name(), StandardCharsets.UTF_8);
+					hasher.putByte((byte)0);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return getKey() + "-" + hasher.hash().toString().substring(0, 16);
+		} else {
+			return getKey();
+		}
+	}
+
+	public CacheAllocation allocate(File cacheHome, @Nullable SourceSnapshot snapshot) {
+		String effectiveKey = getEffectiveKey(snapshot);
+		File keyDir = new File(cacheHome, effectiveKey);
+		boolean shared = isReadOnly() && FilenameUtils.normalize(path).length() != 0;
 		return LockUtils.call(keyDir.getAbsolutePath(), new Callable<CacheAllocation>() {
 
 			@Override
 			public CacheAllocation call() throws Exception {
+				// Check inside the lock as empty key directories may be removed by executor
+				if (!keyDir.exists())
+					FileUtils.createDir(keyDir);
 				List<File> cacheInstances = Lists.newArrayList(keyDir.listFiles());
 				cacheInstances.sort(Comparator.comparing(File::lastModified).reversed());
+				if (shared) {
+					for (File cacheInstance: cacheInstances) {
+						if (!new File(cacheInstance, LOCK_FILE).exists()) {
+							File readerFile = new File(cacheInstance, READER_FILE_PREFIX + UUID.randomUUID().toString() + "$");
+							if (!readerFile.createNewFile())
+								throw new OneException("Unable to create file: " + readerFile.getAbsolutePath());
+							return new CacheAllocation(cacheInstance, path, effectiveKey, readerFile, true, true);
+						}
+					}
+				}
 				for (File cacheInstance: cacheInstances) {
-					if (new File(cacheInstance, LOCK_FILE).createNewFile())
-						return new CacheAllocation(cacheInstance, path);
+					File lockFile = new File(cacheInstance, LOCK_FILE);
+					if (!hasReaders(cacheInstance) && lockFile.createNewFile())
+						return new CacheAllocation(cacheInstance, path, effectiveKey, lockFile, false, true);
 				}
 				File cacheInstance = new File(keyDir, UUID.randomUUID().toString());
 				FileUtils.createDir(cacheInstance);
 				File lockFile = new File(cacheInstance, LOCK_FILE);
 				if (!lockFile.createNewFile())
 					throw new OneException("Unable to create file: " + lockFile.getAbsolutePath());
-				return new CacheAllocation(cacheInstance, path);
+				return new CacheAllocation(cacheInstance, path, effectiveKey, lockFile, false, false);
 			}
-			
+
 		});
 	}
+
+	/**
+	 * Check whether or not specified cache instance is being shared read-only by some jobs.
+	 * Should be called while holding lock of the key directory
+	 */
+	public static boolean hasReaders(File cacheInstance) {
+		String[] fileNames = cacheInstance.list();
+		if (fileNames != null) {
+			for (String fileName: fileNames) {
+				if (fileName.startsWith(READER_FILE_PREFIX))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check whether or not specified cache instance is allocated to some jobs, either 
+	 * exclusively or shared read-only
+	 */
+	public static boolean isAllocated(File cacheInstance) {
+		return new File(cacheInstance, LOCK_FILE).exists() || hasReaders(cacheInstance);
+	}
 	
+	/**
+	 * Get size of specified cache instance recorded when it was last released. Size of 
+	 * instance without a record, for instance created by old versions, is calculated 
+	 * and recorded once it is not allocated. Instances being allocated are never walked 
+	 * as they may be large and changing
+	 */
+	public static long getSize(File cacheInstance) {
+		File sizeFile = new File(cacheInstance, SIZE_FILE);
+		if (sizeFile.exists()) {
+			try {
+				return Long.parseLong(FileUtils.readFileToString(sizeFile, StandardCharsets.UTF_8).trim());
+			} catch (IOException | NumberFormatException e) {
+			}
+		}
+		if (cacheInstance.exists() && !isAllocated(cacheInstance)) {
+			long size = FileUtils.sizeOfDirectory(cacheInstance);
+			try {
+				FileUtils.writeStringToFile(sizeFile, String.valueOf(size), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			return size;
+		} else {
+			return 0;
+		}
+	}
+
 }
@@ -30,8 +30,35 @@ public interface IssueManager extends EntityManager<Issue> {
 	
 	int count(Project project, User user, @Nullable IssueCriteria issueCriteria);
 	
+	/**
+	 * Count issues matching specified criteria with a single query, grouped by value of 
+	 * specified field
+	 * 
+	 * @param fieldName
+	 * 			name of the field to group by, either the state field or a custom field
+	 * @return
+	 * 			map of field value to issue count. Issues with empty value of the custom field 
+	 * 			are counted under <tt>null</tt> key, and issues without the custom field are 
+	 * 			not counted
+	 */
+	Map<String, Integer> count(Project project, User user, @Nullable IssueCriteria issueCriteria, String fieldName);
+	
+	/**
+	 * Query a page of issues for each of specified queries. Fields, milestones and submitters 
+	 * of all returned issues are loaded in batch
+	 * 
+	 * @return
+	 * 			list of issue pages, in the same order as specified queries 
+	 */
+	List<List<Issue>> query(Project project, User user, List<? extends EntityQuery<Issue>> issueQueries, 
+			int firstResult, int maxResults);
+	
 	List<Issue> query(Project project, @Nullable String term, int count);
 
+	/**
+	 * Count issues of specified milestone from issue counters of the milestone, without 
+	 * querying database
+	 */
 	int count(Milestone milestone, User user, @Nullable StateSpec.Category category);
 	
 	Collection<String> getUndefinedStates();
@@ -67,6 +67,10 @@ public interface PullRequestManager extends EntityManager<PullRequest> {
 	
 	void restoreSourceBranch(PullRequest request, @Nullable String note);
 	
+	/**
+	 * Count open pull requests targeting specified project. Counts are maintained in 
+	 * memory and do not need to query database 
+	 */
 	int countOpen(Project targetProject);
 	
 	void checkQuality(PullRequest request);
@@ -14,6 +14,11 @@ import io.onedev.server.model.support.setting.SecuritySetting;
 import io.onedev.server.model.support.setting.SystemSetting;
 import io.onedev.server.persistence.dao.EntityManager;
 
+/**
+ * Setting values returned by this manager are cached and shared between callers, and can be
+ * read without a Hibernate session. Make a copy of the value before modifying it, and save the
+ * copy with corresponding save method.
+ */
 public interface SettingManager extends EntityManager<Setting> {
 	
 	/**
@@ -3,6 +3,8 @@ package io.onedev.server.entitymanager.impl;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.SerializationUtils;
+
 import io.onedev.server.cache.CacheManager;
 import io.onedev.server.entitymanager.GroupManager;
 import io.onedev.server.entitymanager.IssueFieldManager;
@@ -13,6 +15,7 @@ import io.onedev.server.model.Project;
 import io.onedev.server.model.support.BranchProtection;
 import io.onedev.server.model.support.TagProtection;
 import io.onedev.server.model.support.authenticator.Authenticator;
+import io.onedev.server.model.support.setting.GlobalIssueSetting;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.AbstractEntityManager;
@@ -52,14 +55,16 @@ public class DefaultGroupManager extends AbstractEntityManager<Group> implements
 				project.getIssueSetting().onRenameGroup(oldName, group.getName());
 			}
 			
-			Authenticator authenticator = settingManager.getAuthenticator();
+			Authenticator authenticator = SerializationUtils.clone(settingManager.getAuthenticator());
 			if (authenticator != null) {
 				authenticator.onRenameGroup(oldName, group.getName());
 				settingManager.saveAuthenticator(authenticator);
 			}
 			
 			issueFieldManager.onRenameGroup(oldName, group.getName());
-			settingManager.getIssueSetting().onRenameGroup(oldName, group.getName());
+			GlobalIssueSetting issueSetting = SerializationUtils.clone(settingManager.getIssueSetting());
+			issueSetting.onRenameGroup(oldName, group.getName());
+			settingManager.saveIssueSetting(issueSetting);
 		}
 		dao.persist(group);
 	}
@@ -77,13 +82,15 @@ public class DefaultGroupManager extends AbstractEntityManager<Group> implements
 			usage.prefix("project '" + project.getName() + "': setting");
 		}
 
-		usage.add(settingManager.getIssueSetting().onDeleteGroup(group.getName()).prefix("administration"));
+		GlobalIssueSetting issueSetting = SerializationUtils.clone(settingManager.getIssueSetting());
+		usage.add(issueSetting.onDeleteGroup(group.getName()).prefix("administration"));
 
 		Authenticator authenticator = settingManager.getAuthenticator();
 		if (authenticator != null && authenticator.getDefaultGroupNames().contains(group.getName())) 
 			usage.add("administration: authenticator");
 		
 		usage.checkInUse("Group '" + group.getName() + "'");
+		settingManager.saveIssueSetting(issueSetting);
 		
 		dao.remove(group);
 	}
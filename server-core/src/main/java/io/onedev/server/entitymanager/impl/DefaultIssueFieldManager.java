@@ -1,17 +1,19 @@
 package io.onedev.server.entitymanager.impl;
 
+import static io.onedev.server.search.entity.EntityCriteria.IN_CLAUSE_LIMIT;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.Query;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Expression;
-import javax.persistence.criteria.Root;
+
+import com.google.common.collect.Lists;
 
 import io.onedev.server.entitymanager.IssueFieldManager;
 import io.onedev.server.model.Issue;
@@ -75,24 +77,41 @@ public class DefaultIssueFieldManager extends AbstractEntityManager<IssueField>
 		query.executeUpdate();
 	}
 
+	/*
+	 * Load scalar columns of fields instead of field entities, so that fields of a page of 
+	 * issues can be loaded with one query without the overhead of managing field entities 
+	 * in session
+	 */
+	@SuppressWarnings("unchecked")
 	@Sessional
 	@Override
 	public void populateFields(List<Issue> issues) {
-		CriteriaBuilder builder = getSession().getCriteriaBuilder();
-		CriteriaQuery<IssueField> query = builder.createQuery(IssueField.class);
-		
-		Root<IssueField> root = query.from(IssueField.class);
-		query.select(root);
-		root.join("issue");
+		Map<Long, Issue> issueMap = new HashMap<>();
+		Map<Long, List<IssueField>> fieldsMap = new HashMap<>();
+		for (Issue issue: issues) {
+			issueMap.put(issue.getId(), issue);
+			fieldsMap.put(issue.getId(), new ArrayList<>());
+		}
 		
-		Expression<String> issueExpr = root.get("issue");
-		query.where(issueExpr.in(issues));
+		for (List<Long> issueIds: Lists.partition(new ArrayList<>(issueMap.keySet()), IN_CLAUSE_LIMIT)) {
+			Query query = getSession().createQuery("select id, issue.id, name, value, type, ordinal "
+					+ "from IssueField where issue.id in (:issueIds)");
+			query.setParameter("issueIds", issueIds);
+			for (Object[] row: (List<Object[]>) query.getResultList()) {
+				Long issueId = (Long) row[1];
+				IssueField field = new IssueField();
+				field.setId((Long) row[0]);
+				field.setIssue(issueMap.get(issueId));
+				field.setName((String) row[2]);
+				field.setValue((String) row[3]);
+				field.setType((String) row[4]);
+				field.setOrdinal((Long) row[5]);
+				fieldsMap.get(issueId).add(field);
+			}
+		}
 		
 		for (Issue issue: issues)
-			issue.setFields(new ArrayList<>());
-		
-		for (IssueField field: getSession().createQuery(query).getResultList())
-			field.getIssue().getFields().add(field);
+			issue.setFields(fieldsMap.get(issue.getId()));
 	}
 	
 }
@@ -2,6 +2,7 @@ package io.onedev.server.entitymanager.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -15,6 +16,7 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
@@ -26,6 +28,7 @@ import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.launcher.loader.ListenerRegistry;
@@ -54,10 +57,10 @@ import io.onedev.server.persistence.dao.EntityCriteria;
 import io.onedev.server.search.entity.EntityQuery;
 import io.onedev.server.search.entity.EntitySort;
 import io.onedev.server.search.entity.EntitySort.Direction;
-import io.onedev.server.search.entity.issue.AndCriteria;
 import io.onedev.server.search.entity.issue.IssueCriteria;
 import io.onedev.server.search.entity.issue.IssueQuery;
-import io.onedev.server.search.entity.issue.MilestoneCriteria;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.IssueConstants;
 import io.onedev.server.util.ValueSetEdit;
 import io.onedev.server.util.inputspec.InputSpec;
@@ -79,16 +82,20 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 	
 	private final ProjectManager projectManager;
 	
+	private final EntityTextManager entityTextManager;
+	
 	@Inject
 	public DefaultIssueManager(Dao dao, IssueFieldManager issueFieldManager, 
 			IssueQuerySettingManager issueQuerySettingManager, SettingManager settingManager, 
-			ListenerRegistry listenerRegistry, ProjectManager projectManager) {
+			ListenerRegistry listenerRegistry, ProjectManager projectManager, 
+			EntityTextManager entityTextManager) {
 		super(dao);
 		this.issueFieldManager = issueFieldManager;
 		this.issueQuerySettingManager = issueQuerySettingManager;
 		this.listenerRegistry = listenerRegistry;
 		this.settingManager = settingManager;
 		this.projectManager = projectManager;
+		this.entityTextManager = entityTextManager;
 	}
 
 	@Sessional
@@ -192,22 +199,65 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 		return getSession().createQuery(criteriaQuery).uniqueResult().intValue();
 	}
 
+	@Sessional
 	@Override
-	public int count(Milestone milestone, User user, @Nullable StateSpec.Category category) {
-		if (category != null) {
-			IssueCriteria criteria = getGlobalIssueSetting().getCategoryCriteria(category);
-			if (criteria != null) {
-				List<IssueCriteria> criterias = new ArrayList<>();
-				criterias.add(new MilestoneCriteria(milestone.getName()));
-				criterias.add(criteria);
-				return count(milestone.getProject(), user, new AndCriteria(criterias));
-			} else {
-				return 0;
-			}
+	public Map<String, Integer> count(Project project, User user, IssueCriteria issueCriteria, String fieldName) {
+		CriteriaBuilder builder = getSession().getCriteriaBuilder();
+		CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
+		Root<Issue> root = criteriaQuery.from(Issue.class);
+
+		List<Predicate> predicates = Lists.newArrayList(getPredicates(issueCriteria, project, root, builder, user));
+		Path<String> groupPath;
+		if (fieldName.equals(IssueConstants.FIELD_STATE)) {
+			groupPath = root.get(IssueConstants.ATTR_STATE);
+			criteriaQuery.multiselect(groupPath, builder.count(root));
 		} else {
-			IssueCriteria criteria = new MilestoneCriteria(milestone.getName());
-			return count(milestone.getProject(), user, criteria);
+			Join<Issue, IssueField> join = root.join(IssueConstants.ATTR_FIELDS, JoinType.INNER);
+			predicates.add(builder.equal(join.get(IssueField.ATTR_NAME), fieldName));
+			groupPath = join.get(IssueField.ATTR_VALUE);
+			criteriaQuery.multiselect(groupPath, builder.countDistinct(root));
 		}
+		criteriaQuery.where(predicates.toArray(new Predicate[0]));
+		criteriaQuery.groupBy(groupPath);
+		
+		Map<String, Integer> counts = new HashMap<>();
+		for (Object[] row: getSession().createQuery(criteriaQuery).getResultList()) 
+			counts.put((String) row[0], ((Long) row[1]).intValue());
+		return counts;
+	}
+	
+	@Sessional
+	@Override
+	public List<List<Issue>> query(Project project, User user, List<? extends EntityQuery<Issue>> issueQueries, 
+			int firstResult, int maxResults) {
+		List<List<Issue>> pages = new ArrayList<>();
+		List<Issue> issues = new ArrayList<>();
+		for (EntityQuery<Issue> issueQuery: issueQueries) {
+			CriteriaQuery<Issue> criteriaQuery = buildCriteriaQuery(getSession(), project, issueQuery, user);
+			Root<?> root = criteriaQuery.getRoots().iterator().next();
+			root.fetch(IssueConstants.ATTR_MILESTONE, JoinType.LEFT);
+			root.fetch(IssueConstants.ATTR_SUBMITTER, JoinType.LEFT);
+			Query<Issue> query = getSession().createQuery(criteriaQuery);
+			query.setFirstResult(firstResult);
+			query.setMaxResults(maxResults);
+			List<Issue> page = query.getResultList();
+			pages.add(page);
+			issues.addAll(page);
+		}
+		if (!issues.isEmpty())
+			issueFieldManager.populateFields(issues);
+		return pages;
+	}
+
+	@Override
+	public int count(Milestone milestone, User user, @Nullable StateSpec.Category category) {
+		// Use counters maintained by milestone manager to avoid count queries for each milestone
+		if (category == StateSpec.Category.OPEN)
+			return milestone.getNumOfOpenIssues();
+		else if (category == StateSpec.Category.CLOSED)
+			return milestone.getNumOfClosedIssues();
+		else
+			return milestone.getNumOfOpenIssues() + milestone.getNumOfClosedIssues();
 	}
 
 	@SuppressWarnings("unchecked")
@@ -281,6 +331,9 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 					long buildNumber = Long.parseLong(term);
 					criteria.add(Restrictions.eq("number", buildNumber));
 				} catch (NumberFormatException e) {
+					List<Issue> ranked = queryByTitle("#" + term, count);
+					if (ranked != null)
+						return ranked;
 					criteria.add(Restrictions.or(
 							Restrictions.ilike("title", "#" + term, MatchMode.ANYWHERE),
 							Restrictions.ilike("noSpaceTitle", "#" + term, MatchMode.ANYWHERE)));
@@ -290,6 +343,9 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 					long buildNumber = Long.parseLong(term);
 					criteria.add(Restrictions.eq("number", buildNumber));
 				} catch (NumberFormatException e) {
+					List<Issue> ranked = queryByTitle(term, count);
+					if (ranked != null)
+						return ranked;
 					criteria.add(Restrictions.or(
 							Restrictions.ilike("title", term, MatchMode.ANYWHERE),
 							Restrictions.ilike("noSpaceTitle", term, MatchMode.ANYWHERE)));
@@ -302,6 +358,32 @@ public class DefaultIssueManager extends AbstractEntityManager<Issue> implements
 		
 		return issues;
 	}
+	
+	@Nullable
+	private List<Issue> queryByTitle(String text, int count) {
+		List<Long> ids = entityTextManager.query(Issue.class, null, text, count, 
+				EntityTextField.TITLE, EntityTextField.NO_SPACE_TITLE);
+		if (ids != null) {
+			Map<Long, Issue> entities = new HashMap<>();
+			if (!ids.isEmpty()) {
+				EntityCriteria<Issue> criteria = newCriteria();
+				criteria.add(Restrictions.in("id", ids));
+				for (Issue entity: query(criteria))
+					entities.put(entity.getId(), entity);
+			}
+			
+			// keep relevance order of the text index
+			List<Issue> ranked = new ArrayList<>();
+			for (Long id: ids) {
+				Issue entity = entities.get(id);
+				if (entity != null)
+					ranked.add(entity);
+			}
+			return ranked;
+		} else {
+			return null;
+		}
+	}
 
 	@SuppressWarnings("unchecked")
 	@Sessional
@@ -1,7 +1,9 @@
 package io.onedev.server.entitymanager.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -9,16 +11,24 @@ import javax.inject.Singleton;
 
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.ScheduleBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.StringUtils;
+import io.onedev.commons.utils.schedule.SchedulableTask;
+import io.onedev.commons.utils.schedule.TaskScheduler;
 import io.onedev.server.entitymanager.MilestoneManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.issue.IssueChangeEvent;
 import io.onedev.server.event.issue.IssueOpened;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.Milestone;
 import io.onedev.server.model.Project;
@@ -34,14 +44,22 @@ import io.onedev.server.persistence.dao.Dao;
 import io.onedev.server.persistence.dao.EntityCriteria;
 
 @Singleton
-public class DefaultMilestoneManager extends AbstractEntityManager<Milestone> implements MilestoneManager {
+public class DefaultMilestoneManager extends AbstractEntityManager<Milestone> 
+		implements MilestoneManager, SchedulableTask {
 
+	private static final Logger logger = LoggerFactory.getLogger(DefaultMilestoneManager.class);
+	
 	private final SettingManager settingManager;
 	
+	private final TaskScheduler taskScheduler;
+	
+	private String taskId;
+	
 	@Inject
-	public DefaultMilestoneManager(Dao dao, SettingManager settingManager) {
+	public DefaultMilestoneManager(Dao dao, SettingManager settingManager, TaskScheduler taskScheduler) {
 		super(dao);
 		this.settingManager = settingManager;
+		this.taskScheduler = taskScheduler;
 	}
 
 	private GlobalIssueSetting getIssueSetting() {
@@ -198,4 +216,65 @@ public class DefaultMilestoneManager extends AbstractEntityManager<Milestone> im
 		}
 	}
 	
+	/**
+	 * Reconcile issue counters of milestones against issues in database, in case they 
+	 * drift due to bulk updates or changes of state categories. Counters are updated 
+	 * via query conditioned on values read, so that changes made by concurrent issue 
+	 * events are not overwritten. Counters changed concurrently will be checked again 
+	 * at next run 
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional
+	@Override
+	public void execute() {
+		Map<Long, int[]> counts = new HashMap<>();
+		Query<Object[]> query = getSession().createQuery("select milestone.id, state, count(*) from Issue "
+				+ "where milestone is not null group by milestone.id, state");
+		for (Object[] row: query.getResultList()) {
+			StateSpec state = getIssueSetting().getStateSpec((String) row[1]);
+			if (state != null) {
+				int[] countsOfMilestone = counts.computeIfAbsent((Long) row[0], it->new int[2]);
+				if (state.getCategory() == StateSpec.Category.CLOSED)
+					countsOfMilestone[1] += ((Long) row[2]).intValue();
+				else
+					countsOfMilestone[0] += ((Long) row[2]).intValue();
+			}
+		}
+		for (Milestone milestone: query()) {
+			int[] countsOfMilestone = counts.getOrDefault(milestone.getId(), new int[2]);
+			if (milestone.getNumOfOpenIssues() != countsOfMilestone[0] 
+					|| milestone.getNumOfClosedIssues() != countsOfMilestone[1]) {
+				Query<?> update = getSession().createQuery("update Milestone set numOfOpenIssues=:numOfOpenIssues, "
+						+ "numOfClosedIssues=:numOfClosedIssues where id=:milestoneId "
+						+ "and numOfOpenIssues=:oldNumOfOpenIssues and numOfClosedIssues=:oldNumOfClosedIssues");
+				update.setParameter("numOfOpenIssues", countsOfMilestone[0]);
+				update.setParameter("numOfClosedIssues", countsOfMilestone[1]);
+				update.setParameter("milestoneId", milestone.getId());
+				update.setParameter("oldNumOfOpenIssues", milestone.getNumOfOpenIssues());
+				update.setParameter("oldNumOfClosedIssues", milestone.getNumOfClosedIssues());
+				if (update.executeUpdate() != 0) {
+					logger.warn("Reconciled issue counters (project: {}, milestone: {}, open: {}->{}, closed: {}->{})", 
+							milestone.getProject().getName(), milestone.getName(), 
+							milestone.getNumOfOpenIssues(), countsOfMilestone[0], 
+							milestone.getNumOfClosedIssues(), countsOfMilestone[1]);
+				}
+			}
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return CronScheduleBuilder.dailyAtHourAndMinute(1, 0);
+	}
+	
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		taskScheduler.unschedule(taskId);
+	}
+	
 }
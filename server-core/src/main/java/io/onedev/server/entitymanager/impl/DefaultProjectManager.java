@@ -3,10 +3,12 @@ package io.onedev.server.entitymanager.impl;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -14,8 +16,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.apache.commons.io.IOUtils;
-import org.apache.shiro.subject.Subject;
-import org.apache.shiro.util.ThreadContext;
+import org.apache.commons.lang3.SerializationUtils;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffAlgorithm.SupportedAlgorithm;
@@ -31,7 +32,6 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Preconditions;
 
 import io.onedev.commons.launcher.loader.Listen;
-import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.StringUtils;
@@ -41,7 +41,7 @@ import io.onedev.server.entitymanager.BuildManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.entitymanager.UserAuthorizationManager;
-import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.event.system.SystemStarted;
 import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.git.GitUtils;
@@ -53,7 +53,6 @@ import io.onedev.server.model.UserAuthorization;
 import io.onedev.server.model.support.BranchProtection;
 import io.onedev.server.model.support.TagProtection;
 import io.onedev.server.model.support.jobexecutor.JobExecutor;
-import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.AbstractEntityManager;
@@ -85,11 +84,9 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
     
     private final SettingManager settingManager;
     
-    private final SessionManager sessionManager;
-    
     private final TransactionManager transactionManager;
     
-    private final ListenerRegistry listenerRegistry;
+    private final RefUpdatedDispatcher refUpdatedDispatcher;
     
     private final String gitReceiveHook;
     
@@ -99,8 +96,7 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
     public DefaultProjectManager(Dao dao, CommitInfoManager commitInfoManager,  
     		UserAuthorizationManager userAuthorizationManager, BuildManager buildManager, 
     		CacheManager cacheManager, AvatarManager avatarManager, SettingManager settingManager, 
-    		TransactionManager transactionManager, SessionManager sessionManager, 
-    		ListenerRegistry listenerRegistry) {
+    		TransactionManager transactionManager, RefUpdatedDispatcher refUpdatedDispatcher) {
     	super(dao);
     	
         this.commitInfoManager = commitInfoManager;
@@ -110,8 +106,7 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
         this.avatarManager = avatarManager;
         this.settingManager = settingManager;
         this.transactionManager = transactionManager;
-        this.sessionManager = sessionManager;
-        this.listenerRegistry = listenerRegistry;
+        this.refUpdatedDispatcher = refUpdatedDispatcher;
         
         try (InputStream is = getClass().getClassLoader().getResourceAsStream("git-receive-hook")) {
         	Preconditions.checkNotNull(is);
@@ -163,8 +158,12 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
     	} 
        	
     	if (oldName != null && !oldName.equals(project.getName())) {
-        	for (JobExecutor jobExecutor: settingManager.getJobExecutors())
+        	@SuppressWarnings("unchecked")
+        	List<JobExecutor> jobExecutors = (List<JobExecutor>) SerializationUtils.clone(
+        			(Serializable) settingManager.getJobExecutors());
+        	for (JobExecutor jobExecutor: jobExecutors)
         		jobExecutor.onRenameProject(oldName, project.getName());
+        	settingManager.saveJobExecutors(jobExecutors);
     	}
     	
     }
@@ -330,26 +329,13 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
 			throw ExceptionUtils.unchecked(e);
 		}
     	
-    	Subject subject = SecurityUtils.getSubject();
+    	Long userId = User.getCurrentId();
     	Long projectId = project.getId();
     	transactionManager.runAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-		    	sessionManager.runAsync(new Runnable() {
-
-					@Override
-					public void run() {
-						ThreadContext.bind(subject);
-						try {
-							Project project = load(projectId);
-							listenerRegistry.post(new RefUpdated(project, refName, commitId, ObjectId.zeroId()));
-						} finally {
-							ThreadContext.unbindSubject();
-						}
-					}
-		    		
-		    	});
+				refUpdatedDispatcher.dispatch(projectId, userId, refName, commitId, ObjectId.zeroId());
 			}
     		
     	});
@@ -386,26 +372,13 @@ public class DefaultProjectManager extends AbstractEntityManager<Project> implem
 			throw new RuntimeException(e);
 		}
 
-    	Subject subject = SecurityUtils.getSubject();
+    	Long userId = User.getCurrentId();
     	Long projectId = project.getId();
     	transactionManager.runAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-		    	sessionManager.runAsync(new Runnable() {
-
-					@Override
-					public void run() {
-						ThreadContext.bind(subject);
-						try {
-							Project project = load(projectId);
-							listenerRegistry.post(new RefUpdated(project, refName, commitId, ObjectId.zeroId()));
-						} finally {
-							ThreadContext.unbindSubject();
-						}
-					}
-		    		
-		    	});
+				refUpdatedDispatcher.dispatch(projectId, userId, refName, commitId, ObjectId.zeroId());
 			}
     		
     	});
@@ -20,7 +20,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.persistence.criteria.CriteriaBuilder;
@@ -48,6 +50,8 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
 import org.joda.time.DateTime;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +61,8 @@ import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.commons.utils.schedule.SchedulableTask;
+import io.onedev.commons.utils.schedule.TaskScheduler;
 import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
 import io.onedev.server.cache.CommitInfoManager;
@@ -74,7 +80,9 @@ import io.onedev.server.entitymanager.PullRequestReviewManager;
 import io.onedev.server.entitymanager.PullRequestUpdateManager;
 import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.event.build.BuildEvent;
+import io.onedev.server.event.entity.EntityPersisted;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.pullrequest.PullRequestBuildEvent;
 import io.onedev.server.event.pullrequest.PullRequestChangeEvent;
@@ -82,6 +90,8 @@ import io.onedev.server.event.pullrequest.PullRequestCodeCommentEvent;
 import io.onedev.server.event.pullrequest.PullRequestEvent;
 import io.onedev.server.event.pullrequest.PullRequestMergePreviewCalculated;
 import io.onedev.server.event.pullrequest.PullRequestOpened;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.git.command.FileChange;
 import io.onedev.server.model.Build;
@@ -120,6 +130,8 @@ import io.onedev.server.search.entity.EntityQuery;
 import io.onedev.server.search.entity.EntitySort;
 import io.onedev.server.search.entity.EntitySort.Direction;
 import io.onedev.server.search.entity.pullrequest.PullRequestQuery;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.ProjectPermission;
 import io.onedev.server.security.permission.ProjectPrivilege;
@@ -133,7 +145,8 @@ import io.onedev.server.util.work.BatchWorkManager;
 import io.onedev.server.util.work.BatchWorker;
 
 @Singleton
-public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest> implements PullRequestManager {
+public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest> 
+		implements PullRequestManager, SchedulableTask {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultPullRequestManager.class);
 	
@@ -155,6 +168,8 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 	
 	private final PullRequestReviewManager pullRequestReviewManager;
 	
+	private final RefUpdatedDispatcher refUpdatedDispatcher;
+	
 	private final PullRequestBuildManager pullRequestBuildManager;
 
 	private final BatchWorkManager batchWorkManager;
@@ -165,6 +180,18 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 	
 	private final JobManager jobManager;
 	
+	private final EntityTextManager entityTextManager;
+	
+	private final TaskScheduler taskScheduler;
+	
+	/*
+	 * Ids of open pull requests by target project. Loaded on first access, updated after 
+	 * pull requests are committed, and reloaded periodically to reconcile with database  
+	 */
+	private volatile Map<Long, Set<Long>> openRequestIds;
+	
+	private String taskId;
+	
 	@Inject
 	public DefaultPullRequestManager(Dao dao, PullRequestUpdateManager pullRequestUpdateManager,  
 			PullRequestReviewManager pullRequestReviewManager, UserManager userManager, 
@@ -172,7 +199,8 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 			ListenerRegistry listenerRegistry, SessionManager sessionManager,
 			PullRequestChangeManager pullRequestChangeManager, 
 			PullRequestBuildManager pullRequestBuildManager, TransactionManager transactionManager, 
-			JobManager jobManager, ProjectManager projectManager) {
+			JobManager jobManager, ProjectManager projectManager, RefUpdatedDispatcher refUpdatedDispatcher, 
+			EntityTextManager entityTextManager, TaskScheduler taskScheduler) {
 		super(dao);
 		
 		this.pullRequestUpdateManager = pullRequestUpdateManager;
@@ -186,6 +214,9 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		this.pullRequestBuildManager = pullRequestBuildManager;
 		this.jobManager = jobManager;
 		this.projectManager = projectManager;
+		this.refUpdatedDispatcher = refUpdatedDispatcher;
+		this.entityTextManager = entityTextManager;
+		this.taskScheduler = taskScheduler;
 	}
 	
 	@Transactional
@@ -326,29 +357,14 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		
 		request.getTargetProject().cacheObjectId(request.getTargetRef(), mergedId);
 		
-		Long requestId = request.getId();
-		Subject subject = SecurityUtils.getSubject();
+		Long targetProjectId = targetProject.getId();
+		Long userId = User.getCurrentId();
 		ObjectId newTargetHeadId = mergedId;
 		transactionManager.runAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-				dao.getSessionManager().runAsync(new Runnable() {
-
-					@Override
-					public void run() {
-						ThreadContext.bind(subject);
-						try {
-							PullRequest request = load(requestId);
-							request.getTargetProject().cacheObjectId(request.getTargetRef(), newTargetHeadId);
-							listenerRegistry.post(new RefUpdated(request.getTargetProject(), targetRef, 
-										targetHeadId, newTargetHeadId));
-						} finally {
-							ThreadContext.unbindSubject();
-						}
-					}
-					
-				});
+				refUpdatedDispatcher.dispatch(targetProjectId, userId, targetRef, targetHeadId, newTargetHeadId);
 			}
 		});
 	}
@@ -538,10 +554,35 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		};
 	}
 	
+	@Listen
+	public void on(SystemStarted event) {
+		taskId = taskScheduler.schedule(this);
+	}
+
+	@Listen
+	public void on(SystemStopping event) {
+		taskScheduler.unschedule(taskId);
+	}
+	
 	@Transactional
 	@Listen
 	public void on(EntityRemoved event) {
-		if (event.getEntity() instanceof Project) {
+		if (event.getEntity() instanceof PullRequest) {
+			PullRequest request = (PullRequest) event.getEntity();
+			Long requestId = request.getId();
+			Long targetProjectId = request.getTargetProject().getId();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (DefaultPullRequestManager.this) {
+						if (openRequestIds != null)
+							removeOpenRequestId(targetProjectId, requestId);
+					}
+				}
+				
+			});
+		} else if (event.getEntity() instanceof Project) {
 			Project project = (Project) event.getEntity();
 	    	for (PullRequest request: project.getOutgoingRequests()) {
 	    		if (!request.getTargetProject().equals(project) && request.isOpen())
@@ -611,13 +652,92 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		return query(criteria);
 	}
 
-	@Sessional
 	@Override
 	public int countOpen(Project targetProject) {
-		EntityCriteria<PullRequest> criteria = newCriteria();
-		criteria.add(PullRequest.CriterionHelper.ofOpen());
-		criteria.add(PullRequest.CriterionHelper.ofTargetProject(targetProject));
-		return count(criteria);
+		Set<Long> requestIds = getOpenRequestIds().get(targetProject.getId());
+		return requestIds != null? requestIds.size(): 0;
+	}
+	
+	private Map<Long, Set<Long>> getOpenRequestIds() {
+		Map<Long, Set<Long>> requestIds = openRequestIds;
+		if (requestIds == null) {
+			synchronized (this) {
+				if (openRequestIds == null)
+					openRequestIds = loadOpenRequestIds();
+				requestIds = openRequestIds;
+			}
+		}
+		return requestIds;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Map<Long, Set<Long>> loadOpenRequestIds() {
+		return sessionManager.call(() -> {
+			Map<Long, Set<Long>> requestIds = new ConcurrentHashMap<>();
+			Query<Object[]> query = getSession().createQuery("select id, targetProject.id from PullRequest "
+					+ "where closeInfo.status is null");
+			for (Object[] row: query.getResultList()) 
+				requestIds.computeIfAbsent((Long) row[1], it->ConcurrentHashMap.newKeySet()).add((Long) row[0]);
+			return requestIds;
+		});
+	}
+	
+	/**
+	 * Remove set of a project once it becomes empty, so that the map can be compared 
+	 * with the one loaded from database when reconciling 
+	 */
+	private void removeOpenRequestId(Long targetProjectId, Long requestId) {
+		Set<Long> requestIdsOfProject = openRequestIds.get(targetProjectId);
+		if (requestIdsOfProject != null) {
+			requestIdsOfProject.remove(requestId);
+			if (requestIdsOfProject.isEmpty())
+				openRequestIds.remove(targetProjectId);
+		}
+	}
+	
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof PullRequest) {
+			PullRequest request = (PullRequest) event.getEntity();
+			Long requestId = request.getId();
+			Long targetProjectId = request.getTargetProject().getId();
+			boolean open = request.isOpen();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (DefaultPullRequestManager.this) {
+						if (openRequestIds != null) {
+							if (open) 
+								openRequestIds.computeIfAbsent(targetProjectId, it->ConcurrentHashMap.newKeySet()).add(requestId);
+							else 
+								removeOpenRequestId(targetProjectId, requestId);
+						}
+					}
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Reconcile open pull request counters with database
+	 */
+	@Override
+	public void execute() {
+		synchronized (this) {
+			if (openRequestIds != null) {
+				Map<Long, Set<Long>> requestIds = loadOpenRequestIds();
+				if (!openRequestIds.equals(requestIds)) 
+					logger.warn("Open pull request counters reconciled with database");
+				openRequestIds = requestIds;
+			}
+		}
+	}
+
+	@Override
+	public ScheduleBuilder<?> getScheduleBuilder() {
+		return SimpleScheduleBuilder.repeatHourlyForever();
 	}
 
 	@Transactional
@@ -1058,6 +1178,9 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 					long buildNumber = Long.parseLong(term);
 					criteria.add(Restrictions.eq("number", buildNumber));
 				} catch (NumberFormatException e) {
+					List<PullRequest> ranked = queryByTitle("#" + term, count);
+					if (ranked != null)
+						return ranked;
 					criteria.add(Restrictions.or(
 							Restrictions.ilike("title", "#" + term, MatchMode.ANYWHERE),
 							Restrictions.ilike("noSpaceTitle", "#" + term, MatchMode.ANYWHERE)));
@@ -1067,6 +1190,9 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 					long buildNumber = Long.parseLong(term);
 					criteria.add(Restrictions.eq("number", buildNumber));
 				} catch (NumberFormatException e) {
+					List<PullRequest> ranked = queryByTitle(term, count);
+					if (ranked != null)
+						return ranked;
 					criteria.add(Restrictions.or(
 							Restrictions.ilike("title", term, MatchMode.ANYWHERE),
 							Restrictions.ilike("noSpaceTitle", term, MatchMode.ANYWHERE)));
@@ -1079,5 +1205,31 @@ public class DefaultPullRequestManager extends AbstractEntityManager<PullRequest
 		
 		return requests;
 	}
+	
+	@Nullable
+	private List<PullRequest> queryByTitle(String text, int count) {
+		List<Long> ids = entityTextManager.query(PullRequest.class, null, text, count, 
+				EntityTextField.TITLE, EntityTextField.NO_SPACE_TITLE);
+		if (ids != null) {
+			Map<Long, PullRequest> entities = new HashMap<>();
+			if (!ids.isEmpty()) {
+				EntityCriteria<PullRequest> criteria = newCriteria();
+				criteria.add(Restrictions.in("id", ids));
+				for (PullRequest entity: query(criteria))
+					entities.put(entity.getId(), entity);
+			}
+			
+			// keep relevance order of the text index
+			List<PullRequest> ranked = new ArrayList<>();
+			for (Long id: ids) {
+				PullRequest entity = entities.get(id);
+				if (entity != null)
+					ranked.add(entity);
+			}
+			return ranked;
+		} else {
+			return null;
+		}
+	}
 
 }
@@ -2,15 +2,23 @@ package io.onedev.server.entitymanager.impl;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.hibernate.criterion.Restrictions;
 
 import com.google.common.base.Preconditions;
 
+import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.maintenance.DataManager;
 import io.onedev.server.model.Setting;
 import io.onedev.server.model.Setting.Key;
@@ -21,6 +29,8 @@ import io.onedev.server.model.support.setting.GlobalIssueSetting;
 import io.onedev.server.model.support.setting.MailSetting;
 import io.onedev.server.model.support.setting.SecuritySetting;
 import io.onedev.server.model.support.setting.SystemSetting;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.AbstractEntityManager;
@@ -29,57 +39,73 @@ import io.onedev.server.persistence.dao.EntityCriteria;
 
 @Singleton
 public class DefaultSettingManager extends AbstractEntityManager<Setting> implements SettingManager {
-	
+
 	private final DataManager dataManager;
-	
-	private volatile Long systemSettingId;
-	
-	private volatile Long mailSettingId;
-	
-	private volatile Long backupSettingId;
-	
-	private volatile Long securitySettingId;
-	
-	private volatile Long issueSettingId;
-	
-	private volatile Long authenticatorId;
-	
-	private volatile Long jobExecutorsId;
-	
+
+	private final SessionManager sessionManager;
+
+	private final TransactionManager transactionManager;
+
+	/*
+	 * Decoded setting values by key. Values are loaded on first access, and replaced
+	 * with a copy of the persisted value after the persisting transaction commits
+	 */
+	private final Map<Key, Optional<Serializable>> values = new ConcurrentHashMap<>();
+
+	/*
+	 * Increased whenever a setting changes, so that values loaded concurrently with
+	 * the change will not be cached
+	 */
+	private final AtomicLong version = new AtomicLong();
+
 	@Inject
-	public DefaultSettingManager(Dao dao, DataManager dataManager) {
+	public DefaultSettingManager(Dao dao, DataManager dataManager, SessionManager sessionManager,
+			TransactionManager transactionManager) {
 		super(dao);
 		this.dataManager = dataManager;
+		this.sessionManager = sessionManager;
+		this.transactionManager = transactionManager;
+	}
+
+	private Serializable getValue(Key key) {
+		Optional<Serializable> value = values.get(key);
+		if (value == null) {
+			long versionBeforeLoad = version.get();
+			value = sessionManager.call(() -> {
+				Setting setting = getSetting(key);
+				Preconditions.checkNotNull(setting, "Setting not found: " + key);
+				return Optional.ofNullable(setting.getValue());
+			});
+			synchronized (values) {
+				if (version.get() == versionBeforeLoad)
+					values.putIfAbsent(key, value);
+			}
+		}
+		return value.orElse(null);
+	}
+
+	private void saveValue(Key key, Serializable value) {
+		Setting setting = getSetting(key);
+		if (setting == null) {
+			setting = new Setting();
+			setting.setKey(key);
+		}
+		setting.setValue(value);
+		dao.persist(setting);
 	}
 
-	@Sessional
 	@Override
 	public SystemSetting getSystemSetting() {
-        Setting setting;
-        if (systemSettingId == null) {
-    		setting = getSetting(Key.SYSTEM);
-    		Preconditions.checkNotNull(setting);
-            systemSettingId = setting.getId();
-        } else {
-            setting = load(systemSettingId);
-        }
-        SystemSetting value = (SystemSetting) setting.getValue();
-        Preconditions.checkNotNull(value);
-        return value;
+		SystemSetting value = (SystemSetting) getValue(Key.SYSTEM);
+		Preconditions.checkNotNull(value);
+		return value;
 	}
 
 	@Transactional
 	@Override
 	public void saveSystemSetting(SystemSetting systemSetting) {
 		Preconditions.checkNotNull(systemSetting);
-		
-		Setting setting = getSetting(Key.SYSTEM);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.SYSTEM);
-		}
-		setting.setValue(systemSetting);
-		dao.persist(setting);
+		saveValue(Key.SYSTEM, systemSetting);
 	}
 
 	@Sessional
@@ -88,162 +114,115 @@ public class DefaultSettingManager extends AbstractEntityManager<Setting> implem
 		return find(EntityCriteria.of(Setting.class).add(Restrictions.eq("key", key)));
 	}
 
-	@Sessional
 	@Override
 	public MailSetting getMailSetting() {
-        Setting setting;
-        if (mailSettingId == null) {
-    		setting = getSetting(Key.MAIL);
-    		Preconditions.checkNotNull(setting);
-    		mailSettingId = setting.getId();
-        } else {
-            setting = load(mailSettingId);
-        }
-        return (MailSetting) setting.getValue();
+		return (MailSetting) getValue(Key.MAIL);
 	}
 
 	@Transactional
 	@Override
 	public void saveMailSetting(MailSetting mailSetting) {
-		Setting setting = getSetting(Key.MAIL);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.MAIL);
-		}
-		setting.setValue(mailSetting);
-		dao.persist(setting);
+		saveValue(Key.MAIL, mailSetting);
 	}
 
-	@Sessional
 	@Override
 	public BackupSetting getBackupSetting() {
-        Setting setting;
-        if (backupSettingId == null) {
-    		setting = getSetting(Key.BACKUP);
-    		Preconditions.checkNotNull(setting);
-    		backupSettingId = setting.getId();
-        } else {
-            setting = load(backupSettingId);
-        }
-        return (BackupSetting) setting.getValue();
+		return (BackupSetting) getValue(Key.BACKUP);
 	}
 
 	@Transactional
 	@Override
 	public void saveBackupSetting(BackupSetting backupSetting) {
-		Setting setting = getSetting(Key.BACKUP);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.BACKUP);
-		}
-		setting.setValue(backupSetting);
-		dao.persist(setting);
+		saveValue(Key.BACKUP, backupSetting);
 		dataManager.scheduleBackup(backupSetting);
 	}
 
-	@Sessional
 	@Override
 	public SecuritySetting getSecuritySetting() {
-        Setting setting;
-        if (securitySettingId == null) {
-    		setting = getSetting(Key.SECURITY);
-    		Preconditions.checkNotNull(setting);
-    		securitySettingId = setting.getId();
-        } else {
-            setting = load(securitySettingId);
-        }
-        return (SecuritySetting) setting.getValue();
+		return (SecuritySetting) getValue(Key.SECURITY);
 	}
 
 	@Transactional
 	@Override
 	public void saveIssueSetting(GlobalIssueSetting issueSetting) {
-		Setting setting = getSetting(Key.ISSUE);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.ISSUE);
-		}
-		setting.setValue(issueSetting);
-		dao.persist(setting);
+		saveValue(Key.ISSUE, issueSetting);
 	}
-	
-	@Sessional
+
 	@Override
 	public GlobalIssueSetting getIssueSetting() {
-        Setting setting;
-        if (issueSettingId == null) {
-    		setting = getSetting(Key.ISSUE);
-    		Preconditions.checkNotNull(setting);
-    		issueSettingId = setting.getId();
-        } else {
-            setting = load(issueSettingId);
-        }
-        return (GlobalIssueSetting) setting.getValue();
+		return (GlobalIssueSetting) getValue(Key.ISSUE);
 	}
 
 	@Transactional
 	@Override
 	public void saveSecuritySetting(SecuritySetting securitySetting) {
-		Setting setting = getSetting(Key.SECURITY);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.SECURITY);
-		}
-		setting.setValue(securitySetting);
-		dao.persist(setting);
+		saveValue(Key.SECURITY, securitySetting);
 	}
-	
-	@Sessional
+
 	@Override
 	public Authenticator getAuthenticator() {
-        Setting setting;
-        if (authenticatorId == null) {
-    		setting = getSetting(Key.AUTHENTICATOR);
-    		Preconditions.checkNotNull(setting);
-    		authenticatorId = setting.getId();
-        } else {
-            setting = load(authenticatorId);
-        }
-        return (Authenticator) setting.getValue();
+		return (Authenticator) getValue(Key.AUTHENTICATOR);
 	}
 
 	@Transactional
 	@Override
 	public void saveAuthenticator(Authenticator authenticator) {
-		Setting setting = getSetting(Key.AUTHENTICATOR);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.AUTHENTICATOR);
-		}
-		setting.setValue(authenticator);
-		dao.persist(setting);
+		saveValue(Key.AUTHENTICATOR, authenticator);
 	}
 
-	@Sessional
 	@SuppressWarnings("unchecked")
 	@Override
 	public List<JobExecutor> getJobExecutors() {
-        Setting setting;
-        if (jobExecutorsId == null) {
-    		setting = getSetting(Key.JOB_EXECUTORS);
-    		Preconditions.checkNotNull(setting);
-    		jobExecutorsId = setting.getId();
-        } else {
-            setting = load(jobExecutorsId);
-        }
-        return (List<JobExecutor>) setting.getValue();
+		return (List<JobExecutor>) getValue(Key.JOB_EXECUTORS);
 	}
 
 	@Transactional
 	@Override
 	public void saveJobExecutors(List<JobExecutor> jobExecutors) {
-		Setting setting = getSetting(Key.JOB_EXECUTORS);
-		if (setting == null) {
-			setting = new Setting();
-			setting.setKey(Key.JOB_EXECUTORS);
+		saveValue(Key.JOB_EXECUTORS, (Serializable) jobExecutors);
+	}
+
+	@Listen
+	public void on(EntityPersisted event) {
+		if (event.getEntity() instanceof Setting) {
+			Setting setting = (Setting) event.getEntity();
+			Key key = setting.getKey();
+
+			/*
+			 * Cache a copy as the persisted value is still referenced by the caller, and
+			 * may be modified without being saved
+			 */
+			Optional<Serializable> value = Optional.ofNullable(SerializationUtils.clone(setting.getValue()));
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (values) {
+						version.incrementAndGet();
+						values.put(key, value);
+					}
+				}
+
+			});
+		}
+	}
+
+	@Listen
+	public void on(EntityRemoved event) {
+		if (event.getEntity() instanceof Setting) {
+			Key key = ((Setting) event.getEntity()).getKey();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (values) {
+						version.incrementAndGet();
+						values.remove(key);
+					}
+				}
+
+			});
 		}
-		setting.setValue((Serializable) jobExecutors);
-		dao.persist(setting);
 	}
 
 }
@@ -3,6 +3,7 @@ package io.onedev.server.entitymanager.impl;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.shiro.authc.credential.PasswordService;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.hibernate.ReplicationMode;
@@ -22,6 +23,7 @@ import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
 import io.onedev.server.model.support.BranchProtection;
 import io.onedev.server.model.support.TagProtection;
+import io.onedev.server.model.support.setting.GlobalIssueSetting;
 import io.onedev.server.persistence.annotation.Sessional;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.persistence.dao.AbstractEntityManager;
@@ -77,7 +79,9 @@ public class DefaultUserManager extends AbstractEntityManager<User> implements U
     		}
     		
     		issueFieldManager.onRenameUser(oldName, user.getName());
-    		settingManager.getIssueSetting().onRenameUser(oldName, user.getName());
+    		GlobalIssueSetting issueSetting = SerializationUtils.clone(settingManager.getIssueSetting());
+    		issueSetting.onRenameUser(oldName, user.getName());
+    		settingManager.saveIssueSetting(issueSetting);
     	}
     }
     
@@ -105,9 +109,11 @@ public class DefaultUserManager extends AbstractEntityManager<User> implements U
 			usage.prefix("project '" + project.getName() + "': setting");
 		}
 
-		usage.add(settingManager.getIssueSetting().onDeleteUser(user.getName()).prefix("administration"));
+		GlobalIssueSetting issueSetting = SerializationUtils.clone(settingManager.getIssueSetting());
+		usage.add(issueSetting.onDeleteUser(user.getName()).prefix("administration"));
 		
 		usage.checkInUse("User '" + user.getName() + "'");
+		settingManager.saveIssueSetting(issueSetting);
     	
     	Query<?> query = getSession().createQuery("update PullRequest set submitter=null, submitterName=:submitterName "
     			+ "where submitter=:submitter");
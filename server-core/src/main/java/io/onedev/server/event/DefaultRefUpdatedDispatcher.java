@@ -0,0 +1,557 @@
+package io.onedev.server.event;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.shiro.util.ThreadContext;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Sets;
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Scopes;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.User;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.storage.StorageManager;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.EnvironmentConfig;
+import jetbrains.exodus.env.Environments;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
+
+@Singleton
+public class DefaultRefUpdatedDispatcher implements RefUpdatedDispatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultRefUpdatedDispatcher.class);
+	
+	private static final String JOURNAL_DIR = "ref_update_journal";
+	
+	private static final String JOURNAL_STORE = "journal";
+	
+	private static final String COMPLETION_STORE = "completion";
+	
+	private static final int MAX_PENDING_PER_PROJECT = 1000;
+	
+	private static final int MAX_PARALLEL_PROJECTS = Runtime.getRuntime().availableProcessors();
+	
+	private static final int MAX_POST_ATTEMPTS = 3;
+	
+	private static final long RETRY_DELAY = 1000;
+	
+	private static final long NULL_USER_ID = -1;
+	
+	/*
+	 * Whether or not current thread is posting events. Dispatching from listeners should not 
+	 * wait for pending events to be posted, as this may wait for the thread itself
+	 */
+	private static final ThreadLocal<Boolean> posting = new ThreadLocal<>();
+	
+	private final StorageManager storageManager;
+	
+	private final Dao dao;
+	
+	private final SessionManager sessionManager;
+	
+	private final Injector injector;
+	
+	private final ExecutorService executorService;
+	
+	private final Map<Long, Queue<PendingEvent>> pendingEvents = new HashMap<>();
+	
+	/*
+	 * Projects with pending events but not being posted due to limit of parallelism
+	 */
+	private final Set<Long> waitingProjects = new LinkedHashSet<>();
+	
+	private final Set<Long> postingProjects = new LinkedHashSet<>();
+	
+	private final AtomicLong sequence = new AtomicLong(0);
+	
+	private final AtomicLong postedCount = new AtomicLong(0);
+	
+	private final AtomicLong failedCount = new AtomicLong(0);
+	
+	private volatile Environment env;
+	
+	private volatile Store journalStore;
+	
+	/*
+	 * Listeners already notified of journaled events, so that retrying or replaying an 
+	 * event only notifies listeners not notified yet
+	 */
+	private volatile Store completionStore;
+	
+	private volatile List<RefUpdatedListener> listeners;
+	
+	private volatile boolean started;
+	
+	@Inject
+	public DefaultRefUpdatedDispatcher(StorageManager storageManager, Dao dao, SessionManager sessionManager, 
+			Injector injector, ExecutorService executorService) {
+		this.storageManager = storageManager;
+		this.dao = dao;
+		this.sessionManager = sessionManager;
+		this.injector = injector;
+		this.executorService = executorService;
+	}
+	
+	@Listen
+	public synchronized void on(SystemStarting event) {
+		File journalDir = new File(storageManager.getStorageDir(), JOURNAL_DIR);
+		FileUtils.createDir(journalDir);
+		EnvironmentConfig config = new EnvironmentConfig();
+		config.setEnvCloseForcedly(true);
+		env = Environments.newInstance(journalDir, config);
+		journalStore = env.computeInTransaction(new TransactionalComputable<Store>() {
+			
+		    @Override
+		    public Store compute(Transaction txn) {
+		        return env.openStore(JOURNAL_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+		    }
+		    
+		});		
+		completionStore = env.computeInTransaction(new TransactionalComputable<Store>() {
+			
+		    @Override
+		    public Store compute(Transaction txn) {
+		        return env.openStore(COMPLETION_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+		    }
+		    
+		});		
+		
+		// Restore pending events and sequence as soon as journal is opened, so that events 
+		// dispatched before system started do not reuse sequence of journaled events 
+		env.executeInReadonlyTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				try (Cursor cursor = journalStore.openCursor(txn)) {
+					while (cursor.getNext()) {
+						PendingEvent pendingEvent = PendingEvent.fromBytes(
+								readLong(cursor.getKey()), toBytes(cursor.getValue()));
+						ByteIterable completionBytes = completionStore.get(txn, cursor.getKey());
+						if (completionBytes != null) {
+							String completion = new String(toBytes(completionBytes), StandardCharsets.UTF_8);
+							pendingEvent.completedListeners.addAll(Splitter.on('\n').splitToList(completion));
+						}
+						sequence.set(pendingEvent.sequence);
+						getPendingEvents(pendingEvent.projectId).add(pendingEvent);
+					}
+				}
+			}
+			
+		});
+	}
+	
+	@Listen
+	public synchronized void on(SystemStarted event) {
+		int pendingCount = getPendingCount();
+		if (pendingCount != 0)
+			logger.info("Replaying {} journaled ref update events...", pendingCount);
+		started = true;
+		for (Long projectId: pendingEvents.keySet())
+			schedule(projectId);
+	}
+
+	@Listen
+	public synchronized void on(SystemStopping event) {
+		started = false;
+		notifyAll();
+		if (env != null) {
+			env.close();
+			env = null;
+		}
+	}
+	
+	private Queue<PendingEvent> getPendingEvents(Long projectId) {
+		Queue<PendingEvent> pendingEventsOfProject = pendingEvents.get(projectId);
+		if (pendingEventsOfProject == null) {
+			pendingEventsOfProject = new ArrayDeque<>();
+			pendingEvents.put(projectId, pendingEventsOfProject);
+		}
+		return pendingEventsOfProject;
+	}
+	
+	@Override
+	public synchronized void dispatch(Long projectId, Long userId, String refName, 
+			ObjectId oldCommitId, ObjectId newCommitId) {
+		if (posting.get() == null) {
+			while (started && getPendingEvents(projectId).size() >= MAX_PENDING_PER_PROJECT) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		if (env == null) {
+			logger.warn("Ref update event dropped as system is not running (project id: {}, ref: {})", 
+					projectId, refName);
+			return;
+		}
+		
+		PendingEvent pendingEvent = new PendingEvent(sequence.incrementAndGet(), projectId, userId, 
+				refName, oldCommitId.copy(), newCommitId.copy());
+		env.executeInTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				journalStore.put(txn, longToEntry(pendingEvent.sequence), 
+						new ArrayByteIterable(pendingEvent.toBytes()));
+			}
+			
+		});
+		getPendingEvents(projectId).add(pendingEvent);
+		schedule(projectId);
+	}
+	
+	private synchronized void schedule(Long projectId) {
+		if (!started || postingProjects.contains(projectId))
+			return;
+		if (postingProjects.size() >= MAX_PARALLEL_PROJECTS) {
+			waitingProjects.add(projectId);
+			return;
+		} 
+		waitingProjects.remove(projectId);
+		postingProjects.add(projectId);
+		executorService.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				post(projectId);
+			}
+			
+		});
+	}
+	
+	private void post(Long projectId) {
+		while (true) {
+			PendingEvent pendingEvent;
+			synchronized (this) {
+				pendingEvent = getPendingEvents(projectId).peek();
+				if (pendingEvent == null || !started) {
+					if (pendingEvent == null)
+						pendingEvents.remove(projectId);
+					stopPosting(projectId);
+					return;
+				}
+			}
+			
+			boolean done = false;
+			for (int attempt=1; ; attempt++) {
+				try {
+					post(projectId, pendingEvent);
+					postedCount.incrementAndGet();
+					done = true;
+					break;
+				} catch (Exception e) {
+					if (!started) {
+						logger.warn("Error posting ref update event, will post again after server restart", e);
+						break;
+					} else if (attempt < MAX_POST_ATTEMPTS) {
+						logger.warn("Error posting ref update event, will retry", e);
+						try {
+							Thread.sleep(RETRY_DELAY * attempt);
+						} catch (InterruptedException e2) {
+							break;
+						}
+					} else {
+						failedCount.incrementAndGet();
+						logger.error("Error posting ref update event, dropping it", e);
+						done = true;
+						break;
+					}
+				}
+			}
+			
+			synchronized (this) {
+				if (!done) {
+					/*
+					 * Keep the event at head of project queue and in journal, so that later 
+					 * events of the project are not posted before it
+					 */
+					stopPosting(projectId);
+					return;
+				}
+				if (env != null) {
+					env.executeInTransaction(new TransactionalExecutable() {
+
+						@Override
+						public void execute(Transaction txn) {
+							journalStore.delete(txn, longToEntry(pendingEvent.sequence));
+							completionStore.delete(txn, longToEntry(pendingEvent.sequence));
+						}
+						
+					});
+				}
+				getPendingEvents(projectId).poll();
+				notifyAll();
+			}
+		}
+	}
+	
+	private synchronized void stopPosting(Long projectId) {
+		postingProjects.remove(projectId);
+		notifyAll();
+		if (!waitingProjects.isEmpty())
+			schedule(waitingProjects.iterator().next());
+	}
+	
+	/**
+	 * Post specified event to listeners not notified yet. Listeners notified successfully are 
+	 * recorded even if other listeners fail, so that they are not notified again when the 
+	 * event is retried or replayed
+	 */
+	private void post(Long projectId, PendingEvent pendingEvent) {
+		sessionManager.run(new Runnable() {
+
+			@Override
+			public void run() {
+				if (pendingEvent.userId != null)
+					ThreadContext.bind(User.asSubject(pendingEvent.userId));
+				posting.set(true);
+				try {
+					Project project = dao.get(Project.class, projectId);
+					if (project != null) {
+						if (!pendingEvent.newCommitId.equals(ObjectId.zeroId()))
+							project.cacheObjectId(pendingEvent.refName, pendingEvent.newCommitId);
+						else
+							project.cacheObjectId(pendingEvent.refName, null);
+						
+						RefUpdated event = new RefUpdated(project, pendingEvent.refName, 
+								pendingEvent.oldCommitId, pendingEvent.newCommitId);
+						Exception failure = null;
+						for (RefUpdatedListener listener: getListeners()) {
+							if (pendingEvent.completedListeners.contains(listener.name))
+								continue;
+							try {
+								listener.invoke(event);
+								complete(pendingEvent, listener);
+							} catch (Exception e) {
+								if (failure == null)
+									failure = e;
+								else
+									failure.addSuppressed(e);
+							}
+						}
+						if (failure != null)
+							throw ExceptionUtils.unchecked(failure);
+					}
+				} finally {
+					posting.remove();
+					ThreadContext.unbindSubject();
+				}
+			}
+			
+		});
+	}
+	
+	private synchronized void complete(PendingEvent pendingEvent, RefUpdatedListener listener) {
+		pendingEvent.completedListeners.add(listener.name);
+		if (env != null) {
+			byte[] completionBytes = Joiner.on('\n').join(pendingEvent.completedListeners)
+					.getBytes(StandardCharsets.UTF_8);
+			env.executeInTransaction(new TransactionalExecutable() {
+
+				@Override
+				public void execute(Transaction txn) {
+					completionStore.put(txn, longToEntry(pendingEvent.sequence), 
+							new ArrayByteIterable(completionBytes));
+				}
+				
+			});
+		}
+	}
+	
+	/**
+	 * Find listener methods of {@link RefUpdated} from singletons, the same way as listener 
+	 * registry does
+	 */
+	private List<RefUpdatedListener> getListeners() {
+		if (listeners == null) {
+			List<RefUpdatedListener> listeners = new ArrayList<>();
+			Set<Object> singletons = Sets.newIdentityHashSet();
+			for (Binding<?> binding: injector.getAllBindings().values()) {
+				if (!Scopes.isSingleton(binding))
+					continue;
+				Object singleton = binding.getProvider().get();
+				if (singleton == null || !singletons.add(singleton))
+					continue;
+				Set<String> signatures = new HashSet<>();
+				for (Class<?> clazz = singleton.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+					for (Method method: clazz.getDeclaredMethods()) {
+						if (method.getAnnotation(Listen.class) != null 
+								&& method.getParameterTypes().length == 1
+								&& method.getParameterTypes()[0].isAssignableFrom(RefUpdated.class)
+								&& signatures.add(method.getName() + "(" + method.getParameterTypes()[0].getName() + ")")) {
+							method.setAccessible(true);
+							listeners.add(new RefUpdatedListener(singleton, method));
+						}
+					}
+				}
+			}
+			this.listeners = listeners;
+		}
+		return listeners;
+	}
+	
+	@Override
+	public synchronized int getPendingCount(Long projectId) {
+		Queue<PendingEvent> pendingEventsOfProject = pendingEvents.get(projectId);
+		return pendingEventsOfProject != null? pendingEventsOfProject.size(): 0;
+	}
+
+	@Override
+	public synchronized int getPendingCount() {
+		int count = 0;
+		for (Queue<PendingEvent> pendingEventsOfProject: pendingEvents.values())
+			count += pendingEventsOfProject.size();
+		return count;
+	}
+
+	@Override
+	public long getPostedCount() {
+		return postedCount.get();
+	}
+
+	@Override
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+	
+	private static ByteIterable longToEntry(long value) {
+		return new ArrayByteIterable(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+	}
+	
+	private static byte[] toBytes(ByteIterable byteIterable) {
+		return Arrays.copyOf(byteIterable.getBytesUnsafe(), byteIterable.getLength());
+	}
+	
+	private static long readLong(ByteIterable byteIterable) {
+		return ByteBuffer.wrap(toBytes(byteIterable)).getLong();
+	}
+	
+	private static class RefUpdatedListener {
+		
+		final Object singleton;
+		
+		final Method method;
+		
+		final String name;
+		
+		RefUpdatedListener(Object singleton, Method method) {
+			this.singleton = singleton;
+			this.method = method;
+			name = method.getDeclaringClass().getName() + "." + method.getName() 
+					+ "(" + method.getParameterTypes()[0].getName() + ")";
+		}
+		
+		void invoke(RefUpdated event) {
+			try {
+				method.invoke(singleton, event);
+			} catch (InvocationTargetException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			} catch (IllegalAccessException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		
+	}
+	
+	private static class PendingEvent {
+		
+		final long sequence;
+		
+		final Long projectId;
+		
+		@Nullable
+		final Long userId;
+		
+		final String refName;
+		
+		final ObjectId oldCommitId;
+		
+		final ObjectId newCommitId;
+		
+		final Set<String> completedListeners = new HashSet<>();
+		
+		PendingEvent(long sequence, Long projectId, Long userId, String refName, 
+				ObjectId oldCommitId, ObjectId newCommitId) {
+			this.sequence = sequence;
+			this.projectId = projectId;
+			this.userId = userId;
+			this.refName = refName;
+			this.oldCommitId = oldCommitId;
+			this.newCommitId = newCommitId;
+		}
+		
+		byte[] toBytes() {
+			byte[] refNameBytes = refName.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer = ByteBuffer.allocate(2*Long.BYTES + 2*Constants.OBJECT_ID_LENGTH + refNameBytes.length);
+			buffer.putLong(projectId);
+			buffer.putLong(userId != null? userId: NULL_USER_ID);
+			byte[] commitBytes = new byte[Constants.OBJECT_ID_LENGTH];
+			oldCommitId.copyRawTo(commitBytes, 0);
+			buffer.put(commitBytes);
+			newCommitId.copyRawTo(commitBytes, 0);
+			buffer.put(commitBytes);
+			buffer.put(refNameBytes);
+			return buffer.array();
+		}
+		
+		static PendingEvent fromBytes(long sequence, byte[] bytes) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			Long projectId = buffer.getLong();
+			Long userId = buffer.getLong();
+			if (userId == NULL_USER_ID)
+				userId = null;
+			ObjectId oldCommitId = ObjectId.fromRaw(bytes, buffer.position());
+			buffer.position(buffer.position() + Constants.OBJECT_ID_LENGTH);
+			ObjectId newCommitId = ObjectId.fromRaw(bytes, buffer.position());
+			buffer.position(buffer.position() + Constants.OBJECT_ID_LENGTH);
+			String refName = new String(bytes, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+			return new PendingEvent(sequence, projectId, userId, refName, oldCommitId, newCommitId);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,59 @@
+package io.onedev.server.event;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+public interface RefUpdatedDispatcher {
+	
+	/**
+	 * Post {@link RefUpdated} event to listeners asynchronously. Events of the same project 
+	 * are posted in order of dispatching, while events of different projects are posted 
+	 * in parallel. An event failing to be posted is retried before later events of the 
+	 * project, and is dropped if still failing. Dispatched events are journaled with 
+	 * notified listeners until posted, so that they are posted again after server restart 
+	 * if not posted yet. Retrying or replaying an event only notifies listeners not notified 
+	 * successfully yet. This method blocks if too many events of the project are still 
+	 * pending, unless it is called from a listener of dispatched events. Events dispatched 
+	 * while system is not running are dropped
+	 * 
+	 * @param projectId
+	 * 			id of the project whose ref is updated
+	 * @param userId
+	 * 			id of the user updating the ref, listeners will be called as this user. 
+	 * 			<tt>null</tt> if the ref is not updated by a user
+	 * @param refName
+	 * 			name of updated ref
+	 * @param oldCommitId
+	 * 			old commit id of the ref, or {@link ObjectId#zeroId()} if the ref is created
+	 * @param newCommitId
+	 * 			new commit id of the ref, or {@link ObjectId#zeroId()} if the ref is deleted
+	 */
+	void dispatch(Long projectId, @Nullable Long userId, String refName, ObjectId oldCommitId, ObjectId newCommitId);
+	
+	/**
+	 * @return
+	 * 			number of pending events of specified project
+	 */
+	int getPendingCount(Long projectId);
+	
+	/**
+	 * @return
+	 * 			number of pending events of all projects
+	 */
+	int getPendingCount();
+	
+	/**
+	 * @return
+	 * 			number of events posted since server start
+	 */
+	long getPostedCount();
+	
+	/**
+	 * @return
+	 * 			number of events dropped since server start as their listeners still failed 
+	 * 			after retries
+	 */
+	long getFailedCount();
+	
+}
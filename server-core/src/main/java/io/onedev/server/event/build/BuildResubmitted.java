@@ -0,0 +1,11 @@
+package io.onedev.server.event.build;
+
+import io.onedev.server.model.Build;
+
+public class BuildResubmitted extends BuildSubmitted {
+
+	public BuildResubmitted(Build build) {
+		super(build);
+	}
+
+}
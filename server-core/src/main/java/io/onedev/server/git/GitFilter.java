@@ -30,12 +30,12 @@ import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.utils.concurrent.PrioritizedRunnable;
 import io.onedev.server.OneDev;
+import io.onedev.server.cache.PackCacheManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.git.command.AdvertiseReceiveRefsCommand;
 import io.onedev.server.git.command.AdvertiseUploadRefsCommand;
 import io.onedev.server.git.command.ReceiveCommand;
-import io.onedev.server.git.command.UploadCommand;
 import io.onedev.server.git.exception.GitException;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
@@ -66,15 +66,19 @@ public class GitFilter implements Filter {
 	
 	private final SettingManager configManager;
 	
+	private final PackCacheManager packCacheManager;
+	
 	@Inject
 	public GitFilter(OneDev oneDev, StorageManager storageManager, ProjectManager projectManager, 
-			WorkExecutor workManager, ServerConfig serverConfig, SettingManager configManager) {
+			WorkExecutor workManager, ServerConfig serverConfig, SettingManager configManager, 
+			PackCacheManager packCacheManager) {
 		this.oneDev = oneDev;
 		this.storageManager = storageManager;
 		this.projectManager = projectManager;
 		this.workExecutor = workManager;
 		this.serverConfig = serverConfig;
 		this.configManager = configManager;
+		this.packCacheManager = packCacheManager;
 	}
 	
 	private String getPathInfo(HttpServletRequest request) {
@@ -152,7 +156,7 @@ public class GitFilter implements Filter {
 					try {
 						InputStream is = ServletUtils.getInputStream(request);
 						OutputStream os = response.getOutputStream();
-						new UploadCommand(gitDir, environments).input(is).output(os).call();
+						packCacheManager.upload(project, environments, is, os);
 					} catch (IOException e) {
 						throw new RuntimeException(e);
 					}
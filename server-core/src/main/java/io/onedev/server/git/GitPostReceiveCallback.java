@@ -18,10 +18,9 @@ import org.eclipse.jgit.lib.RefUpdate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.entitymanager.ProjectManager;
-import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
 import io.onedev.server.persistence.SessionManager;
@@ -38,15 +37,16 @@ public class GitPostReceiveCallback extends HttpServlet {
     
     private final ProjectManager projectManager;
 
-    private final ListenerRegistry listenerRegistry;
+    private final RefUpdatedDispatcher refUpdatedDispatcher;
     
     private final SessionManager sessionManager;
     
     @Inject
-    public GitPostReceiveCallback(ProjectManager projectManager, SessionManager sessionManager, ListenerRegistry listenerRegistry) {
+    public GitPostReceiveCallback(ProjectManager projectManager, SessionManager sessionManager, 
+    		RefUpdatedDispatcher refUpdatedDispatcher) {
     	this.projectManager = projectManager;
     	this.sessionManager = sessionManager;
-        this.listenerRegistry = listenerRegistry;
+        this.refUpdatedDispatcher = refUpdatedDispatcher;
     }
 
     @Override
@@ -117,7 +117,7 @@ public class GitPostReceiveCallback extends HttpServlet {
 			        		GitUtils.linkRef(refUpdate, refName);
 			        	}
 			        	
-			        	listenerRegistry.post(new RefUpdated(project, refName, oldObjectId, newObjectId));
+			        	refUpdatedDispatcher.dispatch(projectId, userId, refName, oldObjectId, newObjectId);
 			    		
 			        	field = field.substring(40);
 			        	if (field.length() == 0)
@@ -0,0 +1,65 @@
+package io.onedev.server.maintenance;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.hibernate.Interceptor;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.naming.PhysicalNamingStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.bootstrap.Bootstrap;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.persistence.DefaultPersistManager;
+import io.onedev.server.persistence.HibernateProperties;
+import io.onedev.server.persistence.IdManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.validation.EntityValidator;
+
+/**
+ * Clean full-text index of issues and pull requests so that it will be rebuilt 
+ * in background at next server start
+ */
+@Singleton
+public class RebuildEntityTextIndex extends DefaultPersistManager {
+
+	public static final String COMMAND = "rebuild_entity_text_index";
+	
+	private static final Logger logger = LoggerFactory.getLogger(RebuildEntityTextIndex.class);
+	
+	private final StorageManager storageManager;
+	
+	@Inject
+	public RebuildEntityTextIndex(PhysicalNamingStrategy physicalNamingStrategy, HibernateProperties properties, 
+			Interceptor interceptor, IdManager idManager, Dao dao, EntityValidator validator, 
+			TransactionManager transactionManager, StorageManager storageManager) {
+		super(physicalNamingStrategy, properties, interceptor, idManager, dao, validator, transactionManager);
+		this.storageManager = storageManager;
+	}
+
+	@Override
+	public void start() {
+		if (Bootstrap.isServerRunning(Bootstrap.installDir)) {
+			logger.error("Please stop server before rebuilding entity text index");
+			System.exit(1);
+		}
+
+		checkDataVersion(false);
+
+		Metadata metadata = buildMetadata();
+		sessionFactory = metadata.getSessionFactoryBuilder().applyInterceptor(interceptor).build();
+		
+		File indexDir = storageManager.getEntityTextIndexDir();
+		FileUtils.cleanDir(indexDir);
+		sessionFactory.close();
+		
+		logger.info("Entity text index cleaned, and will be rebuilt at next server start");
+		System.exit(0);
+	}
+
+}
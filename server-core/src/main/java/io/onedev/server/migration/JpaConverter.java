@@ -1,6 +1,9 @@
 package io.onedev.server.migration;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +32,7 @@ import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.ReflectionUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.persistence.LazyValue;
 import io.onedev.server.persistence.dao.Dao;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
@@ -78,6 +82,11 @@ public class JpaConverter extends ReflectionConverter {
 		} else if (newObj instanceof HibernateProxy) {
 			newObj = ((HibernateProxy)newObj).getHibernateLazyInitializer().getImplementation();
 			super.marshallField(context, newObj, field);
+		} else if (newObj instanceof LazyValue) {
+			// Marshal content of lazy value directly so that exported data stays the same 
+			Object value = ((LazyValue) newObj).get();
+			if (value != null)
+				super.marshallField(context, value, field);
 		} else if (newObj instanceof VersionedDocument) {
 			marshallElement(writer, ((VersionedDocument)newObj).getRootElement());
 		} else if (Collection.class.isAssignableFrom(field.getType()) 
@@ -143,6 +152,11 @@ public class JpaConverter extends ReflectionConverter {
 			return AppLoader.getInstance(Dao.class).load(
 					(Class<? extends AbstractEntity>) field.getType(), 
 					Long.valueOf(reader.getValue()));
+		} else if (field.getType() == LazyValue.class) {
+			Type valueType = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+			if (valueType instanceof ParameterizedType)
+				valueType = ((ParameterizedType) valueType).getRawType();
+			return new LazyValue((Serializable) context.convertAnother(result, (Class<?>) valueType));
 		} else if (field.getType() == VersionedDocument.class) {
 			VersionedDocument vdom = new VersionedDocument();
 			reader.moveDown();
@@ -12,8 +12,11 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.NamedBuildQuery;
 import io.onedev.server.model.support.QuerySetting;
+import io.onedev.server.persistence.CompactSerializableType;
 import io.onedev.server.util.watch.QuerySubscriptionSupport;
 import io.onedev.server.util.watch.QueryWatchSupport;
 
@@ -35,6 +38,7 @@ public class BuildQuerySetting extends QuerySetting<NamedBuildQuery> {
 	private User user;
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private ArrayList<NamedBuildQuery> userQueries = new ArrayList<>();
 
@@ -12,8 +12,11 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.NamedCodeCommentQuery;
 import io.onedev.server.model.support.QuerySetting;
+import io.onedev.server.persistence.CompactSerializableType;
 import io.onedev.server.util.watch.QuerySubscriptionSupport;
 import io.onedev.server.util.watch.QueryWatchSupport;
 
@@ -35,6 +38,7 @@ public class CodeCommentQuerySetting extends QuerySetting<NamedCodeCommentQuery>
 	private User user;
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private ArrayList<NamedCodeCommentQuery> userQueries = new ArrayList<>();
 
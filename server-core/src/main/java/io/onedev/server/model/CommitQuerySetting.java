@@ -13,8 +13,11 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.NamedCommitQuery;
 import io.onedev.server.model.support.QuerySetting;
+import io.onedev.server.persistence.CompactSerializableType;
 import io.onedev.server.util.watch.QuerySubscriptionSupport;
 import io.onedev.server.util.watch.QueryWatchSupport;
 
@@ -36,10 +39,12 @@ public class CommitQuerySetting extends QuerySetting<NamedCommitQuery> {
 	private User user;
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private ArrayList<NamedCommitQuery> userQueries = new ArrayList<>();
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private LinkedHashSet<String> userQuerySubscriptions = new LinkedHashSet<>();
 	
@@ -3,6 +3,7 @@ package io.onedev.server.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -36,7 +37,6 @@ import com.fasterxml.jackson.annotation.JsonView;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
-import edu.emory.mathcs.backport.java.util.Collections;
 import io.onedev.server.OneDev;
 import io.onedev.server.cache.CommitInfoManager;
 import io.onedev.server.cache.UserInfoManager;
@@ -135,6 +135,8 @@ public class Issue extends AbstractEntity implements Referenceable, AttachmentSt
 	
 	private transient List<RevCommit> commits;
 	
+	private transient Map<String, Input> fieldInputs;
+	
 	public long getVersion() {
 		return version;
 	}
@@ -289,6 +291,7 @@ public class Issue extends AbstractEntity implements Referenceable, AttachmentSt
 
 	public void setFields(Collection<IssueField> fields) {
 		this.fields = fields;
+		fieldInputs = null;
 	}
 	
 	public Date getUpdateDate() {
@@ -314,6 +317,12 @@ public class Issue extends AbstractEntity implements Referenceable, AttachmentSt
 	}
 	
 	public Map<String, Input> getFieldInputs() {
+		if (fieldInputs == null) 
+			fieldInputs = Collections.unmodifiableMap(buildFieldInputs());
+		return fieldInputs;
+	}
+	
+	private Map<String, Input> buildFieldInputs() {
 		Map<String, Input> inputs = new LinkedHashMap<>();
 
 		Map<String, List<IssueField>> fieldMap = new HashMap<>(); 
@@ -399,6 +408,7 @@ public class Issue extends AbstractEntity implements Referenceable, AttachmentSt
 			if (fieldNames.contains(it.next().getName()))
 				it.remove();
 		}
+		fieldInputs = null;
 	}
 	
 	public void setFieldValues(Map<String, Object> fieldValues) {
@@ -411,6 +421,7 @@ public class Issue extends AbstractEntity implements Referenceable, AttachmentSt
 			if (fieldName.equals(it.next().getName()))
 				it.remove();
 		}
+		fieldInputs = null;
 		
 		InputSpec fieldSpec = getIssueSetting().getFieldSpec(fieldName);
 		if (fieldSpec != null) {
@@ -11,7 +11,10 @@ import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.issue.changedata.IssueChangeData;
+import io.onedev.server.persistence.CompactSerializableType;
 
 @Entity
 @Table(indexes={
@@ -34,6 +37,7 @@ public class IssueChange extends AbstractEntity {
 	private Date date;
 	
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(length=65535)
 	private IssueChangeData data;
 
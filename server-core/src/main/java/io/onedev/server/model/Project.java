@@ -16,7 +16,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -35,9 +34,6 @@ import javax.validation.ConstraintValidatorContext;
 import javax.validation.Valid;
 import javax.validation.ValidationException;
 
-import org.apache.commons.lang3.SerializationUtils;
-import org.apache.shiro.subject.Subject;
-import org.apache.shiro.util.ThreadContext;
 import org.eclipse.jgit.api.CreateBranchCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.TagCommand;
@@ -52,7 +48,6 @@ import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.LastCommitsOfChildren;
-import org.eclipse.jgit.revwalk.LastCommitsOfChildren.Value;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -60,6 +55,7 @@ import org.eclipse.jgit.treewalk.TreeWalk;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Type;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import com.fasterxml.jackson.annotation.JsonView;
@@ -67,10 +63,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 
-import io.onedev.commons.launcher.loader.ListenerRegistry;
-import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.LinearRange;
-import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.stringmatch.ChildAwareMatcher;
 import io.onedev.commons.utils.stringmatch.Matcher;
@@ -91,7 +84,7 @@ import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.PullRequestQuerySettingManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.entitymanager.UserManager;
-import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.git.BlameBlock;
 import io.onedev.server.git.Blob;
 import io.onedev.server.git.BlobIdent;
@@ -115,7 +108,8 @@ import io.onedev.server.model.support.WebHook;
 import io.onedev.server.model.support.build.BuildSetting;
 import io.onedev.server.model.support.issue.IssueSetting;
 import io.onedev.server.model.support.pullrequest.NamedPullRequestQuery;
-import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.LazyCompactSerializableType;
+import io.onedev.server.persistence.LazyValue;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.security.permission.DefaultPrivilege;
@@ -160,9 +154,10 @@ public class Project extends AbstractEntity implements Validatable {
 	private DefaultPrivilege defaultPrivilege;
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, name="COMMIT_MSG_TRANSFORM")
 	@JsonView(DefaultView.class)
-	private ArrayList<CommitMessageTransform> commitMessageTransforms = new ArrayList<>();
+	private LazyValue<ArrayList<CommitMessageTransform>> commitMessageTransforms = new LazyValue<>(new ArrayList<>());
 	
 	/*
 	 * Optimistic lock is necessary to ensure database integrity when update 
@@ -175,19 +170,22 @@ public class Project extends AbstractEntity implements Validatable {
     private Collection<Build> builds = new ArrayList<>();
     
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	@JsonView(DefaultView.class)
-	private ArrayList<BranchProtection> branchProtections = new ArrayList<>();
+	private LazyValue<ArrayList<BranchProtection>> branchProtections = new LazyValue<>(new ArrayList<>());
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	@JsonView(DefaultView.class)
-	private ArrayList<TagProtection> tagProtections = new ArrayList<>();
+	private LazyValue<ArrayList<TagProtection>> tagProtections = new LazyValue<>(new ArrayList<>());
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	@JsonView(DefaultView.class)
-	private ArrayList<Secret> secrets = new ArrayList<>();
+	private LazyValue<ArrayList<Secret>> secrets = new LazyValue<>(new ArrayList<>());
 	
 	@Column(nullable=false)
 	private Date createdAt = new Date();
@@ -232,76 +230,83 @@ public class Project extends AbstractEntity implements Validatable {
 	private Collection<Milestone> milestones = new ArrayList<>();
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private IssueSetting issueSetting = new IssueSetting();
+	private LazyValue<IssueSetting> issueSetting = new LazyValue<>(new IssueSetting());
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private BuildSetting buildSetting = new BuildSetting();
+	private LazyValue<BuildSetting> buildSetting = new LazyValue<>(new BuildSetting());
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private ArrayList<NamedCommitQuery> savedCommitQueries = new ArrayList<>();
+	private LazyValue<ArrayList<NamedCommitQuery>> savedCommitQueries = new LazyValue<>(new ArrayList<>());
 	{
-		savedCommitQueries.add(new NamedCommitQuery("All", "all"));
-		savedCommitQueries.add(new NamedCommitQuery("Default branch", "default-branch"));
-		savedCommitQueries.add(new NamedCommitQuery("Authored by me", "authored-by-me"));
-		savedCommitQueries.add(new NamedCommitQuery("Committed by me", "committed-by-me"));
-		savedCommitQueries.add(new NamedCommitQuery("Committed recently", "after(last week)"));
+		savedCommitQueries.get().add(new NamedCommitQuery("All", "all"));
+		savedCommitQueries.get().add(new NamedCommitQuery("Default branch", "default-branch"));
+		savedCommitQueries.get().add(new NamedCommitQuery("Authored by me", "authored-by-me"));
+		savedCommitQueries.get().add(new NamedCommitQuery("Committed by me", "committed-by-me"));
+		savedCommitQueries.get().add(new NamedCommitQuery("Committed recently", "after(last week)"));
 	}
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private ArrayList<NamedPullRequestQuery> savedPullRequestQueries = new ArrayList<>();
+	private LazyValue<ArrayList<NamedPullRequestQuery>> savedPullRequestQueries = new LazyValue<>(new ArrayList<>());
 	{
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Open", "open"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("To be reviewed by me", "to be reviewed by me"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("To be changed by me", "submitted by me and someone requested for changes"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Request for changes by me", "requested for changes by me"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Approved by me", "approved by me"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Submitted by me", "submitted by me"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Submitted recently", "\"Submit Date\" is after \"last week\""));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Updated recently", "\"Update Date\" is after \"last week\""));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("Closed", "merged or discarded"));
-		savedPullRequestQueries.add(new NamedPullRequestQuery("All", "all"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Open", "open"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("To be reviewed by me", "to be reviewed by me"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("To be changed by me", "submitted by me and someone requested for changes"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Request for changes by me", "requested for changes by me"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Approved by me", "approved by me"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Submitted by me", "submitted by me"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Submitted recently", "\"Submit Date\" is after \"last week\""));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Updated recently", "\"Update Date\" is after \"last week\""));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("Closed", "merged or discarded"));
+		savedPullRequestQueries.get().add(new NamedPullRequestQuery("All", "all"));
 	}
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private ArrayList<NamedCodeCommentQuery> savedCodeCommentQueries = new ArrayList<>(); 
+	private LazyValue<ArrayList<NamedCodeCommentQuery>> savedCodeCommentQueries = new LazyValue<>(new ArrayList<>()); 
 	{
-		savedCodeCommentQueries.add(new NamedCodeCommentQuery("All", "all"));
-		savedCodeCommentQueries.add(new NamedCodeCommentQuery("Created by me", "created by me"));
-		savedCodeCommentQueries.add(new NamedCodeCommentQuery("Created recently", "\"Create Date\" is after \"last week\""));
-		savedCodeCommentQueries.add(new NamedCodeCommentQuery("Updated recently", "\"Update Date\" is after \"last week\""));
+		savedCodeCommentQueries.get().add(new NamedCodeCommentQuery("All", "all"));
+		savedCodeCommentQueries.get().add(new NamedCodeCommentQuery("Created by me", "created by me"));
+		savedCodeCommentQueries.get().add(new NamedCodeCommentQuery("Created recently", "\"Create Date\" is after \"last week\""));
+		savedCodeCommentQueries.get().add(new NamedCodeCommentQuery("Updated recently", "\"Update Date\" is after \"last week\""));
 	}
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private ArrayList<NamedBuildQuery> savedBuildQueries = new ArrayList<>();
+	private LazyValue<ArrayList<NamedBuildQuery>> savedBuildQueries = new LazyValue<>(new ArrayList<>());
 	{
-		savedBuildQueries.add(new NamedBuildQuery("All", "all"));
-		savedBuildQueries.add(new NamedBuildQuery("Successful", "successful"));
-		savedBuildQueries.add(new NamedBuildQuery("Failed", "failed"));
-		savedBuildQueries.add(new NamedBuildQuery("In error", "in error"));
-		savedBuildQueries.add(new NamedBuildQuery("Cancelled", "cancelled"));
-		savedBuildQueries.add(new NamedBuildQuery("Timed out", "timed out"));
-		savedBuildQueries.add(new NamedBuildQuery("Running", "running"));
-		savedBuildQueries.add(new NamedBuildQuery("Waiting", "waiting"));
-		savedBuildQueries.add(new NamedBuildQuery("Queueing", "queueing"));
-		savedBuildQueries.add(new NamedBuildQuery("Build recently", "\"Submit Date\" is after \"last week\""));
+		savedBuildQueries.get().add(new NamedBuildQuery("All", "all"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Successful", "successful"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Failed", "failed"));
+		savedBuildQueries.get().add(new NamedBuildQuery("In error", "in error"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Cancelled", "cancelled"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Timed out", "timed out"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Running", "running"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Waiting", "waiting"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Queueing", "queueing"));
+		savedBuildQueries.get().add(new NamedBuildQuery("Build recently", "\"Submit Date\" is after \"last week\""));
 	}
 	
 	@Lob
+	@Type(type=LazyCompactSerializableType.NAME)
 	@Column(length=65535, nullable=false)
 	@JsonView(DefaultView.class)
-	private ArrayList<WebHook> webHooks = new ArrayList<>();
+	private LazyValue<ArrayList<WebHook>> webHooks = new LazyValue<>(new ArrayList<>());
 	
 	private transient Repository repository;
 	
@@ -372,27 +377,27 @@ public class Project extends AbstractEntity implements Validatable {
 	@Nullable
 	@Valid
 	public ArrayList<CommitMessageTransform> getCommitMessageTransforms() {
-		return commitMessageTransforms;
+		return commitMessageTransforms!=null? commitMessageTransforms.get(): null;
 	}
 
 	public void setCommitMessageTransforms(ArrayList<CommitMessageTransform> commitMessageTransforms) {
-		this.commitMessageTransforms = commitMessageTransforms;
+		this.commitMessageTransforms = new LazyValue<>(commitMessageTransforms);
 	}
 
 	public ArrayList<BranchProtection> getBranchProtections() {
-		return branchProtections;
+		return branchProtections.get();
 	}
 
 	public void setBranchProtections(ArrayList<BranchProtection> branchProtections) {
-		this.branchProtections = branchProtections;
+		this.branchProtections = new LazyValue<>(branchProtections);
 	}
 
 	public ArrayList<TagProtection> getTagProtections() {
-		return tagProtections;
+		return tagProtections.get();
 	}
 
 	public void setTagProtections(ArrayList<TagProtection> tagProtections) {
-		this.tagProtections = tagProtections;
+		this.tagProtections = new LazyValue<>(tagProtections);
 	}
 
 	public Date getCreatedAt() {
@@ -744,75 +749,16 @@ public class Project extends AbstractEntity implements Validatable {
 		if (path == null)
 			path = "";
 		
-		final File cacheDir = new File(
-				OneDev.getInstance(StorageManager.class).getProjectInfoDir(getId()), 
-				"last_commits/" + path + "/onedev_last_commits");
-		
-		final ReadWriteLock lock;
-		try {
-			lock = LockUtils.getReadWriteLock(cacheDir.getCanonicalPath());
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		CommitInfoManager commitInfoManager = OneDev.getInstance(CommitInfoManager.class);
+		LastCommitsOfChildren.Cache cache = commitInfoManager.getLastCommitsCache(this, path);
 		
-		final Set<ObjectId> commitIds = new HashSet<>(); 
-		
-		lock.readLock().lock();
-		try {
-			if (cacheDir.exists()) {
-				for (String each: cacheDir.list()) 
-					commitIds.add(ObjectId.fromString(each));
-			} 	
-		} finally {
-			lock.readLock().unlock();
-		}
-		
-		org.eclipse.jgit.revwalk.LastCommitsOfChildren.Cache cache;
-		if (!commitIds.isEmpty()) {
-			cache = new org.eclipse.jgit.revwalk.LastCommitsOfChildren.Cache() {
-	
-				@SuppressWarnings("unchecked")
-				@Override
-				public Map<String, Value> getLastCommitsOfChildren(ObjectId commitId) {
-					if (commitIds.contains(commitId)) {
-						lock.readLock().lock();
-						try {
-							byte[] bytes = FileUtils.readFileToByteArray(new File(cacheDir, commitId.name()));
-							return (Map<String, Value>) SerializationUtils.deserialize(bytes);
-						} catch (IOException e) {
-							throw new RuntimeException(e);
-						} finally {
-							lock.readLock().unlock();
-						}
-					} else {
-						return null;
-					}
-				}
-				
-			};
-		} else {
-			cache = null;
-		}
-
-		final AnyObjectId commitId = getObjectId(revision, true);
+		AnyObjectId commitId = getObjectId(revision, true);
 		
 		long time = System.currentTimeMillis();
 		LastCommitsOfChildren lastCommits = new LastCommitsOfChildren(getRepository(), commitId, path, cache);
 		long elapsed = System.currentTimeMillis()-time;
-		if (elapsed > LAST_COMMITS_CACHE_THRESHOLD) {
-			lock.writeLock().lock();
-			try {
-				if (!cacheDir.exists())
-					FileUtils.createDir(cacheDir);
-				FileUtils.writeByteArrayToFile(
-						new File(cacheDir, commitId.name()), 
-						SerializationUtils.serialize(lastCommits));
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			} finally {
-				lock.writeLock().unlock();
-			}
-		}
+		if (elapsed > LAST_COMMITS_CACHE_THRESHOLD) 
+			commitInfoManager.cacheLastCommits(this, path, commitId.copy(), lastCommits);
 		return lastCommits;
 	}
 
@@ -925,27 +871,14 @@ public class Project extends AbstractEntity implements Validatable {
 			String refName = GitUtils.branch2ref(branchName); 
 			cacheObjectId(refName, commit);
 			
-	    	Subject subject = SecurityUtils.getSubject();
+	    	Long userId = User.getCurrentId();
 	    	ObjectId commitId = commit.copy();
 	    	OneDev.getInstance(TransactionManager.class).runAfterCommit(new Runnable() {
 
 				@Override
 				public void run() {
-			    	OneDev.getInstance(SessionManager.class).runAsync(new Runnable() {
-
-						@Override
-						public void run() {
-							ThreadContext.bind(subject);
-							try {
-								Project project = OneDev.getInstance(ProjectManager.class).load(getId());
-								OneDev.getInstance(ListenerRegistry.class).post(
-										new RefUpdated(project, refName, ObjectId.zeroId(), commitId));
-							} finally {
-								ThreadContext.unbindSubject();
-							}
-						}
-			    		
-			    	});
+					OneDev.getInstance(RefUpdatedDispatcher.class).dispatch(getId(), userId, refName, 
+							ObjectId.zeroId(), commitId);
 				}
 	    		
 	    	});			
@@ -967,27 +900,14 @@ public class Project extends AbstractEntity implements Validatable {
 			String refName = GitUtils.tag2ref(tagName);
 			cacheObjectId(refName, tag.getObjectId());
 			
-	    	Subject subject = SecurityUtils.getSubject();
+	    	Long userId = User.getCurrentId();
 	    	ObjectId commitId = tag.getObjectId().copy();
 	    	OneDev.getInstance(TransactionManager.class).runAfterCommit(new Runnable() {
 
 				@Override
 				public void run() {
-			    	OneDev.getInstance(SessionManager.class).runAsync(new Runnable() {
-
-						@Override
-						public void run() {
-							ThreadContext.bind(subject);
-							try {
-								Project project = OneDev.getInstance(ProjectManager.class).load(getId());
-								OneDev.getInstance(ListenerRegistry.class).post(
-										new RefUpdated(project, refName, ObjectId.zeroId(), commitId));
-							} finally {
-								ThreadContext.unbindSubject();
-							}
-						}
-			    		
-			    	});
+					OneDev.getInstance(RefUpdatedDispatcher.class).dispatch(getId(), userId, refName, 
+							ObjectId.zeroId(), commitId);
 				}
 	    		
 	    	});			
@@ -1005,35 +925,35 @@ public class Project extends AbstractEntity implements Validatable {
 	}
 
 	public IssueSetting getIssueSetting() {
-		return issueSetting;
+		return issueSetting.get();
 	}
 
 	public void setIssueSetting(IssueSetting issueSetting) {
-		this.issueSetting = issueSetting;
+		this.issueSetting = new LazyValue<>(issueSetting);
 	}
 
 	public BuildSetting getBuildSetting() {
-		return buildSetting;
+		return buildSetting.get();
 	}
 
 	public void setBuildSetting(BuildSetting buildSetting) {
-		this.buildSetting = buildSetting;
+		this.buildSetting = new LazyValue<>(buildSetting);
 	}
 
 	public ArrayList<NamedCommitQuery> getSavedCommitQueries() {
-		return savedCommitQueries;
+		return savedCommitQueries.get();
 	}
 
 	public void setSavedCommitQueries(ArrayList<NamedCommitQuery> savedCommitQueries) {
-		this.savedCommitQueries = savedCommitQueries;
+		this.savedCommitQueries = new LazyValue<>(savedCommitQueries);
 	}
 	
 	public ArrayList<NamedPullRequestQuery> getSavedPullRequestQueries() {
-		return savedPullRequestQueries;
+		return savedPullRequestQueries.get();
 	}
 
 	public void setSavedPullRequestQueries(ArrayList<NamedPullRequestQuery> savedPullRequestQueries) {
-		this.savedPullRequestQueries = savedPullRequestQueries;
+		this.savedPullRequestQueries = new LazyValue<>(savedPullRequestQueries);
 	}
 	
 	@Nullable
@@ -1073,19 +993,19 @@ public class Project extends AbstractEntity implements Validatable {
 	}
 	
 	public ArrayList<NamedCodeCommentQuery> getSavedCodeCommentQueries() {
-		return savedCodeCommentQueries;
+		return savedCodeCommentQueries.get();
 	}
 
 	public void setSavedCodeCommentQueries(ArrayList<NamedCodeCommentQuery> savedCodeCommentQueries) {
-		this.savedCodeCommentQueries = savedCodeCommentQueries;
+		this.savedCodeCommentQueries = new LazyValue<>(savedCodeCommentQueries);
 	}
 	
 	public ArrayList<NamedBuildQuery> getSavedBuildQueries() {
-		return savedBuildQueries;
+		return savedBuildQueries.get();
 	}
 
 	public void setSavedBuildQueries(ArrayList<NamedBuildQuery> savedBuildQueries) {
-		this.savedBuildQueries = savedBuildQueries;
+		this.savedBuildQueries = new LazyValue<>(savedBuildQueries);
 	}
 
 	public Collection<IssueQuerySetting> getIssueQuerySettings() {
@@ -1214,20 +1134,20 @@ public class Project extends AbstractEntity implements Validatable {
 	}
 	
 	public ArrayList<WebHook> getWebHooks() {
-		return webHooks;
+		return webHooks.get();
 	}
 
 	public void setWebHooks(ArrayList<WebHook> webHooks) {
-		this.webHooks = webHooks;
+		this.webHooks = new LazyValue<>(webHooks);
 	}
 
 	@Editable
 	public ArrayList<Secret> getSecrets() {
-		return secrets;
+		return secrets.get();
 	}
 
 	public void setSecrets(ArrayList<Secret> secrets) {
-		this.secrets = secrets;
+		this.secrets = new LazyValue<>(secrets);
 	}
 	
 	public Map<String, Secret> getSecretMap() {
@@ -1241,7 +1161,7 @@ public class Project extends AbstractEntity implements Validatable {
 
 	@Nullable
 	public TagProtection getTagProtection(String tagName, User user) {
-		for (TagProtection protection: tagProtections) {
+		for (TagProtection protection: tagProtections.peek()) {
 			if (protection.isEnabled() 
 					&& UserMatcher.fromString(protection.getUser()).matches(this, user)
 					&& PatternSet.fromString(protection.getTags()).matches(new ChildAwareMatcher(), tagName)) {
@@ -1253,7 +1173,7 @@ public class Project extends AbstractEntity implements Validatable {
 	
 	@Nullable
 	public BranchProtection getBranchProtection(String branchName, @Nullable User user) {
-		for (BranchProtection protection: branchProtections) {
+		for (BranchProtection protection: branchProtections.peek()) {
 			if (protection.isEnabled() 
 					&& UserMatcher.fromString(protection.getUser()).matches(this, user) 
 					&& PatternSet.fromString(protection.getBranches()).matches(new ChildAwareMatcher(), branchName)) {
@@ -12,7 +12,10 @@ import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestChangeData;
+import io.onedev.server.persistence.CompactSerializableType;
 
 @Entity
 @Table(indexes={@Index(columnList="o_request_id"), @Index(columnList="o_user_id")})
@@ -34,6 +37,7 @@ public class PullRequestChange extends AbstractEntity {
 	private Date date;
 	
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(length=65535)
 	private PullRequestChangeData data;
 
@@ -13,8 +13,11 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.Type;
+
 import io.onedev.server.model.support.QuerySetting;
 import io.onedev.server.model.support.pullrequest.NamedPullRequestQuery;
+import io.onedev.server.persistence.CompactSerializableType;
 import io.onedev.server.util.watch.QuerySubscriptionSupport;
 import io.onedev.server.util.watch.QueryWatchSupport;
 
@@ -36,10 +39,12 @@ public class PullRequestQuerySetting extends QuerySetting<NamedPullRequestQuery>
 	private User user;
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private ArrayList<NamedPullRequestQuery> userQueries = new ArrayList<>();
 
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(nullable=false, length=65535)
 	private LinkedHashMap<String, Boolean> userQueryWatches = new LinkedHashMap<>();
 	
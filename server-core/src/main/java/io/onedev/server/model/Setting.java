@@ -10,6 +10,9 @@ import javax.persistence.Version;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Type;
+
+import io.onedev.server.persistence.CompactSerializableType;
 
 /**
  * This entity stores object in serialized form, with one entity 
@@ -43,6 +46,7 @@ public class Setting extends AbstractEntity {
 	 * a null setting.
 	 */
 	@Lob
+	@Type(type=CompactSerializableType.NAME)
 	@Column(length=65535)
 	private Serializable value;
 
@@ -0,0 +1,160 @@
+package io.onedev.server.model.support.jobexecutor;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.onedev.commons.utils.ExceptionUtils;
+
+/**
+ * Metadata of docker images prepared by server docker executors, keyed by docker executable
+ * and image reference. Image metadata is shared by all executors running on this server, and
+ * concurrent preparations of the same image are performed only once, with other jobs waiting
+ * for the result. Number of cached images is bounded, with least recently used ones evicted.
+ */
+public class DockerImageCache {
+
+	private static final int MAX_IMAGES = 1000;
+
+	private static final Cache<String, ImageInfo> images = CacheBuilder.newBuilder()
+			.maximumSize(MAX_IMAGES)
+			.build();
+
+	private static final Map<String, CompletableFuture<ImageInfo>> preparings = new ConcurrentHashMap<>();
+
+	private static final AtomicLong hits = new AtomicLong();
+
+	private static final AtomicLong misses = new AtomicLong();
+
+	private static final AtomicLong sharedPreparations = new AtomicLong();
+
+	private DockerImageCache() {
+	}
+
+	/**
+	 * Get metadata of specified image, preparing it if not cached or considered stale by
+	 * specified pull policy.
+	 *
+	 * @param dockerExecutable
+	 * 			docker executable the image is prepared with
+	 * @param image
+	 * 			image reference
+	 * @param pullPolicy
+	 * 			pull policy to decide whether or not cached metadata can be used
+	 * @param refreshInterval
+	 * 			milliseconds after which cached metadata should be refreshed, only used for
+	 * 			pull policy {@link ImagePullPolicy#REFRESH_AFTER_INTERVAL}
+	 * @param preparer
+	 * 			callable to pull and inspect the image if necessary
+	 * @param jobLogger
+	 * 			logger of the job requiring the image
+	 * @return
+	 * 			metadata of the image
+	 */
+	public static ImageInfo get(String dockerExecutable, String image, ImagePullPolicy pullPolicy,
+			long refreshInterval, Callable<ImageInfo> preparer, Logger jobLogger) {
+		String key = getKey(dockerExecutable, image);
+		ImageInfo info = images.getIfPresent(key);
+		if (info != null) {
+			long age = System.currentTimeMillis() - info.getPrepareTime();
+			if (pullPolicy == ImagePullPolicy.IF_NOT_PRESENT
+					|| pullPolicy == ImagePullPolicy.REFRESH_AFTER_INTERVAL && age < refreshInterval) {
+				hits.incrementAndGet();
+				jobLogger.info("Using cached image (id: " + info.getId() + ", os: " + info.getOs()
+						+ ", prepared " + age/1000 + " seconds ago, " + getStats() + ")");
+				return info;
+			}
+		}
+
+		CompletableFuture<ImageInfo> future = new CompletableFuture<>();
+		CompletableFuture<ImageInfo> existingFuture = preparings.putIfAbsent(key, future);
+		if (existingFuture != null) {
+			sharedPreparations.incrementAndGet();
+			jobLogger.info("Waiting for image being prepared by another job (" + getStats() + ")...");
+			try {
+				return existingFuture.join();
+			} catch (CompletionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+		}
+
+		misses.incrementAndGet();
+		jobLogger.info("Preparing image (" + getStats() + ")...");
+		try {
+			info = preparer.call();
+			images.put(key, info);
+			future.complete(info);
+			return info;
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+			throw ExceptionUtils.unchecked(e);
+		} finally {
+			preparings.remove(key, future);
+		}
+	}
+
+	private static String getKey(String dockerExecutable, String image) {
+		return dockerExecutable + ":" + image;
+	}
+
+	/**
+	 * Discard cached metadata of specified image, so that it will be inspected again when
+	 * required next time. Should be called if the image is found missing on server
+	 */
+	public static void invalidate(String dockerExecutable, String image) {
+		images.invalidate(getKey(dockerExecutable, image));
+	}
+
+	/**
+	 * @return
+	 * 			statistics of the cache to be displayed to users
+	 */
+	public static String getStats() {
+		return "image cache hits: " + hits.get() + ", misses: " + misses.get() + ", shared preparations: "
+				+ sharedPreparations.get() + ", cached images: " + images.size();
+	}
+
+	public static class ImageInfo implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String id;
+
+		private final String os;
+
+		private final long prepareTime;
+
+		public ImageInfo(String id, String os, long prepareTime) {
+			this.id = id;
+			this.os = os;
+			this.prepareTime = prepareTime;
+		}
+
+		/**
+		 * @return
+		 * 			id (content digest) of the image
+		 */
+		public String getId() {
+			return id;
+		}
+
+		public String getOs() {
+			return os;
+		}
+
+		public long getPrepareTime() {
+			return prepareTime;
+		}
+
+	}
+
+}
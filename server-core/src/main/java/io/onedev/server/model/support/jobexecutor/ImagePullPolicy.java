@@ -0,0 +1,20 @@
+package io.onedev.server.model.support.jobexecutor;
+
+public enum ImagePullPolicy {
+
+	/*
+	 * Pull image before running every job. Concurrent pulls of the same image are still shared
+	 */
+	ALWAYS,
+
+	/*
+	 * Only pull image if it does not exist on the server
+	 */
+	IF_NOT_PRESENT,
+
+	/*
+	 * Pull image if it was not pulled within the refresh interval
+	 */
+	REFRESH_AFTER_INTERVAL
+
+}
@@ -46,6 +46,8 @@ public abstract class JobExecutor implements Serializable {
 
 	private int cacheTTL = 7;
 	
+	private int cacheSizeLimit = 10;
+	
 	public boolean isEnabled() {
 		return enabled;
 	}
@@ -125,6 +127,17 @@ public abstract class JobExecutor implements Serializable {
 		this.cacheTTL = cacheTTL;
 	}
 
+	@Editable(order=50100, name="Cache Size Limit (GB)", group="More Settings", description="Specify max total size "
+			+ "of job caches in giga bytes. Least recently used caches not in use will be removed when this limit "
+			+ "is exceeded. Use <tt>0</tt> for no limit")
+	public int getCacheSizeLimit() {
+		return cacheSizeLimit;
+	}
+
+	public void setCacheSizeLimit(int cacheSizeLimit) {
+		this.cacheSizeLimit = cacheSizeLimit;
+	}
+
 	public abstract void execute(String environment, File workspace, Map<String, String> envVars, 
 			List<String> commands, @Nullable SourceSnapshot snapshot, Collection<JobCache> caches, 
 			PatternSet collectFiles, Logger logger);
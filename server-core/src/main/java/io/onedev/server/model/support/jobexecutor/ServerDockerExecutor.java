@@ -6,19 +6,26 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
 import javax.validation.ConstraintValidatorContext;
+import javax.validation.constraints.NotNull;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.lang3.SystemUtils;
 import org.hibernate.validator.constraints.NotEmpty;
+import org.hibernate.validator.constraints.Range;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,14 +37,18 @@ import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.LockUtils;
 import io.onedev.commons.utils.StringUtils;
 import io.onedev.commons.utils.command.Commandline;
+import io.onedev.commons.utils.command.ExecuteResult;
 import io.onedev.commons.utils.command.LineConsumer;
 import io.onedev.commons.utils.command.ProcessKiller;
 import io.onedev.commons.utils.concurrent.ConstrainedRunner;
+import io.onedev.server.OneException;
 import io.onedev.server.ci.job.cache.CacheAllocation;
 import io.onedev.server.ci.job.cache.CacheCallable;
 import io.onedev.server.ci.job.cache.CacheRunner;
 import io.onedev.server.ci.job.cache.JobCache;
+import io.onedev.server.model.support.jobexecutor.DockerImageCache.ImageInfo;
 import io.onedev.server.model.support.jobexecutor.ServerDockerExecutor.TestData;
+import io.onedev.server.util.FileCloner;
 import io.onedev.server.util.OneContext;
 import io.onedev.server.util.patternset.PatternSet;
 import io.onedev.server.util.validation.Validatable;
@@ -46,6 +57,7 @@ import io.onedev.server.web.editable.annotation.Editable;
 import io.onedev.server.web.editable.annotation.NameOfEmptyValue;
 import io.onedev.server.web.editable.annotation.OmitName;
 import io.onedev.server.web.editable.annotation.Password;
+import io.onedev.server.web.editable.annotation.ShowCondition;
 import io.onedev.server.web.util.Testable;
 
 @Editable(order=100, description="This executor interpretates job environments as docker images, "
@@ -68,6 +80,10 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 	
 	private List<RegistryLogin> registryLogins = new ArrayList<>();
 	
+	private ImagePullPolicy imagePullPolicy = ImagePullPolicy.REFRESH_AFTER_INTERVAL;
+	
+	private int imageRefreshInterval = 10;
+	
 	private transient ConstrainedRunner constrainedRunner;
 
 	@Editable(order=20000, group="More Settings", description="Optionally specify docker executable, for instance <i>/usr/local/bin/docker</i>. "
@@ -113,21 +129,58 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 		this.registryLogins = registryLogins;
 	}
 
+	@Editable(order=20400, group="More Settings", description="Specify when to pull job images. <b>Always</b> pulls "
+			+ "image before running every job; <b>If Not Present</b> only pulls image if it does not exist on "
+			+ "server; <b>Refresh After Interval</b> pulls image again if it was not pulled within specified "
+			+ "interval. Concurrent jobs using the same image always share a single pull")
+	@NotNull
+	public ImagePullPolicy getImagePullPolicy() {
+		return imagePullPolicy;
+	}
+
+	public void setImagePullPolicy(ImagePullPolicy imagePullPolicy) {
+		this.imagePullPolicy = imagePullPolicy;
+	}
+	
+	@SuppressWarnings("unused")
+	private static boolean isImageRefreshIntervalVisible() {
+		return OneContext.get().getEditContext().getInputValue("imagePullPolicy") == ImagePullPolicy.REFRESH_AFTER_INTERVAL;
+	}
+
+	@Editable(order=20500, group="More Settings", name="Image Refresh Interval (Minutes)", 
+			description="Specify interval in minutes to pull job images again")
+	@ShowCondition("isImageRefreshIntervalVisible")
+	@Range(min=1)
+	public int getImageRefreshInterval() {
+		return imageRefreshInterval;
+	}
+
+	public void setImageRefreshInterval(int imageRefreshInterval) {
+		this.imageRefreshInterval = imageRefreshInterval;
+	}
+
+	private String getEffectiveDockerExecutable() {
+		return getDockerExecutable() != null? getDockerExecutable(): "docker";
+	}
+	
 	private Commandline getDockerCmd() {
-		if (getDockerExecutable() != null)
-			return new Commandline(getDockerExecutable());
-		else
-			return new Commandline("docker");
+		return new Commandline(getEffectiveDockerExecutable());
 	}
 	
+	/**
+	 * Inspect specified image on server.
+	 * 
+	 * @return
+	 * 			image info, or <tt>null</tt> if image does not exist on server
+	 */
 	@SuppressWarnings("unchecked")
-	private String getImageOS(Logger logger, String image) {
-		logger.info("Checking image OS...");
+	@Nullable
+	private ImageInfo inspectImage(Logger logger, String image) {
 		Commandline cmd = getDockerCmd();
-		cmd.addArgs("inspect", image);
+		cmd.addArgs("inspect", "--type", "image", image);
 		
 		StringBuilder output = new StringBuilder();
-		cmd.execute(new LineConsumer(Charsets.UTF_8.name()) {
+		ExecuteResult result = cmd.execute(new LineConsumer(Charsets.UTF_8.name()) {
 
 			@Override
 			public void consume(String line) {
@@ -135,18 +188,62 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 				output.append(line).append("\n");
 			}
 			
-		}, newErrorLogger(logger)).checkReturnCode();
+		}, new LineConsumer(Charsets.UTF_8.name()) {
+
+			@Override
+			public void consume(String line) {
+				logger.debug(line);
+			}
+			
+		});
+		if (result.getReturnCode() != 0)
+			return null;
 
 		Map<String, Object> map;
 		try {
 			map = (Map<String, Object>) new ObjectMapper()
 					.readValue(output.toString(), List.class).iterator().next();
-			return (String) map.get("Os");
+			return new ImageInfo((String) map.get("Id"), (String) map.get("Os"), System.currentTimeMillis());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
+	private ImageInfo pullImage(Logger logger, String image) {
+		login(logger);
+		
+		logger.info("Pulling image...");
+		Commandline cmd = getDockerCmd();
+		cmd.addArgs("pull", image);
+		cmd.execute(newInfoLogger(logger), newErrorLogger(logger)).checkReturnCode();
+		
+		ImageInfo imageInfo = inspectImage(logger, image);
+		if (imageInfo == null)
+			throw new OneException("Unable to inspect image: " + image);
+		return imageInfo;
+	}
+	
+	private ImageInfo prepareImage(Logger logger, String image) {
+		// Executors saved before pull policy was introduced always pull image
+		ImagePullPolicy pullPolicy = getImagePullPolicy() != null? getImagePullPolicy(): ImagePullPolicy.ALWAYS;
+		return DockerImageCache.get(getEffectiveDockerExecutable(), image, pullPolicy, getImageRefreshInterval()*60000L, 
+				new Callable<ImageInfo>() {
+
+			@Override
+			public ImageInfo call() {
+				if (pullPolicy == ImagePullPolicy.IF_NOT_PRESENT) {
+					ImageInfo imageInfo = inspectImage(logger, image);
+					if (imageInfo != null) {
+						logger.info("Image found on server, skipping pull");
+						return imageInfo;
+					}
+				} 
+				return pullImage(logger, image);
+			}
+			
+		}, logger);
+	}
+	
 	private synchronized ConstrainedRunner getConstrainedRunner() {
 		if (constrainedRunner == null)
 			constrainedRunner = new ConstrainedRunner(capacity);
@@ -170,18 +267,17 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 
 			@Override
 			public Void call() {
-				return new CacheRunner(getCacheHome(), caches).call(new CacheCallable<Void>() {
+				// Make room for caches of this job if size limit is exceeded 
+				removeCaches(false);
+				
+				return new CacheRunner(getCacheHome(), caches, snapshot).call(new CacheCallable<Void>() {
 
 					@Override
 					public Void call(Collection<CacheAllocation> allocations) {
-						login(logger);
-						
-						logger.info("Pulling image...") ;
+						ImageInfo imageInfo = prepareImage(logger, environment);
+						logger.info("Detected image OS: " + imageInfo.getOs());
+
 						Commandline cmd = getDockerCmd();
-						cmd.addArgs("pull", environment);
-						cmd.execute(newInfoLogger(logger), newErrorLogger(logger)).checkReturnCode();
-						
-						cmd.clearArgs();
 						String jobInstance = UUID.randomUUID().toString();
 						cmd.addArgs("run", "--rm", "--name", jobInstance);
 						for (Map.Entry<String, String> entry: envVars.entrySet())
@@ -189,10 +285,7 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 						if (getRunOptions() != null)
 							cmd.addArgs(StringUtils.parseQuoteTokens(getRunOptions()));
 						
-						String imageOS = getImageOS(logger, environment);
-						logger.info("Detected image OS: " + imageOS);
-
-						boolean windows = imageOS.equals("windows");
+						boolean windows = imageInfo.getOs().equals("windows");
 						
 						String dockerWorkspacePath;
 						if (windows)
@@ -212,24 +305,31 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 						
 						if (snapshot != null) {
 							logger.info("Cloning source code...");
+							long time = System.currentTimeMillis();
 							snapshot.checkout(effectiveWorkspace);
+							logger.info("Cloned source code in {} ms", System.currentTimeMillis()-time);
 						}
 						
 						if (workspaceCache != null) {
-							try {
-								FileUtils.copyDirectory(workspace, workspaceCache);
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
+							logger.info("Populating workspace cache...");
+							long time = System.currentTimeMillis();
+							// Job workspace is discarded after job execution, so its files can be linked into cache
+							FileCloner cloner = new FileCloner(true).cloneDirectory(workspace, workspaceCache);
+							logger.info("Populated workspace cache in {} ms ({})", System.currentTimeMillis()-time, cloner);
 						}
 						
 						cmd.addArgs("-v", effectiveWorkspace.getAbsolutePath() + ":" + dockerWorkspacePath);
 						for (CacheAllocation allocation: allocations) {
-							if (!allocation.isWorkspace())
-								cmd.addArgs("-v", allocation.getInstance().getAbsolutePath() + ":" + allocation.resolvePath(dockerWorkspacePath));
+							if (!allocation.isWorkspace()) {
+								String volume = allocation.getInstance().getAbsolutePath() + ":" + allocation.resolvePath(dockerWorkspacePath);
+								if (allocation.isReadOnly())
+									volume += ":ro";
+								cmd.addArgs("-v", volume);
+							}
 						}
 						cmd.addArgs("-w", dockerWorkspacePath);
 						
+						// Run resolved image so that job uses the same image as inspected and cached
 						if (windows) {
 							File scriptFile = new File(effectiveWorkspace, "onedev-job-commands.bat");
 							try {
@@ -237,7 +337,7 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 							} catch (IOException e) {
 								throw new RuntimeException(e);
 							}
-							cmd.addArgs(environment);
+							cmd.addArgs(imageInfo.getId());
 							cmd.addArgs("cmd", "/c", dockerWorkspacePath + "\\onedev-job-commands.bat");
 						} else {
 							File scriptFile = new File(effectiveWorkspace, "onedev-job-commands.sh");
@@ -246,14 +346,26 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 							} catch (IOException e) {
 								throw new RuntimeException(e);
 							}
-							cmd.addArgs(environment);
+							cmd.addArgs(imageInfo.getId());
 							cmd.addArgs("sh", dockerWorkspacePath + "/onedev-job-commands.sh");
 						}
 						
 						logger.info("Running container to execute job...");
 						
+						long runTime = System.currentTimeMillis();
+						AtomicBoolean imageMissing = new AtomicBoolean(false);
+						LineConsumer errorLogger = new LineConsumer(Charsets.UTF_8.name()) {
+
+							@Override
+							public void consume(String line) {
+								if (line.startsWith("Unable to find image"))
+									imageMissing.set(true);
+								logger.error(line);
+							}
+							
+						};
 						try {
-							cmd.execute(newInfoLogger(logger), newErrorLogger(logger), null, new ProcessKiller() {
+							cmd.execute(newInfoLogger(logger), errorLogger, null, new ProcessKiller() {
 	
 								@Override
 								public void kill(Process process) {
@@ -265,17 +377,30 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 								
 							}, logger).checkReturnCode();
 							
+							logger.info("Container finished in {} ms", System.currentTimeMillis()-runTime);
 							return null;
 						} finally {
+							/*
+							 * Image may be removed from server after its metadata is cached, in which case 
+							 * running it by id fails. Discard cached metadata so that the image is inspected 
+							 * and pulled again next time instead of being trusted under pull policy 
+							 * IF_NOT_PRESENT
+							 */
+							if (imageMissing.get()) {
+								logger.warn("Image not found on server, cached image metadata discarded");
+								DockerImageCache.invalidate(getEffectiveDockerExecutable(), environment);
+							}
 							if (workspaceCache != null) {
-								int baseLen = workspaceCache.getAbsolutePath().length()+1;
-								for (File file: collectFiles.listFiles(workspaceCache)) {
-									try {
-										FileUtils.copyFile(file, new File(workspace, file.getAbsolutePath().substring(baseLen)));
-									} catch (IOException e) {
-										throw new RuntimeException(e);
-									}
-								}
+								logger.info("Collecting files from workspace cache...");
+								long time = System.currentTimeMillis();
+								/*
+								 * Collected files may still be in use after cache is released and modified by 
+								 * other jobs, so they are copied instead of linked
+								 */
+								FileCloner cloner = new FileCloner(false).cloneFiles(workspaceCache, 
+										collectFiles.listFiles(workspaceCache), workspace);
+								logger.info("Collected files from workspace cache in {} ms ({})", 
+										System.currentTimeMillis()-time, cloner);
 							}
 						}
 					}
@@ -347,31 +472,86 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 	
 	@Override
 	public void checkCaches() {
+		removeCaches(true);
+	}
+	
+	/**
+	 * Remove least recently used caches not in use until total size of caches is within size 
+	 * limit. Caches in use are neither sized nor removed, and only their sizes recorded at 
+	 * last release are counted 
+	 * 
+	 * @param expired
+	 * 			whether or not to also remove caches inactive longer than cache TTL
+	 */
+	private void removeCaches(boolean expired) {
 		File cacheHome = getCacheHome();
 		if (cacheHome.exists()) {
+			List<File> cacheInstances = new ArrayList<>();
 			for (File keyDir: cacheHome.listFiles()) {
-				for (File cacheInstance: keyDir.listFiles()) {
-					if (System.currentTimeMillis() - cacheInstance.lastModified() > getCacheTTL() * 24L * 3600L * 1000L) {
-						File lockFile = new File(cacheInstance, JobCache.LOCK_FILE);
-						try {
-							if (lockFile.createNewFile()) {
-								LockUtils.call(keyDir.getAbsolutePath(), new Callable<Void>() {
-
-									@Override
-									public Void call() throws Exception {
-										cleanDir(cacheInstance);
-										FileUtils.deleteDir(cacheInstance);
-										return null;
-									}
-									
-								});
-							}
-						} catch (IOException e) {
-							logger.error("Error removing cache '" + cacheInstance.getAbsolutePath() + "'", e);
-						}
-					}
+				File[] keyDirInstances = keyDir.listFiles();
+				if (keyDirInstances != null)
+					cacheInstances.addAll(Arrays.asList(keyDirInstances));
+			}
+			cacheInstances.sort(Comparator.comparing(File::lastModified));
+			
+			Map<File, Long> sizes = new HashMap<>();
+			long totalSize = 0;
+			for (File cacheInstance: cacheInstances) {
+				long size = JobCache.getSize(cacheInstance);
+				sizes.put(cacheInstance, size);
+				totalSize += size;
+			}
+			
+			long sizeLimit = getCacheSizeLimit() * 1024L * 1024L * 1024L;
+			long ttl = getCacheTTL() * 24L * 3600L * 1000L;
+			for (File cacheInstance: cacheInstances) {
+				boolean overLimit = sizeLimit != 0 && totalSize > sizeLimit;
+				if (!overLimit && !(expired && System.currentTimeMillis() - cacheInstance.lastModified() > ttl))
+					break;
+				if (!JobCache.isAllocated(cacheInstance) && removeCache(cacheInstance)) {
+					totalSize -= sizes.get(cacheInstance);
+					if (overLimit)
+						logger.debug("Removed cache '{}' to keep cache size within limit", cacheInstance.getAbsolutePath());
 				}
 			}
+			
+			for (File keyDir: cacheHome.listFiles()) {
+				LockUtils.call(keyDir.getAbsolutePath(), new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						String[] fileNames = keyDir.list();
+						if (fileNames != null && fileNames.length == 0)
+							FileUtils.deleteDir(keyDir);
+						return null;
+					}
+					
+				});
+			}
+		}
+	}
+	
+	private boolean removeCache(File cacheInstance) {
+		File keyDir = cacheInstance.getParentFile();
+		try {
+			return LockUtils.call(keyDir.getAbsolutePath(), new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws Exception {
+					if (!JobCache.hasReaders(cacheInstance) 
+							&& new File(cacheInstance, JobCache.LOCK_FILE).createNewFile()) {
+						cleanDir(cacheInstance);
+						FileUtils.deleteDir(cacheInstance);
+						return true;
+					} else {
+						return false;
+					}
+				}
+				
+			});
+		} catch (Exception e) {
+			logger.error("Error removing cache '" + cacheInstance.getAbsolutePath() + "'", e);
+			return false;
 		}
 	}
 	
@@ -411,19 +591,12 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 	
 	@Override
 	public void test(TestData testData) {
-		logger.info("Testing local docker executor...");
-		
-		login(logger);
-		
-		logger.info("Pulling image...");
+		logger.info("Testing local docker executor (" + DockerImageCache.getStats() + ")...");
 		
-		Commandline cmd = getDockerCmd();
-		cmd.addArgs("pull", testData.getDockerImage());
-		cmd.execute(newInfoLogger(logger), newErrorLogger(logger)).checkReturnCode();
-		
-		boolean windows = getImageOS(logger, testData.getDockerImage()).equals("windows");
+		boolean windows = pullImage(logger, testData.getDockerImage()).getOs().equals("windows");
 		
 		logger.info("Running container...");
+		Commandline cmd = getDockerCmd();
 		File cacheHome = getCacheHome();
 		boolean cacheHomeExists = cacheHome.exists();
 		File workspaceDir = null;
@@ -433,7 +606,6 @@ public class ServerDockerExecutor extends JobExecutor implements Testable<TestDa
 			cacheDir = new File(cacheHome, UUID.randomUUID().toString());
 			FileUtils.createDir(cacheDir);
 			
-			cmd.clearArgs();
 			cmd.addArgs("run", "--rm");
 			if (getRunOptions() != null)
 				cmd.addArgs(StringUtils.parseQuoteTokens(getRunOptions()));
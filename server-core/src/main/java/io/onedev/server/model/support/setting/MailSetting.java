@@ -25,6 +25,8 @@ public class MailSetting implements Serializable {
 	private String senderAddress;
 	
 	private int timeout = 60;
+	
+	private int digestDelay;
 
 	@Editable(order=100, name="SMTP Host", description=
 		"Specify the SMTP mail host used by OneDev to send email."
@@ -106,4 +108,15 @@ public class MailSetting implements Serializable {
 		this.timeout = timeout;
 	}
 
+	@Editable(order=700, description="Optionally specify delay in seconds to wait for more notifications "
+			+ "with the same subject and recipients, and send them together as a single digest email. "
+			+ "Use 0 to send each notification separately.")
+	public int getDigestDelay() {
+		return digestDelay;
+	}
+
+	public void setDigestDelay(int digestDelay) {
+		this.digestDelay = digestDelay;
+	}
+
 }
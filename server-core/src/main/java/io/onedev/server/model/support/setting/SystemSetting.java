@@ -8,6 +8,7 @@ import javax.validation.constraints.NotNull;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.constraints.NotEmpty;
+import org.hibernate.validator.constraints.Range;
 
 import io.onedev.server.git.config.CurlConfig;
 import io.onedev.server.git.config.GitConfig;
@@ -34,6 +35,8 @@ public class SystemSetting implements Serializable, Validatable {
 	
 	private boolean gravatarEnabled = true;
 	
+	private int commitInfoCollectors = getDefaultCommitInfoCollectors();
+	
 	@Editable(name="Server URL", order=90, description="Specify root URL to access this server. OneDev uses this url "
 			+ "to construct various links in notification email.")
 	@NotEmpty
@@ -88,6 +91,27 @@ public class SystemSetting implements Serializable, Validatable {
 		this.gravatarEnabled = gravatarEnabled;
 	}
 
+	@Editable(name="Concurrent Commit Info Collections", order=400, description="OneDev collects information of "
+			+ "new commits for search, statistics and suggestions. Specify max number of projects to collect "
+			+ "concurrently. Projects visited recently will be collected first. Note that collection of a project "
+			+ "runs up to 3 <tt>git log</tt> processes concurrently to prefetch history, each buffering up to "
+			+ "10000 commits in memory, so consider available cpu and memory when increasing this value")
+	@Range(min=1)
+	public int getCommitInfoCollectors() {
+		// Settings saved by previous versions do not have this property
+		if (commitInfoCollectors < 1)
+			commitInfoCollectors = getDefaultCommitInfoCollectors();
+		return commitInfoCollectors;
+	}
+
+	public void setCommitInfoCollectors(int commitInfoCollectors) {
+		this.commitInfoCollectors = commitInfoCollectors;
+	}
+	
+	private static int getDefaultCommitInfoCollectors() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors()/2);
+	}
+
 	@Override
 	public boolean isValid(ConstraintValidatorContext context) {
 		if (serverUrl != null)
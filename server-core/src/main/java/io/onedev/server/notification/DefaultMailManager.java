@@ -1,61 +1,394 @@
 package io.onedev.server.notification;
 
+import java.io.File;
+import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
 
 import org.apache.commons.codec.CharEncoding;
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.HtmlEmail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.onedev.commons.launcher.bootstrap.Bootstrap;
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
 import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopping;
 import io.onedev.server.model.support.setting.MailSetting;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.storage.StorageManager;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.EnvironmentConfig;
+import jetbrains.exodus.env.Environments;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
 
+/**
+ * Asynchronous mails are persisted in an outbound queue, and sent in batches by a 
+ * background thread, with all mails of a batch sent over a single SMTP connection. 
+ * If digest delay is configured in mail setting, mails with the same subject and 
+ * recipients queued within the delay are combined into a single digest mail. Mails 
+ * rejected by SMTP server are retried a few times before being given up.
+ */
 @Singleton
-public class DefaultMailManager implements MailManager {
+public class DefaultMailManager implements MailManager, Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultMailManager.class);
 	
+	private static final String QUEUE_DIR = "mail_queue";
+	
+	private static final String QUEUE_STORE = "mails";
+	
+	private static final int MAX_BATCH_SIZE = 100;
+	
+	private static final long INITIAL_RETRY_DELAY = 10000;
+	
+	private static final long MAX_RETRY_DELAY = 1800*1000L;
+	
+	private static final int MAX_SEND_ATTEMPTS = 3;
+	
 	private final SettingManager configManager;
 	
 	private final TransactionManager transactionManager;
 	
+	private final StorageManager storageManager;
+	
+	private final List<QueuedMail> queuedMails = new ArrayList<>();
+	
+	private final AtomicLong sequence = new AtomicLong(0);
+	
+	private final AtomicLong sentCount = new AtomicLong(0);
+	
+	private final AtomicLong failedCount = new AtomicLong(0);
+	
+	private final AtomicLong connectionCount = new AtomicLong(0);
+	
+	private long retryDelay;
+	
+	private long nextSendTime;
+	
+	private boolean mailSettingMissing;
+	
+	private Environment env;
+	
+	private Store queueStore;
+	
+	private volatile Thread thread;
+	
 	@Inject
-	public DefaultMailManager(TransactionManager transactionManager, SettingManager configManager) {
+	public DefaultMailManager(TransactionManager transactionManager, SettingManager configManager, 
+			StorageManager storageManager) {
 		this.transactionManager = transactionManager;
 		this.configManager = configManager;
+		this.storageManager = storageManager;
 	}
 
-	@Sessional
-	@Override
-	public void sendMailAsync(Collection<String> toList, String subject, String body) {
-		transactionManager.runAsyncAfterCommit(new Runnable() {
+	@Listen
+	public synchronized void on(SystemStarting event) {
+		File queueDir = new File(storageManager.getStorageDir(), QUEUE_DIR);
+		FileUtils.createDir(queueDir);
+		EnvironmentConfig config = new EnvironmentConfig();
+		config.setEnvCloseForcedly(true);
+		env = Environments.newInstance(queueDir, config);
+		queueStore = env.computeInTransaction(new TransactionalComputable<Store>() {
+			
+		    @Override
+		    public Store compute(Transaction txn) {
+		        return env.openStore(QUEUE_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+		    }
+		    
+		});		
+		env.executeInReadonlyTransaction(new TransactionalExecutable() {
 
 			@Override
-			public void run() {
-				try {
-					sendMail(toList, subject, body);
-				} catch (Exception e) {
-					logger.error("Error sending email (to: " + toList + ", subject: " + subject + ")", e);
-				}		
+			public void execute(Transaction txn) {
+				try (Cursor cursor = queueStore.openCursor(txn)) {
+					while (cursor.getNext()) {
+						ByteIterable value = cursor.getValue();
+						QueuedMail mail = (QueuedMail) SerializationUtils.deserialize(
+								Arrays.copyOf(value.getBytesUnsafe(), value.getLength()));
+						sequence.set(mail.id);
+						queuedMails.add(mail);
+					}
+				}
 			}
 			
 		});
+		if (!queuedMails.isEmpty())
+			logger.info("Resuming {} queued mails...", queuedMails.size());
+	}
+	
+	@Listen
+	public synchronized void on(SystemStarted event) {
+		thread = new Thread(this);
+		thread.start();
 	}
 
+	@Listen
+	public synchronized void on(SystemStopping event) {
+		thread = null;
+		notify();
+		if (env != null) {
+			env.close();
+			env = null;
+		}
+	}
+	
+	@Sessional
 	@Override
-	public void sendMail(MailSetting mailSetting, Collection<String> toList, String subject, String body) {
+	public void sendMailAsync(Collection<String> toList, String subject, String body) {
 		if (toList.isEmpty())
 			return;
+		
+		QueuedMail mail = new QueuedMail(sequence.incrementAndGet(), new ArrayList<>(toList), 
+				subject, body, System.currentTimeMillis());
+		transactionManager.runAfterCommit(new Runnable() {
 
+			@Override
+			public void run() {
+				queue(mail);
+			}
+			
+		});
+	}
+	
+	synchronized void queue(QueuedMail mail) {
+		persist(mail);
+		queuedMails.add(mail);
+		notify();
+	}
+	
+	private synchronized void persist(QueuedMail mail) {
+		if (env != null) {
+			env.executeInTransaction(new TransactionalExecutable() {
+	
+				@Override
+				public void execute(Transaction txn) {
+					queueStore.put(txn, longToEntry(mail.id), new ArrayByteIterable(SerializationUtils.serialize(mail)));
+				}
+				
+			});
+		}
+	}
+	
+	private synchronized void dequeue(Collection<QueuedMail> mails) {
+		if (env != null) {
+			env.executeInTransaction(new TransactionalExecutable() {
+	
+				@Override
+				public void execute(Transaction txn) {
+					for (QueuedMail mail: mails)
+						queueStore.delete(txn, longToEntry(mail.id));
+				}
+				
+			});
+		}
+		queuedMails.removeAll(mails);
+	}
+	
+	/**
+	 * Keep specified mails in queue to be sent again later, or give them up if already 
+	 * attempted too many times
+	 */
+	private synchronized void fail(Collection<QueuedMail> mails) {
+		List<QueuedMail> abandonedMails = new ArrayList<>();
+		for (QueuedMail mail: mails) {
+			mail.attempts++;
+			if (mail.attempts < MAX_SEND_ATTEMPTS) {
+				long delay = Math.min(INITIAL_RETRY_DELAY << (mail.attempts-1), MAX_RETRY_DELAY);
+				mail.nextAttemptTime = System.currentTimeMillis() + delay;
+				persist(mail);
+			} else {
+				abandonedMails.add(mail);
+			}
+		}
+		if (!abandonedMails.isEmpty()) {
+			logger.error("Giving up {} mails after {} attempts", abandonedMails.size(), MAX_SEND_ATTEMPTS);
+			dequeue(abandonedMails);
+			failedCount.addAndGet(abandonedMails.size());
+		}
+	}
+	
+	/**
+	 * Get mails ready to be sent, with mails of the same digest key combined 
+	 */
+	private synchronized List<Digest> getReadyDigests(long digestDelay, long now) {
+		Map<String, Digest> digests = new LinkedHashMap<>();
+		for (QueuedMail mail: queuedMails) {
+			if (mail.nextAttemptTime > now)
+				continue;
+			String digestKey = digestDelay != 0? mail.getDigestKey(): String.valueOf(mail.id);
+			Digest digest = digests.get(digestKey);
+			if (digest == null) {
+				if (digests.size() >= MAX_BATCH_SIZE)
+					continue;
+				digest = new Digest();
+				digests.put(digestKey, digest);
+			}
+			digest.mails.add(mail);
+		}
+		for (Iterator<Digest> it = digests.values().iterator(); it.hasNext();) {
+			if (it.next().mails.get(0).queueTime + digestDelay > now)
+				it.remove();
+		}
+		return new ArrayList<>(digests.values());
+	}
+	
+	private synchronized long getNextReadyTime(long digestDelay) {
+		long nextReadyTime = Long.MAX_VALUE;
+		for (QueuedMail mail: queuedMails) 
+			nextReadyTime = Math.min(nextReadyTime, Math.max(mail.queueTime + digestDelay, mail.nextAttemptTime));
+		return nextReadyTime;
+	}
+	
+	@Override
+	public void run() {
+		while (thread != null) {
+			MailSetting mailSetting = null;
+			if (getQueueSize() != 0) {
+				try {
+					mailSetting = configManager.getMailSetting();
+					if (mailSetting == null && !mailSettingMissing) 
+						logger.warn("Mail setting is not defined, queued mails will be sent once it is defined");
+					mailSettingMissing = mailSetting == null;
+				} catch (Exception e) {
+					logger.error("Error retrieving mail setting", e);
+				}
+			}
+			List<Digest> digests = new ArrayList<>();
+			long now = System.currentTimeMillis();
+			synchronized (this) {
+				if (mailSetting != null && !queuedMails.isEmpty() && now >= nextSendTime) 
+					digests = getReadyDigests(mailSetting.getDigestDelay()*1000L, now);
+				if (digests.isEmpty()) {
+					long waitTime;
+					if (queuedMails.isEmpty()) 
+						waitTime = 0;
+					else if (now < nextSendTime) 
+						waitTime = nextSendTime - now;
+					else if (mailSetting != null) 
+						waitTime = Math.max(getNextReadyTime(mailSetting.getDigestDelay()*1000L) - now, 1000);
+					else
+						waitTime = INITIAL_RETRY_DELAY;
+					try {
+						if (thread != null)
+							wait(waitTime);
+					} catch (InterruptedException e) {
+					}
+					continue;
+				}
+			}
+			
+			try {
+				sendBatch(mailSetting, digests);
+				retryDelay = 0;
+			} catch (Exception e) {
+				if (retryDelay == 0)
+					retryDelay = INITIAL_RETRY_DELAY;
+				else
+					retryDelay = Math.min(retryDelay*2, MAX_RETRY_DELAY);
+				nextSendTime = System.currentTimeMillis() + retryDelay;
+				logger.error("Error sending queued mails, will retry in " + retryDelay/1000 + " seconds", e);
+			}
+		}
+	}
+	
+	/**
+	 * Send specified digests over a single SMTP connection. Sent digests are removed 
+	 * from the queue. Digests rejected by SMTP server (for instance due to invalid 
+	 * recipients) are logged and kept in queue to be retried later individually, while 
+	 * connection problems are thrown so that the whole batch can be retried later
+	 */
+	void sendBatch(MailSetting mailSetting, List<Digest> digests) throws MessagingException {
+		long time = System.currentTimeMillis();
+		Transport transport = null;
+		Session session = null;
+		int sent = 0;
+		try {
+			for (Digest digest: digests) {
+				HtmlEmail email = createEmail(mailSetting, digest.getToList(), digest.getSubject(), digest.getBody());
+				MimeMessage message;
+				try {
+					if (session != null)
+						email.setMailSession(session);
+					email.buildMimeMessage();
+					message = email.getMimeMessage();
+					if (session == null) 
+						session = email.getMailSession();
+				} catch (EmailException e) {
+					logger.error("Error building mail (to: " + digest.getToList() + ", subject: " 
+							+ digest.getSubject() + ")", e);
+					dequeue(digest.mails);
+					failedCount.addAndGet(digest.mails.size());
+					continue;
+				}
+				if (transport == null) {
+					transport = session.getTransport();
+					transport.connect();
+					connectionCount.incrementAndGet();
+				}
+				logger.debug("Sending email (to: {}, subject: {})... ", digest.getToList(), digest.getSubject());
+				try {
+					message.saveChanges();
+					transport.sendMessage(message, message.getAllRecipients());
+				} catch (MessagingException e) {
+					if (!transport.isConnected())
+						throw e;
+					logger.error("Error sending mail (to: " + digest.getToList() + ", subject: " 
+							+ digest.getSubject() + ")", e);
+					fail(digest.mails);
+					continue;
+				}
+				dequeue(digest.mails);
+				sentCount.addAndGet(digest.mails.size());
+				sent++;
+			}
+		} finally {
+			if (transport != null) {
+				try {
+					transport.close();
+				} catch (MessagingException e) {
+				}
+			}
+		}
+		if (sent != 0) {
+			logger.debug("Sent {} mails in {} ms, {} mails remaining in queue", 
+					sent, System.currentTimeMillis()-time, getQueueSize());
+		}
+	}
+	
+	private HtmlEmail createEmail(@Nullable MailSetting mailSetting, Collection<String> toList, 
+			String subject, String body) {
 		if (mailSetting == null)
 			mailSetting = configManager.getMailSetting();
 		
@@ -97,7 +430,19 @@ public class DefaultMailManager implements MailManager {
 			
 			email.setSubject(subject);
 			email.setHtmlMsg(body);
-			
+		} catch (EmailException e) {
+			throw new RuntimeException(e);
+		}
+		return email;
+	}
+
+	@Override
+	public void sendMail(MailSetting mailSetting, Collection<String> toList, String subject, String body) {
+		if (toList.isEmpty())
+			return;
+
+		HtmlEmail email = createEmail(mailSetting, toList, subject, body);
+		try {
 			logger.debug("Sending email (to: {}, subject: {})... ", toList, subject);
 			email.send();
 		} catch (EmailException e) {
@@ -110,4 +455,87 @@ public class DefaultMailManager implements MailManager {
 		sendMail(configManager.getMailSetting(), toList, subject, body);
 	}
 
+	@Override
+	public synchronized int getQueueSize() {
+		return queuedMails.size();
+	}
+
+	@Override
+	public long getSentCount() {
+		return sentCount.get();
+	}
+
+	@Override
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	@Override
+	public long getConnectionCount() {
+		return connectionCount.get();
+	}
+	
+	private static ByteIterable longToEntry(long value) {
+		return new ArrayByteIterable(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+	}
+	
+	static class QueuedMail implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final long id;
+		
+		final List<String> toList;
+		
+		final String subject;
+		
+		final String body;
+		
+		final long queueTime;
+		
+		int attempts;
+		
+		long nextAttemptTime;
+		
+		QueuedMail(long id, List<String> toList, String subject, String body, long queueTime) {
+			this.id = id;
+			this.toList = toList;
+			this.subject = subject;
+			this.body = body;
+			this.queueTime = queueTime;
+		}
+		
+		String getDigestKey() {
+			return new TreeSet<>(toList) + ":" + subject;
+		}
+		
+	}
+	
+	static class Digest {
+		
+		final List<QueuedMail> mails = new ArrayList<>();
+		
+		List<String> getToList() {
+			return mails.get(0).toList;
+		}
+		
+		String getSubject() {
+			if (mails.size() > 1)
+				return mails.get(0).subject + " (" + mails.size() + " updates)";
+			else
+				return mails.get(0).subject;
+		}
+		
+		String getBody() {
+			StringBuilder body = new StringBuilder();
+			for (QueuedMail mail: mails) {
+				if (body.length() != 0)
+					body.append("<hr>");
+				body.append(mail.body);
+			}
+			return body.toString();
+		}
+		
+	}
+	
 }
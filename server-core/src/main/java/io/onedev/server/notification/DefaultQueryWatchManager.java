@@ -0,0 +1,303 @@
+package io.onedev.server.notification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.server.entitymanager.UserManager;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueQuerySetting;
+import io.onedev.server.model.Milestone;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.PullRequestQuerySetting;
+import io.onedev.server.model.Setting;
+import io.onedev.server.model.User;
+import io.onedev.server.model.support.NamedQuery;
+import io.onedev.server.model.support.QuerySetting;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.search.entity.EntityQuery;
+import io.onedev.server.search.entity.issue.IssueQuery;
+import io.onedev.server.search.entity.pullrequest.PullRequestQuery;
+
+/**
+ * Watched queries of a project are parsed once and kept in an index until relevant query 
+ * settings or project settings change. The index is keyed by discriminators of watched 
+ * queries (state, milestone, field values, etc.), so that only candidate queries need to 
+ * be evaluated against an issue or pull request. 
+ */
+@Singleton
+public class DefaultQueryWatchManager implements QueryWatchManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultQueryWatchManager.class);
+	
+	private final UserManager userManager;
+	
+	private final TransactionManager transactionManager;
+	
+	private final Map<Long, WatchIndex<Issue>> issueWatchIndexes = new ConcurrentHashMap<>();
+	
+	private final Map<Long, WatchIndex<PullRequest>> pullRequestWatchIndexes = new ConcurrentHashMap<>();
+	
+	private final AtomicLong version = new AtomicLong(0);
+	
+	@Inject
+	public DefaultQueryWatchManager(UserManager userManager, TransactionManager transactionManager) {
+		this.userManager = userManager;
+		this.transactionManager = transactionManager;
+	}
+
+	@Override
+	public Map<User, Boolean> getWatches(Issue issue) {
+		Project project = issue.getProject();
+		WatchIndex<Issue> index = issueWatchIndexes.get(project.getId());
+		if (index == null) {
+			long currentVersion = version.get();
+			index = new WatchIndex<Issue>(issue, project.getIssueQuerySettings()) {
+
+				@Override
+				protected EntityQuery<Issue> parse(Issue entity, String queryString) {
+					return IssueQuery.parse(entity.getProject(), queryString, true);
+				}
+
+				@Override
+				protected NamedQuery getSavedProjectQuery(String name) {
+					return project.getIssueSetting().getSavedQuery(name);
+				}
+				
+			};
+			if (version.get() == currentVersion)
+				issueWatchIndexes.put(project.getId(), index);
+		}
+		return index.getWatches(issue, IssueQuery.getDiscriminators(issue));
+	}
+
+	@Override
+	public Map<User, Boolean> getWatches(PullRequest request) {
+		Project project = request.getTargetProject();
+		WatchIndex<PullRequest> index = pullRequestWatchIndexes.get(project.getId());
+		if (index == null) {
+			long currentVersion = version.get();
+			index = new WatchIndex<PullRequest>(request, project.getPullRequestQuerySettings()) {
+
+				@Override
+				protected EntityQuery<PullRequest> parse(PullRequest entity, String queryString) {
+					return PullRequestQuery.parse(entity.getTargetProject(), queryString, true);
+				}
+
+				@Override
+				protected NamedQuery getSavedProjectQuery(String name) {
+					return project.getSavedPullRequestQuery(name);
+				}
+				
+			};
+			if (version.get() == currentVersion)
+				pullRequestWatchIndexes.put(project.getId(), index);
+		}
+		return index.getWatches(request, PullRequestQuery.getDiscriminators(request));
+	}
+	
+	private void invalidate(AbstractEntity entity) {
+		Long projectId;
+		boolean issueRelated, pullRequestRelated;
+		if (entity instanceof IssueQuerySetting) {
+			projectId = ((IssueQuerySetting) entity).getProject().getId();
+			issueRelated = true;
+			pullRequestRelated = false;
+		} else if (entity instanceof PullRequestQuerySetting) {
+			projectId = ((PullRequestQuerySetting) entity).getProject().getId();
+			issueRelated = false;
+			pullRequestRelated = true;
+		} else if (entity instanceof Milestone) {
+			projectId = ((Milestone) entity).getProject().getId();
+			issueRelated = true;
+			pullRequestRelated = false;
+		} else if (entity instanceof Project) {
+			projectId = entity.getId();
+			issueRelated = pullRequestRelated = true;
+		} else if (entity instanceof Setting || entity instanceof User) {
+			projectId = null;
+			issueRelated = pullRequestRelated = true;
+		} else {
+			return;
+		}
+		
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				version.incrementAndGet();
+				if (projectId != null) {
+					if (issueRelated)
+						issueWatchIndexes.remove(projectId);
+					if (pullRequestRelated)
+						pullRequestWatchIndexes.remove(projectId);
+				} else {
+					issueWatchIndexes.clear();
+					pullRequestWatchIndexes.clear();
+				}
+			}
+			
+		});
+	}
+	
+	@Listen
+	public void on(EntityPersisted event) {
+		invalidate(event.getEntity());
+	}
+	
+	@Listen
+	public void on(EntityRemoved event) {
+		invalidate(event.getEntity());
+	}
+	
+	private static class Watch<T extends AbstractEntity> {
+		
+		final int order;
+		
+		final Long userId;
+		
+		final boolean watching;
+		
+		final String queryString;
+		
+		@Nullable
+		final EntityQuery<T> query;
+		
+		Watch(int order, Long userId, boolean watching, String queryString, @Nullable EntityQuery<T> query) {
+			this.order = order;
+			this.userId = userId;
+			this.watching = watching;
+			this.queryString = queryString;
+			this.query = query;
+		}
+		
+	}
+	
+	private abstract class WatchIndex<T extends AbstractEntity> {
+
+		private final Map<String, List<Watch<T>>> indexedWatches = new HashMap<>();
+		
+		private final List<Watch<T>> unindexedWatches = new ArrayList<>();
+		
+		WatchIndex(T entity, Collection<? extends QuerySetting<?>> querySettings) {
+			Map<String, Optional<EntityQuery<T>>> parsedQueries = new HashMap<>();
+			int order = 0;
+			for (QuerySetting<?> querySetting: querySettings) {
+				Long userId = querySetting.getUser().getId();
+				for (Map.Entry<String, Boolean> entry: querySetting.getQueryWatchSupport().getUserQueryWatches().entrySet()) 
+					add(entity, order++, userId, entry.getValue(), querySetting.getUserQuery(entry.getKey()), parsedQueries);
+				for (Map.Entry<String, Boolean> entry: querySetting.getQueryWatchSupport().getProjectQueryWatches().entrySet()) 
+					add(entity, order++, userId, entry.getValue(), getSavedProjectQuery(entry.getKey()), parsedQueries);
+			}
+		}
+		
+		private void add(T entity, int order, Long userId, boolean watching, @Nullable NamedQuery namedQuery, 
+				Map<String, Optional<EntityQuery<T>>> parsedQueries) {
+			if (namedQuery == null)
+				return;
+			
+			Optional<EntityQuery<T>> parsedQuery = parsedQueries.get(namedQuery.getQuery());
+			if (parsedQuery == null) {
+				try {
+					parsedQuery = Optional.of(parse(entity, namedQuery.getQuery()));
+				} catch (Exception e) {
+					logger.debug("Error parsing watched query: " + namedQuery.getQuery(), e);
+					parsedQuery = Optional.empty();
+				}
+				parsedQueries.put(namedQuery.getQuery(), parsedQuery);
+			}
+			
+			if (!parsedQuery.isPresent()) 
+				return;
+			
+			EntityQuery<T> entityQuery = parsedQuery.get();
+			Watch<T> watch;
+			if (entityQuery.getCriteria() == null || entityQuery.getCriteria().isReusable()) 
+				watch = new Watch<>(order, userId, watching, namedQuery.getQuery(), entityQuery);
+			else 
+				watch = new Watch<>(order, userId, watching, namedQuery.getQuery(), null);
+			
+			Collection<String> discriminators = entityQuery.getCriteria()!=null
+					?entityQuery.getCriteria().getDiscriminators()
+					:new HashSet<>();
+			if (!discriminators.isEmpty()) {
+				// Indexing by any one discriminator is sufficient as an entity has to 
+				// possess all of them to match the query
+				String discriminator = discriminators.iterator().next();
+				List<Watch<T>> watchesOfDiscriminator = indexedWatches.get(discriminator);
+				if (watchesOfDiscriminator == null) {
+					watchesOfDiscriminator = new ArrayList<>();
+					indexedWatches.put(discriminator, watchesOfDiscriminator);
+				}
+				watchesOfDiscriminator.add(watch);
+			} else {
+				unindexedWatches.add(watch);
+			}
+		}
+		
+		Map<User, Boolean> getWatches(T entity, Collection<String> discriminators) {
+			List<Watch<T>> candidates = new ArrayList<>(unindexedWatches);
+			for (String discriminator: discriminators) {
+				List<Watch<T>> watchesOfDiscriminator = indexedWatches.get(discriminator);
+				if (watchesOfDiscriminator != null)
+					candidates.addAll(watchesOfDiscriminator);
+			}
+			candidates.sort(new Comparator<Watch<T>>() {
+
+				@Override
+				public int compare(Watch<T> o1, Watch<T> o2) {
+					return o1.order - o2.order;
+				}
+				
+			});
+			
+			Map<User, Boolean> watches = new LinkedHashMap<>();
+			Set<Long> processedUserIds = new HashSet<>();
+			for (Watch<T> candidate: candidates) {
+				if (processedUserIds.contains(candidate.userId))
+					continue;
+				EntityQuery<T> query = candidate.query;
+				if (query == null) {
+					try {
+						query = parse(entity, candidate.queryString);
+					} catch (Exception e) {
+						continue;
+					}
+				}
+				User user = userManager.load(candidate.userId);
+				if (query.matches(entity, user)) {
+					watches.put(user, candidate.watching);
+					processedUserIds.add(candidate.userId);
+				}
+			}
+			return watches;
+		}
+		
+		protected abstract EntityQuery<T> parse(T entity, String queryString);
+		
+		protected abstract NamedQuery getSavedProjectQuery(String name);
+		
+	}
+	
+}
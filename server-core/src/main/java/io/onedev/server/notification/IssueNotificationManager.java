@@ -22,12 +22,7 @@ import io.onedev.server.model.Group;
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.IssueWatch;
 import io.onedev.server.model.User;
-import io.onedev.server.model.support.NamedQuery;
-import io.onedev.server.model.support.QuerySetting;
 import io.onedev.server.persistence.annotation.Transactional;
-import io.onedev.server.search.entity.EntityQuery;
-import io.onedev.server.search.entity.QueryWatchBuilder;
-import io.onedev.server.search.entity.issue.IssueQuery;
 import io.onedev.server.util.markdown.MarkdownManager;
 import io.onedev.server.util.markdown.MentionParser;
 import jersey.repackaged.com.google.common.collect.Lists;
@@ -45,9 +40,13 @@ public class IssueNotificationManager {
 	
 	private final UserInfoManager userInfoManager;
 	
+	private final QueryWatchManager queryWatchManager;
+	
 	@Inject
 	public IssueNotificationManager(MarkdownManager markdownManager, MailManager mailManager, 
-			UrlManager urlManager, IssueWatchManager issueWatchManager, UserInfoManager userInfoManager) {
+			UrlManager urlManager, IssueWatchManager issueWatchManager, UserInfoManager userInfoManager, 
+			QueryWatchManager queryWatchManager) {
+		this.queryWatchManager = queryWatchManager;
 		this.mailManager = mailManager;
 		this.urlManager = urlManager;
 		this.markdownManager = markdownManager;
@@ -61,29 +60,7 @@ public class IssueNotificationManager {
 		Issue issue = event.getIssue();
 		User user = event.getUser();
 
-		for (Map.Entry<User, Boolean> entry: new QueryWatchBuilder<Issue>() {
-
-			@Override
-			protected Issue getEntity() {
-				return issue;
-			}
-
-			@Override
-			protected Collection<? extends QuerySetting<?>> getQuerySettings() {
-				return issue.getProject().getIssueQuerySettings();
-			}
-
-			@Override
-			protected EntityQuery<Issue> parse(String queryString) {
-				return IssueQuery.parse(issue.getProject(), queryString, true);
-			}
-
-			@Override
-			protected NamedQuery getSavedProjectQuery(String name) {
-				return issue.getProject().getIssueSetting().getSavedQuery(name);
-			}
-			
-		}.getWatches().entrySet()) {
+		for (Map.Entry<User, Boolean> entry: queryWatchManager.getWatches(issue).entrySet()) {
 			watch(issue, entry.getKey(), entry.getValue());
 		}
 		
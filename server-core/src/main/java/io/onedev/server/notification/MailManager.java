@@ -10,6 +10,36 @@ public interface MailManager {
 	
 	void sendMail(MailSetting mailSetting, Collection<String> toList, String subject, String body);
 	
+	/**
+	 * Queue specified mail to be sent after current transaction is committed. Queued mails 
+	 * are persisted until sent, and are sent in batches reusing SMTP connections
+	 */
 	void sendMailAsync(Collection<String> toList, String subject, String body);
 	
+	/**
+	 * @return
+	 * 			number of mails waiting in queue
+	 */
+	int getQueueSize();
+	
+	/**
+	 * @return
+	 * 			number of queued mails sent since server start. Mails combined into a digest 
+	 * 			are counted separately
+	 */
+	long getSentCount();
+	
+	/**
+	 * @return
+	 * 			number of queued mails given up since server start, either because they can 
+	 * 			not be built, or because they are rejected by SMTP server repeatedly
+	 */
+	long getFailedCount();
+	
+	/**
+	 * @return
+	 * 			number of SMTP connections opened to send queued mails since server start
+	 */
+	long getConnectionCount();
+	
 }
@@ -34,8 +34,6 @@ import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.PullRequestReview;
 import io.onedev.server.model.PullRequestWatch;
 import io.onedev.server.model.User;
-import io.onedev.server.model.support.NamedQuery;
-import io.onedev.server.model.support.QuerySetting;
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestApproveData;
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestChangeData;
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestDiscardData;
@@ -44,9 +42,6 @@ import io.onedev.server.model.support.pullrequest.changedata.PullRequestReopenDa
 import io.onedev.server.model.support.pullrequest.changedata.PullRequestRequestedForChangesData;
 import io.onedev.server.persistence.PersistListener;
 import io.onedev.server.persistence.annotation.Transactional;
-import io.onedev.server.search.entity.EntityQuery;
-import io.onedev.server.search.entity.QueryWatchBuilder;
-import io.onedev.server.search.entity.pullrequest.PullRequestQuery;
 import io.onedev.server.util.markdown.MarkdownManager;
 import io.onedev.server.util.markdown.MentionParser;
 
@@ -63,10 +58,13 @@ public class PullRequestNotificationManager implements PersistListener {
 	
 	private final UserInfoManager userInfoManager;
 	
+	private final QueryWatchManager queryWatchManager;
+	
 	@Inject
 	public PullRequestNotificationManager(MailManager mailManager, UrlManager urlManager, 
 			MarkdownManager markdownManager, PullRequestWatchManager pullRequestWatchManager, 
-			UserInfoManager userInfoManager) {
+			UserInfoManager userInfoManager, QueryWatchManager queryWatchManager) {
+		this.queryWatchManager = queryWatchManager;
 		this.mailManager = mailManager;
 		this.urlManager = urlManager;
 		this.markdownManager = markdownManager;
@@ -80,29 +78,7 @@ public class PullRequestNotificationManager implements PersistListener {
 		PullRequest request = event.getRequest();
 		User user = event.getUser();
 		
-		for(Map.Entry<User, Boolean> entry: new QueryWatchBuilder<PullRequest>() {
-
-			@Override
-			protected PullRequest getEntity() {
-				return request;
-			}
-
-			@Override
-			protected Collection<? extends QuerySetting<?>> getQuerySettings() {
-				return request.getTargetProject().getPullRequestQuerySettings();
-			}
-
-			@Override
-			protected EntityQuery<PullRequest> parse(String queryString) {
-				return PullRequestQuery.parse(request.getTargetProject(), queryString, true);
-			}
-
-			@Override
-			protected NamedQuery getSavedProjectQuery(String name) {
-				return request.getTargetProject().getSavedPullRequestQuery(name);
-			}
-			
-		}.getWatches().entrySet()) {
+		for (Map.Entry<User, Boolean> entry: queryWatchManager.getWatches(request).entrySet()) {
 			watch(request, entry.getKey(), entry.getValue());
 		};
 		
@@ -0,0 +1,27 @@
+package io.onedev.server.notification;
+
+import java.util.Map;
+
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.User;
+
+public interface QueryWatchManager {
+	
+	/**
+	 * Get users watching specified issue via their watched issue queries
+	 * 
+	 * @return
+	 * 			map of watching user to whether or not the user is watching or ignoring 
+	 */
+	Map<User, Boolean> getWatches(Issue issue);
+	
+	/**
+	 * Get users watching specified pull request via their watched pull request queries
+	 * 
+	 * @return
+	 * 			map of watching user to whether or not the user is watching or ignoring 
+	 */
+	Map<User, Boolean> getWatches(PullRequest request);
+	
+}
@@ -0,0 +1,75 @@
+package io.onedev.server.notification;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+/**
+ * Delivery statistics of a web hook since server start
+ */
+public class WebHookDeliveryStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private long deliveredCount;
+	
+	private long failedCount;
+	
+	private long retryCount;
+	
+	private long totalLatency;
+	
+	private String lastError;
+	
+	private Date lastErrorDate;
+	
+	synchronized void onDelivered(long latency) {
+		deliveredCount++;
+		totalLatency += latency;
+	}
+	
+	synchronized void onError(String error, boolean willRetry) {
+		if (willRetry)
+			retryCount++;
+		else
+			failedCount++;
+		lastError = error;
+		lastErrorDate = new Date();
+	}
+	
+	public synchronized long getDeliveredCount() {
+		return deliveredCount;
+	}
+
+	/**
+	 * @return
+	 * 			number of deliveries given up after all retries
+	 */
+	public synchronized long getFailedCount() {
+		return failedCount;
+	}
+
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * @return
+	 * 			average latency of successful deliveries in milliseconds
+	 */
+	public synchronized long getAverageLatency() {
+		return deliveredCount != 0? totalLatency / deliveredCount: 0;
+	}
+
+	@Nullable
+	public synchronized String getLastError() {
+		return lastError;
+	}
+
+	@Nullable
+	public synchronized Date getLastErrorDate() {
+		return lastErrorDate;
+	}
+
+}
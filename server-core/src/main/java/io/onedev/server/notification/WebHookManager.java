@@ -1,20 +1,35 @@
 package io.onedev.server.notification;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 
-import org.apache.commons.httpclient.HttpStatus;
-import org.apache.http.HttpEntity;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,82 +38,441 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.ProjectEvent;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Project;
 import io.onedev.server.model.support.WebHook;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.annotation.Sessional;
+import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.jackson.RestView;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.ByteIterable;
+import jetbrains.exodus.env.Cursor;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.EnvironmentConfig;
+import jetbrains.exodus.env.Environments;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+import jetbrains.exodus.env.Transaction;
+import jetbrains.exodus.env.TransactionalComputable;
+import jetbrains.exodus.env.TransactionalExecutable;
 
+/**
+ * Web hook deliveries are persisted and sent via a pooled http client. Concurrency and 
+ * request rate of each endpoint (host and port of the post url) are limited so that a 
+ * slow receiver can not occupy all delivery threads, and failed deliveries are retried 
+ * with exponential backoff, surviving server restart. Persisted deliveries do not contain 
+ * secrets of web hooks, which are read from project setting when deliveries are sent. 
+ */
 @Singleton
-public class WebHookManager {
+public class WebHookManager implements Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(WebHookManager.class);
 	
 	private static final String SIGNATURE_HEAD = "X-OneDev-Signature";
 	
+	private static final String DELIVERY_DIR = "webhook_delivery";
+	
+	private static final String DELIVERY_STORE = "deliveries";
+	
+	private static final int CONNECT_TIMEOUT = 10000;
+	
+	private static final int SOCKET_TIMEOUT = 30000;
+	
+	private static final int MAX_CONNECTIONS = 100;
+	
+	private static final int MAX_CONCURRENCY_PER_ENDPOINT = 4;
+	
+	private static final long MIN_REQUEST_INTERVAL_PER_ENDPOINT = 100;
+	
+	private static final int MAX_ATTEMPTS = 10;
+	
+	private static final long INITIAL_RETRY_DELAY = 5000;
+	
+	private static final long MAX_RETRY_DELAY = 3600*1000L;
+	
 	private final ObjectMapper mapper;
 	
 	private final ExecutorService executor;
-
+	
+	private final StorageManager storageManager;
+	
+	private final ProjectManager projectManager;
+	
+	private final SessionManager sessionManager;
+	
+	private final List<Delivery> pendingDeliveries = new ArrayList<>();
+	
+	/*
+	 * Endpoints being delivered to or recently requested. Idle endpoints are removed as 
+	 * their limits no longer apply
+	 */
+	private final Map<String, Endpoint> endpoints = new HashMap<>();
+	
+	private final Map<String, WebHookDeliveryStats> deliveryStats = new ConcurrentHashMap<>();
+	
+	private final AtomicLong sequence = new AtomicLong(0);
+	
+	private CloseableHttpClient httpClient;
+	
+	private Environment env;
+	
+	private Store deliveryStore;
+	
+	private volatile Thread thread;
+	
 	@Inject
-	public WebHookManager(ObjectMapper mapper, ExecutorService executor) {
+	public WebHookManager(ObjectMapper mapper, ExecutorService executor, StorageManager storageManager, 
+			ProjectManager projectManager, SessionManager sessionManager) {
 		this.mapper = mapper.copy();
 		this.mapper.setConfig(this.mapper.getSerializationConfig().withView(RestView.class));
 		this.executor = executor;
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+		this.sessionManager = sessionManager;
+	}
+	
+	@Listen
+	public synchronized void on(SystemStarting event) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONCURRENCY_PER_ENDPOINT);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(CONNECT_TIMEOUT)
+				.setConnectionRequestTimeout(CONNECT_TIMEOUT)
+				.setSocketTimeout(SOCKET_TIMEOUT)
+				.build();
+		httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+		
+		File deliveryDir = new File(storageManager.getStorageDir(), DELIVERY_DIR);
+		FileUtils.createDir(deliveryDir);
+		EnvironmentConfig config = new EnvironmentConfig();
+		config.setEnvCloseForcedly(true);
+		env = Environments.newInstance(deliveryDir, config);
+		deliveryStore = env.computeInTransaction(new TransactionalComputable<Store>() {
+			
+		    @Override
+		    public Store compute(Transaction txn) {
+		        return env.openStore(DELIVERY_STORE, StoreConfig.WITHOUT_DUPLICATES, txn);
+		    }
+		    
+		});		
+		env.executeInReadonlyTransaction(new TransactionalExecutable() {
+
+			@Override
+			public void execute(Transaction txn) {
+				try (Cursor cursor = deliveryStore.openCursor(txn)) {
+					while (cursor.getNext()) {
+						Delivery delivery = (Delivery) SerializationUtils.deserialize(toBytes(cursor.getValue()));
+						sequence.set(delivery.id);
+						pendingDeliveries.add(delivery);
+					}
+				}
+			}
+			
+		});
+		if (!pendingDeliveries.isEmpty())
+			logger.info("Resuming {} pending web hook deliveries...", pendingDeliveries.size());
+	}
+	
+	@Listen
+	public synchronized void on(SystemStarted event) {
+		thread = new Thread(this);
+		thread.start();
+	}
+	
+	@Listen
+	public synchronized void on(SystemStopping event) {
+		thread = null;
+		notify();
+		if (httpClient != null) {
+			try {
+				httpClient.close();
+			} catch (IOException e) {
+			}
+			httpClient = null;
+		}
+		if (env != null) {
+			env.close();
+			env = null;
+		}
 	}
 	
 	@Sessional
 	@Listen
 	public void on(ProjectEvent event) {
-		String jsonOfEvent;
-		try {
-			jsonOfEvent = mapper.writeValueAsString(event);
-		} catch (JsonProcessingException e) {
-			throw new RuntimeException(e);
-		}
+		String jsonOfEvent = null;
 		for (WebHook webHook: event.getProject().getWebHooks()) {
 			for (WebHook.EventType eventType: webHook.getEventTypes()) {
 				if (eventType.includes(event)) {
-					executor.submit(new Runnable() {
+					if (jsonOfEvent == null) {
+						try {
+							jsonOfEvent = mapper.writeValueAsString(event);
+						} catch (JsonProcessingException e) {
+							throw new RuntimeException(e);
+						}
+					}
+					submit(new Delivery(sequence.incrementAndGet(), event.getProject().getId(), 
+							webHook.getPostUrl(), jsonOfEvent));
+					break;
+				}
+			}
+		}
+	}
+	
+	private synchronized void submit(Delivery delivery) {
+		persist(delivery);
+		pendingDeliveries.add(delivery);
+		notify();
+	}
+	
+	private synchronized void persist(Delivery delivery) {
+		if (env != null) {
+			env.executeInTransaction(new TransactionalExecutable() {
+	
+				@Override
+				public void execute(Transaction txn) {
+					deliveryStore.put(txn, longToEntry(delivery.id), 
+							new ArrayByteIterable(SerializationUtils.serialize(delivery)));
+				}
+				
+			});
+		}
+	}
+	
+	private synchronized void remove(Delivery delivery) {
+		if (env != null) {
+			env.executeInTransaction(new TransactionalExecutable() {
+	
+				@Override
+				public void execute(Transaction txn) {
+					deliveryStore.delete(txn, longToEntry(delivery.id));
+				}
+				
+			});
+		}
+	}
+	
+	private Endpoint getEndpoint(String postUrl) {
+		String endpointKey;
+		try {
+			URI uri = URI.create(postUrl);
+			endpointKey = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+		} catch (Exception e) {
+			endpointKey = postUrl;
+		}
+		Endpoint endpoint = endpoints.get(endpointKey);
+		if (endpoint == null) {
+			endpoint = new Endpoint();
+			endpoints.put(endpointKey, endpoint);
+		}
+		return endpoint;
+	}
+	
+	@Override
+	public synchronized void run() {
+		while (thread != null) {
+			long now = System.currentTimeMillis();
+			long nextWakeTime = Long.MAX_VALUE;
+			for (Iterator<Delivery> it = pendingDeliveries.iterator(); it.hasNext();) {
+				Delivery delivery = it.next();
+				Endpoint endpoint = getEndpoint(delivery.postUrl);
+				long startTime = Math.max(delivery.nextAttemptTime, 
+						endpoint.lastRequestTime + MIN_REQUEST_INTERVAL_PER_ENDPOINT);
+				if (endpoint.concurrency >= MAX_CONCURRENCY_PER_ENDPOINT) 
+					continue;
+				if (startTime > now) {
+					nextWakeTime = Math.min(nextWakeTime, startTime);
+					continue;
+				}
+				it.remove();
+				endpoint.concurrency++;
+				endpoint.lastRequestTime = now;
+				executor.execute(new Runnable() {
 
-						@Override
-						public void run() {
-							CloseableHttpClient client = HttpClients.createDefault();
-							try {
-							    HttpPost httpPost = new HttpPost(webHook.getPostUrl());
-							 
-							    StringEntity entity = new StringEntity(jsonOfEvent);
-							    httpPost.setEntity(entity);
-							    httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-							    httpPost.setHeader(SIGNATURE_HEAD, webHook.getSecret());
-							 
-							    CloseableHttpResponse response = client.execute(httpPost);
-							    try {
-							    	HttpEntity responseEntity = response.getEntity();
-							    	String responseText = EntityUtils.toString(responseEntity);
-							    	if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK)
-							    		logger.error("Error calling web hooks: " + responseText);
-							    } finally {
-							    	try {
-										response.close();
-									} catch (IOException e) {
-									}
-							    }
-							} catch (IOException e) {
-								logger.error("Error calling web hooks", e);
-							} finally {
-								try {
-									client.close();
-								} catch (IOException e) {
-								}
+					@Override
+					public void run() {
+						try {
+							deliver(delivery);
+						} finally {
+							synchronized (WebHookManager.this) {
+								endpoint.concurrency--;
+								WebHookManager.this.notify();
 							}
 						}
-						
-					});
-					break;
+					}
+					
+				});
+			}
+			for (Iterator<Endpoint> it = endpoints.values().iterator(); it.hasNext();) {
+				Endpoint endpoint = it.next();
+				if (endpoint.concurrency == 0 
+						&& now - endpoint.lastRequestTime >= MIN_REQUEST_INTERVAL_PER_ENDPOINT) {
+					it.remove();
+				}
+			}
+			try {
+				if (nextWakeTime != Long.MAX_VALUE)
+					wait(Math.max(nextWakeTime - now, 1));
+				else
+					wait();
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+	
+	/**
+	 * Find web hook of specified delivery from project setting
+	 * 
+	 * @return
+	 * 			web hook of the delivery, or <tt>null</tt> if the project or web hook 
+	 * 			no longer exists
+	 */
+	@Nullable
+	private WebHook getWebHook(Delivery delivery) {
+		if (delivery.projectId == null)
+			return null;
+		return sessionManager.call(() -> {
+			Project project = projectManager.get(delivery.projectId);
+			if (project != null) {
+				for (WebHook webHook: project.getWebHooks()) {
+					if (webHook.getPostUrl().equals(delivery.postUrl))
+						return webHook;
 				}
 			}
+			return null;
+		});
+	}
+	
+	private void deliver(Delivery delivery) {
+		WebHook webHook = getWebHook(delivery);
+		if (webHook == null) {
+			logger.warn("Web hook '{}' no longer exists, dropping its delivery", delivery.postUrl);
+			remove(delivery);
+			return;
+		}
+		
+		WebHookDeliveryStats stats = getDeliveryStats(delivery.projectId, delivery.postUrl);
+		String error;
+		long startTime = System.currentTimeMillis();
+		try {
+			HttpPost httpPost = new HttpPost(delivery.postUrl);
+			httpPost.setEntity(new StringEntity(delivery.payload, ContentType.APPLICATION_JSON));
+			httpPost.setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+			httpPost.setHeader(SIGNATURE_HEAD, webHook.getSecret());
+			try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+				String responseText = EntityUtils.toString(response.getEntity());
+				int statusCode = response.getStatusLine().getStatusCode();
+				if (statusCode >= 200 && statusCode < 300) 
+					error = null;
+				else 
+					error = "Http status: " + statusCode + ", response: " + responseText;
+			}
+		} catch (Exception e) {
+			error = e.getMessage();
+			if (error == null)
+				error = e.getClass().getName();
+		}
+		
+		if (error == null) {
+			stats.onDelivered(System.currentTimeMillis() - startTime);
+			remove(delivery);
+		} else {
+			delivery.attempts++;
+			boolean willRetry = delivery.attempts < MAX_ATTEMPTS && thread != null;
+			stats.onError(error, willRetry);
+			if (willRetry) {
+				long delay = Math.min(INITIAL_RETRY_DELAY << (delivery.attempts-1), MAX_RETRY_DELAY);
+				delivery.nextAttemptTime = System.currentTimeMillis() + delay;
+				logger.warn("Error calling web hook '{}' (will retry in {} seconds): {}", 
+						delivery.postUrl, delay/1000, error);
+				submit(delivery);
+			} else if (thread != null) {
+				logger.error("Error calling web hook '{}' (giving up after {} attempts): {}", 
+						delivery.postUrl, delivery.attempts, error);
+				remove(delivery);
+			}
+		}
+	}
+	
+	private String getHookKey(Long projectId, String postUrl) {
+		return projectId + ":" + postUrl;
+	}
+	
+	/**
+	 * Get delivery statistics of web hook with specified post url in specified project 
+	 * since server start
+	 */
+	public WebHookDeliveryStats getDeliveryStats(Long projectId, String postUrl) {
+		String hookKey = getHookKey(projectId, postUrl);
+		WebHookDeliveryStats stats = deliveryStats.get(hookKey);
+		if (stats == null) {
+			stats = new WebHookDeliveryStats();
+			WebHookDeliveryStats existingStats = deliveryStats.putIfAbsent(hookKey, stats);
+			if (existingStats != null)
+				stats = existingStats;
+		}
+		return stats;
+	}
+	
+	/**
+	 * @return
+	 * 			number of pending deliveries of web hook with specified post url in specified 
+	 * 			project
+	 */
+	public synchronized int getPendingCount(Long projectId, String postUrl) {
+		return (int) pendingDeliveries.stream()
+				.filter(it->projectId.equals(it.projectId) && it.postUrl.equals(postUrl))
+				.count();
+	}
+	
+	private static ByteIterable longToEntry(long value) {
+		return new ArrayByteIterable(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+	}
+	
+	private static byte[] toBytes(ByteIterable byteIterable) {
+		return Arrays.copyOf(byteIterable.getBytesUnsafe(), byteIterable.getLength());
+	}
+	
+	private static class Endpoint {
+		
+		int concurrency;
+		
+		long lastRequestTime;
+		
+	}
+	
+	private static class Delivery implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final long id;
+		
+		final Long projectId;
+		
+		final String postUrl;
+		
+		final String payload;
+		
+		int attempts;
+		
+		long nextAttemptTime;
+		
+		Delivery(long id, Long projectId, String postUrl, String payload) {
+			this.id = id;
+			this.projectId = projectId;
+			this.postUrl = postUrl;
+			this.payload = payload;
 		}
+		
 	}
 	
 }
@@ -0,0 +1,272 @@
+package io.onedev.server.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.jdbc.BinaryStream;
+import org.hibernate.engine.jdbc.internal.BinaryStreamImpl;
+import org.hibernate.internal.util.SerializationHelper;
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+import org.hibernate.type.descriptor.java.MutableMutabilityPlan;
+import org.hibernate.type.descriptor.java.PrimitiveByteArrayTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BlobTypeDescriptor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Hibernate type to store serializable values in a compact format. Values are stored
+ * as a versioned header followed by Java serialization data, deflated if large enough.
+ * Columns written with Hibernate's default serializable type (plain Java serialization
+ * data) can still be read, and will be converted to compact format when written back.
+ * <p>
+ * Second level cache holds values in stored form instead of deserialized copies, with
+ * identical contents shared by content hash. Inflated data of stored forms are also
+ * cached by content hash, so that hot values only need to be deserialized when hydrated.
+ * <p>
+ * Use {@link LazyCompactSerializableType} for columns of {@link LazyValue}, which are only
+ * deserialized when accessed.
+ */
+public class CompactSerializableType extends AbstractSingleColumnStandardBasicType<Serializable> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String NAME = "io.onedev.server.persistence.CompactSerializableType";
+
+	public CompactSerializableType() {
+		super(BlobTypeDescriptor.DEFAULT, CompactSerializableTypeDescriptor.INSTANCE);
+	}
+
+	@Override
+	public String getName() {
+		return "compact_serializable";
+	}
+
+	static class CompactSerializableTypeDescriptor extends AbstractTypeDescriptor<Serializable> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final CompactSerializableTypeDescriptor INSTANCE = new CompactSerializableTypeDescriptor();
+
+		static final byte[] MAGIC = new byte[] {'O', 'D'};
+
+		static final byte FORMAT_VERSION = 1;
+
+		static final byte CODEC_PLAIN = 0;
+
+		static final byte CODEC_DEFLATE = 1;
+
+		private static final int HEADER_LENGTH = 4;
+
+		private static final int COMPRESS_THRESHOLD = 512;
+
+		private static final long MAX_CACHE_WEIGHT = 64*1024*1024;
+
+		private static final int MAX_SHARED_VALUES = 10000;
+
+		private final Cache<HashCode, byte[]> storedForms = CacheBuilder.newBuilder()
+				.maximumWeight(MAX_CACHE_WEIGHT).weigher((HashCode key, byte[] value) -> value.length)
+				.build();
+
+		private final Cache<HashCode, byte[]> inflatedForms = CacheBuilder.newBuilder()
+				.maximumWeight(MAX_CACHE_WEIGHT).weigher((HashCode key, byte[] value) -> value.length)
+				.build();
+
+		private final Cache<HashCode, Serializable> sharedValues = CacheBuilder.newBuilder()
+				.maximumSize(MAX_SHARED_VALUES).build();
+
+		private CompactSerializableTypeDescriptor() {
+			super(Serializable.class, new MutableMutabilityPlan<Serializable>() {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Serializable deepCopyNotNull(Serializable value) {
+					return (Serializable) SerializationHelper.clone(value);
+				}
+
+				@Override
+				public Serializable disassemble(Serializable value) {
+					if (value != null)
+						return INSTANCE.encode(value);
+					else
+						return null;
+				}
+
+				@Override
+				public Serializable assemble(Serializable cached) {
+					if (cached != null)
+						return INSTANCE.decode((byte[]) cached);
+					else
+						return null;
+				}
+
+			});
+		}
+
+		@Override
+		public String toString(Serializable value) {
+			return PrimitiveByteArrayTypeDescriptor.INSTANCE.toString(encode(value));
+		}
+
+		@Override
+		public Serializable fromString(String string) {
+			return decode(PrimitiveByteArrayTypeDescriptor.INSTANCE.fromString(string));
+		}
+
+		@Override
+		public boolean areEqual(Serializable one, Serializable another) {
+			if (one == another)
+				return true;
+			else if (one == null || another == null)
+				return false;
+			else
+				return Arrays.equals(SerializationHelper.serialize(one), SerializationHelper.serialize(another));
+		}
+
+		@Override
+		public int extractHashCode(Serializable value) {
+			return Arrays.hashCode(SerializationHelper.serialize(value));
+		}
+
+		@Override
+		public <X> X unwrap(Serializable value, Class<X> type, WrapperOptions options) {
+			if (value != null)
+				return unwrapBytes(encode(value), type, options);
+			else
+				return null;
+		}
+
+		@Override
+		public <X> Serializable wrap(X value, WrapperOptions options) {
+			if (value != null)
+				return decode(wrapBytes(value));
+			else
+				return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		<X> X unwrapBytes(byte[] bytes, Class<X> type, WrapperOptions options) {
+			if (byte[].class.isAssignableFrom(type))
+				return (X) bytes;
+			else if (InputStream.class.isAssignableFrom(type))
+				return (X) new ByteArrayInputStream(bytes);
+			else if (BinaryStream.class.isAssignableFrom(type))
+				return (X) new BinaryStreamImpl(bytes);
+			else if (Blob.class.isAssignableFrom(type))
+				return (X) options.getLobCreator().createBlob(bytes);
+			else
+				throw unknownUnwrap(type);
+		}
+
+		<X> byte[] wrapBytes(X value) {
+			try {
+				if (value instanceof byte[]) {
+					return (byte[]) value;
+				} else if (value instanceof InputStream) {
+					return IOUtils.toByteArray((InputStream) value);
+				} else if (value instanceof Blob) {
+					try (InputStream is = ((Blob) value).getBinaryStream()) {
+						return IOUtils.toByteArray(is);
+					}
+				} else {
+					throw unknownWrap(value.getClass());
+				}
+			} catch (IOException | SQLException e) {
+				throw new HibernateException("Unable to read serializable value", e);
+			}
+		}
+
+		byte[] encode(Serializable value) {
+			byte[] serialized = SerializationHelper.serialize(value);
+
+			ByteArrayOutputStream baos = new ByteArrayOutputStream(serialized.length/2 + HEADER_LENGTH);
+			baos.write(MAGIC, 0, MAGIC.length);
+			baos.write(FORMAT_VERSION);
+			if (serialized.length >= COMPRESS_THRESHOLD) {
+				baos.write(CODEC_DEFLATE);
+				Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+				try (DeflaterOutputStream dos = new DeflaterOutputStream(baos, deflater)) {
+					dos.write(serialized);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} finally {
+					deflater.end();
+				}
+			} else {
+				baos.write(CODEC_PLAIN);
+				baos.write(serialized, 0, serialized.length);
+			}
+			byte[] encoded = baos.toByteArray();
+
+			// Share identical stored forms to reduce memory used by second level cache
+			try {
+				return storedForms.get(hash(encoded), () -> encoded);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		Serializable decode(byte[] bytes) {
+			byte[] serialized;
+			if (bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1]) {
+				if (bytes[2] > FORMAT_VERSION)
+					throw new HibernateException("Unsupported serialization format version: " + bytes[2]);
+				if (bytes[3] == CODEC_DEFLATE) {
+					try {
+						serialized = inflatedForms.get(hash(bytes), () -> {
+							try (InputStream is = new InflaterInputStream(
+									new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length-HEADER_LENGTH))) {
+								return IOUtils.toByteArray(is);
+							}
+						});
+					} catch (ExecutionException e) {
+						throw new HibernateException("Unable to inflate serializable value", e.getCause());
+					}
+				} else if (bytes[3] == CODEC_PLAIN) {
+					serialized = Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length);
+				} else {
+					throw new HibernateException("Unsupported serialization codec: " + bytes[3]);
+				}
+			} else {
+				// Plain Java serialization data written by Hibernate's default serializable type
+				serialized = bytes;
+			}
+			return (Serializable) SerializationHelper.deserialize(serialized);
+		}
+
+		/**
+		 * Decode specified stored form into a value shared by all stored forms of same content.
+		 * The returned value must not be modified
+		 */
+		Serializable decodeShared(byte[] bytes) {
+			try {
+				return sharedValues.get(hash(bytes), () -> decode(bytes));
+			} catch (ExecutionException e) {
+				throw new HibernateException("Unable to decode serializable value", e.getCause());
+			}
+		}
+
+		private HashCode hash(byte[] bytes) {
+			return Hashing.sha256().hashBytes(bytes);
+		}
+
+	}
+
+}
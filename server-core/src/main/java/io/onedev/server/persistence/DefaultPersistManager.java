@@ -1,10 +1,17 @@
 package io.onedev.server.persistence;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
@@ -14,16 +21,27 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.ManyToOne;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
 
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.STAXEventReader;
+import org.dom4j.io.XMLWriter;
 import org.hibernate.Interceptor;
 import org.hibernate.ReplicationMode;
 import org.hibernate.Session;
@@ -42,6 +60,7 @@ import org.hibernate.tool.hbm2ddl.SchemaExport;
 import org.hibernate.tool.schema.TargetType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
@@ -65,6 +84,8 @@ public class DefaultPersistManager implements PersistManager {
 
 	private static final int BACKUP_BATCH_SIZE = 1000;
 	
+	private static final int MAX_TRANSFER_CONCURRENCY = 4;
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultPersistManager.class);
 	
 	protected final PhysicalNamingStrategy physicalNamingStrategy;
@@ -377,90 +398,257 @@ public class DefaultPersistManager implements PersistManager {
 		exportData(exportDir, BACKUP_BATCH_SIZE);
 	}
 	
+	/*
+	 * Tables are exported in parallel, each with its own session. Rows are paged via id 
+	 * and written to file as they are loaded to avoid holding whole batches in DOM. 
+	 */
 	@Sessional
 	@Override
 	public void exportData(File exportDir, int batchSize) {
+		List<Class<?>> entityTypes = getEntityTypes(sessionFactory);
+		logger.info("Exporting {} tables...", entityTypes.size());
+		long time = System.currentTimeMillis();
+		AtomicLong rowCount = new AtomicLong(0);
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (Class<?> entityType: entityTypes) {
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					rowCount.addAndGet(exportEntity(entityType, batchSize, exportDir));
+					return null;
+				}
+				
+			});
+		}
+		runInParallel(tasks);
+		logger.info("Exported {} rows in {} seconds", rowCount.get(), (System.currentTimeMillis()-time)/1000);
+	}
+	
+	private long exportEntity(Class<?> entityType, int batchSize, File exportDir) {
+		long time = System.currentTimeMillis();
+		long count = 0;
 		Session session = sessionFactory.openSession();
-		for (Class<?> entityType: getEntityTypes(sessionFactory)) {
-			logger.info("Exporting table '" + entityType.getSimpleName() + "'...");
-			
-			logger.info("Querying table ids...");
-			
-			CriteriaBuilder builder = sessionFactory.getCriteriaBuilder();
-			CriteriaQuery<Number> query = builder.createQuery(Number.class);
-			Root<?> root = query.from(entityType);
-			query.select(root.get("id")).orderBy(builder.asc(root.get("id")));
-			
-			List<Number> ids = session.createQuery(query).list();
-			
-			int count = ids.size();
-			
-			for (int i=0; i<count/batchSize; i++) {
-				exportEntity(session, entityType, ids, i*batchSize, batchSize, batchSize, exportDir);
+		try {
+			Number lastId = null;
+			int batch = 0;
+			while (true) {
+				Query<?> query;
+				if (lastId != null) {
+					query = session.createQuery("from " + entityType.getSimpleName() + " where id>:lastId order by id");
+					query.setParameter("lastId", lastId);
+				} else {
+					query = session.createQuery("from " + entityType.getSimpleName() + " order by id");
+				}
+				query.setMaxResults(batchSize);
+				List<?> entities = query.list();
+				if (entities.isEmpty())
+					break;
+				
+				String fileName;
+				if (batch == 0)
+					fileName = entityType.getSimpleName() + "s.xml";
+				else
+					fileName = entityType.getSimpleName() + "s.xml." + (batch + 1);
+				
+				try (OutputStream os = new BufferedOutputStream(new FileOutputStream(new File(exportDir, fileName)))) {
+					OutputFormat format = new OutputFormat();
+					format.setIndent(true);
+					format.setNewlines(true);
+					format.setEncoding(StandardCharsets.UTF_8.name());
+					XMLWriter writer = new XMLWriter(os, format);
+					writer.startDocument();
+					Element listElement = DocumentHelper.createElement("list");
+					writer.writeOpen(listElement);
+					for (Object entity: entities) 
+						writer.write(VersionedDocument.fromBean(entity).getRootElement());
+					writer.writeClose(listElement);
+					writer.endDocument();
+				} catch (IOException | SAXException e) {
+					throw new RuntimeException(e);
+				}
+				
+				count += entities.size();
+				lastId = ((AbstractEntity) entities.get(entities.size()-1)).getId();
+				batch++;
+				
 				// clear session to free memory
 				session.clear();
+				
+				if (entities.size() < batchSize)
+					break;
+				logger.info("Exported {} rows of table '{}'...", count, entityType.getSimpleName());
 			}
-			
-			if (count%batchSize != 0) {
-				exportEntity(session, entityType, ids, count/batchSize*batchSize, count%batchSize, batchSize, exportDir);
+		} finally {
+			session.close();
+		}
+		logger.info("Exported table '{}' ({} rows, {} rows/second)", 
+				entityType.getSimpleName(), count, getThroughput(count, time));
+		return count;
+	}
+	
+	private long getThroughput(long count, long startTime) {
+		return count * 1000 / Math.max(System.currentTimeMillis()-startTime, 1);
+	}
+	
+	private void runInParallel(List<Callable<Void>> tasks) {
+		int concurrency = Math.min(Runtime.getRuntime().availableProcessors(), MAX_TRANSFER_CONCURRENCY);
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> task: tasks)
+				futures.add(executor.submit(task));
+			for (Future<Void> future: futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					for (Future<Void> each: futures)
+						each.cancel(true);
+					throw ExceptionUtils.unchecked(e.getCause());
+				}
 			}
-			logger.info("");
+		} finally {
+			executor.shutdownNow();
 		}
 	}
-
-	private void exportEntity(Session session, Class<?> entityType, List<Number> ids, int start, int count, int batchSize, File exportDir) {
-		logger.info("Loading table rows ({}->{}) from database...", String.valueOf(start+1), (start + count));
-		
-		Query<?> query = session.createQuery("from " + entityType.getSimpleName() + " where id>=:fromId and id<=:toId");
-		query.setParameter("fromId", ids.get(start));
-		query.setParameter("toId", ids.get(start+count-1));
-		
-		logger.info("Converting table rows to XML...");
-		VersionedDocument dom = new VersionedDocument();
-		Element rootElement = dom.addElement("list");
-		for (Object entity: query.list())
-			rootElement.appendContent(VersionedDocument.fromBean(entity));
-		String fileName;
-
-		if (start == 0)
-			fileName = entityType.getSimpleName() + "s.xml";
-		else
-			fileName = entityType.getSimpleName() + "s.xml." + (start/batchSize + 1);
-		
-		logger.info("Writing resulting XML to file '" + fileName + "...");
-		dom.writeToFile(new File(exportDir, fileName), true);
+	
+	/**
+	 * Group entity types into levels, with entity types of a level only depending on 
+	 * entity types of previous levels. Entity types of the same level can be imported 
+	 * in parallel without violating foreign key constraints
+	 */
+	private List<List<Class<?>>> getEntityTypeLevels(List<Class<?>> entityTypes) {
+		List<List<Class<?>>> levels = new ArrayList<>();
+		List<Class<?>> remaining = new ArrayList<>(entityTypes);
+		while (!remaining.isEmpty()) {
+			List<Class<?>> level = new ArrayList<>();
+			for (Class<?> entityType: remaining) {
+				boolean dependenciesProcessed = true;
+				for (Class<?> each: remaining) {
+					if (each != entityType && hasForeignKeyDependency(entityType, each)) {
+						dependenciesProcessed = false;
+						break;
+					}
+				}
+				if (dependenciesProcessed)
+					level.add(entityType);
+			}
+			if (level.isEmpty())
+				throw new RuntimeException("Looped foreigh key dependency found between model classes");
+			remaining.removeAll(level);
+			levels.add(level);
+		}
+		return levels;
 	}
+	
+	private File[] getDataFiles(File dataDir, Class<?> entityType) {
+		File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
 
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(entityType.getSimpleName() + "s.xml");
+			}
+			
+		});
+		return dataFiles;
+	}
+	
+	/**
+	 * Read entity elements of specified data file one by one via StAX, so that the 
+	 * file does not need to be loaded into memory as a whole
+	 */
+	private void readEntities(File dataFile, Consumer<AbstractEntity> consumer) {
+		XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		try (InputStream is = new BufferedInputStream(new FileInputStream(dataFile))) {
+			XMLEventReader eventReader = inputFactory.createXMLEventReader(is);
+			try {
+				STAXEventReader staxReader = new STAXEventReader();
+				int depth = 0;
+				while (eventReader.hasNext()) {
+					XMLEvent event = eventReader.peek();
+					if (event.isStartElement()) {
+						if (depth == 1) {
+							Element element = staxReader.readElement(eventReader);
+							VersionedDocument dom = new VersionedDocument(DocumentHelper.createDocument(element));
+							consumer.accept((AbstractEntity) dom.toBean());
+							continue;
+						} 
+						depth++;
+					} else if (event.isEndElement()) {
+						depth--;
+					}
+					eventReader.nextEvent();
+				}
+			} finally {
+				eventReader.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public void importData(Metadata metadata, File dataDir) {
+		importData(metadata, dataDir, BACKUP_BATCH_SIZE);
+	}
+	
 	/*
 	 * We do not use @Transactional annotation and will manage the session and transaction manually 
-	 * in this method to reduce memory usage if importing a large database.
+	 * in this method to reduce memory usage if importing a large database. Tables without 
+	 * dependencies on each other are imported in parallel, each with its own session.
 	 */
 	@Sessional
 	@Override
-	public void importData(Metadata metadata, File dataDir) {
-		Session session = dao.getSession();
+	public void importData(Metadata metadata, File dataDir, int batchSize) {
 		List<Class<?>> entityTypes = getEntityTypes(sessionFactory);
 		Collections.reverse(entityTypes);
-		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
+		logger.info("Importing {} tables...", entityTypes.size());
+		long time = System.currentTimeMillis();
+		AtomicLong rowCount = new AtomicLong(0);
+		for (List<Class<?>> level: getEntityTypeLevels(entityTypes)) {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (Class<?> entityType: level) {
+				tasks.add(new Callable<Void>() {
 
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
-				}
-				
-			});
-			for (File file: dataFiles) {
+					@Override
+					public Void call() throws Exception {
+						rowCount.addAndGet(importEntity(entityType, dataDir, batchSize));
+						return null;
+					}
+					
+				});
+			}
+			runInParallel(tasks);
+		}
+		logger.info("Imported {} rows in {} seconds", rowCount.get(), (System.currentTimeMillis()-time)/1000);
+	}
+	
+	private long importEntity(Class<?> entityType, File dataDir, int batchSize) {
+		long time = System.currentTimeMillis();
+		AtomicLong count = new AtomicLong(0);
+		Session session = sessionFactory.openSession();
+		try {
+			session.setJdbcBatchSize(batchSize);
+			for (File file: getDataFiles(dataDir, entityType)) {
 				Transaction transaction = session.beginTransaction();
 				try {
 					logger.info("Importing from data file '" + file.getName() + "'...");
-					VersionedDocument dom = VersionedDocument.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedDocument(DocumentHelper.createDocument(element)).toBean();
-						session.replicate(entity, ReplicationMode.EXCEPTION);
-					}
+					readEntities(file, new Consumer<AbstractEntity>() {
+
+						@Override
+						public void accept(AbstractEntity entity) {
+							session.replicate(entity, ReplicationMode.EXCEPTION);
+							if (count.incrementAndGet() % batchSize == 0) {
+								session.flush();
+								session.clear();
+							}
+						}
+						
+					});
 					session.flush();
 					session.clear();
 					transaction.commit();
@@ -469,34 +657,30 @@ public class DefaultPersistManager implements PersistManager {
 					throw ExceptionUtils.unchecked(e);
 				}
 			}
-		}	
+		} finally {
+			session.close();
+		}
+		if (count.get() != 0) {
+			logger.info("Imported table '{}' ({} rows, {} rows/second)", 
+					entityType.getSimpleName(), count.get(), getThroughput(count.get(), time));
+		}
+		return count.get();
 	}
 	
 	protected void validateData(Metadata metadata, File dataDir) {
 		List<Class<?>> entityTypes = getEntityTypes(sessionFactory);
 		Collections.reverse(entityTypes);
 		for (Class<?> entityType: entityTypes) {
-			File[] dataFiles = dataDir.listFiles(new FilenameFilter() {
+			for (File file: getDataFiles(dataDir, entityType)) {
+				logger.info("Validating data file '" + file.getName() + "'...");
+				readEntities(file, new Consumer<AbstractEntity>() {
 
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.startsWith(entityType.getSimpleName() + "s.xml");
-				}
-				
-			});
-			for (File file: dataFiles) {
-				try {
-					logger.info("Validating data file '" + file.getName() + "'...");
-					VersionedDocument dom = VersionedDocument.fromFile(file);
-					
-					for (Element element: dom.getRootElement().elements()) {
-						element.detach();
-						AbstractEntity entity = (AbstractEntity) new VersionedDocument(DocumentHelper.createDocument(element)).toBean();
+					@Override
+					public void accept(AbstractEntity entity) {
 						validator.validate(entity);
 					}
-				} catch (Exception e) {
-					throw ExceptionUtils.unchecked(e);
-				}
+					
+				});
 			}
 		}	
 	}
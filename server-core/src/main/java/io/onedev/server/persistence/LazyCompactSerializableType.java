@@ -0,0 +1,121 @@
+package io.onedev.server.persistence;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.hibernate.type.AbstractSingleColumnStandardBasicType;
+import org.hibernate.type.descriptor.WrapperOptions;
+import org.hibernate.type.descriptor.java.AbstractTypeDescriptor;
+import org.hibernate.type.descriptor.java.MutableMutabilityPlan;
+import org.hibernate.type.descriptor.java.PrimitiveByteArrayTypeDescriptor;
+import org.hibernate.type.descriptor.sql.BlobTypeDescriptor;
+
+import io.onedev.server.persistence.CompactSerializableType.CompactSerializableTypeDescriptor;
+
+/**
+ * Hibernate type to store {@link LazyValue} in same format as {@link CompactSerializableType}.
+ * Values hydrated from database or second level cache stay in stored form until accessed,
+ * and stored forms of values never accessed are reused for snapshot, dirty checking and
+ * second level cache without deserializing them.
+ */
+@SuppressWarnings("rawtypes")
+public class LazyCompactSerializableType extends AbstractSingleColumnStandardBasicType<LazyValue> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String NAME = "io.onedev.server.persistence.LazyCompactSerializableType";
+
+	public LazyCompactSerializableType() {
+		super(BlobTypeDescriptor.DEFAULT, LazyValueTypeDescriptor.INSTANCE);
+	}
+
+	@Override
+	public String getName() {
+		return "lazy_compact_serializable";
+	}
+
+	static class LazyValueTypeDescriptor extends AbstractTypeDescriptor<LazyValue> {
+
+		private static final long serialVersionUID = 1L;
+
+		static final LazyValueTypeDescriptor INSTANCE = new LazyValueTypeDescriptor();
+
+		private LazyValueTypeDescriptor() {
+			super(LazyValue.class, new MutableMutabilityPlan<LazyValue>() {
+
+				private static final long serialVersionUID = 1L;
+
+				@SuppressWarnings("unchecked")
+				@Override
+				protected LazyValue deepCopyNotNull(LazyValue value) {
+					byte[] encoded = value.getEncoded();
+					if (encoded != null)
+						return LazyValue.ofEncoded(encoded);
+					else
+						return new LazyValue(null);
+				}
+
+				@Override
+				public byte[] disassemble(LazyValue value) {
+					if (value != null)
+						return value.getEncoded();
+					else
+						return null;
+				}
+
+				@Override
+				public LazyValue assemble(Serializable cached) {
+					if (cached != null)
+						return LazyValue.ofEncoded((byte[]) cached);
+					else
+						return null;
+				}
+
+			});
+		}
+
+		@Override
+		public String toString(LazyValue value) {
+			return PrimitiveByteArrayTypeDescriptor.INSTANCE.toString(value.getEncoded());
+		}
+
+		@Override
+		public LazyValue fromString(String string) {
+			return LazyValue.ofEncoded(PrimitiveByteArrayTypeDescriptor.INSTANCE.fromString(string));
+		}
+
+		@Override
+		public boolean areEqual(LazyValue one, LazyValue another) {
+			if (one == another)
+				return true;
+			else if (one == null || another == null)
+				return false;
+			else
+				return Arrays.equals(one.getEncoded(), another.getEncoded());
+		}
+
+		@Override
+		public int extractHashCode(LazyValue value) {
+			return Arrays.hashCode(value.getEncoded());
+		}
+
+		@Override
+		public <X> X unwrap(LazyValue value, Class<X> type, WrapperOptions options) {
+			byte[] encoded = value!=null? value.getEncoded(): null;
+			if (encoded != null)
+				return CompactSerializableTypeDescriptor.INSTANCE.unwrapBytes(encoded, type, options);
+			else
+				return null;
+		}
+
+		@Override
+		public <X> LazyValue wrap(X value, WrapperOptions options) {
+			if (value != null)
+				return LazyValue.ofEncoded(CompactSerializableTypeDescriptor.INSTANCE.wrapBytes(value));
+			else
+				return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+package io.onedev.server.persistence;
+
+import java.io.Serializable;
+
+import javax.annotation.Nullable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import io.onedev.server.persistence.CompactSerializableType.CompactSerializableTypeDescriptor;
+
+/**
+ * Holder of a serializable column value mapped with {@link LazyCompactSerializableType}. Value
+ * loaded from database or second level cache is kept in stored form, and is only decoded when
+ * accessed the first time. This saves deserialization of columns never accessed, for instance
+ * settings of projects displayed in a project list.
+ */
+public class LazyValue<T extends Serializable> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private byte[] encoded;
+
+	private T value;
+
+	private boolean decoded;
+
+	@JsonCreator(mode=JsonCreator.Mode.DELEGATING)
+	public LazyValue(@Nullable T value) {
+		this.value = value;
+		decoded = true;
+	}
+
+	private LazyValue() {
+	}
+
+	/**
+	 * Create holder of specified stored form, which will be decoded when accessed
+	 */
+	static <T extends Serializable> LazyValue<T> ofEncoded(byte[] encoded) {
+		LazyValue<T> lazyValue = new LazyValue<>();
+		lazyValue.encoded = encoded;
+		return lazyValue;
+	}
+
+	/**
+	 * Get value of this holder, decoding it from stored form if necessary. The returned value
+	 * belongs to this holder and can be modified
+	 */
+	@SuppressWarnings("unchecked")
+	@JsonValue
+	@Nullable
+	public T get() {
+		if (!decoded) {
+			value = (T) CompactSerializableTypeDescriptor.INSTANCE.decode(encoded);
+			encoded = null;
+			decoded = true;
+		}
+		return value;
+	}
+
+	/**
+	 * Get value of this holder for read only purpose. If not decoded yet, a value shared by all
+	 * holders of same stored content is returned, which must not be modified
+	 */
+	@SuppressWarnings("unchecked")
+	@Nullable
+	public T peek() {
+		if (decoded)
+			return value;
+		else
+			return (T) CompactSerializableTypeDescriptor.INSTANCE.decodeShared(encoded);
+	}
+
+	boolean isDecoded() {
+		return decoded;
+	}
+
+	/**
+	 * @return
+	 * 			stored form of current value, or <tt>null</tt> if value is <tt>null</tt>
+	 */
+	@Nullable
+	byte[] getEncoded() {
+		if (!decoded)
+			return encoded;
+		else if (value != null)
+			return CompactSerializableTypeDescriptor.INSTANCE.encode(value);
+		else
+			return null;
+	}
+
+}
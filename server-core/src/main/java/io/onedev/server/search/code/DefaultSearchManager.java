@@ -4,10 +4,12 @@ import static io.onedev.server.search.code.FieldConstants.BLOB_HASH;
 import static io.onedev.server.search.code.FieldConstants.BLOB_INDEX_VERSION;
 import static io.onedev.server.search.code.FieldConstants.BLOB_PATH;
 import static io.onedev.server.search.code.FieldConstants.BLOB_SYMBOL_LIST;
+import static io.onedev.server.search.code.IndexConstants.MAX_INDEXABLE_SIZE;
 
 import java.io.IOException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,24 +34,39 @@ import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import io.onedev.commons.jsymbol.Symbol;
+import io.onedev.commons.jsymbol.SymbolExtractor;
 import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
 import io.onedev.commons.launcher.loader.Listen;
 import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.StringUtils;
+import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.git.Blob;
+import io.onedev.server.git.BlobIdent;
 import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.annotation.Transactional;
 import io.onedev.server.search.code.hit.QueryHit;
 import io.onedev.server.search.code.query.BlobQuery;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
 import jersey.repackaged.com.google.common.base.Preconditions;
 
 @Singleton
@@ -57,16 +74,43 @@ public class DefaultSearchManager implements SearchManager {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultSearchManager.class);
 	
+	private static final long MAX_CACHED_SYMBOLS = 1000000;
+	
+	private static final int MAX_PREFETCH_FILES = 50;
+	
+	private static final int PREFETCH_PRIORITY = 50;
+	
 	private final StorageManager storageManager;
 	
 	private final Map<Long, SearcherManager> searcherManagers = new ConcurrentHashMap<>();
 	
 	private final IndexManager indexManager;
 	
+	private final BatchWorkManager batchWorkManager;
+	
+	private final SessionManager sessionManager;
+	
+	private final ProjectManager projectManager;
+	
+	/*
+	 * Symbols keyed by blob id and path, weighed by number of symbols. Symbols only depend 
+	 * on blob content and path, so the cache is shared by all projects and users
+	 */
+	private final Cache<String, List<Symbol>> symbolCache = CacheBuilder.newBuilder()
+			.maximumWeight(MAX_CACHED_SYMBOLS)
+			.<String, List<Symbol>>weigher((key, value) -> value.size() + 1)
+			.build();
+	
+	private final SymbolLookupStats symbolLookupStats = new SymbolLookupStats();
+	
 	@Inject
-	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager) {
+	public DefaultSearchManager(StorageManager storageManager, IndexManager indexManager, 
+			BatchWorkManager batchWorkManager, SessionManager sessionManager, ProjectManager projectManager) {
 		this.storageManager = storageManager;
 		this.indexManager = indexManager;
+		this.batchWorkManager = batchWorkManager;
+		this.sessionManager = sessionManager;
+		this.projectManager = projectManager;
 	}
 	
 	@Nullable
@@ -154,8 +198,28 @@ public class DefaultSearchManager implements SearchManager {
 		return hits;
 	}
 
+	private String getSymbolCacheKey(ObjectId blobId, String blobPath) {
+		return blobId.name() + ":" + blobPath;
+	}
+	
 	@Override
 	public List<Symbol> getSymbols(Project project, ObjectId blobId, String blobPath) {
+		String cacheKey = getSymbolCacheKey(blobId, blobPath);
+		List<Symbol> symbols = symbolCache.getIfPresent(cacheKey);
+		if (symbols != null) {
+			symbolLookupStats.onCacheHit();
+			return symbols;
+		}
+		symbols = getIndexedSymbols(project, blobId, blobPath);
+		if (symbols != null) {
+			symbolLookupStats.onIndexHit();
+			symbolCache.put(cacheKey, symbols);
+		}
+		return symbols;
+	}
+	
+	@Nullable
+	private List<Symbol> getIndexedSymbols(Project project, ObjectId blobId, String blobPath) {
 		try {
 			SearcherManager searcherManager = getSearcherManager(project.getForkRoot());
 			if (searcherManager != null) {
@@ -177,6 +241,120 @@ public class DefaultSearchManager implements SearchManager {
 		}
 	}
 	
+	@Override
+	public List<Symbol> getSymbols(Project project, Blob blob) {
+		if (SymbolExtractorRegistry.getExtractor(blob.getIdent().path) == null)
+			return null;
+		
+		long time = System.currentTimeMillis();
+		List<Symbol> symbols = resolveSymbols(project, blob);
+		symbolLookupStats.onLookup(System.currentTimeMillis()-time);
+		return symbols;
+	}
+	
+	/*
+	 * Latency of resolving symbols is only recorded for lookups requested by users, not 
+	 * for those issued by prefetching
+	 */
+	@Nullable
+	private List<Symbol> resolveSymbols(Project project, Blob blob) {
+		String blobPath = blob.getIdent().path;
+		SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor(blobPath);
+		if (extractor == null)
+			return null;
+		
+		List<Symbol> symbols = getSymbols(project, blob.getBlobId(), blobPath);
+		if (symbols == null && blob.getText() != null) {
+			try {
+				symbols = extractor.extract(blob.getIdent().getName(), 
+						StringUtils.removeBOM(blob.getText().getContent()));
+				symbolLookupStats.onExtraction();
+				symbolCache.put(getSymbolCacheKey(blob.getBlobId(), blobPath), symbols);
+			} catch (Exception e) {
+				logger.trace("Can not extract symbols from blob: " + blob.getIdent(), e);
+			}
+		}
+		return symbols;
+	}
+	
+	@Override
+	public SymbolLookupStats getSymbolLookupStats() {
+		return symbolLookupStats;
+	}
+	
+	@Override
+	public void prefetchSymbols(Project project, ObjectId commitId, String blobPath) {
+		batchWorkManager.submit(getPrefetchWorker(project.getId()), 
+				new PrefetchWork(PREFETCH_PRIORITY, commitId.copy(), blobPath));
+	}
+	
+	private BatchWorker getPrefetchWorker(Long projectId) {
+		return new BatchWorker("project-" + projectId + "-prefetchSymbols") {
+
+			@Override
+			public void doWorks(Collection<Prioritized> works) {
+				sessionManager.run(new Runnable() {
+
+					@Override
+					public void run() {
+						Project project = projectManager.load(projectId);
+						Set<String> prefetchedDirs = new HashSet<>();
+						for (Prioritized work: works) {
+							PrefetchWork prefetchWork = (PrefetchWork) work;
+							String directory = StringUtils.substringBeforeLast(prefetchWork.getBlobPath(), "/");
+							if (directory.equals(prefetchWork.getBlobPath()))
+								directory = "";
+							if (prefetchedDirs.add(prefetchWork.getCommitId().name() + ":" + directory)) 
+								prefetchDirectory(project, prefetchWork.getCommitId(), directory);
+						}
+					}
+					
+				});
+			}
+			
+		};
+	}
+	
+	private void prefetchDirectory(Project project, ObjectId commitId, String directory) {
+		long time = System.currentTimeMillis();
+		int count = 0;
+		Repository repository = project.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			RevTree revTree = revWalk.parseCommit(commitId).getTree();
+			ObjectId treeId = revTree;
+			if (directory.length() != 0) {
+				try (TreeWalk treeWalk = TreeWalk.forPath(repository, directory, revTree)) {
+					if (treeWalk == null || (treeWalk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_TREE)
+						return;
+					treeId = treeWalk.getObjectId(0);
+				}
+			}
+			try (TreeWalk treeWalk = new TreeWalk(repository)) {
+				treeWalk.addTree(treeId);
+				while (treeWalk.next() && count < MAX_PREFETCH_FILES) {
+					int mode = treeWalk.getRawMode(0);
+					if ((mode & FileMode.TYPE_MASK) != FileMode.TYPE_FILE)
+						continue;
+					String blobPath = directory.length() != 0? directory + "/" + treeWalk.getNameString(): treeWalk.getNameString();
+					if (SymbolExtractorRegistry.getExtractor(blobPath) == null)
+						continue;
+					count++;
+					ObjectId blobId = treeWalk.getObjectId(0);
+					if (symbolCache.getIfPresent(getSymbolCacheKey(blobId, blobPath)) != null
+							|| treeWalk.getObjectReader().getObjectSize(blobId, Constants.OBJ_BLOB) > MAX_INDEXABLE_SIZE) {
+						continue;
+					}
+					Blob blob = new Blob(new BlobIdent(commitId.name(), blobPath, mode), blobId, treeWalk.getObjectReader());
+					resolveSymbols(project, blob);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		logger.debug("Prefetched symbols of {} files under '{}' of project '{}' in {} ms", 
+				count, directory, project.getName(), System.currentTimeMillis()-time);
+	}
+	
 	@Override
 	public List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath) {
 		BooleanQuery.Builder builder = new BooleanQuery.Builder();
@@ -228,6 +406,28 @@ public class DefaultSearchManager implements SearchManager {
 		return symbolsRef.get();
 	}
 	
+	private static class PrefetchWork extends Prioritized {
+
+		private final ObjectId commitId;
+		
+		private final String blobPath;
+		
+		public PrefetchWork(int priority, ObjectId commitId, String blobPath) {
+			super(priority);
+			this.commitId = commitId;
+			this.blobPath = blobPath;
+		}
+
+		public ObjectId getCommitId() {
+			return commitId;
+		}
+
+		public String getBlobPath() {
+			return blobPath;
+		}
+		
+	}
+	
 	@Listen
 	public void on(CommitIndexed event) {
 		try {
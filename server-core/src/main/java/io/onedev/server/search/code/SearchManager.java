@@ -8,6 +8,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.eclipse.jgit.lib.ObjectId;
 
 import io.onedev.commons.jsymbol.Symbol;
+import io.onedev.server.git.Blob;
 import io.onedev.server.model.Project;
 import io.onedev.server.search.code.hit.QueryHit;
 import io.onedev.server.search.code.query.BlobQuery;
@@ -33,4 +34,23 @@ public interface SearchManager {
 	@Nullable
 	List<Symbol> getSymbols(IndexSearcher searcher, ObjectId blobId, String blobPath);
 	
+	/**
+	 * Get symbols of specified blob. Symbols are looked up in symbol cache and code index 
+	 * first, and are extracted from blob content if not found. 
+	 * 
+	 * @return
+	 * 			symbols of specified blob, or <tt>null</tt> if no symbol extractor is available 
+	 * 			for the blob or its content can not be extracted
+	 */
+	@Nullable
+	List<Symbol> getSymbols(Project project, Blob blob);
+	
+	/**
+	 * Resolve symbols of files in the same directory as specified blob path in background, so 
+	 * that they are available from symbol cache when navigated to
+	 */
+	void prefetchSymbols(Project project, ObjectId commitId, String blobPath);
+	
+	SymbolLookupStats getSymbolLookupStats();
+	
 }
\ No newline at end of file
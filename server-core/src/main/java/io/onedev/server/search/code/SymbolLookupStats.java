@@ -0,0 +1,84 @@
+package io.onedev.server.search.code;
+
+import java.io.Serializable;
+
+/**
+ * Statistics of symbol lookups since server start
+ */
+public class SymbolLookupStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Upper bounds in milliseconds of latency buckets. Lookups slower than the last bound
+	 * are counted in an additional bucket
+	 */
+	public static final long[] LATENCY_BOUNDS = new long[] {1, 10, 100, 1000};
+
+	private long cacheHits;
+
+	private long indexHits;
+
+	private long extractions;
+
+	private final long[] latencyCounts = new long[LATENCY_BOUNDS.length+1];
+
+	synchronized void onCacheHit() {
+		cacheHits++;
+	}
+
+	synchronized void onIndexHit() {
+		indexHits++;
+	}
+
+	synchronized void onExtraction() {
+		extractions++;
+	}
+
+	synchronized void onLookup(long latency) {
+		int bucket = 0;
+		while (bucket < LATENCY_BOUNDS.length && latency >= LATENCY_BOUNDS[bucket])
+			bucket++;
+		latencyCounts[bucket]++;
+	}
+
+	/**
+	 * @return
+	 * 			number of symbol lists served from symbol cache
+	 */
+	public synchronized long getCacheHits() {
+		return cacheHits;
+	}
+
+	/**
+	 * @return
+	 * 			number of symbol lists loaded from code index
+	 */
+	public synchronized long getIndexHits() {
+		return indexHits;
+	}
+
+	/**
+	 * @return
+	 * 			number of symbol lists extracted from blob content
+	 */
+	public synchronized long getExtractions() {
+		return extractions;
+	}
+
+	/**
+	 * @return
+	 * 			number of lookups in each latency bucket defined by {@link #LATENCY_BOUNDS}
+	 */
+	public synchronized long[] getLatencyCounts() {
+		return latencyCounts.clone();
+	}
+
+	public synchronized long getLookups() {
+		long lookups = 0;
+		for (long count: latencyCounts)
+			lookups += count;
+		return lookups;
+	}
+
+}
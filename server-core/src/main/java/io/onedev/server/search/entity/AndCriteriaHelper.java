@@ -1,7 +1,10 @@
 package io.onedev.server.search.entity;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
@@ -47,6 +50,23 @@ public class AndCriteriaHelper<T extends AbstractEntity> extends EntityCriteria<
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		for (EntityCriteria<T> criteria: criterias) {
+			if (!criteria.isReusable())
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public Collection<String> getDiscriminators() {
+		Set<String> discriminators = new HashSet<>();
+		for (EntityCriteria<T> criteria: criterias)
+			discriminators.addAll(criteria.getDiscriminators());
+		return discriminators;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
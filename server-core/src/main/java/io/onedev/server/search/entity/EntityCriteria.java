@@ -3,8 +3,10 @@ package io.onedev.server.search.entity;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 
+import javax.annotation.Nullable;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
@@ -28,6 +30,31 @@ public abstract class EntityCriteria<T extends AbstractEntity> implements Serial
 	
 	public abstract boolean needsLogin();
 	
+	/**
+	 * Whether or not this criteria can be kept and reused to match entities of later 
+	 * sessions. Criteria with values evaluated at parse time, such as relative dates, 
+	 * or holding non-trivial entity references, should return <tt>false</tt>
+	 */
+	public boolean isReusable() {
+		return true;
+	}
+	
+	/**
+	 * Get discriminators of this criteria. An entity can only match this criteria if all 
+	 * returned discriminators are amongst discriminators of the entity. This is used to 
+	 * index criterias so that only candidate criterias need to be evaluated
+	 * 
+	 * @return
+	 * 			discriminators created via {@link #getDiscriminator(String, String)}
+	 */
+	public Collection<String> getDiscriminators() {
+		return new HashSet<>();
+	}
+	
+	public static String getDiscriminator(String name, @Nullable String value) {
+		return EntityQuery.quote(name) + " " + (value!=null?EntityQuery.quote(value):"null");
+	}
+	
 	protected Predicate inManyValues(CriteriaBuilder builder, Path<Long> attribute, Collection<Long> inValues, 
 			Collection<Long> allValues) {
 		List<Long> listOfInValues = new ArrayList<>(inValues);
@@ -33,6 +33,11 @@ public class NotCriteriaHelper<T extends AbstractEntity> extends EntityCriteria<
 		return criteria.needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return criteria.isReusable();
+	}
+
 	@Override
 	public String toString() {
 		return "not(" + criteria.toString() + ")";
@@ -1,7 +1,10 @@
 package io.onedev.server.search.entity;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
@@ -47,6 +50,27 @@ public class OrCriteriaHelper<T extends AbstractEntity> extends EntityCriteria<T
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		for (EntityCriteria<T> criteria: criterias) {
+			if (!criteria.isReusable())
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public Collection<String> getDiscriminators() {
+		Set<String> discriminators = null;
+		for (EntityCriteria<T> criteria: criterias) {
+			if (discriminators == null)
+				discriminators = new HashSet<>(criteria.getDiscriminators());
+			else
+				discriminators.retainAll(criteria.getDiscriminators());
+		}
+		return discriminators!=null?discriminators:new HashSet<>();
+	}
+	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -44,6 +44,16 @@ public class AndCriteria extends IssueCriteria implements ParensAware {
 		return new AndCriteriaHelper<Issue>(criterias).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new AndCriteriaHelper<Issue>(criterias).isReusable();
+	}
+
+	@Override
+	public Collection<String> getDiscriminators() {
+		return new AndCriteriaHelper<Issue>(criterias).getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return new AndCriteriaHelper<Issue>(criterias).toString();
@@ -11,6 +11,8 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 
+import com.google.common.collect.Sets;
+
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.Issue;
@@ -77,6 +79,14 @@ public class ChoiceFieldCriteria extends FieldCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		if (allowMultiple || operator == IssueQueryLexer.Is)
+			return Sets.newHashSet(getDiscriminator(getFieldName(), value));
+		else
+			return super.getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return IssueQuery.quote(getFieldName()) + " " + IssueQuery.getRuleName(operator) + " " + IssueQuery.quote(value);
@@ -7,10 +7,13 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import io.onedev.server.OneDev;
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.IssueComment;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.IssueConstants;
 
 public class CommentCriteria extends IssueCriteria {
@@ -25,6 +28,10 @@ public class CommentCriteria extends IssueCriteria {
 
 	@Override
 	public Predicate getPredicate(Project project, Root<Issue> root, CriteriaBuilder builder, User user) {
+		Predicate predicate = OneDev.getInstance(EntityTextManager.class).getPredicate(project, root, builder, 
+				value, EntityTextField.COMMENT);
+		if (predicate != null)
+			return predicate;
 		From<?, ?> join = root.join(IssueConstants.ATTR_COMMENTS, JoinType.LEFT);
 		Path<String> attribute = join.get(IssueComment.PATH_CONTENT);
 		return builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%");
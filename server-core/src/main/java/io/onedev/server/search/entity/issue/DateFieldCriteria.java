@@ -50,6 +50,11 @@ public class DateFieldCriteria extends FieldCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return IssueQuery.quote(getFieldName()) + " " + IssueQuery.getRuleName(operator) + " " + IssueQuery.quote(rawValue);
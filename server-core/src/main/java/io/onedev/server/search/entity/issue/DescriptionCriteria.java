@@ -6,9 +6,12 @@ import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import io.onedev.server.OneDev;
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.IssueConstants;
 
 public class DescriptionCriteria extends IssueCriteria {
@@ -24,10 +27,16 @@ public class DescriptionCriteria extends IssueCriteria {
 	@Override
 	public Predicate getPredicate(Project project, Root<Issue> root, CriteriaBuilder builder, User user) {
 		Expression<String> attribute = root.get(IssueConstants.ATTR_DESCRIPTION);
-		if (value != null)
-			return builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%");
-		else
+		if (value != null) {
+			Predicate predicate = OneDev.getInstance(EntityTextManager.class).getPredicate(project, root, builder, 
+					value, EntityTextField.DESCRIPTION);
+			if (predicate != null)
+				return predicate;
+			else
+				return builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%");
+		} else {
 			return builder.isNull(attribute);
+		}
 	}
 
 	@Override
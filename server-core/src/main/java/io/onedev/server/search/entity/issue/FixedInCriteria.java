@@ -41,6 +41,11 @@ public class FixedInCriteria extends IssueCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return IssueQuery.getRuleName(IssueQueryLexer.FixedInBuild) + IssueQuery.quote("#" + build.getNumber());
@@ -37,6 +37,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueField;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
 import io.onedev.server.model.support.setting.GlobalIssueSetting;
@@ -536,5 +537,21 @@ public class IssueQuery extends EntityQuery<Issue> {
 		sorts.addAll(query2.getSorts());
 		return new IssueQuery(IssueCriteria.of(criterias), sorts);
 	}
+	
+	/**
+	 * Get discriminators of specified issue to look up criterias possibly matching it
+	 * 
+	 * @see IssueCriteria#getDiscriminators()
+	 */
+	public static Collection<String> getDiscriminators(Issue issue) {
+		Collection<String> discriminators = new HashSet<>();
+		discriminators.add(IssueCriteria.getDiscriminator(FIELD_STATE, issue.getState()));
+		discriminators.add(IssueCriteria.getDiscriminator(FIELD_MILESTONE, issue.getMilestoneName()));
+		for (IssueField field: issue.getFields()) {
+			if (field.getValue() != null)
+				discriminators.add(IssueCriteria.getDiscriminator(field.getName(), field.getValue()));
+		}
+		return discriminators;
+	}
 
 }
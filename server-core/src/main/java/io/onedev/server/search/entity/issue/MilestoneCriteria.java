@@ -1,5 +1,6 @@
 package io.onedev.server.search.entity.issue;
 
+import java.util.Collection;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -9,6 +10,8 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import com.google.common.collect.Sets;
+
 import io.onedev.server.model.Issue;
 import io.onedev.server.model.Milestone;
 import io.onedev.server.model.Project;
@@ -51,6 +54,11 @@ public class MilestoneCriteria extends IssueCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		return Sets.newHashSet(getDiscriminator(IssueConstants.FIELD_MILESTONE, value));
+	}
+
 	@Override
 	public String toString() {
 		if (value != null) 
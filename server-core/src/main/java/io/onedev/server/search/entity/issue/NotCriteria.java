@@ -38,6 +38,11 @@ public class NotCriteria extends IssueCriteria {
 		return new NotCriteriaHelper<Issue>(criteria).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new NotCriteriaHelper<Issue>(criteria).isReusable();
+	}
+
 	@Override
 	public String toString() {
 		return new NotCriteriaHelper<Issue>(criteria).toString();
@@ -44,6 +44,16 @@ public class OrCriteria extends IssueCriteria implements ParensAware {
 		return new OrCriteriaHelper<Issue>(criterias).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new OrCriteriaHelper<Issue>(criterias).isReusable();
+	}
+
+	@Override
+	public Collection<String> getDiscriminators() {
+		return new OrCriteriaHelper<Issue>(criterias).getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return new OrCriteriaHelper<Issue>(criterias).toString();
@@ -10,6 +10,8 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import com.google.common.collect.Sets;
+
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.Issue;
@@ -43,6 +45,11 @@ public class StateCriteria extends IssueCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		return Sets.newHashSet(getDiscriminator(IssueConstants.FIELD_STATE, value));
+	}
+
 	@Override
 	public void fill(Issue issue, Set<String> initedLists) {
 		issue.setState(value);
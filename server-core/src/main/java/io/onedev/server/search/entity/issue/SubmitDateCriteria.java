@@ -50,6 +50,11 @@ public class SubmitDateCriteria extends IssueCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return IssueQuery.quote(IssueConstants.FIELD_SUBMIT_DATE) + " " + IssueQuery.getRuleName(operator) + " " + IssueQuery.quote(rawValue);
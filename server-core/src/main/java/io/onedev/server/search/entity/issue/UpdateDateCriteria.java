@@ -50,6 +50,11 @@ public class UpdateDateCriteria extends IssueCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return IssueQuery.quote(IssueConstants.FIELD_UPDATE_DATE) + " " + IssueQuery.getRuleName(operator) + " " + IssueQuery.quote(rawValue);
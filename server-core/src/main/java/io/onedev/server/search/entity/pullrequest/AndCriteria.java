@@ -1,5 +1,6 @@
 package io.onedev.server.search.entity.pullrequest;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.criteria.CriteriaBuilder;
@@ -37,6 +38,16 @@ public class AndCriteria extends PullRequestCriteria implements ParensAware {
 		return new AndCriteriaHelper<PullRequest>(criterias).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new AndCriteriaHelper<PullRequest>(criterias).isReusable();
+	}
+
+	@Override
+	public Collection<String> getDiscriminators() {
+		return new AndCriteriaHelper<PullRequest>(criterias).getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return new AndCriteriaHelper<PullRequest>(criterias).toString();
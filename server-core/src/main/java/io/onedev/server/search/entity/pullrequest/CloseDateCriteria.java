@@ -54,6 +54,11 @@ public class CloseDateCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.quote(PullRequestConstants.FIELD_CLOSE_DATE) + " " + PullRequestQuery.getRuleName(operator) + " " + PullRequestQuery.quote(rawValue);
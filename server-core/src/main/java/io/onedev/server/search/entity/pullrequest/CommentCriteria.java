@@ -7,12 +7,15 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import io.onedev.server.OneDev;
 import io.onedev.server.model.CodeCommentRelation;
 import io.onedev.server.model.CodeCommentReply;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.PullRequestComment;
 import io.onedev.server.model.User;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.CodeCommentConstants;
 import io.onedev.server.util.PullRequestConstants;
 
@@ -28,6 +31,10 @@ public class CommentCriteria extends PullRequestCriteria {
 
 	@Override
 	public Predicate getPredicate(Project project, Root<PullRequest> root, CriteriaBuilder builder, User user) {
+		Predicate predicate = OneDev.getInstance(EntityTextManager.class).getPredicate(project, root, builder, 
+				value, EntityTextField.COMMENT);
+		if (predicate != null)
+			return predicate;
 		From<?, ?> join = root.join(PullRequestConstants.ATTR_COMMENTS, JoinType.LEFT);
 		Path<String> attribute = join.get(PullRequestComment.ATTR_CONTENT);
 		Predicate commentPredicate = builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%");
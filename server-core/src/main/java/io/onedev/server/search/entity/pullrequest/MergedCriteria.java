@@ -1,5 +1,7 @@
 package io.onedev.server.search.entity.pullrequest;
 
+import java.util.Collection;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
@@ -32,6 +34,11 @@ public class MergedCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		return getCriteria(null).getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.getRuleName(PullRequestQueryLexer.Merged);
@@ -34,6 +34,11 @@ public class NotCriteria extends PullRequestCriteria {
 		return new NotCriteriaHelper<PullRequest>(criteria).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new NotCriteriaHelper<PullRequest>(criteria).isReusable();
+	}
+
 	@Override
 	public String toString() {
 		return new NotCriteriaHelper<PullRequest>(criteria).toString();
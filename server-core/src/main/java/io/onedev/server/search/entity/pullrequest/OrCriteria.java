@@ -1,5 +1,6 @@
 package io.onedev.server.search.entity.pullrequest;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.persistence.criteria.CriteriaBuilder;
@@ -37,6 +38,16 @@ public class OrCriteria extends PullRequestCriteria implements ParensAware {
 		return new OrCriteriaHelper<PullRequest>(criterias).needsLogin();
 	}
 
+	@Override
+	public boolean isReusable() {
+		return new OrCriteriaHelper<PullRequest>(criterias).isReusable();
+	}
+
+	@Override
+	public Collection<String> getDiscriminators() {
+		return new OrCriteriaHelper<PullRequest>(criterias).getDiscriminators();
+	}
+
 	@Override
 	public String toString() {
 		return new OrCriteriaHelper<PullRequest>(criterias).toString();
@@ -1,7 +1,9 @@
 package io.onedev.server.search.entity.pullrequest;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -310,6 +312,23 @@ public class PullRequestQuery extends EntityQuery<PullRequest> {
 		return getLexerRule(PullRequestQueryLexer.ruleNames, operatorName);
 	}
 	
+	/**
+	 * Get discriminators of specified pull request to look up criterias possibly matching it
+	 * 
+	 * @see PullRequestCriteria#getDiscriminators()
+	 */
+	public static Collection<String> getDiscriminators(PullRequest request) {
+		Collection<String> discriminators = new HashSet<>();
+		String status;
+		if (request.getCloseInfo() != null)
+			status = request.getCloseInfo().getStatus().name();
+		else
+			status = PullRequestConstants.STATE_OPEN;
+		discriminators.add(PullRequestCriteria.getDiscriminator(PullRequestConstants.FIELD_STATUS, status.toLowerCase()));
+		discriminators.add(PullRequestCriteria.getDiscriminator(PullRequestConstants.FIELD_TARGET_BRANCH, request.getTargetBranch()));
+		return discriminators;
+	}
+	
 	@Override
 	public PullRequestCriteria getCriteria() {
 		return criteria;
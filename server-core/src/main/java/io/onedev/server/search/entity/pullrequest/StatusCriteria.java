@@ -1,10 +1,14 @@
 package io.onedev.server.search.entity.pullrequest;
 
+import java.util.Collection;
+
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import com.google.common.collect.Sets;
+
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.User;
@@ -43,6 +47,11 @@ public class StatusCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		return Sets.newHashSet(getDiscriminator(PullRequestConstants.FIELD_STATUS, value.toLowerCase()));
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.quote(PullRequestConstants.FIELD_STATUS) + " " + PullRequestQuery.getRuleName(PullRequestQueryLexer.Is) + " " + PullRequestQuery.quote(value);
@@ -50,6 +50,11 @@ public class SubmitDateCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.quote(PullRequestConstants.FIELD_SUBMIT_DATE) + " " + PullRequestQuery.getRuleName(operator) + " " + PullRequestQuery.quote(rawValue);
@@ -1,5 +1,6 @@
 package io.onedev.server.search.entity.pullrequest;
 
+import java.util.Collection;
 import java.util.Objects;
 
 import javax.persistence.criteria.CriteriaBuilder;
@@ -7,6 +8,8 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import com.google.common.collect.Sets;
+
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.User;
@@ -38,6 +41,11 @@ public class TargetBranchCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public Collection<String> getDiscriminators() {
+		return Sets.newHashSet(getDiscriminator(PullRequestConstants.FIELD_TARGET_BRANCH, value));
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.quote(PullRequestConstants.FIELD_TARGET_BRANCH) + " " + PullRequestQuery.getRuleName(PullRequestQueryLexer.Is) + " " + PullRequestQuery.quote(value);
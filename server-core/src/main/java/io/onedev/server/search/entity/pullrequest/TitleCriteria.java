@@ -5,9 +5,12 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import io.onedev.server.OneDev;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.User;
+import io.onedev.server.search.entitytext.EntityTextField;
+import io.onedev.server.search.entitytext.EntityTextManager;
 import io.onedev.server.util.PullRequestConstants;
 
 public class TitleCriteria extends PullRequestCriteria {
@@ -22,6 +25,10 @@ public class TitleCriteria extends PullRequestCriteria {
 
 	@Override
 	public Predicate getPredicate(Project project, Root<PullRequest> root, CriteriaBuilder builder, User user) {
+		Predicate predicate = OneDev.getInstance(EntityTextManager.class).getPredicate(project, root, builder, 
+				value, EntityTextField.TITLE);
+		if (predicate != null)
+			return predicate;
 		Path<String> attribute = root.get(PullRequestConstants.ATTR_TITLE);
 		return builder.like(builder.lower(attribute), "%" + value.toLowerCase() + "%");
 	}
@@ -50,6 +50,11 @@ public class UpdateDateCriteria extends PullRequestCriteria {
 		return false;
 	}
 
+	@Override
+	public boolean isReusable() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return PullRequestQuery.quote(PullRequestConstants.FIELD_UPDATE_DATE) + " " + PullRequestQuery.getRuleName(operator) + " " + PullRequestQuery.quote(rawValue);
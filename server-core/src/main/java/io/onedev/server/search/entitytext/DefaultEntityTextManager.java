@@ -0,0 +1,490 @@
+package io.onedev.server.search.entitytext;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFormatTooOldException;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.StringUtils;
+import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.server.event.entity.EntityEvent;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.event.system.SystemStarted;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.CodeComment;
+import io.onedev.server.model.CodeCommentRelation;
+import io.onedev.server.model.CodeCommentReply;
+import io.onedev.server.model.Issue;
+import io.onedev.server.model.IssueComment;
+import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.model.PullRequestComment;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.persistence.dao.Dao;
+import io.onedev.server.persistence.dao.EntityCriteria;
+import io.onedev.server.search.code.NGramAnalyzer;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+
+@Singleton
+public class DefaultEntityTextManager implements EntityTextManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultEntityTextManager.class);
+	
+	private static final int INDEX_VERSION = 1;
+	
+	private static final int INDEXING_PRIORITY = 50;
+	
+	private static final int REBUILD_BATCH_SIZE = 1000;
+	
+	private static final int IN_CLAUSE_LIMIT = io.onedev.server.search.entity.EntityCriteria.IN_CLAUSE_LIMIT;
+	
+	/*
+	 * Larger than any phrase so that a match can not span multiple comments
+	 */
+	private static final int POSITION_INCREMENT_GAP = 1000;
+	
+	private static final String FIELD_KEY = "KEY";
+	
+	private static final String FIELD_TYPE = "TYPE";
+	
+	private static final String FIELD_ID = "ID";
+	
+	private static final String FIELD_PROJECT = "PROJECT";
+	
+	private static final String FIELD_META = "META";
+	
+	private static final String FIELD_INDEX_VERSION = "INDEX_VERSION";
+	
+	private static final String META_VERSION = "VERSION";
+	
+	private static final String ATTR_ID = "id";
+	
+	private final StorageManager storageManager;
+	
+	private final SessionManager sessionManager;
+	
+	private final TransactionManager transactionManager;
+	
+	private final BatchWorkManager batchWorkManager;
+	
+	private final Dao dao;
+	
+	private final BatchWorker batchWorker = new BatchWorker("entity-text-index") {
+
+		@Override
+		public void doWorks(Collection<Prioritized> works) {
+			DefaultEntityTextManager.this.doWorks(works);
+		}
+		
+	};
+	
+	private volatile Directory directory;
+	
+	private volatile IndexWriter writer;
+	
+	private volatile SearcherManager searcherManager;
+	
+	private volatile boolean ready;
+	
+	@Inject
+	public DefaultEntityTextManager(StorageManager storageManager, SessionManager sessionManager, 
+			TransactionManager transactionManager, BatchWorkManager batchWorkManager, Dao dao) {
+		this.storageManager = storageManager;
+		this.sessionManager = sessionManager;
+		this.transactionManager = transactionManager;
+		this.batchWorkManager = batchWorkManager;
+		this.dao = dao;
+	}
+	
+	private String getKey(Class<?> entityClass, Long entityId) {
+		return entityClass.getSimpleName() + ":" + entityId;
+	}
+	
+	private Document newDocument(Class<? extends AbstractEntity> entityClass, Long entityId, Long projectId, 
+			@Nullable String title, @Nullable String description, Collection<String> comments) {
+		Document document = new Document();
+		document.add(new StringField(FIELD_KEY, getKey(entityClass, entityId), Store.NO));
+		document.add(new StringField(FIELD_TYPE, entityClass.getSimpleName(), Store.NO));
+		document.add(new StoredField(FIELD_ID, entityId));
+		document.add(new StringField(FIELD_PROJECT, String.valueOf(projectId), Store.NO));
+		if (title != null) {
+			document.add(new TextField(EntityTextField.TITLE.name(), title, Store.NO));
+			document.add(new TextField(EntityTextField.NO_SPACE_TITLE.name(), 
+					StringUtils.deleteWhitespace(title), Store.NO));
+		}
+		if (description != null)
+			document.add(new TextField(EntityTextField.DESCRIPTION.name(), description, Store.NO));
+		for (String comment: comments)
+			document.add(new TextField(EntityTextField.COMMENT.name(), comment, Store.NO));
+		return document;
+	}
+	
+	private Document newDocument(Issue issue) {
+		Collection<String> comments = new ArrayList<>();
+		for (IssueComment comment: issue.getComments())
+			comments.add(comment.getContent());
+		return newDocument(Issue.class, issue.getId(), issue.getProject().getId(), issue.getTitle(), 
+				issue.getDescription(), comments);
+	}
+	
+	private Document newDocument(PullRequest request) {
+		Collection<String> comments = new ArrayList<>();
+		for (PullRequestComment comment: request.getComments())
+			comments.add(comment.getContent());
+		for (CodeCommentRelation relation: request.getCodeCommentRelations()) {
+			comments.add(relation.getComment().getContent());
+			for (CodeCommentReply reply: relation.getComment().getReplies())
+				comments.add(reply.getContent());
+		}
+		return newDocument(PullRequest.class, request.getId(), request.getTargetProject().getId(), request.getTitle(), 
+				request.getDescription(), comments);
+	}
+	
+	@Nullable
+	private Document newDocument(AbstractEntity entity) {
+		if (entity instanceof Issue)
+			return newDocument((Issue) entity);
+		else if (entity instanceof PullRequest)
+			return newDocument((PullRequest) entity);
+		else
+			return null;
+	}
+	
+	private synchronized void open() {
+		if (writer != null)
+			return;
+		
+		File indexDir = storageManager.getEntityTextIndexDir();
+		try {
+			directory = FSDirectory.open(indexDir.toPath());
+			if (DirectoryReader.indexExists(directory)) {
+				try (DirectoryReader reader = DirectoryReader.open(directory)) {
+				} catch (IndexFormatTooOldException e) {
+					directory.close();
+					FileUtils.cleanDir(indexDir);
+					directory = FSDirectory.open(indexDir.toPath());
+				}
+			}
+			
+			IndexWriterConfig writerConfig = new IndexWriterConfig(new NGramAnalyzer(NGRAM_SIZE, NGRAM_SIZE) {
+
+				@Override
+				public int getPositionIncrementGap(String fieldName) {
+					return POSITION_INCREMENT_GAP;
+				}
+				
+			});
+			writerConfig.setOpenMode(OpenMode.CREATE_OR_APPEND);
+			writer = new IndexWriter(directory, writerConfig);
+			searcherManager = new SearcherManager(writer, null);
+			
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				TopDocs topDocs = searcher.search(new TermQuery(new Term(FIELD_META, META_VERSION)), 1);
+				if (topDocs.scoreDocs.length != 0 && String.valueOf(INDEX_VERSION).equals(
+						searcher.doc(topDocs.scoreDocs[0].doc).get(FIELD_INDEX_VERSION))) {
+					ready = true;
+				} else {
+					rebuild();
+				}
+			} finally {
+				searcherManager.release(searcher);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Listen
+	public void on(SystemStarted event) {
+		open();
+	}
+	
+	@Listen
+	public synchronized void on(SystemStopping event) {
+		ready = false;
+		try {
+			if (searcherManager != null) {
+				searcherManager.close();
+				searcherManager = null;
+			}
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+			if (directory != null) {
+				directory.close();
+				directory = null;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void doWorks(Collection<Prioritized> works) {
+		open();
+		try {
+			if (works.stream().anyMatch(it->it instanceof RebuildWork)) 
+				doRebuild();
+			
+			Set<String> indexed = new HashSet<>();
+			sessionManager.run(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						for (Prioritized work: works) {
+							if (work instanceof IndexWork) {
+								IndexWork indexWork = (IndexWork) work;
+								String key = getKey(indexWork.getEntityClass(), indexWork.getEntityId());
+								if (indexed.add(key)) {
+									AbstractEntity entity = dao.get(indexWork.getEntityClass(), indexWork.getEntityId());
+									Document document = entity != null? newDocument(entity): null;
+									if (document != null)
+										writer.updateDocument(new Term(FIELD_KEY, key), document);
+									else
+										writer.deleteDocuments(new Term(FIELD_KEY, key));
+								}
+							} else if (work instanceof ProjectRemovedWork) {
+								Long projectId = ((ProjectRemovedWork) work).getProjectId();
+								writer.deleteDocuments(new Term(FIELD_PROJECT, String.valueOf(projectId)));
+							}
+						}
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				
+			});
+			writer.commit();
+			searcherManager.maybeRefresh();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void doRebuild() throws IOException {
+		logger.info("Rebuilding entity text index...");
+		long time = System.currentTimeMillis();
+		
+		writer.deleteAll();
+		int count = indexAll(Issue.class) + indexAll(PullRequest.class);
+		
+		Document document = new Document();
+		document.add(new StringField(FIELD_META, META_VERSION, Store.NO));
+		document.add(new StoredField(FIELD_INDEX_VERSION, String.valueOf(INDEX_VERSION)));
+		writer.updateDocument(new Term(FIELD_META, META_VERSION), document);
+		
+		writer.commit();
+		searcherManager.maybeRefresh();
+		ready = true;
+		
+		logger.info("Entity text index rebuilt (entities: {}, time: {} ms)", 
+				count, System.currentTimeMillis()-time);
+	}
+	
+	private <T extends AbstractEntity> int indexAll(Class<T> entityClass) {
+		int count = 0;
+		Long lastId = null;
+		while (true) {
+			Long lastIdOfPrevBatch = lastId;
+			
+			// Use a new session for each batch to avoid accumulating loaded entities
+			List<Long> entityIds = sessionManager.call(() -> {
+				EntityCriteria<T> criteria = EntityCriteria.of(entityClass);
+				if (lastIdOfPrevBatch != null)
+					criteria.add(Restrictions.gt(ATTR_ID, lastIdOfPrevBatch));
+				criteria.addOrder(Order.asc(ATTR_ID));
+				List<Long> entityIdsOfBatch = new ArrayList<>();
+				for (T entity: dao.query(criteria, 0, REBUILD_BATCH_SIZE)) {
+					writer.addDocument(newDocument(entity));
+					entityIdsOfBatch.add(entity.getId());
+				}
+				return entityIdsOfBatch;
+			});
+			count += entityIds.size();
+			if (entityIds.size() == REBUILD_BATCH_SIZE)
+				lastId = entityIds.get(entityIds.size()-1);
+			else
+				return count;
+		}
+	}
+	
+	@Override
+	public List<Long> query(Class<? extends AbstractEntity> entityClass, Project project, 
+			String text, int count, EntityTextField... fields) {
+		if (!ready || text.length() < NGRAM_SIZE)
+			return null;
+		
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		builder.add(new TermQuery(new Term(FIELD_TYPE, entityClass.getSimpleName())), Occur.FILTER);
+		if (project != null)
+			builder.add(new TermQuery(new Term(FIELD_PROJECT, String.valueOf(project.getId()))), Occur.FILTER);
+		BooleanQuery.Builder fieldsBuilder = new BooleanQuery.Builder();
+		for (EntityTextField field: fields)
+			fieldsBuilder.add(field.query(text), Occur.SHOULD);
+		builder.add(fieldsBuilder.build(), Occur.MUST);
+		
+		try {
+			IndexSearcher searcher = searcherManager.acquire();
+			try {
+				List<Long> entityIds = new ArrayList<>();
+				for (ScoreDoc scoreDoc: searcher.search(builder.build(), count).scoreDocs) 
+					entityIds.add(searcher.doc(scoreDoc.doc).getField(FIELD_ID).numericValue().longValue());
+				return entityIds;
+			} finally {
+				searcherManager.release(searcher);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public Predicate getPredicate(Project project, Root<? extends AbstractEntity> root, 
+			CriteriaBuilder builder, String text, EntityTextField field) {
+		List<Long> entityIds = query(root.getJavaType(), project, text, IN_CLAUSE_LIMIT+1, field);
+		if (entityIds == null || entityIds.size() > IN_CLAUSE_LIMIT)
+			return null;
+		else if (!entityIds.isEmpty())
+			return root.get(ATTR_ID).in(entityIds);
+		else
+			return builder.disjunction();
+	}
+
+	@Override
+	public void rebuild() {
+		ready = false;
+		batchWorkManager.submit(batchWorker, new RebuildWork());
+	}
+	
+	private void index(Class<? extends AbstractEntity> entityClass, Long entityId) {
+		transactionManager.runAfterCommit(new Runnable() {
+
+			@Override
+			public void run() {
+				batchWorkManager.submit(batchWorker, new IndexWork(entityClass, entityId));
+			}
+			
+		});
+	}
+	
+	@Listen
+	public void on(EntityEvent event) {
+		AbstractEntity entity = event.getEntity();
+		if (entity instanceof Issue) {
+			index(Issue.class, entity.getId());
+		} else if (entity instanceof IssueComment) {
+			index(Issue.class, ((IssueComment) entity).getIssue().getId());
+		} else if (entity instanceof PullRequest) {
+			index(PullRequest.class, entity.getId());
+		} else if (entity instanceof PullRequestComment) {
+			index(PullRequest.class, ((PullRequestComment) entity).getRequest().getId());
+		} else if (entity instanceof CodeCommentRelation) {
+			index(PullRequest.class, ((CodeCommentRelation) entity).getRequest().getId());
+		} else if (entity instanceof CodeComment) {
+			for (CodeCommentRelation relation: ((CodeComment) entity).getRelations())
+				index(PullRequest.class, relation.getRequest().getId());
+		} else if (entity instanceof CodeCommentReply) {
+			for (CodeCommentRelation relation: ((CodeCommentReply) entity).getComment().getRelations())
+				index(PullRequest.class, relation.getRequest().getId());
+		} else if (entity instanceof Project && event instanceof EntityRemoved) {
+			Long projectId = entity.getId();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					batchWorkManager.submit(batchWorker, new ProjectRemovedWork(projectId));
+				}
+				
+			});
+		}
+	}
+	
+	private static class IndexWork extends Prioritized {
+
+		private final Class<? extends AbstractEntity> entityClass;
+		
+		private final Long entityId;
+		
+		public IndexWork(Class<? extends AbstractEntity> entityClass, Long entityId) {
+			super(INDEXING_PRIORITY);
+			this.entityClass = entityClass;
+			this.entityId = entityId;
+		}
+
+		public Class<? extends AbstractEntity> getEntityClass() {
+			return entityClass;
+		}
+
+		public Long getEntityId() {
+			return entityId;
+		}
+		
+	}
+	
+	private static class ProjectRemovedWork extends Prioritized {
+
+		private final Long projectId;
+		
+		public ProjectRemovedWork(Long projectId) {
+			super(INDEXING_PRIORITY);
+			this.projectId = projectId;
+		}
+
+		public Long getProjectId() {
+			return projectId;
+		}
+		
+	}
+	
+	private static class RebuildWork extends Prioritized {
+
+		public RebuildWork() {
+			super(INDEXING_PRIORITY);
+		}
+		
+	}
+	
+}
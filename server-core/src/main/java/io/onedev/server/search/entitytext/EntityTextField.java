@@ -0,0 +1,13 @@
+package io.onedev.server.search.entitytext;
+
+import io.onedev.server.search.code.query.NGramLuceneQuery;
+
+public enum EntityTextField {
+	
+	TITLE, NO_SPACE_TITLE, DESCRIPTION, COMMENT;
+	
+	public NGramLuceneQuery query(String text) {
+		return new NGramLuceneQuery(name(), text, EntityTextManager.NGRAM_SIZE);
+	}
+	
+}
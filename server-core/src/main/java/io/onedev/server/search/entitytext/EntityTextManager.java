@@ -0,0 +1,62 @@
+package io.onedev.server.search.entitytext;
+
+import java.util.List;
+
+import javax.annotation.Nullable;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Project;
+
+/**
+ * Full-text index of titles, descriptions and comments of issues and pull requests. The 
+ * index is updated asynchronously after relevant entities are committed, and is rebuilt 
+ * in background if missing or created by an incompatible version. Run command 
+ * <tt>rebuild_entity_text_index</tt> to have it rebuilt at next server start, for 
+ * instance after restoring database.
+ */
+public interface EntityTextManager {
+	
+	static final int NGRAM_SIZE = 3;
+	
+	/**
+	 * Query ids of entities containing specified text in any of specified fields. Text 
+	 * is matched as case-insensitive substring, the same as <tt>like '%text%'</tt> 
+	 * 
+	 * @param entityClass
+	 * 			class of entities to query, either issue or pull request
+	 * @param project
+	 * 			project to query entities in, <tt>null</tt> to query entities in all projects
+	 * @param count
+	 * 			maximum number of ids to return
+	 * @return
+	 * 			ids of matched entities ordered by relevance, or <tt>null</tt> if index can not 
+	 * 			be used for this query, for instance when index is being built, or text is 
+	 * 			shorter than {@link #NGRAM_SIZE}. Caller should fall back to database search 
+	 * 			in this case
+	 */
+	@Nullable
+	List<Long> query(Class<? extends AbstractEntity> entityClass, @Nullable Project project, 
+			String text, int count, EntityTextField...fields);
+	
+	/**
+	 * Get predicate matching entities containing specified text in specified field
+	 * 
+	 * @return
+	 * 			predicate on id of matched entities, or <tt>null</tt> if index can not be used, 
+	 * 			or there are too many matches to be pushed down as an id list. Caller should 
+	 * 			fall back to database search in this case
+	 */
+	@Nullable
+	Predicate getPredicate(@Nullable Project project, Root<? extends AbstractEntity> root, 
+			CriteriaBuilder builder, String text, EntityTextField field);
+
+	/**
+	 * Rebuild the index in background. Queries fall back to database search until 
+	 * rebuild is finished
+	 */
+	void rebuild();
+	
+}
@@ -0,0 +1,30 @@
+package io.onedev.server.storage;
+
+import java.io.File;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import io.onedev.server.model.Project;
+
+public interface ArchiveManager {
+	
+	public static final String FORMAT_ZIP = "zip";
+	
+	public static final String FORMAT_TGZ = "tgz";
+	
+	/**
+	 * Get archive of specified commit. The archive will be built and cached if not 
+	 * exist yet. Concurrent calls for the same archive only build it once
+	 * 
+	 * @param project
+	 * 			project containing the commit
+	 * @param commitId
+	 * 			id of the commit to be archived
+	 * @param format
+	 * 			archive format, either {@link #FORMAT_ZIP} or {@link #FORMAT_TGZ}
+	 * @return
+	 * 			cached archive file. The file should be treated as read-only
+	 */
+	File getArchive(Project project, ObjectId commitId, String format);
+	
+}
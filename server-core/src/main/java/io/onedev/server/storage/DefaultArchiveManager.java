@@ -0,0 +1,198 @@
+package io.onedev.server.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.eclipse.jgit.api.ArchiveCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.archive.TgzFormat;
+import org.eclipse.jgit.archive.ZipFormat;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.event.system.SystemStarting;
+import io.onedev.server.event.system.SystemStopping;
+import io.onedev.server.model.Project;
+
+/**
+ * Archives are cached by commit id, and entries take commit time as modification time 
+ * so that the same commit always produces the same archive. Total size of cached archives 
+ * is bounded, and least recently used archives are evicted when the bound is exceeded. 
+ * Access time of archives is tracked in memory instead of modification time of archive 
+ * files, as entity tag and last modified time served to clients are derived from archive 
+ * files and should not change when archives are accessed. Archives not accessed since 
+ * server start take modification time of their files as access time.
+ */
+@Singleton
+public class DefaultArchiveManager implements ArchiveManager {
+
+	private static final Logger logger = LoggerFactory.getLogger(DefaultArchiveManager.class);
+	
+	private static final long MAX_CACHE_SIZE = 2L*1024*1024*1024;
+	
+	/*
+	 * Recently accessed archives are not evicted as they might be still being 
+	 * streamed to clients 
+	 */
+	private static final long MIN_RETAIN_PERIOD = 10*60*1000L;
+	
+	private static final String TEMP_PREFIX = "temp-";
+	
+	private final StorageManager storageManager;
+	
+	private final AtomicLong cacheSize = new AtomicLong();
+	
+	private final Map<File, Long> accessTimes = new ConcurrentHashMap<>();
+	
+	@Inject
+	public DefaultArchiveManager(StorageManager storageManager) {
+		this.storageManager = storageManager;
+	}
+	
+	@Listen
+	public void on(SystemStarting event) {
+		ArchiveCommand.registerFormat(FORMAT_ZIP, new ZipFormat());
+		ArchiveCommand.registerFormat(FORMAT_TGZ, new TgzFormat());
+		
+		long size = 0;
+		for (File file: getCacheFiles()) {
+			if (file.getName().startsWith(TEMP_PREFIX))
+				FileUtils.deleteFile(file);
+			else
+				size += file.length();
+		}
+		cacheSize.set(size);
+	}
+	
+	@Listen
+	public void on(SystemStopping event) {
+		ArchiveCommand.unregisterFormat(FORMAT_ZIP);
+		ArchiveCommand.unregisterFormat(FORMAT_TGZ);
+	}
+	
+	private File getArchiveFile(ObjectId commitId, String format) {
+		String commitName = commitId.name();
+		File bucketDir = new File(storageManager.getArchiveCacheDir(), commitName.substring(0, 2));
+		return new File(bucketDir, commitName + "." + format);
+	}
+	
+	@Override
+	public File getArchive(Project project, ObjectId commitId, String format) {
+		if (!FORMAT_ZIP.equals(format) && !FORMAT_TGZ.equals(format))
+			throw new IllegalArgumentException("Unsupported archive format: " + format);
+		
+		File archiveFile = getArchiveFile(commitId, format);
+		
+		if (!archiveFile.exists()) {
+			long builtSize = LockUtils.call("archive-cache:" + archiveFile.getAbsolutePath(), new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					if (!archiveFile.exists()) {
+						FileUtils.createDir(archiveFile.getParentFile());
+						File tempFile = new File(archiveFile.getParentFile(), 
+								TEMP_PREFIX + UUID.randomUUID().toString());
+						try {
+							try (OutputStream os = new FileOutputStream(tempFile)) {
+								ArchiveCommand archive = Git.wrap(project.getRepository()).archive();
+								archive.setFormat(format);
+								archive.setTree(commitId);
+								archive.setOutputStream(os);
+								archive.call();
+							}
+							Files.move(tempFile.toPath(), archiveFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+						} finally {
+							if (tempFile.exists())
+								FileUtils.deleteFile(tempFile);
+						}
+						return archiveFile.length();
+					} else {
+						return 0L;
+					}
+				}
+				
+			});
+			if (cacheSize.addAndGet(builtSize) > MAX_CACHE_SIZE)
+				evict();
+		}
+		accessTimes.put(archiveFile, System.currentTimeMillis());
+		return archiveFile;
+	}
+	
+	private List<File> getCacheFiles() {
+		List<File> cacheFiles = new ArrayList<>();
+		for (File bucketDir: storageManager.getArchiveCacheDir().listFiles()) {
+			if (bucketDir.isDirectory()) {
+				for (File file: bucketDir.listFiles()) 
+					cacheFiles.add(file);
+			}
+		}
+		return cacheFiles;
+	}
+	
+	/*
+	 * Cache directory is only scanned when tracked cache size exceeds the bound. Tracked 
+	 * size is re-synchronized with the scan result, in case it drifts
+	 */
+	private synchronized void evict() {
+		if (cacheSize.get() <= MAX_CACHE_SIZE)
+			return;
+		
+		List<File> cacheFiles = new ArrayList<>();
+		Map<File, Long> cacheAccessTimes = new HashMap<>();
+		long size = 0;
+		for (File file: getCacheFiles()) {
+			if (!file.getName().startsWith(TEMP_PREFIX)) {
+				cacheFiles.add(file);
+				cacheAccessTimes.put(file, getAccessTime(file));
+				size += file.length();
+			}
+		}
+		long evictedSize = 0;
+		if (size > MAX_CACHE_SIZE) {
+			cacheFiles.sort(Comparator.comparing(cacheAccessTimes::get));
+			long now = System.currentTimeMillis();
+			for (File file: cacheFiles) {
+				if (size - evictedSize <= MAX_CACHE_SIZE)
+					break;
+				if (now - cacheAccessTimes.get(file) > MIN_RETAIN_PERIOD) {
+					long fileSize = file.length();
+					try {
+						Files.deleteIfExists(file.toPath());
+						accessTimes.remove(file);
+						evictedSize += fileSize;
+					} catch (IOException e) {
+						logger.error("Error evicting cached archive: " + file.getAbsolutePath(), e);
+					}
+				}
+			}
+		}
+		cacheSize.set(size - evictedSize);
+	}
+	
+	private long getAccessTime(File archiveFile) {
+		Long accessTime = accessTimes.get(archiveFile);
+		return accessTime != null? accessTime: archiveFile.lastModified();
+	}
+
+}
@@ -87,6 +87,13 @@ public class DefaultStorageManager implements StorageManager {
         return attachmentDir;
 	}
 
+	@Override
+	public File getProjectBlobDir(Long projectId) {
+        File blobDir = new File(getProjectDir(projectId), "blob");
+        FileUtils.createDir(blobDir);
+        return blobDir;
+	}
+
 	@Listen
 	public void on(SystemStarting event) {
         for (File projectDir: getProjectsDir().listFiles()) {
@@ -166,5 +173,19 @@ public class DefaultStorageManager implements StorageManager {
 		FileUtils.createDir(buildDir);
 		return buildDir;
 	}
+	
+	@Override
+	public File getArchiveCacheDir() {
+		File archiveCacheDir = new File(getStorageDir(), "archive_cache");
+		FileUtils.createDir(archiveCacheDir);
+		return archiveCacheDir;
+	}
+	
+	@Override
+	public File getEntityTextIndexDir() {
+		File indexDir = new File(getStorageDir(), "entity_text_index");
+		FileUtils.createDir(indexDir);
+		return indexDir;
+	}
     
 }
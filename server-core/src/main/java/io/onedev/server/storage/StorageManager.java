@@ -38,6 +38,16 @@ public interface StorageManager {
      */
     File getProjectAttachmentDir(Long projectId);
     
+    /**
+     * Get directory to store content addressed blobs of specified project, for instance 
+     * build artifacts shared by multiple builds via hard links. The directory resides on 
+     * the same file system as build directories of the project
+     * 
+     * @return 
+     * 			directory to store blobs. The directory will be exist after calling this method
+     */
+    File getProjectBlobDir(Long projectId);
+    
     File getUserInfoDir(Long userId);
     
     /**
@@ -49,4 +59,22 @@ public interface StorageManager {
      */
     File getBuildDir(Long projectId, Long buildNumber);
     
+    /**
+     * Get directory to cache generated repository archives
+     * 
+     * @return
+     * 			directory to cache generated repository archives. The directory will be exist 
+     * 			after calling this method
+     */
+    File getArchiveCacheDir();
+    
+    /**
+     * Get directory to store full-text index of issues and pull requests
+     * 
+     * @return
+     * 			directory to store full-text index of issues and pull requests. The directory 
+     * 			will be exist after calling this method
+     */
+    File getEntityTextIndexDir();
+    
 }
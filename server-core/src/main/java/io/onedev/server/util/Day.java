@@ -6,6 +6,7 @@ import java.util.Date;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
 
 public class Day implements Serializable, Comparable<Day> {
 
@@ -37,6 +38,34 @@ public class Day implements Serializable, Comparable<Day> {
 	public int getValue() {
 		return (dateTime.getYear()<<16) | (dateTime.getMonthOfYear()<<8) | (dateTime.getDayOfMonth());
 	}
+	
+	public Day plusDays(int days) {
+		return new Day(dateTime.plusDays(days));
+	}
+	
+	/**
+	 * @return
+	 * 			Monday of the week containing this day
+	 */
+	public Day getFirstDayOfWeek() {
+		return new Day(dateTime.withDayOfWeek(DateTimeConstants.MONDAY));
+	}
+	
+	/**
+	 * @return
+	 * 			Sunday of the week containing this day
+	 */
+	public Day getLastDayOfWeek() {
+		return new Day(dateTime.withDayOfWeek(DateTimeConstants.SUNDAY));
+	}
+	
+	public Day getFirstDayOfMonth() {
+		return new Day(dateTime.withDayOfMonth(1));
+	}
+	
+	public Day getLastDayOfMonth() {
+		return new Day(dateTime.dayOfMonth().withMaximumValue());
+	}
 
 	@Override
 	public int compareTo(Day o) {
@@ -0,0 +1,172 @@
+package io.onedev.server.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.onedev.commons.utils.ExceptionUtils;
+
+/**
+ * Clone files between directories. Regular files are hard linked if requested and supported
+ * by the file system, and are copied in parallel otherwise. Hard linking should only be
+ * requested if source files will not be modified in place while target files are in use.
+ * Existing target files are unlinked before copying, so that a copied file never shares 
+ * content with its source even if the two were hard linked previously.
+ */
+public class FileCloner {
+
+	private static final int MAX_CONCURRENCY = 8;
+
+	private final boolean hardLink;
+
+	private final AtomicBoolean hardLinkSupported = new AtomicBoolean(true);
+
+	private final AtomicLong linkedFiles = new AtomicLong();
+
+	private final AtomicLong copiedFiles = new AtomicLong();
+
+	private final AtomicLong copiedBytes = new AtomicLong();
+
+	public FileCloner(boolean hardLink) {
+		this.hardLink = hardLink;
+	}
+
+	/**
+	 * Clone all files and directories under specified source directory into target directory,
+	 * replacing existing files
+	 */
+	public FileCloner cloneDirectory(File fromDir, File toDir) {
+		Path fromPath = fromDir.toPath();
+		Path toPath = toDir.toPath();
+		List<Path> files = new ArrayList<>();
+		try {
+			Files.walkFileTree(fromPath, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+					Files.createDirectories(toPath.resolve(fromPath.relativize(dir)));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					files.add(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		cloneFiles(fromPath, files, toPath);
+		return this;
+	}
+
+	/**
+	 * Clone specified files under source directory into target directory, keeping their
+	 * relative paths and replacing existing files
+	 */
+	public FileCloner cloneFiles(File fromDir, Collection<File> files, File toDir) {
+		List<Path> paths = new ArrayList<>();
+		for (File file: files)
+			paths.add(file.toPath());
+		cloneFiles(fromDir.toPath(), paths, toDir.toPath());
+		return this;
+	}
+
+	private void cloneFiles(Path fromPath, List<Path> files, Path toPath) {
+		int concurrency = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_CONCURRENCY));
+		List<List<Path>> partitions = new ArrayList<>();
+		for (int i=0; i<concurrency; i++)
+			partitions.add(new ArrayList<>());
+		for (int i=0; i<files.size(); i++)
+			partitions.get(i%concurrency).add(files.get(i));
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (List<Path> partition: partitions) {
+				futures.add(executor.submit(() -> {
+					for (Path file: partition)
+						cloneFile(file, toPath.resolve(fromPath.relativize(file)));
+					return null;
+				}));
+			}
+			for (Future<Void> future: futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					for (Future<Void> each: futures)
+						each.cancel(true);
+					throw ExceptionUtils.unchecked(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void cloneFile(Path source, Path target) throws IOException {
+		Path targetDir = target.getParent();
+		if (targetDir != null && !Files.isDirectory(targetDir))
+			Files.createDirectories(targetDir);
+		boolean symbolicLink = Files.isSymbolicLink(source);
+		if (hardLink && !symbolicLink && hardLinkSupported.get()) {
+			try {
+				Files.deleteIfExists(target);
+				Files.createLink(target, source);
+				linkedFiles.incrementAndGet();
+				return;
+			} catch (UnsupportedOperationException | FileSystemException e) {
+				// For instance source and target reside on different file systems
+				hardLinkSupported.set(false);
+			}
+		}
+		/*
+		 * Copying over a target hard linked to the source is a no-op as they are the same 
+		 * file, so remove the target first to break the link
+		 */
+		Files.deleteIfExists(target);
+		Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+		copiedFiles.incrementAndGet();
+		if (!symbolicLink)
+			copiedBytes.addAndGet(Files.size(target));
+	}
+
+	public long getLinkedFiles() {
+		return linkedFiles.get();
+	}
+
+	public long getCopiedFiles() {
+		return copiedFiles.get();
+	}
+
+	public long getCopiedBytes() {
+		return copiedBytes.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d files linked, %d files copied (%d KB)",
+				getLinkedFiles(), getCopiedFiles(), getCopiedBytes()/1024);
+	}
+
+}
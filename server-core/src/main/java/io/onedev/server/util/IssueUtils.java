@@ -8,23 +8,27 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 
+import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.server.OneDev;
-import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.SettingManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
-import io.onedev.server.model.support.setting.GlobalIssueSetting;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.inputspec.InputSpec;
 import io.onedev.server.util.usermatcher.UserMatcher;
@@ -37,6 +41,15 @@ public class IssueUtils {
     
 	private static final String FIELD_BEAN_PREFIX = "IssueFieldBean";
 	
+	private static final int MAX_FIELD_BEAN_CLASSES = 100;
+	
+	// Hash of field specs by identity, as cached issue setting is replaced when changed 
+	private static final Cache<List<InputSpec>, String> fieldSpecsHashes = CacheBuilder.newBuilder()
+			.weakKeys().build();
+	
+	private static final Cache<String, Class<? extends Serializable>> fieldBeanClasses = CacheBuilder.newBuilder()
+			.maximumSize(MAX_FIELD_BEAN_CLASSES).build();
+	
 	public static void clearFields(Serializable fieldBean) {
 		for (List<PropertyDescriptor> groupProperties: new BeanDescriptor(fieldBean.getClass()).getProperties().values()) {
 			for (PropertyDescriptor property: groupProperties) 
@@ -44,24 +57,54 @@ public class IssueUtils {
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
-	public static Class<? extends Serializable> defineFieldBeanClass(Project project) {
-		String className = FIELD_BEAN_PREFIX + project.getId();
-		GlobalIssueSetting issueSetting = OneDev.getInstance(SettingManager.class).getIssueSetting();
-		return (Class<? extends Serializable>) InputSpec.defineClass(className, "Issue Fields", issueSetting.getFieldSpecs());
+	/**
+	 * Get field bean class of current issue field specs. Classes are compiled once and shared 
+	 * until field specs change
+	 */
+	public static Class<? extends Serializable> defineFieldBeanClass() {
+		List<InputSpec> fieldSpecs = getFieldSpecs();
+		return defineFieldBeanClass(FIELD_BEAN_PREFIX + getHash(fieldSpecs), fieldSpecs);
 	}
 	
 	@Nullable
 	public static Class<? extends Serializable> loadFieldBeanClass(String className) {
 		if (className.startsWith(FIELD_BEAN_PREFIX)) {
-			Long projectId = Long.parseLong(className.substring(FIELD_BEAN_PREFIX.length()));
-			Project project = OneDev.getInstance(ProjectManager.class).load(projectId);
-			return defineFieldBeanClass(project);
+			/*
+			 * Class might be referenced by serialized pages created with previous field specs, 
+			 * in which case we define the class with current field specs as before 
+			 */
+			return defineFieldBeanClass(className, getFieldSpecs());
 		} else {
 			return null;
 		}
 	}
 	
+	@SuppressWarnings("unchecked")
+	private static Class<? extends Serializable> defineFieldBeanClass(String className, List<InputSpec> fieldSpecs) {
+		try {
+			return fieldBeanClasses.get(className + ":" + getHash(fieldSpecs), () -> {
+				return (Class<? extends Serializable>) InputSpec.defineClass(className, "Issue Fields", fieldSpecs);
+			});
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
+	private static List<InputSpec> getFieldSpecs() {
+		return OneDev.getInstance(SettingManager.class).getIssueSetting().getFieldSpecs();
+	}
+	
+	private static String getHash(List<InputSpec> fieldSpecs) {
+		try {
+			return fieldSpecsHashes.get(fieldSpecs, () -> {
+				byte[] bytes = SerializationUtils.serialize((Serializable) fieldSpecs);
+				return Hashing.sha256().hashBytes(bytes).toString().substring(0, 32);
+			});
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
+	}
+	
 	public static Collection<String> getPropertyNames(Project project, Class<?> fieldBeanClass, Collection<String> fieldNames) {
 		Collection<String> propertyNames = new HashSet<>();
 		SettingManager settingManager = OneDev.getInstance(SettingManager.class); 
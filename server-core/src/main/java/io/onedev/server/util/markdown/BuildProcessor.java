@@ -14,6 +14,11 @@ public class BuildProcessor extends BuildParser implements MarkdownProcessor {
 		parseReferences(project, document);
 	}
 
+	@Override
+	public boolean isInvalidatedBy(Object event) {
+		return isReferenceChanged(event);
+	}
+
 	@Override
 	protected String toHtml(Build build, String text) {
 		CharSequence url = RequestCycle.get().urlFor(
@@ -14,6 +14,7 @@ import com.google.common.collect.ImmutableSet;
 
 import io.onedev.commons.utils.HtmlUtils;
 import io.onedev.commons.utils.TextNodeVisitor;
+import io.onedev.server.event.RefUpdated;
 import io.onedev.server.git.GitUtils;
 import io.onedev.server.model.Project;
 import io.onedev.server.web.page.project.commits.CommitDetailPage;
@@ -31,6 +32,11 @@ public class CommitProcessor implements MarkdownProcessor {
 				GitUtils.abbreviateSHA(commitId.name()));
 	}
 
+	@Override
+	public boolean isInvalidatedBy(Object event) {
+		return event instanceof RefUpdated;
+	}
+
 	@Override
 	public void process(Project project, Document rendered, Object context) {
 		if (project != null) {
@@ -1,8 +1,14 @@
 package io.onedev.server.util.markdown;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -10,8 +16,13 @@ import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.jsoup.nodes.Document;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.vladsch.flexmark.Extension;
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.ext.anchorlink.AnchorLinkExtension;
@@ -26,24 +37,59 @@ import com.vladsch.flexmark.parser.ParserEmulationProfile;
 import com.vladsch.flexmark.util.options.MutableDataHolder;
 import com.vladsch.flexmark.util.options.MutableDataSet;
 
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
 import io.onedev.commons.utils.HtmlUtils;
+import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.entity.EntityEvent;
+import io.onedev.server.model.AbstractEntity;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Issue;
 import io.onedev.server.model.Project;
+import io.onedev.server.model.PullRequest;
+import io.onedev.server.persistence.TransactionManager;
 
 @Singleton
 public class DefaultMarkdownManager implements MarkdownManager {
 	
-	private final Set<Extension> contributedExtensions;
+	private static final int MAX_CACHE_SIZE = 10000;
+	
+	/*
+	 * Reference to issue, pull request or build of another project, for instance "onedev#100"
+	 */
+	private static final Pattern CROSS_PROJECT_REFERENCE = Pattern.compile("[\\w\\.-]#\\d+");
 	
 	private final Set<MarkdownProcessor> htmlTransformers;
 	
+	private final TransactionManager transactionManager;
+	
+	private final Parser parser;
+	
+	private final HtmlRenderer htmlRenderer;
+	
+	private final Cache<String, String> renderCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE).build();
+	
+	private final Cache<String, String> processCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHE_SIZE).build();
+	
+	/*
+	 * Parts of process cache key, increased whenever some processor is invalidated so that 
+	 * previously processed html will no longer be used. Events concerning a project only 
+	 * invalidate html processed for that project, and html referencing other projects
+	 */
+	private final AtomicLong globalVersion = new AtomicLong();
+	
+	private final AtomicLong crossProjectVersion = new AtomicLong();
+	
+	private final Map<Long, AtomicLong> projectVersions = new ConcurrentHashMap<>();
+	
 	@Inject
-	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers) {
-		this.contributedExtensions = contributedExtensions;
+	public DefaultMarkdownManager(Set<Extension> contributedExtensions, Set<MarkdownProcessor> htmlTransformers, 
+			TransactionManager transactionManager) {
 		this.htmlTransformers = htmlTransformers;
-	}
-
-	@Override
-	public String render(String markdown) {
+		this.transactionManager = transactionManager;
+		
 		List<Extension> extensions = new ArrayList<>();
 		extensions.add(AnchorLinkExtension.create());
 		extensions.add(TablesExtension.create());
@@ -66,12 +112,23 @@ public class DefaultMarkdownManager implements MarkdownManager {
 				.set(TablesExtension.HEADER_SEPARATOR_COLUMN_MATCH, true)
 				.set(Parser.EXTENSIONS, extensions);
 
-		Parser parser = Parser.builder(options).build();
+		// Parser and renderer are immutable and can be shared between threads
+		parser = Parser.builder(options).build();
+		htmlRenderer = HtmlRenderer.builder(options).build();
+	}
 
-		HtmlRenderer htmlRenderer = HtmlRenderer.builder(options).build();
-		
-		Node document = parser.parse(markdown);
-		return htmlRenderer.render(document);
+	@Override
+	public String render(String markdown) {
+		// Rendered html contains urls of emoji icons relative to base url of current request 
+		String key = getBaseUrl() + ":" + hash(markdown);
+		try {
+			return renderCache.get(key, () -> {
+				Node document = parser.parse(markdown);
+				return htmlRenderer.render(document);
+			});
+		} catch (ExecutionException e) {
+			throw ExceptionUtils.unchecked(e.getCause());
+		}
 	}
 
 	@Override
@@ -83,10 +140,102 @@ public class DefaultMarkdownManager implements MarkdownManager {
 
 	@Override
 	public String process(Project project, String rendered, @Nullable Object context) {
+		/*
+		 * Result with context might depend on current user, and processors generate urls 
+		 * relative to base url of current request, so we only cache result without context 
+		 * inside a request cycle, and use base url as part of the key
+		 */
+		String baseUrl = getBaseUrl();
+		if (context == null && baseUrl != null) {
+			Long projectId = AbstractEntity.idOf(project);
+			long projectVersion = projectId != null? getProjectVersion(projectId).get(): 0;
+			long referenceVersion = CROSS_PROJECT_REFERENCE.matcher(rendered).find()? crossProjectVersion.get(): 0;
+			String key = projectId + ":" + globalVersion.get() + ":" + projectVersion + ":" + referenceVersion 
+					+ ":" + baseUrl + ":" + hash(rendered);
+			try {
+				return processCache.get(key, () -> doProcess(project, rendered, context));
+			} catch (ExecutionException e) {
+				throw ExceptionUtils.unchecked(e.getCause());
+			}
+		} else {
+			return doProcess(project, rendered, context);
+		}
+	}
+	
+	private String doProcess(@Nullable Project project, String rendered, @Nullable Object context) {
 		Document document = HtmlUtils.clean(rendered);
 		for (MarkdownProcessor htmlTransformer: htmlTransformers)
 			htmlTransformer.process(project, document, context);
 		return document.body().html();
 	}
+	
+	@Nullable
+	private String getBaseUrl() {
+		RequestCycle requestCycle = RequestCycle.get();
+		if (requestCycle != null)
+			return requestCycle.getUrlRenderer().getBaseUrl().toString();
+		else
+			return null;
+	}
+	
+	private HashCode hash(String content) {
+		return Hashing.sha256().hashString(content, StandardCharsets.UTF_8);
+	}
+	
+	private AtomicLong getProjectVersion(Long projectId) {
+		return projectVersions.computeIfAbsent(projectId, it->new AtomicLong());
+	}
+	
+	private void invalidate(@Nullable Project project) {
+		if (project != null) {
+			getProjectVersion(project.getId()).incrementAndGet();
+			crossProjectVersion.incrementAndGet();
+		} else {
+			globalVersion.incrementAndGet();
+		}
+	}
+	
+	@Nullable
+	private Project getProject(AbstractEntity entity) {
+		if (entity instanceof Project)
+			return (Project) entity;
+		else if (entity instanceof Issue)
+			return ((Issue) entity).getProject();
+		else if (entity instanceof PullRequest)
+			return ((PullRequest) entity).getTargetProject();
+		else if (entity instanceof Build)
+			return ((Build) entity).getProject();
+		else
+			return null;
+	}
+	
+	private boolean isInvalidatedBy(Object event) {
+		for (MarkdownProcessor htmlTransformer: htmlTransformers) {
+			if (htmlTransformer.isInvalidatedBy(event))
+				return true;
+		}
+		return false;
+	}
+	
+	@Listen
+	public void on(EntityEvent event) {
+		if (isInvalidatedBy(event)) {
+			Project project = getProject(event.getEntity());
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					invalidate(project);
+				}
+				
+			});
+		}
+	}
+	
+	@Listen
+	public void on(RefUpdated event) {
+		if (isInvalidatedBy(event))
+			invalidate(event.getProject());
+	}
 
 }
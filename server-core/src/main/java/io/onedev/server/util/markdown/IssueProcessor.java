@@ -14,6 +14,11 @@ public class IssueProcessor extends IssueParser implements MarkdownProcessor {
 		parseReferences(project, document);
 	}
 
+	@Override
+	public boolean isInvalidatedBy(Object event) {
+		return isReferenceChanged(event);
+	}
+
 	@Override
 	protected String toHtml(Issue issue, String text) {
 		CharSequence url = RequestCycle.get().urlFor(
@@ -12,4 +12,19 @@ public interface MarkdownProcessor {
 	
 	void process(Project project, Document rendered, @Nullable Object context);
 	
+	/**
+	 * Processed html without context is cached and reused until any processor is invalidated 
+	 * by some event, for instance creation of an entity which might be referenced by the html. 
+	 * If the event concerns a project, such as creation of an issue or update of a ref, only 
+	 * html processed for that project or referencing other projects is invalidated
+	 * 
+	 * @param event
+	 * 			event to check
+	 * @return
+	 * 			whether or not processed html should be invalidated upon specified event 
+	 */
+	default boolean isInvalidatedBy(Object event) {
+		return false;
+	}
+	
 }
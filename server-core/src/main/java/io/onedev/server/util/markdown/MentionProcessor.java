@@ -3,6 +3,7 @@ package io.onedev.server.util.markdown;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.jsoup.nodes.Document;
 
+import io.onedev.server.event.entity.EntityEvent;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.User;
 import io.onedev.server.web.page.admin.user.UserProfilePage;
@@ -14,6 +15,11 @@ public class MentionProcessor extends MentionParser implements MarkdownProcessor
 		parseMentions(document);
 	}
 
+	@Override
+	public boolean isInvalidatedBy(Object event) {
+		return event instanceof EntityEvent && ((EntityEvent) event).getEntity() instanceof User;
+	}
+
 	@Override
 	protected String toHtml(User user) {
 		if (RequestCycle.get() != null) {
@@ -14,6 +14,11 @@ public class PullRequestProcessor extends PullRequestParser implements MarkdownP
 		parseReferences(project, document);
 	}
 
+	@Override
+	public boolean isInvalidatedBy(Object event) {
+		return isReferenceChanged(event);
+	}
+
 	@Override
 	protected String toHtml(PullRequest request, String text) {
 		CharSequence url = RequestCycle.get().urlFor(
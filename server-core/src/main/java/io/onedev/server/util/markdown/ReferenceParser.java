@@ -22,6 +22,8 @@ import io.onedev.commons.utils.TextNodeVisitor;
 import io.onedev.commons.utils.WordUtils;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.entity.EntityPersisted;
+import io.onedev.server.event.entity.EntityRemoved;
 import io.onedev.server.model.AbstractEntity;
 import io.onedev.server.model.Project;
 import io.onedev.server.util.Referenceable;
@@ -32,12 +34,14 @@ public abstract class ReferenceParser<T extends Referenceable> {
 	
 	private final Pattern pattern;
 	
+	private final Class<?> referenceClass;
+	
 	private final String referenceType;
 	
 	public ReferenceParser() {
 		List<Class<?>> typeArguments = ReflectionUtils.getTypeArguments(ReferenceParser.class, getClass());
 		if (typeArguments.size() == 1 && AbstractEntity.class.isAssignableFrom(typeArguments.get(0))) {
-			Class<?> referenceClass = typeArguments.get(0);
+			referenceClass = typeArguments.get(0);
 			referenceType = referenceClass.getSimpleName();
 			String[] words = StringUtils.split(WordUtils.uncamel(referenceType).toLowerCase(), " ");
 			StringBuilder builder = new StringBuilder("(^|\\s+)(");
@@ -105,6 +109,23 @@ public abstract class ReferenceParser<T extends Referenceable> {
 		return references;
 	}
 
+	/**
+	 * Check whether parsed references may change upon specified event, which is the case if 
+	 * a referenceable is created or removed, or a project is changed
+	 */
+	protected boolean isReferenceChanged(Object event) {
+		if (event instanceof EntityPersisted) {
+			EntityPersisted persisted = (EntityPersisted) event;
+			return persisted.isNew() && referenceClass.isInstance(persisted.getEntity()) 
+					|| persisted.getEntity() instanceof Project;
+		} else if (event instanceof EntityRemoved) {
+			EntityRemoved removed = (EntityRemoved) event;
+			return referenceClass.isInstance(removed.getEntity()) || removed.getEntity() instanceof Project;
+		} else {
+			return false;
+		}
+	}
+	
 	protected String toHtml(T referenceable, String referenceText) {
 		return referenceText;
 	}
@@ -1,6 +1,6 @@
 package io.onedev.server.web.download;
 
-import java.io.IOException;
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 
@@ -11,11 +11,8 @@ import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.tika.mime.MimeTypes;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.AbstractResource;
-import org.eclipse.jgit.api.ArchiveCommand;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.archive.TgzFormat;
-import org.eclipse.jgit.archive.ZipFormat;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
 
 import com.google.common.base.Charsets;
 
@@ -23,6 +20,7 @@ import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Project;
 import io.onedev.server.security.SecurityUtils;
+import io.onedev.server.storage.ArchiveManager;
 
 public class ArchiveDownloadResource extends AbstractResource {
 
@@ -34,9 +32,9 @@ public class ArchiveDownloadResource extends AbstractResource {
 	
 	private static final String PARAM_FORMAT = "format";
 	
-	public static final String FORMAT_ZIP = "zip";
+	public static final String FORMAT_ZIP = ArchiveManager.FORMAT_ZIP;
 	
-	public static final String FORMAT_TGZ = "tgz";
+	public static final String FORMAT_TGZ = ArchiveManager.FORMAT_TGZ;
 	
 	@Override
 	protected ResourceResponse newResourceResponse(Attributes attributes) {
@@ -63,10 +61,14 @@ public class ArchiveDownloadResource extends AbstractResource {
 		if (!SecurityUtils.canReadCode(project.getFacade())) 
 			throw new UnauthorizedException();
 
+		RevCommit commit = project.getRevCommit(revision, true);
+		File archiveFile = OneDev.getInstance(ArchiveManager.class).getArchive(project, commit.copy(), format);
+		
 		ResourceResponse response = new ResourceResponse();
 		response.setContentType(MimeTypes.OCTET_STREAM);
 		
-		response.disableCaching();
+		if (!ObjectId.isId(revision))
+			response.disableCaching();
 		
 		try {
 			String fileName;
@@ -78,27 +80,9 @@ public class ArchiveDownloadResource extends AbstractResource {
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
-		response.setWriteCallback(new WriteCallback() {
 
-			@Override
-			public void writeData(Attributes attributes) throws IOException {
-				if (format.equals("zip"))
-					ArchiveCommand.registerFormat(format, new ZipFormat());
-				else
-					ArchiveCommand.registerFormat(format, new TgzFormat());
-				try {
-					ArchiveCommand archive = Git.wrap(project.getRepository()).archive();
-					archive.setFormat(format);
-					archive.setTree(project.getRevCommit(revision, true).getId());
-					archive.setOutputStream(attributes.getResponse().getOutputStream());
-					archive.call();
-				} catch (GitAPIException e) {
-					throw new RuntimeException(e);
-				} finally {
-					ArchiveCommand.unregisterFormat(format);
-				}
-			}				
-		});
+		// Cached archive file is never modified once generated, so its identity identifies its content
+		DownloadUtils.serveFile(response, attributes, archiveFile, null);
 
 		return response;
 	}
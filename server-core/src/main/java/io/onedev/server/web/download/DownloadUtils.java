@@ -0,0 +1,85 @@
+package io.onedev.server.web.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.wicket.request.http.WebRequest;
+import org.apache.wicket.request.http.WebResponse.CacheScope;
+import org.apache.wicket.request.resource.AbstractResource.ContentRangeType;
+import org.apache.wicket.request.resource.AbstractResource.ResourceResponse;
+import org.apache.wicket.request.resource.IResource.Attributes;
+import org.apache.wicket.util.time.Duration;
+import org.apache.wicket.util.time.Time;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+
+import io.onedev.server.model.Build;
+
+public class DownloadUtils {
+
+	private static final Duration BUILD_OUTPUT_CACHE_DURATION = Duration.days(1);
+
+	/**
+	 * Configure caching of outputs of specified build, such as artifacts and reports. Outputs
+	 * of a finished build only change if the build is resubmitted, so they are cached by
+	 * clients for a day, and revalidated via entity tag afterwards.
+	 */
+	public static void configureCaching(ResourceResponse response, Build build) {
+		if (build.isFinished()) {
+			response.setCacheDuration(BUILD_OUTPUT_CACHE_DURATION);
+			response.setCacheScope(CacheScope.PRIVATE);
+		} else {
+			response.disableCaching();
+		}
+	}
+
+	/**
+	 * Get strong entity tag of specified file. The tag is derived from identity of the file
+	 * (device and inode if supported by file system, or path otherwise), its length and
+	 * last modified time, so that files hard linked to the same content share the same tag.
+	 */
+	public static String getETag(File file) {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+			Object fileKey = attrs.fileKey();
+			String identity = fileKey != null? fileKey.toString(): file.getAbsolutePath();
+			String tag = Hashing.sha256().hashString(identity + ":" + attrs.size() + ":"
+					+ attrs.lastModifiedTime().toMillis(), StandardCharsets.UTF_8).toString();
+			return "\"" + tag.substring(0, 32) + "\"";
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Configure response to serve specified file. Conditional requests are answered with
+	 * <tt>304</tt> if entity tag of the file matches, and byte ranges requested by client are
+	 * honored. Caching headers should be configured by caller.
+	 *
+	 * @param readLockKey
+	 * 			key of read lock to hold while writing the file, <tt>null</tt> if not necessary
+	 */
+	public static void serveFile(ResourceResponse response, Attributes attributes, File file,
+			@Nullable String readLockKey) {
+		String eTag = getETag(file);
+		response.getHeaders().addHeader("ETag", eTag);
+		response.setLastModified(Time.millis(file.lastModified()));
+
+		String ifNoneMatch = ((WebRequest) attributes.getRequest()).getHeader("If-None-Match");
+		if (ifNoneMatch != null && Splitter.on(',').trimResults().splitToList(ifNoneMatch).contains(eTag)) {
+			response.setStatusCode(HttpServletResponse.SC_NOT_MODIFIED);
+		} else {
+			response.setAcceptRange(ContentRangeType.BYTES);
+			response.setContentLength(file.length());
+			response.setWriteCallback(new FileWriteCallback(file, readLockKey));
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package io.onedev.server.web.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Nullable;
+
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.IResource.Attributes;
+
+import io.onedev.commons.utils.LockUtils;
+
+/**
+ * Write callback transferring file content via file channel, with byte range requested 
+ * by client honored. Resource using this callback should set content length and accept 
+ * range of the response for range requests to work.
+ */
+public class FileWriteCallback extends AbstractResource.WriteCallback {
+
+	private final File file;
+	
+	private final String readLockKey;
+	
+	/**
+	 * @param file
+	 * 			file to write
+	 * @param readLockKey
+	 * 			key of read lock to hold while writing the file, <tt>null</tt> if not necessary
+	 */
+	public FileWriteCallback(File file, @Nullable String readLockKey) {
+		this.file = file;
+		this.readLockKey = readLockKey;
+	}
+	
+	public FileWriteCallback(File file) {
+		this(file, null);
+	}
+	
+	@Override
+	public void writeData(Attributes attributes) throws IOException {
+		if (readLockKey != null) {
+			LockUtils.read(readLockKey, new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					transfer(attributes);
+					return null;
+				}
+				
+			});
+		} else {
+			transfer(attributes);
+		}
+	}
+	
+	private void transfer(Attributes attributes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			Long startByte = RequestCycle.get().getMetaData(AbstractResource.CONTENT_RANGE_STARTBYTE);
+			Long endByte = RequestCycle.get().getMetaData(AbstractResource.CONTENT_RANGE_ENDBYTE);
+			
+			if (startByte == null)
+				startByte = 0L;
+			if (endByte == null || endByte == -1)
+				endByte = channel.size() - 1;
+			
+			WritableByteChannel target = Channels.newChannel(attributes.getResponse().getOutputStream());
+			long position = startByte;
+			long remaining = endByte - startByte + 1;
+			while (remaining > 0) {
+				long transferred = channel.transferTo(position, remaining, target);
+				if (transferred <= 0)
+					break;
+				position += transferred;
+				remaining -= transferred;
+			}
+		}
+	}
+	
+}
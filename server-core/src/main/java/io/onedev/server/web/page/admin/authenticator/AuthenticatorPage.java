@@ -2,6 +2,7 @@ package io.onedev.server.web.page.admin.authenticator;
 
 import java.io.Serializable;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.wicket.Component;
@@ -51,7 +52,7 @@ public class AuthenticatorPage extends AdministrationPage {
 		super.onInitialize();
 		
 		AuthenticatorBean bean = new AuthenticatorBean();
-		bean.setAuthenticator(OneDev.getInstance(SettingManager.class).getAuthenticator());
+		bean.setAuthenticator(SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getAuthenticator()));
 		
 		PropertyEditor<Serializable> editor = 
 				PropertyContext.edit("editor", bean, "authenticator");
@@ -3,6 +3,7 @@ package io.onedev.server.web.page.admin.databasebackup;
 import java.io.File;
 import java.io.IOException;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.tika.mime.MimeTypes;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Form;
@@ -33,7 +34,7 @@ public class DatabaseBackupPage extends AdministrationPage {
 		add(new Label("storageDir", OneDev.getInstance(StorageManager.class).getStorageDir()));
 		
 		BackupSettingHolder backupSettingHolder = new BackupSettingHolder();
-		backupSettingHolder.setBackupSetting(OneDev.getInstance(SettingManager.class).getBackupSetting());
+		backupSettingHolder.setBackupSetting(SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getBackupSetting()));
 		Form<?> form = new Form<Void>("backupSetting") {
 
 			@Override
@@ -3,6 +3,7 @@ package io.onedev.server.web.page.admin.issuesetting;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.markup.head.CssHeaderItem;
 import org.apache.wicket.markup.head.IHeaderResponse;
 import org.apache.wicket.model.Model;
@@ -23,7 +24,7 @@ public class GlobalIssueSettingPage extends AdministrationPage {
 	
 	public GlobalIssueSettingPage(PageParameters params) {
 		super(params);
-		setting = OneDev.getInstance(SettingManager.class).getIssueSetting();
+		setting = SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getIssueSetting());
 	}
 
 	@Override
@@ -1,7 +1,9 @@
 package io.onedev.server.web.page.admin.jobexecutor;
 
+import java.io.Serializable;
 import java.util.List;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
@@ -26,9 +28,10 @@ public class JobExecutorPage extends AdministrationPage {
 	
 	private WebMarkupContainer container;
 	
+	@SuppressWarnings("unchecked")
 	public JobExecutorPage(PageParameters params) {
 		super(params);
-		executors = getSettingManager().getJobExecutors();
+		executors = (List<JobExecutor>) SerializationUtils.clone((Serializable) getSettingManager().getJobExecutors());
 	}
 
 	private SettingManager getSettingManager() {
@@ -46,7 +49,7 @@ public class JobExecutorPage extends AdministrationPage {
 
 			@Override
 			public List<JobExecutor> getObject() {
-				return getSettingManager().getJobExecutors();
+				return executors;
 			}
 			
 		}) {
@@ -76,7 +79,6 @@ public class JobExecutorPage extends AdministrationPage {
 			
 			@Override
 			protected void onSort(AjaxRequestTarget target, SortPosition from, SortPosition to) {
-				List<JobExecutor> executors = getSettingManager().getJobExecutors();
 				JobExecutor executor = executors.get(from.getItemIndex());
 				executors.set(from.getItemIndex(), executors.set(to.getItemIndex(), executor));
 				getSettingManager().saveJobExecutors(executors);
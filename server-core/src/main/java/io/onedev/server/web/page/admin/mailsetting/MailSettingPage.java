@@ -1,5 +1,6 @@
 package io.onedev.server.web.page.admin.mailsetting;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.form.AjaxButton;
 import org.apache.wicket.event.IEvent;
@@ -40,7 +41,7 @@ public class MailSettingPage extends AdministrationPage {
 		super.onInitialize();
 		
 		MailSettingHolder mailSettingHolder = new MailSettingHolder();
-		mailSettingHolder.setMailSetting(OneDev.getInstance(SettingManager.class).getMailSetting());
+		mailSettingHolder.setMailSetting(SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getMailSetting()));
 		
 		BeanEditor editor = BeanContext.edit("editor", mailSettingHolder);
 		
@@ -1,5 +1,6 @@
 package io.onedev.server.web.page.admin.securitysetting;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
@@ -20,7 +21,7 @@ public class SecuritySettingPage extends AdministrationPage {
 	protected void onInitialize() {
 		super.onInitialize();
 		
-		SecuritySetting securitySetting = OneDev.getInstance(SettingManager.class).getSecuritySetting();
+		SecuritySetting securitySetting = SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getSecuritySetting());
 
 		Form<?> form = new Form<Void>("securitySetting") {
 
@@ -10,6 +10,9 @@ import org.apache.wicket.request.mapper.parameter.PageParameters;
 import de.agilecoders.wicket.core.markup.html.bootstrap.components.progress.ProgressBar;
 import de.agilecoders.wicket.core.markup.html.bootstrap.components.progress.ProgressBar.Type;
 import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.OneDev;
+import io.onedev.server.search.code.SearchManager;
+import io.onedev.server.search.code.SymbolLookupStats;
 import io.onedev.server.util.DateUtils;
 import io.onedev.server.web.page.admin.AdministrationPage;
 
@@ -60,6 +63,35 @@ public class ServerInformationPage extends AdministrationPage {
 		
 		add(new Label("osUserName", System.getProperty("user.name")));
 		
+		add(new Label("symbolLookups", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				SymbolLookupStats stats = OneDev.getInstance(SearchManager.class).getSymbolLookupStats();
+				return stats.getLookups() + " (cache hits: " + stats.getCacheHits() + ", index hits: " 
+						+ stats.getIndexHits() + ", extractions: " + stats.getExtractions() + ")";
+			}
+			
+		}));
+		add(new Label("symbolLookupLatency", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				long[] latencyCounts = OneDev.getInstance(SearchManager.class).getSymbolLookupStats().getLatencyCounts();
+				StringBuilder builder = new StringBuilder();
+				long lowerBound = 0;
+				for (int i=0; i<SymbolLookupStats.LATENCY_BOUNDS.length; i++) {
+					long upperBound = SymbolLookupStats.LATENCY_BOUNDS[i];
+					builder.append(lowerBound).append("-").append(upperBound).append(" ms: ")
+							.append(latencyCounts[i]).append(", ");
+					lowerBound = upperBound;
+				}
+				builder.append(">").append(lowerBound).append(" ms: ").append(latencyCounts[latencyCounts.length-1]);
+				return builder.toString();
+			}
+			
+		}));
+		
 		add(new Link<Void>("gc") {
 
 			@Override
@@ -1,5 +1,6 @@
 package io.onedev.server.web.page.admin.systemsetting;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
@@ -20,7 +21,7 @@ public class SystemSettingPage extends AdministrationPage {
 	protected void onInitialize() {
 		super.onInitialize();
 		
-		SystemSetting systemSetting = OneDev.getInstance(SettingManager.class).getSystemSetting();
+		SystemSetting systemSetting = SerializationUtils.clone(OneDev.getInstance(SettingManager.class).getSystemSetting());
 
 		Form<?> form = new Form<Void>("form") {
 
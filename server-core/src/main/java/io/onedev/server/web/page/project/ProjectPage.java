@@ -29,6 +29,7 @@ import com.google.common.base.Preconditions;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
+import io.onedev.server.cache.CommitInfoManager;
 import io.onedev.server.cache.UserInfoManager;
 import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.model.Project;
@@ -141,6 +142,7 @@ public abstract class ProjectPage extends LayoutPage implements ProjectAware {
 		super.onAfterRender();
 		if (getLoginUser() != null)
 			OneDev.getInstance(UserInfoManager.class).visit(getLoginUser(), getProject());
+		OneDev.getInstance(CommitInfoManager.class).visit(getProject());
 	}
 
 	@Override
@@ -17,8 +17,6 @@ import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.shiro.subject.Subject;
-import org.apache.shiro.util.ThreadContext;
 import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.behavior.AttributeAppender;
@@ -51,14 +49,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 
 import io.onedev.commons.jsymbol.util.NoAntiCacheImage;
-import io.onedev.commons.launcher.loader.ListenerRegistry;
 import io.onedev.commons.utils.PlanarRange;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.CodeCommentManager;
-import io.onedev.server.entitymanager.ProjectManager;
 import io.onedev.server.entitymanager.PullRequestManager;
 import io.onedev.server.entitymanager.UserManager;
 import io.onedev.server.event.RefUpdated;
+import io.onedev.server.event.RefUpdatedDispatcher;
 import io.onedev.server.git.BlobContent;
 import io.onedev.server.git.BlobEdits;
 import io.onedev.server.git.BlobIdent;
@@ -70,7 +67,6 @@ import io.onedev.server.model.CodeComment;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.PullRequest;
 import io.onedev.server.model.User;
-import io.onedev.server.persistence.SessionManager;
 import io.onedev.server.persistence.TransactionManager;
 import io.onedev.server.search.code.CommitIndexed;
 import io.onedev.server.search.code.IndexManager;
@@ -1011,31 +1007,17 @@ public class ProjectBlobPage extends ProjectPage implements BlobRenderContext {
 		String branch = state.blobIdent.revision;
 		getProject().cacheObjectId(branch, refUpdated.getNewCommitId());
 
-		Subject subject = SecurityUtils.getSubject();
+		Long userId = User.getCurrentId();
 		Long projectId = project.getId();
 		String refName = refUpdated.getRefName();
 		ObjectId oldCommitId = refUpdated.getOldCommitId();
 		ObjectId newCommitId = refUpdated.getNewCommitId();
-		OneDev.getInstance(TransactionManager.class).runAsyncAfterCommit(new Runnable() {
+		OneDev.getInstance(TransactionManager.class).runAfterCommit(new Runnable() {
 
 			@Override
 			public void run() {
-				OneDev.getInstance(SessionManager.class).run(new Runnable() {
-
-					@Override
-					public void run() {
-						ThreadContext.bind(subject);
-						try {
-							Project project = OneDev.getInstance(ProjectManager.class).load(projectId);
-							project.cacheObjectId(branch, newCommitId);
-							RefUpdated refUpdated = new RefUpdated(project, refName, oldCommitId, newCommitId);
-							OneDev.getInstance(ListenerRegistry.class).post(refUpdated);
-						} finally {
-							ThreadContext.unbindSubject();
-						}
-					}
-					
-				});
+				OneDev.getInstance(RefUpdatedDispatcher.class).dispatch(projectId, userId, refName, 
+						oldCommitId, newCommitId);
 			}
 			
 		});
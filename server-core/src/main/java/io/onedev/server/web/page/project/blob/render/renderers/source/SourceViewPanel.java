@@ -46,8 +46,6 @@ import org.apache.wicket.request.http.WebResponse;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.unbescape.html.HtmlEscape;
 import org.unbescape.javascript.JavaScriptEscape;
 
@@ -57,7 +55,6 @@ import com.google.common.base.Preconditions;
 
 import de.agilecoders.wicket.core.markup.html.bootstrap.common.NotificationPanel;
 import io.onedev.commons.jsymbol.Symbol;
-import io.onedev.commons.jsymbol.SymbolExtractor;
 import io.onedev.commons.jsymbol.SymbolExtractorRegistry;
 import io.onedev.commons.utils.LinearRange;
 import io.onedev.commons.utils.PlanarRange;
@@ -118,8 +115,6 @@ import io.onedev.server.web.websocket.PageDataChanged;
 @SuppressWarnings("serial")
 public class SourceViewPanel extends BlobViewPanel implements Positionable, SearchMenuContributor {
 
-	private static final Logger logger = LoggerFactory.getLogger(SourceViewPanel.class);
-	
 	private static final String COOKIE_OUTLINE = "sourceView.outline";
 	
 	private static final String BODY_ID = "body";
@@ -158,21 +153,12 @@ public class SourceViewPanel extends BlobViewPanel implements Positionable, Sear
 		
 		Blob blob = context.getProject().getBlob(context.getBlobIdent(), true);
 		
-		String blobName = context.getBlobIdent().getName();
-		SymbolExtractor<Symbol> extractor = SymbolExtractorRegistry.getExtractor(blobName);
-		if (extractor != null) {
+		if (SymbolExtractorRegistry.getExtractor(context.getBlobIdent().getName()) != null) {
 			SearchManager searchManager = OneDev.getInstance(SearchManager.class);
-			List<Symbol> cachedSymbols = searchManager.getSymbols(context.getProject(), blob.getBlobId(), 
-					blob.getIdent().path);
-			if (cachedSymbols != null) {
-				symbols.addAll(cachedSymbols);
-			} else {
-				try {
-					symbols.addAll(extractor.extract(null, StringUtils.removeBOM(blob.getText().getContent())));
-				} catch (Exception e) {
-					logger.trace("Can not extract symbols from blob: " + context.getBlobIdent(), e);
-				}
-			}
+			List<Symbol> blobSymbols = searchManager.getSymbols(context.getProject(), blob);
+			if (blobSymbols != null)
+				symbols.addAll(blobSymbols);
+			searchManager.prefetchSymbols(context.getProject(), context.getCommit(), blob.getIdent().path);
 		}
 		
 	}
@@ -78,37 +78,10 @@ abstract class BoardColumnPanel extends Panel implements EditContext {
 		@Override
 		protected IssueQuery load() {
 			IssueQuery boardQuery = getBoardQuery();
-			if (boardQuery != null) {
-				List<IssueCriteria> criterias = new ArrayList<>();
-				if (boardQuery.getCriteria() != null)
-					criterias.add(boardQuery.getCriteria());
-				if (getMilestone() != null)
-					criterias.add(new MilestoneCriteria(getMilestone().getName()));
-				String identifyField = getBoard().getIdentifyField();
-				if (identifyField.equals(IssueConstants.FIELD_STATE)) {
-					criterias.add(new StateCriteria(getColumn()));
-				} else if (getColumn() != null) {
-					criterias.add(new ChoiceFieldCriteria(identifyField, 
-							getColumn(), -1, IssueQueryLexer.Is, false));
-				} else {
-					criterias.add(new FieldOperatorCriteria(identifyField, IssueQueryLexer.IsEmpty));
-				}
-				return new IssueQuery(IssueCriteria.of(criterias), boardQuery.getSorts());
-			} else {
+			if (boardQuery != null) 
+				return getColumnQuery(boardQuery, getMilestone(), getBoard().getIdentifyField(), getColumn());
+			else 
 				return null;
-			}
-		}
-		
-	};
-	
-	private final IModel<Integer> countModel = new LoadableDetachableModel<Integer>() {
-
-		@Override
-		protected Integer load() {
-			if (getQuery() != null)
-				return OneDev.getInstance(IssueManager.class).count(getProject(), SecurityUtils.getUser(), getQuery().getCriteria());
-			else
-				return 0;
 		}
 		
 	};
@@ -122,10 +95,39 @@ abstract class BoardColumnPanel extends Panel implements EditContext {
 	@Override
 	protected void onDetach() {
 		queryModel.detach();
-		countModel.detach();
 		super.onDetach();
 	}
 	
+	/**
+	 * Get criteria shared by all columns of a board
+	 */
+	@Nullable
+	static IssueCriteria getBaseCriteria(IssueQuery boardQuery, @Nullable Milestone milestone) {
+		List<IssueCriteria> criterias = new ArrayList<>();
+		if (boardQuery.getCriteria() != null)
+			criterias.add(boardQuery.getCriteria());
+		if (milestone != null)
+			criterias.add(new MilestoneCriteria(milestone.getName()));
+		return IssueCriteria.of(criterias);
+	}
+	
+	static IssueQuery getColumnQuery(IssueQuery boardQuery, @Nullable Milestone milestone, 
+			String identifyField, @Nullable String column) {
+		List<IssueCriteria> criterias = new ArrayList<>();
+		IssueCriteria baseCriteria = getBaseCriteria(boardQuery, milestone);
+		if (baseCriteria != null)
+			criterias.add(baseCriteria);
+		if (identifyField.equals(IssueConstants.FIELD_STATE)) {
+			criterias.add(new StateCriteria(column));
+		} else if (column != null) {
+			criterias.add(new ChoiceFieldCriteria(identifyField, 
+					column, -1, IssueQueryLexer.Is, false));
+		} else {
+			criterias.add(new FieldOperatorCriteria(identifyField, IssueQueryLexer.IsEmpty));
+		}
+		return new IssueQuery(IssueCriteria.of(criterias), boardQuery.getSorts());
+	}
+	
 	private IssueQuery getQuery() {
 		return queryModel.getObject();
 	}
@@ -207,9 +209,14 @@ abstract class BoardColumnPanel extends Panel implements EditContext {
 
 					@Override
 					protected int getCardCount() {
-						return countModel.getObject();
+						return BoardColumnPanel.this.getCardCount();
 					}
 
+					@Override
+					protected List<Issue> queryFirstPage() {
+						return BoardColumnPanel.this.queryFirstPage();
+					}
+					
 				});
 				
 				super.onBeforeRender();
@@ -317,7 +324,7 @@ abstract class BoardColumnPanel extends Panel implements EditContext {
 
 			@Override
 			protected int getCount() {
-				return countModel.getObject();
+				return getCardCount();
 			}
 
 		});
@@ -444,5 +451,12 @@ abstract class BoardColumnPanel extends Panel implements EditContext {
 	
 	@Nullable
 	protected abstract IssueQuery getBoardQuery();
+	
+	/**
+	 * Card count and first page of cards are loaded in batch for all columns of the board 
+	 */
+	protected abstract int getCardCount();
+	
+	protected abstract List<Issue> queryFirstPage();
 
 }
@@ -40,7 +40,7 @@ abstract class CardListPanel extends Panel {
 
 		RepeatingView cardsView = new RepeatingView("cards");
 		int index = 0;
-		for (Issue issue: queryIssues(0, WebConstants.PAGE_SIZE)) {
+		for (Issue issue: queryFirstPage()) {
 			Long issueId = issue.getId();
 			IModel<Issue> model = new LoadableDetachableModel<Issue>() {
 
@@ -143,6 +143,10 @@ abstract class CardListPanel extends Panel {
 			return new ArrayList<>();
 	}
 	
+	protected List<Issue> queryFirstPage() {
+		return queryIssues(0, WebConstants.PAGE_SIZE);
+	}
+	
 	protected abstract Project getProject();
 	
 	@Nullable
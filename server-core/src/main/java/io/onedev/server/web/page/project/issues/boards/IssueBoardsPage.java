@@ -3,7 +3,9 @@ package io.onedev.server.web.page.project.issues.boards;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.annotation.Nullable;
@@ -38,14 +40,17 @@ import de.agilecoders.wicket.core.markup.html.bootstrap.common.NotificationPanel
 import edu.emory.mathcs.backport.java.util.Collections;
 import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
+import io.onedev.server.entitymanager.IssueManager;
 import io.onedev.server.entitymanager.MilestoneManager;
 import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.Issue;
 import io.onedev.server.model.Milestone;
 import io.onedev.server.model.Project;
 import io.onedev.server.model.support.issue.BoardSpec;
 import io.onedev.server.search.entity.issue.IssueQuery;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.util.DateUtils;
+import io.onedev.server.web.WebConstants;
 import io.onedev.server.web.behavior.IssueQueryBehavior;
 import io.onedev.server.web.behavior.sortable.SortBehavior;
 import io.onedev.server.web.behavior.sortable.SortPosition;
@@ -90,6 +95,47 @@ public class IssueBoardsPage extends ProjectIssuesPage {
 	
 	private RepeatingView columnsView;
 	
+	private long renderStartTime;
+	
+	private final IModel<Map<String, Integer>> cardCountsModel = new LoadableDetachableModel<Map<String, Integer>>() {
+
+		@Override
+		protected Map<String, Integer> load() {
+			IssueQuery boardQuery = parsedQueryModel.getObject();
+			if (boardQuery != null) {
+				return getIssueManager().count(getProject(), SecurityUtils.getUser(), 
+						BoardColumnPanel.getBaseCriteria(boardQuery, getMilestone()), 
+						getBoard().getIdentifyField());
+			} else {
+				return new HashMap<>();
+			}
+		}
+		
+	};
+	
+	private final IModel<Map<String, List<Issue>>> firstPagesModel = new LoadableDetachableModel<Map<String, List<Issue>>>() {
+
+		@Override
+		protected Map<String, List<Issue>> load() {
+			Map<String, List<Issue>> firstPages = new HashMap<>();
+			IssueQuery boardQuery = parsedQueryModel.getObject();
+			if (boardQuery != null) {
+				List<String> columns = getBoard().getColumns();
+				List<IssueQuery> columnQueries = new ArrayList<>();
+				for (String column: columns) {
+					columnQueries.add(BoardColumnPanel.getColumnQuery(boardQuery, getMilestone(), 
+							getBoard().getIdentifyField(), column));
+				}
+				List<List<Issue>> pages = getIssueManager().query(getProject(), SecurityUtils.getUser(), 
+						columnQueries, 0, WebConstants.PAGE_SIZE);
+				for (int i=0; i<columns.size(); i++)
+					firstPages.put(columns.get(i), pages.get(i));
+			} 
+			return firstPages;
+		}
+		
+	};
+	
 	private final IModel<IssueQuery> parsedQueryModel = new LoadableDetachableModel<IssueQuery>() {
 
 		@Override
@@ -231,8 +277,30 @@ public class IssueBoardsPage extends ProjectIssuesPage {
 		milestoneModel.detach();
 		parsedQueryModel.detach();
 		parsedBacklogQueryModel.detach();
+		cardCountsModel.detach();
+		firstPagesModel.detach();
 		super.onDetach();
 	}
+	
+	private IssueManager getIssueManager() {
+		return OneDev.getInstance(IssueManager.class);
+	}
+	
+	@Override
+	protected void onBeforeRender() {
+		renderStartTime = System.nanoTime();
+		super.onBeforeRender();
+	}
+
+	@Override
+	protected void onAfterRender() {
+		super.onAfterRender();
+		if (logger.isDebugEnabled() && getBoard() != null) {
+			logger.debug("Rendered board (project: {}, board: {}, columns: {}, time: {} ms)", 
+					getProject().getName(), getBoard().getName(), getBoard().getColumns().size(), 
+					(System.nanoTime() - renderStartTime) / 1000000);
+		}
+	}
 
 	@Nullable
 	public BoardSpec getBoard() {
@@ -687,6 +755,18 @@ public class IssueBoardsPage extends ProjectIssuesPage {
 						return parsedQueryModel.getObject();
 					}
 
+					@Override
+					protected int getCardCount() {
+						Integer count = cardCountsModel.getObject().get(column);
+						return count != null? count: 0;
+					}
+
+					@Override
+					protected List<Issue> queryFirstPage() {
+						List<Issue> firstPage = firstPagesModel.getObject().get(column);
+						return firstPage != null? firstPage: new ArrayList<>();
+					}
+					
 				});
 			}
 			boardFragment.add(columnsView);
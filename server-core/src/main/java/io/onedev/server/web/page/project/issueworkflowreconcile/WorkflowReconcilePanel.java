@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
+import org.apache.commons.lang3.SerializationUtils;
 import org.apache.wicket.Component;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.attributes.AjaxRequestAttributes;
@@ -360,7 +361,7 @@ public abstract class WorkflowReconcilePanel extends Panel {
 				getIssueManager().fixFieldValueOrders();
 				
 				SettingManager settingManager = OneDev.getInstance(SettingManager.class);
-				GlobalIssueSetting issueSetting = settingManager.getIssueSetting();
+				GlobalIssueSetting issueSetting = SerializationUtils.clone(settingManager.getIssueSetting());
 				issueSetting.setReconciled(true);
 				settingManager.saveIssueSetting(issueSetting);
 				
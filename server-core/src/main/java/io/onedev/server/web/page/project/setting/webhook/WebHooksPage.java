@@ -1,15 +1,26 @@
 package io.onedev.server.web.page.project.setting.webhook;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.wicket.markup.head.CssHeaderItem;
 import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import de.agilecoders.wicket.core.markup.html.bootstrap.common.NotificationPanel;
 import io.onedev.server.OneDev;
 import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.model.support.WebHook;
+import io.onedev.server.notification.WebHookDeliveryStats;
+import io.onedev.server.notification.WebHookManager;
+import io.onedev.server.util.DateUtils;
 import io.onedev.server.web.editable.PropertyContext;
 import io.onedev.server.web.editable.PropertyEditor;
 import io.onedev.server.web.page.project.setting.ProjectSettingPage;
@@ -42,6 +53,53 @@ public class WebHooksPage extends ProjectSettingPage {
 		form.add(new NotificationPanel("feedback", form));
 		form.add(editor);
 		add(form);
+		
+		LoadableDetachableModel<List<String>> postUrlsModel = new LoadableDetachableModel<List<String>>() {
+
+			@Override
+			protected List<String> load() {
+				List<String> postUrls = new ArrayList<>();
+				for (WebHook webHook: getProject().getWebHooks()) {
+					if (!postUrls.contains(webHook.getPostUrl()))
+						postUrls.add(webHook.getPostUrl());
+				}
+				return postUrls;
+			}
+			
+		};
+		
+		WebMarkupContainer deliveryStats = new WebMarkupContainer("deliveryStats") {
+
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(!postUrlsModel.getObject().isEmpty());
+			}
+			
+		};
+		add(deliveryStats);
+		deliveryStats.add(new ListView<String>("webHooks", postUrlsModel) {
+
+			@Override
+			protected void populateItem(ListItem<String> item) {
+				String postUrl = item.getModelObject();
+				WebHookManager webHookManager = OneDev.getInstance(WebHookManager.class);
+				WebHookDeliveryStats stats = webHookManager.getDeliveryStats(getProject().getId(), postUrl);
+				item.add(new Label("postUrl", postUrl));
+				item.add(new Label("delivered", stats.getDeliveredCount()));
+				item.add(new Label("pending", webHookManager.getPendingCount(getProject().getId(), postUrl)));
+				item.add(new Label("retries", stats.getRetryCount()));
+				item.add(new Label("failed", stats.getFailedCount()));
+				item.add(new Label("latency", stats.getAverageLatency() + " ms"));
+				if (stats.getLastError() != null) {
+					item.add(new Label("lastError", DateUtils.formatAge(stats.getLastErrorDate()) 
+							+ ": " + stats.getLastError()));
+				} else {
+					item.add(new Label("lastError", "<i>None</i>").setEscapeModelStrings(false));
+				}
+			}
+			
+		});
 	}
 
 	@Override
@@ -46,7 +46,11 @@ public class ProjectContribsPage extends ProjectStatsPage {
 	@Override
 	protected void onInitialize() {
 		super.onInitialize();
-		add(new Label("note", "Contributions to " + getProject().getDefaultBranch() + " branch, excluding merge commits"));
+		String note = "Contributions to " + getProject().getDefaultBranch() + " branch, excluding merge commits";
+		Integer collectingProgress = OneDev.getInstance(CommitInfoManager.class).getCollectingProgress(getProject());
+		if (collectingProgress != null) 
+			note += " (collecting commit information, " + collectingProgress + "% done)";
+		add(new Label("note", note));
 		add(new WebMarkupContainer(USER_DETAIL_ID).setOutputMarkupId(true));
 		add(userDetailBehavior = new AbstractPostAjaxBehavior() {
 			
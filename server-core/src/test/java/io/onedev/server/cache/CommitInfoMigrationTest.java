@@ -0,0 +1,171 @@
+package io.onedev.server.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.server.cache.AbstractEnvironmentManager.IntByteIterable;
+import io.onedev.server.entitymanager.SettingManager;
+import io.onedev.server.git.Contribution;
+import io.onedev.server.model.support.setting.SystemSetting;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.Day;
+import jetbrains.exodus.ArrayByteIterable;
+import jetbrains.exodus.env.Environment;
+import jetbrains.exodus.env.Store;
+import jetbrains.exodus.env.StoreConfig;
+
+public class CommitInfoMigrationTest {
+
+	private static final String ENV_KEY = "1";
+
+	private static final Day WEDNESDAY = new Day(2019, 1, 30);
+
+	private static final Day FRIDAY = new Day(2019, 2, 1);
+
+	private File tempDir;
+
+	private DefaultCommitInfoManager manager;
+
+	@Before
+	public void before() {
+		tempDir = FileUtils.createTempDir();
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectInfoDir(Mockito.anyLong())).thenReturn(tempDir);
+		SettingManager settingManager = Mockito.mock(SettingManager.class);
+		Mockito.when(settingManager.getSystemSetting()).thenReturn(Mockito.mock(SystemSetting.class));
+
+		// Run migration in calling thread so that it is finished once version is checked
+		manager = new DefaultCommitInfoManager(null, storageManager, null, null,
+				MoreExecutors.newDirectExecutorService(), null, null, settingManager);
+	}
+
+	@After
+	public void after() {
+		manager.removeEnv(ENV_KEY);
+		FileUtils.deleteDir(tempDir);
+	}
+
+	@Test
+	public void shouldBuildRollupsWhenMigratingFromVersion7() {
+		prepareVersion7();
+
+		manager.checkVersion(ENV_KEY);
+
+		assertFalse(manager.isMigrating(ENV_KEY));
+		assertEquals("8", readVersion());
+		assertRollups();
+	}
+
+	@Test
+	public void shouldResumeInterruptedMigration() {
+		prepareVersion7();
+
+		// Rollups partially written by an interrupted run should be rebuilt from scratch
+		writeContributions(DefaultCommitInfoManager.WEEKLY_CONTRIBUTIONS_STORE, WEDNESDAY.getFirstDayOfWeek(),
+				newContributions(1, new Contribution(100, 100, 100)));
+
+		// Migration is interrupted if environment is closed, for instance when system stops
+		Environment env = manager.newEnv(ENV_KEY);
+		env.close();
+		manager.migrate(ENV_KEY, env, 7);
+		assertEquals("7", readVersion());
+
+		manager.checkVersion(ENV_KEY);
+		assertEquals("8", readVersion());
+		assertRollups();
+	}
+
+	private void assertRollups() {
+		Map<Integer, Contribution> weekly = readContributions(DefaultCommitInfoManager.WEEKLY_CONTRIBUTIONS_STORE,
+				WEDNESDAY.getFirstDayOfWeek());
+		assertContribution(new Contribution(3, 30, 3), weekly.get(1));
+		assertContribution(new Contribution(1, 5, 0), weekly.get(2));
+
+		Map<Integer, Contribution> january = readContributions(DefaultCommitInfoManager.MONTHLY_CONTRIBUTIONS_STORE,
+				WEDNESDAY.getFirstDayOfMonth());
+		assertEquals(1, january.size());
+		assertContribution(new Contribution(1, 10, 1), january.get(1));
+
+		Map<Integer, Contribution> february = readContributions(DefaultCommitInfoManager.MONTHLY_CONTRIBUTIONS_STORE,
+				FRIDAY.getFirstDayOfMonth());
+		assertContribution(new Contribution(2, 20, 2), february.get(1));
+		assertContribution(new Contribution(1, 5, 0), february.get(2));
+
+		Map<Integer, Contribution> user = readContributions(DefaultCommitInfoManager.USER_CONTRIBUTIONS_STORE, 1);
+		assertEquals(2, user.size());
+		assertContribution(new Contribution(1, 10, 1), user.get(WEDNESDAY.getValue()));
+		assertContribution(new Contribution(2, 20, 2), user.get(FRIDAY.getValue()));
+	}
+
+	private void prepareVersion7() {
+		writeContributions(DefaultCommitInfoManager.DAILY_CONTRIBUTIONS_STORE, WEDNESDAY,
+				newContributions(1, new Contribution(1, 10, 1)));
+		Map<Integer, Contribution> contributions = newContributions(1, new Contribution(2, 20, 2));
+		contributions.put(2, new Contribution(1, 5, 0));
+		writeContributions(DefaultCommitInfoManager.DAILY_CONTRIBUTIONS_STORE, FRIDAY, contributions);
+		FileUtils.writeFile(getVersionFile(), "7");
+	}
+
+	private Map<Integer, Contribution> newContributions(int userIndex, Contribution contribution) {
+		Map<Integer, Contribution> contributions = new HashMap<>();
+		contributions.put(userIndex, contribution);
+		return contributions;
+	}
+
+	private void writeContributions(String storeName, Day day, Map<Integer, Contribution> contributions) {
+		Environment env = manager.newEnv(ENV_KEY);
+		try {
+			env.executeInTransaction(txn -> {
+				Store store = env.openStore(storeName, StoreConfig.WITHOUT_DUPLICATES, txn);
+				store.put(txn, new IntByteIterable(day.getValue()),
+						new ArrayByteIterable(manager.serializeContributions(contributions)));
+			});
+		} finally {
+			env.close();
+		}
+	}
+
+	private Map<Integer, Contribution> readContributions(String storeName, Day day) {
+		return readContributions(storeName, day.getValue());
+	}
+
+	private Map<Integer, Contribution> readContributions(String storeName, int key) {
+		Environment env = manager.getEnv(ENV_KEY);
+		Store store = manager.getStore(env, storeName);
+		return env.computeInReadonlyTransaction(txn ->
+				manager.deserializeContributions(manager.readBytes(store, txn, new IntByteIterable(key))));
+	}
+
+	private void assertContribution(Contribution expected, Contribution actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getCommits(), actual.getCommits());
+		assertEquals(expected.getAdditions(), actual.getAdditions());
+		assertEquals(expected.getDeletions(), actual.getDeletions());
+	}
+
+	private File getVersionFile() {
+		return new File(manager.getEnvDir(ENV_KEY), AbstractEnvironmentManager.VERSION_FILE);
+	}
+
+	private String readVersion() {
+		try {
+			return FileUtils.readFileToString(getVersionFile(), StandardCharsets.UTF_8).trim();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+package io.onedev.server.notification;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.server.model.support.setting.MailSetting;
+import io.onedev.server.notification.DefaultMailManager.Digest;
+import io.onedev.server.notification.DefaultMailManager.QueuedMail;
+
+public class DefaultMailManagerTest {
+
+	private static final String REJECTED_ADDRESS = "rejected@example.com";
+
+	private SmtpServer smtpServer;
+
+	private MailSetting mailSetting;
+
+	private DefaultMailManager mailManager;
+
+	@Before
+	public void before() throws IOException {
+		smtpServer = new SmtpServer();
+		mailSetting = new MailSetting();
+		mailSetting.setSmtpHost("localhost");
+		mailSetting.setSmtpPort(smtpServer.getPort());
+		mailSetting.setSenderAddress("onedev@example.com");
+		mailSetting.setTimeout(10);
+		mailManager = new DefaultMailManager(null, null, null);
+	}
+
+	@After
+	public void after() throws IOException {
+		smtpServer.close();
+	}
+
+	@Test
+	public void shouldSendBatchOverSingleConnection() throws Exception {
+		QueuedMail mail1 = queue(1, "alice@example.com");
+		QueuedMail mail2 = queue(2, "bob@example.com");
+
+		mailManager.sendBatch(mailSetting, Lists.newArrayList(digestOf(mail1), digestOf(mail2)));
+
+		assertEquals(1, smtpServer.connections.get());
+		assertEquals(2, smtpServer.messages.get());
+		assertEquals(1, mailManager.getConnectionCount());
+		assertEquals(2, mailManager.getSentCount());
+		assertEquals(0, mailManager.getQueueSize());
+	}
+
+	@Test
+	public void shouldKeepRejectedMailsForRetry() throws Exception {
+		QueuedMail rejected = queue(1, REJECTED_ADDRESS);
+		QueuedMail accepted = queue(2, "alice@example.com");
+
+		mailManager.sendBatch(mailSetting, Lists.newArrayList(digestOf(rejected), digestOf(accepted)));
+
+		assertEquals(1, smtpServer.messages.get());
+		assertEquals(1, mailManager.getSentCount());
+		assertEquals(0, mailManager.getFailedCount());
+		assertEquals(1, mailManager.getQueueSize());
+		assertEquals(1, rejected.attempts);
+		assertTrue(rejected.nextAttemptTime > System.currentTimeMillis());
+
+		mailManager.sendBatch(mailSetting, Lists.newArrayList(digestOf(rejected)));
+		assertEquals(1, mailManager.getQueueSize());
+
+		mailManager.sendBatch(mailSetting, Lists.newArrayList(digestOf(rejected)));
+		assertEquals(1, mailManager.getSentCount());
+		assertEquals(1, mailManager.getFailedCount());
+		assertEquals(0, mailManager.getQueueSize());
+	}
+
+	private QueuedMail queue(long id, String address) {
+		QueuedMail mail = new QueuedMail(id, Lists.newArrayList(address), "subject " + id, "body " + id,
+				System.currentTimeMillis());
+		mailManager.queue(mail);
+		return mail;
+	}
+
+	private Digest digestOf(QueuedMail mail) {
+		Digest digest = new Digest();
+		digest.mails.add(mail);
+		return digest;
+	}
+
+	/**
+	 * Minimal SMTP server accepting all mails except those sent to {@link #REJECTED_ADDRESS}
+	 */
+	private static class SmtpServer {
+
+		private final ServerSocket serverSocket;
+
+		private final Thread thread;
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		final AtomicInteger messages = new AtomicInteger();
+
+		SmtpServer() throws IOException {
+			serverSocket = new ServerSocket(0);
+			thread = new Thread(() -> {
+				while (!serverSocket.isClosed()) {
+					try (Socket socket = serverSocket.accept()) {
+						connections.incrementAndGet();
+						serve(socket);
+					} catch (IOException e) {
+					}
+				}
+			});
+			thread.start();
+		}
+
+		int getPort() {
+			return serverSocket.getLocalPort();
+		}
+
+		private void serve(Socket socket) throws IOException {
+			BufferedReader reader = new BufferedReader(
+					new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+			reply(writer, "220 localhost");
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String command = line.toUpperCase();
+				if (command.startsWith("RCPT TO:")) {
+					if (line.contains(REJECTED_ADDRESS))
+						reply(writer, "550 No such user");
+					else
+						reply(writer, "250 OK");
+				} else if (command.equals("DATA")) {
+					reply(writer, "354 End data with <CR><LF>.<CR><LF>");
+					String dataLine;
+					while ((dataLine = reader.readLine()) != null && !dataLine.equals("."));
+					messages.incrementAndGet();
+					reply(writer, "250 OK");
+				} else if (command.equals("QUIT")) {
+					reply(writer, "221 Bye");
+					return;
+				} else {
+					reply(writer, "250 OK");
+				}
+			}
+		}
+
+		private void reply(Writer writer, String reply) throws IOException {
+			writer.write(reply + "\r\n");
+			writer.flush();
+		}
+
+		void close() throws IOException {
+			serverSocket.close();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+	}
+
+}
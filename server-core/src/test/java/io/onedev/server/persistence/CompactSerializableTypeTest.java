@@ -0,0 +1,165 @@
+package io.onedev.server.persistence;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.internal.util.SerializationHelper;
+import org.junit.Test;
+
+import io.onedev.server.model.support.NamedCommitQuery;
+import io.onedev.server.model.support.pullrequest.NamedPullRequestQuery;
+import io.onedev.server.persistence.CompactSerializableType.CompactSerializableTypeDescriptor;
+import io.onedev.server.persistence.LazyCompactSerializableType.LazyValueTypeDescriptor;
+
+public class CompactSerializableTypeTest {
+
+	private static final int PROJECTS = 1000;
+
+	private final CompactSerializableTypeDescriptor descriptor = CompactSerializableTypeDescriptor.INSTANCE;
+
+	private final LazyValueTypeDescriptor lazyDescriptor = LazyValueTypeDescriptor.INSTANCE;
+
+	@Test
+	public void shouldRoundTrip() {
+		ArrayList<NamedCommitQuery> small = new ArrayList<>();
+		small.add(new NamedCommitQuery("All", "all"));
+		byte[] encoded = descriptor.encode(small);
+		assertEquals(CompactSerializableTypeDescriptor.CODEC_PLAIN, encoded[3]);
+		assertEquals("all", ((List<?>)descriptor.decode(encoded)).stream()
+				.map(it->((NamedCommitQuery)it).getQuery()).findFirst().get());
+
+		ArrayList<NamedPullRequestQuery> large = new ArrayList<>();
+		for (int i=0; i<5; i++)
+			large.addAll(newPullRequestQueries());
+		encoded = descriptor.encode(large);
+		assertEquals(CompactSerializableTypeDescriptor.CODEC_DEFLATE, encoded[3]);
+		assertTrue(encoded.length < SerializationHelper.serialize(large).length);
+		assertTrue(descriptor.areEqual(large, descriptor.decode(encoded)));
+	}
+
+	@Test
+	public void shouldReadPlainSerializationData() {
+		ArrayList<NamedPullRequestQuery> queries = newPullRequestQueries();
+		byte[] legacy = SerializationHelper.serialize(queries);
+		assertTrue(descriptor.areEqual(queries, descriptor.decode(legacy)));
+	}
+
+	@Test
+	public void shouldShareIdenticalStoredForms() {
+		assertSame(descriptor.encode(newPullRequestQueries()), descriptor.encode(newPullRequestQueries()));
+	}
+
+	/**
+	 * Values hydrated from second level cache should equal original values, and should not
+	 * be shared between hydrations, as entities may modify them
+	 */
+	@Test
+	public void shouldHydrateFromCache() {
+		ArrayList<NamedPullRequestQuery> queries = newPullRequestQueries();
+		Serializable cached = descriptor.getMutabilityPlan().disassemble(queries);
+		Serializable hydrated = descriptor.getMutabilityPlan().assemble(cached);
+		assertTrue(descriptor.areEqual(queries, hydrated));
+		assertNotSame(hydrated, descriptor.getMutabilityPlan().assemble(cached));
+		assertTrue(descriptor.areEqual(queries, descriptor.getMutabilityPlan().deepCopy(hydrated)));
+	}
+
+	/**
+	 * Lazy values hydrated from second level cache should only be decoded when accessed, and
+	 * snapshot and dirty checking of values never accessed should not decode them
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldDecodeLazyValueOnFirstAccess() {
+		ArrayList<NamedPullRequestQuery> queries = newPullRequestQueries();
+		Serializable cached = lazyDescriptor.getMutabilityPlan().disassemble(new LazyValue<>(queries));
+		LazyValue<ArrayList<NamedPullRequestQuery>> hydrated = lazyDescriptor.getMutabilityPlan().assemble(cached);
+		LazyValue<ArrayList<NamedPullRequestQuery>> snapshot = lazyDescriptor.getMutabilityPlan().deepCopy(hydrated);
+		assertTrue(lazyDescriptor.areEqual(hydrated, snapshot));
+		assertFalse(hydrated.isDecoded());
+		assertFalse(snapshot.isDecoded());
+		assertSame(cached, snapshot.getEncoded());
+
+		assertTrue(descriptor.areEqual(queries, hydrated.get()));
+		assertTrue(hydrated.isDecoded());
+		assertTrue(lazyDescriptor.areEqual(hydrated, snapshot));
+		hydrated.get().remove(0);
+		assertFalse(lazyDescriptor.areEqual(hydrated, snapshot));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void shouldShareDecodedValuesForReading() {
+		Serializable cached = lazyDescriptor.getMutabilityPlan().disassemble(new LazyValue<>(newPullRequestQueries()));
+		LazyValue<ArrayList<NamedPullRequestQuery>> hydrated = lazyDescriptor.getMutabilityPlan().assemble(cached);
+		LazyValue<ArrayList<NamedPullRequestQuery>> another = lazyDescriptor.getMutabilityPlan().assemble(cached);
+		assertSame(hydrated.peek(), another.peek());
+		assertFalse(hydrated.isDecoded());
+		assertNotSame(hydrated.get(), another.get());
+		assertSame(hydrated.get(), hydrated.peek());
+	}
+
+	/**
+	 * Compare time to hydrate saved pull request queries of a project list from second level
+	 * cache. Default serializable type keeps deserialized copies in cache and needs to copy
+	 * them once for assembling and once for taking snapshot, while lazy values are neither
+	 * decoded nor copied unless accessed.
+	 */
+	@Test
+	public void benchmarkProjectListHydration() {
+		List<Serializable> defaultCached = new ArrayList<>();
+		List<Serializable> lazyCached = new ArrayList<>();
+		for (int i=0; i<PROJECTS; i++) {
+			defaultCached.add((Serializable) SerializationHelper.clone(newPullRequestQueries()));
+			lazyCached.add(lazyDescriptor.getMutabilityPlan().disassemble(new LazyValue<>(newPullRequestQueries())));
+		}
+
+		// warm up
+		hydrateWithDefaultType(defaultCached);
+		hydrateWithLazyType(lazyCached);
+
+		long time = System.nanoTime();
+		hydrateWithDefaultType(defaultCached);
+		long defaultTime = System.nanoTime() - time;
+
+		time = System.nanoTime();
+		hydrateWithLazyType(lazyCached);
+		long lazyTime = System.nanoTime() - time;
+
+		assertTrue(String.format("Hydrating %d projects: default type %d ms, lazy type %d ms",
+				PROJECTS, defaultTime/1000000, lazyTime/1000000), lazyTime < defaultTime);
+	}
+
+	private void hydrateWithDefaultType(List<Serializable> cached) {
+		for (Serializable each: cached) {
+			Serializable value = (Serializable) SerializationHelper.clone(each);
+			assertNotNull(SerializationHelper.clone(value));
+		}
+	}
+
+	private void hydrateWithLazyType(List<Serializable> cached) {
+		for (Serializable each: cached) {
+			LazyValue<?> value = lazyDescriptor.getMutabilityPlan().assemble(each);
+			assertFalse(lazyDescriptor.getMutabilityPlan().deepCopy(value).isDecoded());
+			assertFalse(value.isDecoded());
+		}
+	}
+
+	private ArrayList<NamedPullRequestQuery> newPullRequestQueries() {
+		ArrayList<NamedPullRequestQuery> queries = new ArrayList<>();
+		queries.add(new NamedPullRequestQuery("Open", "open"));
+		queries.add(new NamedPullRequestQuery("To be reviewed by me", "to be reviewed by me"));
+		queries.add(new NamedPullRequestQuery("To be changed by me", "submitted by me and someone requested for changes"));
+		queries.add(new NamedPullRequestQuery("Request for changes by me", "requested for changes by me"));
+		queries.add(new NamedPullRequestQuery("Approved by me", "approved by me"));
+		queries.add(new NamedPullRequestQuery("Submitted by me", "submitted by me"));
+		queries.add(new NamedPullRequestQuery("Submitted recently", "\"Submit Date\" is after \"last week\""));
+		queries.add(new NamedPullRequestQuery("Updated recently", "\"Update Date\" is after \"last week\""));
+		queries.add(new NamedPullRequestQuery("Closed", "merged or discarded"));
+		queries.add(new NamedPullRequestQuery("All", "all"));
+		return queries;
+	}
+
+}
@@ -0,0 +1,134 @@
+package io.onedev.server.search.code;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.jsymbol.Symbol;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.git.AbstractGitTest;
+import io.onedev.server.git.Blob;
+import io.onedev.server.git.BlobIdent;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+
+public class DefaultSearchManagerTest extends AbstractGitTest {
+
+	private File indexDir;
+
+	private Project project;
+
+	private DefaultSearchManager searchManager;
+
+	@Override
+	protected void setup() {
+		super.setup();
+
+		// Index does not exist, so that symbols are either cached or extracted
+		indexDir = FileUtils.createTempDir();
+		StorageManager storageManager = Mockito.mock(StorageManager.class);
+		Mockito.when(storageManager.getProjectIndexDir(1L)).thenReturn(indexDir);
+
+		project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		Mockito.when(project.getForkRoot()).thenReturn(project);
+		Mockito.when(project.getRepository()).thenReturn(git.getRepository());
+		ProjectManager projectManager = Mockito.mock(ProjectManager.class);
+		Mockito.when(projectManager.load(1L)).thenReturn(project);
+
+		SessionManager sessionManager = Mockito.mock(SessionManager.class);
+		Mockito.doAnswer(invocation -> {
+			((Runnable) invocation.getArguments()[0]).run();
+			return null;
+		}).when(sessionManager).run(Mockito.any(Runnable.class));
+
+		// Run prefetch works in calling thread so that they are finished once submitted
+		BatchWorkManager batchWorkManager = Mockito.mock(BatchWorkManager.class);
+		Mockito.doAnswer(invocation -> {
+			BatchWorker worker = (BatchWorker) invocation.getArguments()[0];
+			worker.doWorks(Lists.newArrayList((Prioritized) invocation.getArguments()[1]));
+			return null;
+		}).when(batchWorkManager).submit(Mockito.any(BatchWorker.class), Mockito.any(Prioritized.class));
+
+		searchManager = new DefaultSearchManager(storageManager, null, batchWorkManager,
+				sessionManager, projectManager);
+	}
+
+	@Override
+	protected void teardown() {
+		FileUtils.deleteDir(indexDir);
+		super.teardown();
+	}
+
+	@Test
+	public void shouldServeSecondLookupOfSameBlobFromCache() {
+		addFileAndCommit("src/A.java", "public class A {\n\tpublic void a() {}\n}\n", "add A");
+
+		List<Symbol> symbols = searchManager.getSymbols(project, getBlob("src/A.java"));
+		assertNotNull(symbols);
+		assertFalse(symbols.isEmpty());
+		SymbolLookupStats stats = searchManager.getSymbolLookupStats();
+		assertEquals(0, stats.getCacheHits());
+		assertEquals(1, stats.getExtractions());
+
+		assertSame(symbols, searchManager.getSymbols(project, getBlob("src/A.java")));
+		assertEquals(1, stats.getCacheHits());
+		assertEquals(1, stats.getExtractions());
+		assertEquals(0, stats.getIndexHits());
+		assertEquals(2, stats.getLookups());
+	}
+
+	@Test
+	public void shouldPrefetchSymbolsOfSiblingFiles() throws Exception {
+		addFile("src/A.java", "public class A {\n}\n");
+		addFile("src/B.java", "public class B {\n}\n");
+		addFile("src/sub/C.java", "public class C {\n}\n");
+		addFile("other/D.java", "public class D {\n}\n");
+		commit("add files");
+
+		searchManager.prefetchSymbols(project, git.getRepository().resolve("HEAD"), "src/A.java");
+		SymbolLookupStats stats = searchManager.getSymbolLookupStats();
+		assertEquals(2, stats.getExtractions());
+		assertEquals(0, stats.getLookups());
+
+		assertNotNull(searchManager.getSymbols(project, getBlob("src/B.java")));
+		assertEquals(1, stats.getCacheHits());
+		assertEquals(2, stats.getExtractions());
+
+		assertNotNull(searchManager.getSymbols(project, getBlob("src/sub/C.java")));
+		assertEquals(1, stats.getCacheHits());
+		assertEquals(3, stats.getExtractions());
+	}
+
+	private Blob getBlob(String path) {
+		Repository repository = git.getRepository();
+		try (RevWalk revWalk = new RevWalk(repository)) {
+			ObjectId commitId = repository.resolve("HEAD");
+			try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, revWalk.parseCommit(commitId).getTree())) {
+				ObjectId blobId = treeWalk.getObjectId(0);
+				return new Blob(new BlobIdent(commitId.name(), path, FileMode.REGULAR_FILE.getBits()),
+						blobId, repository.open(blobId).getBytes());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package io.onedev.server.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import io.onedev.commons.utils.FileUtils;
+
+public class FileClonerTest {
+
+	private File workspace;
+	
+	private File cache;
+	
+	@Before
+	public void before() {
+		workspace = FileUtils.createTempDir();
+		cache = FileUtils.createTempDir();
+	}
+	
+	@After
+	public void after() {
+		FileUtils.deleteDir(workspace);
+		FileUtils.deleteDir(cache);
+	}
+	
+	@Test
+	public void shouldNotShareCollectedFilesWithCache() throws IOException {
+		File workspaceFile = new File(workspace, "dir/outcome.txt");
+		Files.createDirectories(workspaceFile.getParentFile().toPath());
+		Files.write(workspaceFile.toPath(), "outcome".getBytes(StandardCharsets.UTF_8));
+		
+		// Populate cache with workspace by hard linking, as done for workspace caches
+		new FileCloner(true).cloneDirectory(workspace, cache);
+		
+		// Collect unchanged file back into workspace
+		File cacheFile = new File(cache, "dir/outcome.txt");
+		FileCloner cloner = new FileCloner(false).cloneFiles(cache, Lists.newArrayList(cacheFile), workspace);
+		assertEquals(1, cloner.getCopiedFiles());
+		
+		// Cache is modified in place by a later job
+		Files.write(cacheFile.toPath(), "changed by later job".getBytes(StandardCharsets.UTF_8));
+		
+		assertEquals("outcome", new String(Files.readAllBytes(workspaceFile.toPath()), StandardCharsets.UTF_8));
+	}
+	
+}
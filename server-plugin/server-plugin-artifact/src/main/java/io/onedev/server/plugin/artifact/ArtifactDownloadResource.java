@@ -1,20 +1,15 @@
 package io.onedev.server.plugin.artifact;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
 
 import javax.persistence.EntityNotFoundException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.UnauthorizedException;
-import org.apache.tika.io.IOUtils;
 import org.apache.tika.mime.MimeTypes;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.AbstractResource;
@@ -22,7 +17,6 @@ import org.apache.wicket.request.resource.AbstractResource;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 
-import io.onedev.commons.utils.LockUtils;
 import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
 import io.onedev.server.ci.job.JobOutcome;
@@ -32,6 +26,7 @@ import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.web.download.DownloadUtils;
 
 public class ArtifactDownloadResource extends AbstractResource {
 
@@ -99,31 +94,14 @@ public class ArtifactDownloadResource extends AbstractResource {
 		ResourceResponse response = new ResourceResponse();
 		response.setContentType(MimeTypes.OCTET_STREAM);
 		
-		response.disableCaching();
+		DownloadUtils.configureCaching(response, build);
 		
 		try {
 			response.setFileName(URLEncoder.encode(artifactFile.getName(), Charsets.UTF_8.name()));
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
-		response.setWriteCallback(new WriteCallback() {
-
-			@Override
-			public void writeData(Attributes attributes) throws IOException {
-				LockUtils.read(JobOutcome.getLockKey(build, JobArtifacts.DIR), new Callable<Void>() {
-
-					@Override
-					public Void call() throws Exception {
-						try (InputStream is = new FileInputStream(artifactFile)) {
-							IOUtils.copy(is, attributes.getResponse().getOutputStream());
-						}
-						return null;
-					}
-					
-				});
-			}			
-			
-		});
+		DownloadUtils.serveFile(response, attributes, artifactFile, JobOutcome.getLockKey(build, JobArtifacts.DIR));
 
 		return response;
 	}
@@ -27,6 +27,8 @@ public class ArtifactModule extends AbstractPluginModule {
     @Override
 	protected void configure() {
 		super.configure();
+		
+		bind(ArtifactStore.class);
 
 		contribute(ImplementationProvider.class, new ImplementationProvider() {
 
@@ -0,0 +1,459 @@
+package io.onedev.server.plugin.artifact;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.ExceptionUtils;
+import io.onedev.commons.utils.FileUtils;
+import io.onedev.commons.utils.LockUtils;
+import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.server.entitymanager.ProjectManager;
+import io.onedev.server.event.build.BuildResubmitted;
+import io.onedev.server.event.entity.EntityRemoved;
+import io.onedev.server.model.Build;
+import io.onedev.server.persistence.SessionManager;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.storage.StorageManager;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+
+/**
+ * Content addressed storage of build artifacts. Each distinct artifact content is stored
+ * once in blob directory of the project, named by its SHA-256 hash, and hard linked into
+ * artifacts directory of builds. Link count of a blob file is used as its reference count:
+ * blobs no longer linked by any build are removed after builds are deleted or resubmitted, 
+ * and storage stats of the project are refreshed at the same time.
+ * <p>
+ * Artifacts are copied into builds directly if the file system does not support hard links
+ * or does not expose link count.
+ */
+@Singleton
+public class ArtifactStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(ArtifactStore.class);
+
+	private static final int MAX_CONCURRENCY = 8;
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private static final String TEMP_DIR = "temp";
+
+	private static final String STATS_FILE = "artifact-stats.properties";
+
+	private static final String STATS_BLOBS = "blobs";
+
+	private static final String STATS_STORED_BYTES = "storedBytes";
+
+	private static final String STATS_REFERENCED_BYTES = "referencedBytes";
+
+	private static final int GC_PRIORITY = 50;
+
+	private final StorageManager storageManager;
+
+	private final ProjectManager projectManager;
+
+	private final SessionManager sessionManager;
+
+	private final TransactionManager transactionManager;
+
+	private final BatchWorkManager batchWorkManager;
+
+	private final BatchWorker batchWorker = new BatchWorker("artifact-store-gc") {
+
+		@Override
+		public void doWorks(Collection<Prioritized> works) {
+			Collection<Long> projectIds = new HashSet<>();
+			for (Prioritized work: works)
+				projectIds.add(((GcWork) work).getProjectId());
+			for (Long projectId: projectIds) {
+				try {
+					collectGarbage(projectId);
+				} catch (Exception e) {
+					logger.error("Error collecting garbage of artifact store (project id: " + projectId + ")", e);
+				}
+			}
+		}
+
+	};
+
+	private final boolean linkCountSupported =
+			FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+	@Inject
+	public ArtifactStore(StorageManager storageManager, ProjectManager projectManager,
+			SessionManager sessionManager, TransactionManager transactionManager,
+			BatchWorkManager batchWorkManager) {
+		this.storageManager = storageManager;
+		this.projectManager = projectManager;
+		this.sessionManager = sessionManager;
+		this.transactionManager = transactionManager;
+		this.batchWorkManager = batchWorkManager;
+	}
+
+	private String getLockKey(Long projectId) {
+		return "artifact-store:" + projectId;
+	}
+
+	/**
+	 * Store specified workspace files as artifacts of specified build. Files are hashed and
+	 * stored in parallel.
+	 *
+	 * @param build
+	 * 			build to store artifacts for
+	 * @param workspace
+	 * 			workspace containing artifact files
+	 * @param files
+	 * 			artifact files under workspace
+	 * @param artifactsDir
+	 * 			artifacts directory of the build
+	 * @return
+	 * 			store result
+	 */
+	public StoreResult store(Build build, File workspace, Collection<File> files, File artifactsDir) {
+		Long projectId = build.getProject().getId();
+		File blobDir = storageManager.getProjectBlobDir(projectId);
+		File tempDir = new File(blobDir, TEMP_DIR);
+		FileUtils.createDir(tempDir);
+
+		StoreResult result = new StoreResult();
+		int baseLen = workspace.getAbsolutePath().length() + 1;
+		AtomicBoolean linkSupported = new AtomicBoolean(linkCountSupported);
+
+		LockUtils.read(getLockKey(projectId), new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				int concurrency = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_CONCURRENCY));
+				List<List<File>> partitions = new ArrayList<>();
+				for (int i=0; i<concurrency; i++)
+					partitions.add(new ArrayList<>());
+				int index = 0;
+				for (File file: files)
+					partitions.get(index++%concurrency).add(file);
+
+				ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+				try {
+					List<Future<Void>> futures = new ArrayList<>();
+					for (List<File> partition: partitions) {
+						futures.add(executor.submit(new Callable<Void>() {
+
+							@Override
+							public Void call() throws Exception {
+								for (File file: partition) {
+									File target = new File(artifactsDir, file.getAbsolutePath().substring(baseLen));
+									FileUtils.createDir(target.getParentFile());
+									if (linkSupported.get()) {
+										File blob = getBlob(blobDir, tempDir, file, result);
+										try {
+											Files.deleteIfExists(target.toPath());
+											Files.createLink(target.toPath(), blob.toPath());
+											continue;
+										} catch (UnsupportedOperationException | FileSystemException e) {
+											logger.warn("Unable to create hard link, artifacts will be copied", e);
+											linkSupported.set(false);
+										}
+									}
+									Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+									result.copiedBytes.addAndGet(file.length());
+								}
+								return null;
+							}
+
+						}));
+					}
+					for (Future<Void> future: futures) {
+						try {
+							future.get();
+						} catch (InterruptedException e) {
+							throw new RuntimeException(e);
+						} catch (ExecutionException e) {
+							for (Future<Void> each: futures)
+								each.cancel(true);
+							throw ExceptionUtils.unchecked(e.getCause());
+						}
+					}
+				} finally {
+					executor.shutdownNow();
+				}
+				return null;
+			}
+
+		});
+
+		/*
+		 * Do not collect garbage here as it scans the whole blob directory while blocking 
+		 * other builds of the project from storing artifacts. Blobs whose links are replaced 
+		 * above will be removed when some build of the project is deleted or resubmitted
+		 */
+		return result;
+	}
+
+	/**
+	 * Get blob of specified file, storing it if not exist. Should be called while holding
+	 * read lock of the project store
+	 */
+	private File getBlob(File blobDir, File tempDir, File file, StoreResult result) throws IOException {
+		/*
+		 * Hash before copying, as most artifacts of recurring builds are expected to be 
+		 * unchanged and need not to be written at all
+		 */
+		Hasher hasher = Hashing.sha256().newHasher();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream is = new FileInputStream(file)) {
+			int length;
+			while ((length = is.read(buffer)) != -1)
+				hasher.putBytes(buffer, 0, length);
+		}
+		String hash = hasher.hash().toString();
+		File blob = new File(new File(blobDir, hash.substring(0, 2)), hash);
+		if (blob.exists()) {
+			result.deduplicatedBytes.addAndGet(file.length());
+		} else {
+			FileUtils.createDir(blob.getParentFile());
+			File tempFile = new File(tempDir, UUID.randomUUID().toString());
+			try {
+				Files.copy(file.toPath(), tempFile.toPath());
+				Files.move(tempFile.toPath(), blob.toPath());
+				result.storedBytes.addAndGet(file.length());
+			} catch (FileAlreadyExistsException e) {
+				// Same content stored concurrently by another job
+				result.deduplicatedBytes.addAndGet(file.length());
+			} finally {
+				if (tempFile.exists())
+					FileUtils.deleteFile(tempFile);
+			}
+		}
+		return blob;
+	}
+
+	private void collectGarbageLater(Long projectId) {
+		batchWorkManager.submit(batchWorker, new GcWork(projectId));
+	}
+
+	/**
+	 * Remove blobs no longer referenced by any build, and update storage stats of the project
+	 */
+	private void collectGarbage(Long projectId) {
+		if (sessionManager.call(() -> projectManager.get(projectId) == null))
+			return;
+
+		File blobDir = storageManager.getProjectBlobDir(projectId);
+		LockUtils.write(getLockKey(projectId), new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				long blobs = 0;
+				long storedBytes = 0;
+				long referencedBytes = 0;
+				for (File prefixDir: blobDir.listFiles()) {
+					if (prefixDir.getName().equals(TEMP_DIR)) {
+						FileUtils.cleanDir(prefixDir);
+					} else if (prefixDir.isDirectory()) {
+						for (File blob: prefixDir.listFiles()) {
+							int links = (Integer) Files.getAttribute(blob.toPath(), "unix:nlink");
+							if (links <= 1) {
+								FileUtils.deleteFile(blob);
+							} else {
+								blobs++;
+								storedBytes += blob.length();
+								referencedBytes += blob.length() * (links-1);
+							}
+						}
+						if (prefixDir.list().length == 0)
+							FileUtils.deleteDir(prefixDir);
+					}
+				}
+
+				Properties props = new Properties();
+				props.setProperty(STATS_BLOBS, String.valueOf(blobs));
+				props.setProperty(STATS_STORED_BYTES, String.valueOf(storedBytes));
+				props.setProperty(STATS_REFERENCED_BYTES, String.valueOf(referencedBytes));
+				File tempFile = new File(blobDir, STATS_FILE + "." + UUID.randomUUID());
+				try (OutputStream os = new FileOutputStream(tempFile)) {
+					props.store(os, null);
+				}
+				Files.move(tempFile.toPath(), new File(blobDir, STATS_FILE).toPath(),
+						StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return null;
+			}
+
+		});
+	}
+
+	/**
+	 * Get artifact storage stats of specified project
+	 *
+	 * @return
+	 * 			storage stats, or <tt>null</tt> if not available yet
+	 */
+	@Nullable
+	public StorageStats getStats(Long projectId) {
+		File statsFile = new File(storageManager.getProjectBlobDir(projectId), STATS_FILE);
+		if (statsFile.exists()) {
+			Properties props = new Properties();
+			try (InputStream is = new FileInputStream(statsFile)) {
+				props.load(is);
+				return new StorageStats(Long.parseLong(props.getProperty(STATS_BLOBS)),
+						Long.parseLong(props.getProperty(STATS_STORED_BYTES)),
+						Long.parseLong(props.getProperty(STATS_REFERENCED_BYTES)));
+			} catch (IOException | RuntimeException e) {
+				logger.error("Error reading artifact storage stats (project id: " + projectId + ")", e);
+			}
+		}
+		return null;
+	}
+
+	@Listen
+	public void on(EntityRemoved event) {
+		if (linkCountSupported && event.getEntity() instanceof Build) {
+			Long projectId = ((Build) event.getEntity()).getProject().getId();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					collectGarbageLater(projectId);
+				}
+
+			});
+		}
+	}
+
+	@Listen
+	public void on(BuildResubmitted event) {
+		// Build directory is cleaned when a build is submitted again
+		if (linkCountSupported) {
+			Long projectId = event.getProject().getId();
+			transactionManager.runAfterCommit(new Runnable() {
+
+				@Override
+				public void run() {
+					collectGarbageLater(projectId);
+				}
+
+			});
+		}
+	}
+
+	public static class StoreResult {
+
+		private final AtomicLong storedBytes = new AtomicLong();
+
+		private final AtomicLong deduplicatedBytes = new AtomicLong();
+
+		private final AtomicLong copiedBytes = new AtomicLong();
+
+		/**
+		 * @return
+		 * 			bytes of new contents added to the store
+		 */
+		public long getStoredBytes() {
+			return storedBytes.get();
+		}
+
+		/**
+		 * @return
+		 * 			bytes of contents already in the store
+		 */
+		public long getDeduplicatedBytes() {
+			return deduplicatedBytes.get();
+		}
+
+		/**
+		 * @return
+		 * 			bytes copied into build directly as hard links are not supported
+		 */
+		public long getCopiedBytes() {
+			return copiedBytes.get();
+		}
+
+	}
+
+	public static class StorageStats {
+
+		private final long blobs;
+
+		private final long storedBytes;
+
+		private final long referencedBytes;
+
+		public StorageStats(long blobs, long storedBytes, long referencedBytes) {
+			this.blobs = blobs;
+			this.storedBytes = storedBytes;
+			this.referencedBytes = referencedBytes;
+		}
+
+		public long getBlobs() {
+			return blobs;
+		}
+
+		/**
+		 * @return
+		 * 			bytes actually taken by stored blobs
+		 */
+		public long getStoredBytes() {
+			return storedBytes;
+		}
+
+		/**
+		 * @return
+		 * 			total bytes of artifacts referencing stored blobs
+		 */
+		public long getReferencedBytes() {
+			return referencedBytes;
+		}
+
+		public long getSavedBytes() {
+			return referencedBytes - storedBytes;
+		}
+
+	}
+
+	private static class GcWork extends Prioritized {
+
+		private final Long projectId;
+
+		public GcWork(Long projectId) {
+			super(GC_PRIORITY);
+			this.projectId = projectId;
+		}
+
+		public Long getProjectId() {
+			return projectId;
+		}
+
+	}
+
+}
@@ -32,11 +32,13 @@ import org.apache.wicket.markup.html.panel.Fragment;
 import org.apache.wicket.markup.repeater.Item;
 import org.apache.wicket.markup.repeater.OddEvenItem;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 
 import io.onedev.server.OneDev;
 import io.onedev.server.model.Build;
+import io.onedev.server.plugin.artifact.ArtifactStore.StorageStats;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
 import io.onedev.server.util.DateUtils;
@@ -196,6 +198,30 @@ public class BuildArtifactsPage extends BuildDetailPage {
 		} else {
 			add(new Label("artifacts", "No artifacts published").add(AttributeAppender.append("class", "alert alert-warning")));
 		}
+		
+		add(new Label("storageStats", new LoadableDetachableModel<String>() {
+
+			@Override
+			protected String load() {
+				StorageStats stats = OneDev.getInstance(ArtifactStore.class).getStats(getProject().getId());
+				if (stats != null && stats.getBlobs() != 0) {
+					return String.format("Artifacts of this project take %s on disk, %s saved by deduplication", 
+							FileUtils.byteCountToDisplaySize(stats.getStoredBytes()), 
+							FileUtils.byteCountToDisplaySize(stats.getSavedBytes()));
+				} else {
+					return null;
+				}
+			}
+			
+		}) {
+
+			@Override
+			protected void onConfigure() {
+				super.onConfigure();
+				setVisible(getDefaultModelObject() != null);
+			}
+			
+		});
 	}
 
 	private File getArtifactsDir() {
@@ -1,15 +1,16 @@
 package io.onedev.server.plugin.artifact;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 
 import io.onedev.commons.utils.FileUtils;
 import io.onedev.commons.utils.LockUtils;
+import io.onedev.server.OneDev;
 import io.onedev.server.ci.job.JobOutcome;
 import io.onedev.server.model.Build;
+import io.onedev.server.plugin.artifact.ArtifactStore.StoreResult;
 import io.onedev.server.web.editable.annotation.Editable;
 
 @Editable(name="Artifacts")
@@ -28,14 +29,14 @@ public class JobArtifacts extends JobOutcome {
 
 			@Override
 			public Void call() throws Exception {
-				int baseLen = workspace.getAbsolutePath().length() + 1;
-				for (File file: getPatternSet().listFiles(workspace)) {
-					try {
-						FileUtils.copyFile(file, new File(outcomeDir, file.getAbsolutePath().substring(baseLen)));
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				}
+				long time = System.currentTimeMillis();
+				StoreResult result = OneDev.getInstance(ArtifactStore.class).store(build, workspace, 
+						getPatternSet().listFiles(workspace), outcomeDir);
+				logger.info("Stored artifacts in {} ms (new: {}, deduplicated: {}, copied: {})", 
+						System.currentTimeMillis()-time, 
+						FileUtils.byteCountToDisplaySize(result.getStoredBytes()), 
+						FileUtils.byteCountToDisplaySize(result.getDeduplicatedBytes()), 
+						FileUtils.byteCountToDisplaySize(result.getCopiedBytes()));
 				return null;
 			}
 			
@@ -0,0 +1,65 @@
+package io.onedev.server.plugin.artifact;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.FileSystems;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import io.onedev.commons.launcher.loader.Listen;
+import io.onedev.commons.utils.concurrent.Prioritized;
+import io.onedev.server.event.build.BuildResubmitted;
+import io.onedev.server.event.build.BuildSubmitted;
+import io.onedev.server.model.Build;
+import io.onedev.server.model.Project;
+import io.onedev.server.persistence.TransactionManager;
+import io.onedev.server.util.work.BatchWorkManager;
+import io.onedev.server.util.work.BatchWorker;
+
+public class ArtifactStoreTest {
+
+	@Test
+	public void shouldOnlyCollectGarbageWhenBuildIsResubmitted() throws Exception {
+		Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+
+		TransactionManager transactionManager = Mockito.mock(TransactionManager.class);
+		Mockito.doAnswer(invocation -> {
+			((Runnable) invocation.getArguments()[0]).run();
+			return null;
+		}).when(transactionManager).runAfterCommit(Mockito.any(Runnable.class));
+		BatchWorkManager batchWorkManager = Mockito.mock(BatchWorkManager.class);
+		ArtifactStore store = new ArtifactStore(null, null, null, transactionManager, batchWorkManager);
+
+		Project project = Mockito.mock(Project.class);
+		Mockito.when(project.getId()).thenReturn(1L);
+		Build build = Mockito.mock(Build.class);
+		Mockito.when(build.getProject()).thenReturn(project);
+
+		// New builds do not have artifacts to be cleaned
+		post(store, new BuildSubmitted(build));
+		Mockito.verify(batchWorkManager, Mockito.never()).submit(
+				Mockito.any(BatchWorker.class), Mockito.any(Prioritized.class));
+
+		post(store, new BuildResubmitted(build));
+		Mockito.verify(batchWorkManager).submit(Mockito.any(BatchWorker.class), Mockito.any(Prioritized.class));
+	}
+
+	/*
+	 * Notify all listener methods accepting specified event, as listener registry does
+	 */
+	private void post(Object listener, Object event) throws Exception {
+		for (Method method: listener.getClass().getMethods()) {
+			if (method.getAnnotation(Listen.class) != null
+					&& method.getParameterTypes()[0].isAssignableFrom(event.getClass())) {
+				try {
+					method.invoke(listener, event);
+				} catch (InvocationTargetException e) {
+					throw (Exception) e.getCause();
+				}
+			}
+		}
+	}
+
+}
@@ -1,28 +1,23 @@
 package io.onedev.server.plugin.htmlreport;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
 
 import javax.persistence.EntityNotFoundException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authz.UnauthorizedException;
-import org.apache.tika.io.IOUtils;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.request.resource.AbstractResource;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 
-import io.onedev.commons.utils.LockUtils;
 import io.onedev.server.OneDev;
 import io.onedev.server.OneException;
 import io.onedev.server.ci.job.JobOutcome;
@@ -32,6 +27,7 @@ import io.onedev.server.model.Build;
 import io.onedev.server.model.Project;
 import io.onedev.server.security.SecurityUtils;
 import io.onedev.server.storage.StorageManager;
+import io.onedev.server.web.download.DownloadUtils;
 
 public class HtmlReportDownloadResource extends AbstractResource {
 
@@ -103,31 +99,14 @@ public class HtmlReportDownloadResource extends AbstractResource {
 			throw new RuntimeException(e);
 		}		
 		
-		response.disableCaching();
+		DownloadUtils.configureCaching(response, build);
 		
 		try {
 			response.setFileName(URLEncoder.encode(htmlFile.getName(), Charsets.UTF_8.name()));
 		} catch (UnsupportedEncodingException e) {
 			throw new RuntimeException(e);
 		}
-		response.setWriteCallback(new WriteCallback() {
-
-			@Override
-			public void writeData(Attributes attributes) throws IOException {
-				LockUtils.read(JobOutcome.getLockKey(build, JobHtmlReport.DIR), new Callable<Void>() {
-
-					@Override
-					public Void call() throws Exception {
-						try (InputStream is = new FileInputStream(htmlFile)) {
-							IOUtils.copy(is, attributes.getResponse().getOutputStream());
-						}
-						return null;
-					}
-					
-				});
-			}			
-			
-		});
+		DownloadUtils.serveFile(response, attributes, htmlFile, JobOutcome.getLockKey(build, JobHtmlReport.DIR));
 
 		return response;
 	}